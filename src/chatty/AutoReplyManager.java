@@ -124,8 +124,7 @@ public class AutoReplyManager {
             else {
                 progress.put(key, toSequentialProgressMap(update));
             }
-            settings.setSettingChanged(SETTING_SEQUENTIAL_PROGRESS);
-            persistSequentialProgress();
+            persistSequentialProgress(progress);
         }
         notifySequentialProgressListeners();
     }
@@ -140,8 +139,7 @@ public class AutoReplyManager {
             Map<String, Object> progress = getSequentialProgressMap();
             changed = progress.remove(key) != null;
             if (changed) {
-                settings.setSettingChanged(SETTING_SEQUENTIAL_PROGRESS);
-                persistSequentialProgress();
+                persistSequentialProgress(progress);
             }
         }
         if (changed) {
@@ -155,8 +153,7 @@ public class AutoReplyManager {
             Map<String, Object> progress = getSequentialProgressMap();
             if (!progress.isEmpty()) {
                 progress.clear();
-                settings.setSettingChanged(SETTING_SEQUENTIAL_PROGRESS);
-                persistSequentialProgress();
+                persistSequentialProgress(progress);
                 changed = true;
             }
         }
@@ -180,8 +177,7 @@ public class AutoReplyManager {
                 changed = progress.keySet().removeIf(key -> !activeTriggerIds.contains(extractTriggerId(key)));
             }
             if (changed) {
-                settings.setSettingChanged(SETTING_SEQUENTIAL_PROGRESS);
-                persistSequentialProgress();
+                persistSequentialProgress(progress);
             }
         }
     }
@@ -209,8 +205,7 @@ public class AutoReplyManager {
                 }
             }
             if (changed) {
-                settings.setSettingChanged(SETTING_SEQUENTIAL_PROGRESS);
-                persistSequentialProgress();
+                persistSequentialProgress(progress);
             }
         }
         if (changed) {
@@ -218,9 +213,15 @@ public class AutoReplyManager {
         }
     }
 
-    private void persistSequentialProgress() {
+    /**
+     * Store the modified copy of the progress in the settings and write it to
+     * file soon. Several changes in a short time only result in one write.
+     */
+    private void persistSequentialProgress(Map<String, Object> progress) {
         try {
-            settings.saveSettingsToJson(false);
+            settings.putMap(SETTING_SEQUENTIAL_PROGRESS, progress);
+            settings.setSettingChanged(SETTING_SEQUENTIAL_PROGRESS);
+            settings.saveSettingsToJsonLater();
         }
         catch (Exception ex) {
             LOGGER.log(Level.WARNING, "Failed to persist sequential reply progress", ex);
@@ -555,6 +556,7 @@ public class AutoReplyManager {
         long minUniqueUsers = toLong(map.get("minUniqueUsers"), 0);
         long minMentionsPerUser = toLong(map.get("minMentionsPerUser"), 0);
         long timeWindowSec = toLong(map.get("timeWindowSec"), 0);
+        long minCopypastaUsers = toLong(map.get("minCopypastaUsers"), 0);
         boolean notify = toBoolean(map.get("notify"), false);
         String sound = normalize(map.get("sound"));
         Object allowData = map.containsKey("authors") ? map.get("authors") : map.get("allow");
@@ -568,7 +570,7 @@ public class AutoReplyManager {
                 allow, notify, sound,
                 minUniqueUsers, minMentionsPerUser, timeWindowSec,
                 enabled, minDelayMs, maxDelayMs,
-                replySelection, loopReplies);
+                replySelection, loopReplies, minCopypastaUsers);
     }
 
     private static String normalize(Object value) {
@@ -805,6 +807,7 @@ public class AutoReplyManager {
         private long maxDelayMillis;
         private ReplySelection replySelection;
         private boolean loopReplies;
+        private long minCopypastaUsers;
 
         public AutoReplyTrigger(String id, String pattern, PatternType patternType, String reply,
                 long cooldown,
@@ -812,7 +815,8 @@ public class AutoReplyManager {
                 boolean notificationEnabled, String sound,
                 long minUniqueUsers, long minMentionsPerUser, long timeWindowSec,
                 boolean enabled, long minDelayMillis, long maxDelayMillis,
-                ReplySelection replySelection, boolean loopReplies) {
+                ReplySelection replySelection, boolean loopReplies,
+                long minCopypastaUsers) {
             this.id = Objects.requireNonNull(id);
             this.pattern = pattern == null ? "" : pattern;
             this.patternType = patternType == null ? PatternType.PLAIN : patternType;
@@ -829,6 +833,7 @@ public class AutoReplyManager {
             this.maxDelayMillis = Math.max(this.minDelayMillis, maxDelayMillis);
             this.replySelection = replySelection == null ? ReplySelection.RANDOM : replySelection;
             this.loopReplies = loopReplies;
+            this.minCopypastaUsers = Math.max(0, minCopypastaUsers);
         }
 
         public static AutoReplyTrigger create() {
@@ -836,7 +841,7 @@ public class AutoReplyManager {
                     new ArrayList<>(), false, null,
                     0, 0, 0,
                     true, 0, 0,
-                    ReplySelection.RANDOM, false);
+                    ReplySelection.RANDOM, false, 0);
         }
 
         public AutoReplyTrigger copy() {
@@ -844,7 +849,7 @@ public class AutoReplyManager {
                     allowAuthors, notificationEnabled, sound,
                     minUniqueUsers, minMentionsPerUser, timeWindowSec,
                     enabled, minDelayMillis, maxDelayMillis,
-                    replySelection, loopReplies);
+                    replySelection, loopReplies, minCopypastaUsers);
         }
 
         public AutoReplyTrigger copyWithNewId() {
@@ -852,7 +857,7 @@ public class AutoReplyManager {
                     allowAuthors, notificationEnabled, sound,
                     minUniqueUsers, minMentionsPerUser, timeWindowSec,
                     enabled, minDelayMillis, maxDelayMillis,
-                    replySelection, loopReplies);
+                    replySelection, loopReplies, minCopypastaUsers);
         }
 
         public Map<String, Object> toMap() {
@@ -865,6 +870,7 @@ public class AutoReplyManager {
             result.put("minUniqueUsers", minUniqueUsers);
             result.put("minMentionsPerUser", minMentionsPerUser);
             result.put("timeWindowSec", timeWindowSec);
+            result.put("minCopypastaUsers", minCopypastaUsers);
             if (!allowAuthors.isEmpty()) {
                 List<String> authors = new ArrayList<>(allowAuthors);
                 result.put("authors", new ArrayList<>(authors));
@@ -965,6 +971,21 @@ public class AutoReplyManager {
             this.timeWindowSec = Math.max(0, timeWindowSec);
         }
 
+        /**
+         * The number of different users that must have posted the same (or a
+         * similar) message for it to match, as counted by the
+         * {@link chatty.util.CopypastaDetector}. 0 disables the condition.
+         *
+         * @return The minimum copypasta user count
+         */
+        public long getMinCopypastaUsers() {
+            return minCopypastaUsers;
+        }
+
+        public void setMinCopypastaUsers(long minCopypastaUsers) {
+            this.minCopypastaUsers = Math.max(0, minCopypastaUsers);
+        }
+
         public boolean isEnabled() {
             return enabled;
         }
@@ -8,6 +8,7 @@ import chatty.AutoReplyManager.ReplySelection;
 import chatty.Chatty;
 import chatty.Chatty.PathType;
 import chatty.gui.MainGui;
+import chatty.util.CopypastaDetector;
 import chatty.util.StringUtil;
 import chatty.util.irc.MsgTags;
 import chatty.util.Sound;
@@ -126,7 +127,7 @@ public class AutoReplyService implements AutoReplyManager.Listener {
         }
 
         final long now = System.currentTimeMillis();
-        MatchContext context = createContext(text, tags);
+        MatchContext context = createContext(text, tags, client.getUsername());
 
         for (PreparedTrigger trigger : activeTriggers) {
             if (!trigger.matchesAuthor(user.getName())) {
@@ -353,9 +354,22 @@ public class AutoReplyService implements AutoReplyManager.Listener {
         }
     }
 
-    private MatchContext createContext(String text, MsgTags tags) {
+    /**
+     * Check only the message based conditions of a trigger (pattern and
+     * copypasta count), without author, thresholds or cooldowns.
+     *
+     * @param trigger The trigger
+     * @param text The message text
+     * @param tags The message tags, may be null
+     * @return true if the message matches
+     */
+    static boolean matchesMessage(AutoReplyTrigger trigger, String text, MsgTags tags) {
+        PreparedTrigger prepared = PreparedTrigger.create(trigger, null);
+        return prepared != null && prepared.matchesMessage(createContext(text, tags, null));
+    }
+
+    private static MatchContext createContext(String text, MsgTags tags, String ownUsername) {
         String safeText = text == null ? "" : text;
-        String ownUsername = client.getUsername();
         boolean recipientMention = false;
         boolean directMention = false;
         if (!StringUtil.isNullOrEmpty(ownUsername)) {
@@ -371,7 +385,8 @@ public class AutoReplyService implements AutoReplyManager.Listener {
                 directMention = true;
             }
         }
-        return new MatchContext(safeText, recipientMention, directMention);
+        int copypastaCount = tags != null ? CopypastaDetector.getCount(tags) : 0;
+        return new MatchContext(safeText, recipientMention, directMention, copypastaCount);
     }
 
     private void rollbackGlobalCooldown(TriggerState state) {
@@ -407,6 +422,7 @@ public class AutoReplyService implements AutoReplyManager.Listener {
         private final TriggerState state;
         private final ReplySelection replySelection;
         private final boolean loopReplies;
+        private final long minCopypastaUsers;
 
         private PreparedTrigger(String id,
                                 Pattern regexPattern,
@@ -424,7 +440,8 @@ public class AutoReplyService implements AutoReplyManager.Listener {
                                 long maxDelayMillis,
                                 TriggerState state,
                                 ReplySelection replySelection,
-                                boolean loopReplies) {
+                                boolean loopReplies,
+                                long minCopypastaUsers) {
             this.id = id;
             this.regexPattern = regexPattern;
             this.plainPattern = plainPattern;
@@ -442,6 +459,7 @@ public class AutoReplyService implements AutoReplyManager.Listener {
             this.state = state;
             this.replySelection = replySelection == null ? ReplySelection.RANDOM : replySelection;
             this.loopReplies = loopReplies;
+            this.minCopypastaUsers = minCopypastaUsers;
         }
 
         private static PreparedTrigger create(AutoReplyTrigger trigger, TriggerState state) {
@@ -484,7 +502,8 @@ public class AutoReplyService implements AutoReplyManager.Listener {
             return new PreparedTrigger(trigger.getId(), regex, plain, replies, allow,
                     trigger.isNotificationEnabled(), trigger.getSound(), trigger.getPattern(), cooldown,
                     timeWindow, requiredUsers, requiredMentions, minDelay, maxDelay, state,
-                    trigger.getReplySelection(), trigger.isLoopReplies());
+                    trigger.getReplySelection(), trigger.isLoopReplies(),
+                    trigger.getMinCopypastaUsers());
         }
 
         private static Set<String> toLowerCaseSet(Collection<String> values) {
@@ -509,6 +528,9 @@ public class AutoReplyService implements AutoReplyManager.Listener {
         }
 
         private boolean matchesMessage(MatchContext context) {
+            if (context.copypastaCount < minCopypastaUsers) {
+                return false;
+            }
             if (regexPattern != null) {
                 return regexPattern.matcher(context.text).find();
             }
@@ -611,11 +633,13 @@ public class AutoReplyService implements AutoReplyManager.Listener {
         final String text;
         final boolean recipientMention;
         final boolean directMention;
+        final int copypastaCount;
 
-        MatchContext(String text, boolean recipientMention, boolean directMention) {
+        MatchContext(String text, boolean recipientMention, boolean directMention, int copypastaCount) {
             this.text = text;
             this.recipientMention = recipientMention;
             this.directMention = directMention;
+            this.copypastaCount = copypastaCount;
         }
     }
 
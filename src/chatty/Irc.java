@@ -285,7 +285,7 @@ public abstract class Irc {
     }
     
     public void simulate(String data) {
-        received(data);
+        received(data, true);
     }
     
     public void debugConnection() {
@@ -300,6 +300,10 @@ public abstract class Irc {
      * @param data The line of data received
      */
     protected void received(String data) {
+        received(data, false);
+    }
+    
+    private void received(String data, boolean simulated) {
         if (data == null) {
             return;
         }
@@ -308,6 +312,9 @@ public abstract class Irc {
         ParsedMsg p = ParsedMsg.parse(data);
 
         if (p != null) {
+            if (!simulated && p.getParameters().isChan(0)) {
+                rawChannel(p.getParameters().get(0), data);
+            }
             receivedCommand(p.getPrefix(), p.getNick(), p.getCommand(),
                     p.getParameters(), p.getTags());
         }
@@ -679,6 +686,15 @@ public abstract class Irc {
     
     void raw(String message) { }
     
+    /**
+     * A message was received with a channel as first parameter (not called
+     * for simulated messages).
+     * 
+     * @param channel The channel
+     * @param message The raw message
+     */
+    void rawChannel(String channel, String message) { }
+    
     void sent(String message) { }
     
     void onUserstate(String channel, MsgTags tags) { }
@@ -5,6 +5,7 @@ import chatty.Chatty.PathType;
 import chatty.gui.components.updating.Version;
 import chatty.util.colors.HtmlColors;
 import chatty.gui.WindowStateManager;
+import chatty.gui.components.AutoReplyLogStore;
 import chatty.gui.components.eventlog.EventLog;
 import chatty.gui.components.settings.NotificationSettings;
 import chatty.gui.notifications.Notification;
@@ -87,6 +88,7 @@ public class SettingsManager {
         fileManager.add("login", "login", false, fileInfoProvider);
         fileManager.add("favoritesAndHistory", "favoritesAndHistory", false, fileInfoProvider);
         fileManager.add("statusPresets", "statusPresets", false, fileInfoProvider);
+        fileManager.add("autoReply", "autoReply", true, fileInfoProvider);
         this.settings = new Settings("settings", fileManager);
     }
     
@@ -99,10 +101,15 @@ public class SettingsManager {
         String loginFile = "login";
         String historyFile = "favoritesAndHistory";
         String statusPresetsFile = "statusPresets";
+        String autoReplyFile = "autoReply";
         
         settings.addFile(loginFile);
         settings.addFile(historyFile);
         settings.addFile(statusPresetsFile);
+        settings.addFile(autoReplyFile);
+        
+        // Data that can get large, saved separately and loaded when needed
+        settings.addSidecarStore(AutoReplyLogStore.STORE_ID, AutoReplyLogStore.MAX_ENTRIES);
         
         //========
         // General
@@ -389,6 +396,9 @@ public class SettingsManager {
         settings.addMap("userNotes", new HashMap(), Setting.STRING);
         settings.addMap("userNotesChat", new HashMap(), Setting.STRING);
         settings.addLong("userDialogMessageLimit", 100);
+        settings.addLong("userMessagesChannelMemory", 16*1024);
+        settings.addLong("removeIdleUsers", 24);
+        settings.addLong("maxUsersPerChannel", 50000);
 
         // History / Favorites
         settings.addMap("channelHistory",new TreeMap(), Setting.LONG);
@@ -674,14 +684,17 @@ public class SettingsManager {
 
         // Auto Reply
         settings.addList("autoReplyProfiles", new ArrayList(), Setting.MAP);
+        settings.setFile("autoReplyProfiles", autoReplyFile);
         settings.addString("autoReplyActiveProfile", "default");
         settings.addLong("autoReplyGlobalCooldown", 0);
         settings.addBoolean("autoReplySelfIgnore", true);
         settings.addBoolean("autoReplyDefaultNotification", false);
         settings.addString("autoReplyDefaultSound", "");
         settings.addBoolean("autoReplyEnabled", true);
+        // Only for migrating to the "autoReplyLog" store
         settings.addList("autoReplyLogEntries", new ArrayList(), Setting.MAP);
         settings.addMap("autoReplySequentialProgress", new HashMap<>(), Setting.LONG);
+        settings.setFile("autoReplySequentialProgress", autoReplyFile);
 
         // Ignore
         settings.addList("ignore", new ArrayList(), Setting.STRING);
@@ -726,6 +739,10 @@ public class SettingsManager {
         settings.addLong("repeatMsgMethod", 1);
         settings.addString("repeatMsgIgnored", "");
         settings.addString("repeatMsgMatch", "!status:M");
+        settings.addBoolean("copypasta", false);
+        settings.addLong("copypastaTime", 30);
+        settings.addLong("copypastaLen", 20);
+        settings.addLong("copypastaUsers", 3);
 
         // Chat Logging
         settings.addString("logMode", "always");
@@ -751,6 +768,9 @@ public class SettingsManager {
         settings.addBoolean("logSubdirectories", false);
         settings.addString("logTimestamp", "[yyyy-MM-dd HH:mm:ss]");
         settings.addBoolean("logLockFiles", true);
+        settings.addBoolean("logIndex", true);
+        settings.addBoolean("logCompress", false);
+        settings.addBoolean("logStructured", false);
         
         // TAB Completion
         settings.addBoolean("completionEnabled", true);
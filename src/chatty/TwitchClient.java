@@ -36,15 +36,20 @@ import chatty.splash.Splash;
 import chatty.util.BTTVEmotes;
 import chatty.util.BatchAction;
 import chatty.util.BotNameManager;
+import chatty.util.BulkRequestScheduler;
+import chatty.util.CopypastaDetector;
 import chatty.util.DateTime;
 import chatty.util.Debugging;
+import chatty.util.DecodedImageCache;
 import chatty.util.EmoticonListener;
 import chatty.util.IconManager;
 import chatty.util.ffz.FrankerFaceZ;
 import chatty.util.ffz.FrankerFaceZListener;
+import chatty.util.gif.ListAnimatedImage;
 import chatty.util.history.HistoryManager;
 import chatty.util.history.HistoryMessage;
 import chatty.util.ImageCache;
+import chatty.util.ImageLoader;
 import chatty.util.LogUtil;
 import chatty.util.MacAwtOptions;
 import chatty.util.MiscUtil;
@@ -53,6 +58,7 @@ import chatty.util.ProcessManager;
 import chatty.util.Pronouns;
 import chatty.util.RawMessageTest;
 import chatty.util.ReplyManager;
+import chatty.util.SharedHttpClient;
 import chatty.util.Sound;
 import chatty.util.Speedruncom;
 import chatty.util.StreamHighlightHelper;
@@ -199,6 +205,7 @@ public class TwitchClient {
     
     private final SendMessageManager sendMessageManager;
     private AutoReplyService autoReplyService;
+    private final CopypastaDetector copypastaDetector;
     
     /**
      * Holds the UserManager instance, which manages all the user objects.
@@ -392,12 +399,14 @@ public class TwitchClient {
         // Create GUI
         LOGGER.info("Create GUI..");
         g = new MainGui(this);
+        c.addKeepUserCheck(g::isUserShownInDialog);
         g.loadSettings();
         emotesetManager = new EmotesetManager(api, g, settings);
         g.showGui();
         
         autoModCommandHelper = new AutoModCommandHelper(g, api);
         sendMessageManager = new SendMessageManager(api, g);
+        copypastaDetector = new CopypastaDetector(settings);
         autoReplyService = new AutoReplyService(this, g, g.getAutoReplyManager());
         
         // Wire up auto-reply logging UI
@@ -1864,6 +1873,15 @@ public class TwitchClient {
             createTestUser(split[0], split[1]);
         } else if (command.equals("getemoteset")) {
             g.printLine(g.emoticons.getEmoticonsBySet(parameter).toString());
+        } else if (command.equals("imagecache")) {
+            g.printLine(DecodedImageCache.get().getStats()+" [ImageLoader] queued: "+ImageLoader.get().getQueueSize());
+            for (String line : ListAnimatedImage.getMemoryUsageInfo(10)) {
+                g.printLine(line);
+            }
+        } else if (command.equals("userstores")) {
+            g.printLine("[UserMessageStore] "+c.getMessageStoreStats());
+        } else if (command.equals("usermemory")) {
+            g.printLine("[UserManager] "+c.getUserMemoryReport());
         } else if (command.equals("testcolor")) {
             testUser.setColor(parameter);
         } else if (command.equals("testupdatenotification")) {
@@ -2016,6 +2034,9 @@ public class TwitchClient {
                 return;
             } else if (parameter.startsWith("file ")) {
                 RawMessageTest.simulateFile(c, parameter.substring("file ".length()));
+            } else if (parameter.startsWith("logfile ")) {
+                RawMessageTest.simulateLogFile(c, parameter.substring("logfile ".length()));
+                return;
             }
             String raw = RawMessageTest.simulateIRC(channel, parameter, c.getUsername());
             if (raw != null) {
@@ -2039,6 +2060,12 @@ public class TwitchClient {
                 LOGGER.info(s.total+" "+s.getCountBySession());
                 LOGGER.info(s.toString());
             });
+        } else if (command.equals("apiqueue")) {
+            LOGGER.info(api.getQueueStats());
+        } else if (command.equals("httpstats")) {
+            LOGGER.info(SharedHttpClient.getStats());
+        } else if (command.equals("bulkstats")) {
+            LOGGER.info(BulkRequestScheduler.get().getStats());
         } else if (command.equals("es_t")) {
             LOGGER.info(eventSub.getTopics());
         } else if (command.equals("es_lt")) {
@@ -3403,6 +3430,7 @@ public class TwitchClient {
         eventSub.disconnect();
         g.cleanUp();
         chatLog.close();
+        api.close();
         System.exit(0);
     }
     
@@ -3546,6 +3574,7 @@ public class TwitchClient {
         @Override
         public void onChannelLeft(Room room, boolean closeChannel) {
             chatLog.info(room.getFilename(), "You have left "+room.getDisplayName(), null);
+            copypastaDetector.clear(room.getChannel());
             if (closeChannel) {
                 closeChannel(room.getChannel());
             }
@@ -3591,6 +3620,10 @@ public class TwitchClient {
                 g.printPointsNotice(user, info, text, tags, null, false, null);
             }
             else {
+                if (!tags.isHistoricMsg()) {
+                    // Adds tags if several users posted a similar message
+                    tags = copypastaDetector.check(user, text, tags);
+                }
                 if (!historyManager.addQueueMessage(user, text, tags, action)) {
                     if (!isOwnUsername(user.getName())
                             || !sendMessageManager.shouldIgnoreMessage(user, text, tags, action)) {
@@ -3816,6 +3849,11 @@ public class TwitchClient {
             ircLogger.onRawReceived(text);
         }
 
+        @Override
+        public void onRawChannelReceived(String channel, String text) {
+            chatLog.raw(channel, text);
+        }
+
         @Override
         public void onRawSent(String text) {
             ircLogger.onRawSent(text);
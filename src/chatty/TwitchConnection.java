@@ -13,6 +13,7 @@ import chatty.util.StringUtil;
 import chatty.util.api.Emoticons;
 import chatty.util.irc.IrcBadges;
 import chatty.util.irc.UserTagsUtil;
+import chatty.util.settings.SettingHandle;
 import chatty.util.settings.Settings;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -27,6 +28,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 /**
@@ -97,12 +99,15 @@ public class TwitchConnection {
     private final ChannelStateManager channelStates = new ChannelStateManager();
     
     private final SentMessages sentMessages = new SentMessages();
+    
+    private final SettingHandle<Long> emojiZWJSetting;
 
     public TwitchConnection(final ConnectionListener listener, Settings settings,
             String label, RoomManager rooms) {
         irc = new IrcConnection(label);
         this.listener = listener;
         this.settings = settings;
+        this.emojiZWJSetting = settings.getLongHandle("emojiZWJ");
         this.twitchCommands = new TwitchCommands(this);
         this.rooms = rooms;
         spamProtection = new SpamProtection();
@@ -187,6 +192,18 @@ public class TwitchConnection {
         return users.clearLines(channel, numberOfMessagesOnly);
     }
     
+    public String getMessageStoreStats() {
+        return users.getMessageStoreStats();
+    }
+    
+    public String getUserMemoryReport() {
+        return users.getMemoryReport();
+    }
+    
+    public void addKeepUserCheck(Predicate<User> check) {
+        users.addKeepUserCheck(check);
+    }
+    
     /**
      * The username used for the last connection.
      * 
@@ -519,7 +536,7 @@ public class TwitchConnection {
         if (!spamProtection.check()) {
             return false;
         } else {
-            if (settings.getLong("emojiZWJ") == 2) {
+            if (emojiZWJSetting.get() == 2) {
                 message = EmojiUtil.encodeZWJ(message);
             }
             if (Helper.isChatroomChannel(channel)) {
@@ -1286,6 +1303,11 @@ public class TwitchConnection {
         public void raw(String text) {
             listener.onRawReceived(idPrefix+text);
         }
+        
+        @Override
+        void rawChannel(String channel, String text) {
+            listener.onRawChannelReceived(channel, text);
+        }
 
         @Override
         public void sent(String text) {
@@ -1571,6 +1593,15 @@ public class TwitchConnection {
         
         void onRawReceived(String text);
         
+        /**
+         * A raw message was received for the given channel (not called for
+         * simulated messages).
+         * 
+         * @param channel The channel
+         * @param text The raw message
+         */
+        void onRawChannelReceived(String channel, String text);
+        
         void onRawSent(String text);
         
         void onChannelCleared(Room room);
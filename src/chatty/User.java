@@ -8,6 +8,7 @@ import chatty.util.api.usericons.UsericonManager;
 import chatty.util.colors.HtmlColors;
 import chatty.gui.NamedColor;
 import chatty.gui.components.textpane.ModLogInfo;
+import chatty.util.BigramSignature;
 import chatty.util.Debugging;
 import chatty.util.StringUtil;
 import chatty.util.api.eventsub.payloads.ModActionPayload;
@@ -121,7 +122,14 @@ public class User implements Comparable<User> {
     //==========
     // Messages
     //==========
-    private List<Message> lines;
+    
+    /**
+     * Max size of the message store of users that don't get one assigned.
+     */
+    private static final int PRIVATE_MESSAGE_STORE_BYTES = 256*1024;
+    
+    private UserMessageStore.Lines lines;
+    private UserMessageStore messageStore;
 
     private int numberOfMessages;
     private int numberOfLines;
@@ -129,6 +137,12 @@ public class User implements Comparable<User> {
     // Used for auto-completion score
     private long lastHighlight = -1;
     
+    /**
+     * When this user was last seen doing something (being created, sending a
+     * message, joining, being highlighted), used to remove idle users.
+     */
+    private long lastActivity = System.currentTimeMillis();
+    
     
     public User(String nick, Room room) {
         this(nick, null, null, room);
@@ -487,7 +501,7 @@ public class User implements Comparable<User> {
         for (int i=lines.size() - 1; i>=0; i--) {
             Message m = lines.get(i);
             // Too old, abort (associated message might not be here yet)
-            if (System.currentTimeMillis() - m.getTime() > BAN_INFO_WAIT) {
+            if (m == null || System.currentTimeMillis() - m.getTime() > BAN_INFO_WAIT) {
                 return false;
             }
             /**
@@ -558,7 +572,7 @@ public class User implements Comparable<User> {
         for (int i = lines.size() - 1; i >= 0; i--) {
             Message m = lines.get(i);
             // Too old, abort (associated message might not be here yet)
-            if (System.currentTimeMillis() - m.getTime() > BAN_INFO_WAIT) {
+            if (m == null || System.currentTimeMillis() - m.getTime() > BAN_INFO_WAIT) {
                 return false;
             }
             if (m instanceof TextMessage) {
@@ -576,6 +590,19 @@ public class User implements Comparable<User> {
         addLine(new AutoModMessage(line, id, reason, type, moderatorName));
     }
     
+    /**
+     * Set the store the messages of this user are saved in, usually shared
+     * with other users of the same channel. Only has an effect if no messages
+     * have been added yet.
+     * 
+     * @param store 
+     */
+    public synchronized void setMessageStore(UserMessageStore store) {
+        if (messageStore == null) {
+            messageStore = store;
+        }
+    }
+    
     /**
      * Adds a Message.
      * 
@@ -583,13 +610,15 @@ public class User implements Comparable<User> {
      */
     private void addLine(Message line) {
         if (lines == null) {
-            lines = new ArrayList<>(1);
+            if (messageStore == null) {
+                // Users not created through the UserManager
+                messageStore = new UserMessageStore(PRIVATE_MESSAGE_STORE_BYTES);
+            }
+            lines = new UserMessageStore.Lines(messageStore, userSettings.maxLines);
         }
         lines.add(line);
-        if (lines.size() > userSettings.maxLines) {
-            lines.remove(0);
-        }
         numberOfLines++;
+        lastActivity = System.currentTimeMillis();
     }
     
     /**
@@ -602,14 +631,31 @@ public class User implements Comparable<User> {
         if (lines == null) {
             return new ArrayList<>();
         }
-        return new ArrayList<>(lines);
+        return lines.getAll();
     }
     
     public synchronized int getNumberOfSimilarChatMessages(String compareMsg, int method, long timeframe, float minSimilarity, int minLen, char[] ignoredChars) {
+        return getNumberOfSimilarChatMessages(compareMsg, method, timeframe, minSimilarity, minLen, new BigramSignature.Cache(0, ignoredChars));
+    }
+    
+    /**
+     * Count the recent messages of this user that are similar to the given
+     * message.
+     * 
+     * @param compareMsg The message to compare (not prepared)
+     * @param method The comparison method (see {@link StringUtil#checkSimilarity(String, String, float, int)})
+     * @param timeframe Only check messages from the last number of seconds
+     * @param minSimilarity The min similarity for a message to count
+     * @param minLen Only check messages with at least this length
+     * @param cache Provides the signatures of the messages, also determines
+     * which characters are ignored
+     * @return The number of similar messages
+     */
+    public synchronized int getNumberOfSimilarChatMessages(String compareMsg, int method, long timeframe, float minSimilarity, int minLen, BigramSignature.Cache cache) {
         if (lines == null) {
             return 0;
         }
-        compareMsg = StringUtil.prepareForSimilarityComparison(compareMsg, ignoredChars);
+        BigramSignature compareSig = cache.get(compareMsg);
         int result = 0;
         long checkUntilTime = System.currentTimeMillis() - timeframe * 1000;
         for (int i=lines.size() - 1; i>=0; i--) {
@@ -620,8 +666,8 @@ public class User implements Comparable<User> {
                     break;
                 }
                 if (msg.text.length() >= minLen) {
-                    String text = StringUtil.prepareForSimilarityComparison(msg.text, ignoredChars);
-                    if (StringUtil.checkSimilarity(compareMsg, text, minSimilarity, method) > 0) {
+                    BigramSignature sig = cache.get(msg.text);
+                    if (compareSig.checkSimilarity(sig, minSimilarity, method) > 0) {
                         result++;
                     }
                 }
@@ -638,6 +684,9 @@ public class User implements Comparable<User> {
         int numMsgs = 0;
         for (int i=lines.size() - 1; i>=0; i--) {
             Message m = lines.get(i);
+            if (m == null) {
+                return result;
+            }
             if (beforeTime) {
                 if (m.time > time) {
                     continue;
@@ -686,7 +735,7 @@ public class User implements Comparable<User> {
         if (lines == null) {
             return null;
         }
-        for (Message msg : lines) {
+        for (Message msg : lines.getAll()) {
             if (msg instanceof TextMessage) {
                 TextMessage textMsg = (TextMessage)msg;
                 if (msgId.equals(textMsg.id)) {
@@ -704,7 +753,7 @@ public class User implements Comparable<User> {
         if (lines == null) {
             return null;
         }
-        for (Message msg : lines) {
+        for (Message msg : lines.getAll()) {
             if (msg instanceof SubMessage) {
                 SubMessage textMsg = (SubMessage)msg;
                 if (msgId.equals(textMsg.id)) {
@@ -734,7 +783,7 @@ public class User implements Comparable<User> {
         if (lines == null) {
             return null;
         }
-        for (Message msg : lines) {
+        for (Message msg : lines.getAll()) {
             if (msg instanceof AutoModMessage) {
                 AutoModMessage autoModMsg = (AutoModMessage) msg;
                 if (msgId.equals(autoModMsg.id)) {
@@ -750,6 +799,16 @@ public class User implements Comparable<User> {
         return msg != null ? msg.message : null;
     }
     
+    /**
+     * Whether any lines of this user are still stored (and thus probably still
+     * shown in chat).
+     * 
+     * @return 
+     */
+    public synchronized boolean hasLines() {
+        return lines != null && !lines.isEmpty();
+    }
+    
     public synchronized int clearLinesIfInactive(long duration) {
         if (lines != null
                 && !lines.isEmpty()
@@ -773,7 +832,7 @@ public class User implements Comparable<User> {
     
     private long getLastLineTime() {
         if (lines != null && !lines.isEmpty()) {
-            return lines.get(lines.size() - 1).time;
+            return lines.getTime(lines.size() - 1);
         }
         return -1;
     }
@@ -1008,6 +1067,9 @@ public class User implements Comparable<User> {
     }
     
     public synchronized boolean setOnline(boolean online) {
+        if (online) {
+            lastActivity = System.currentTimeMillis();
+        }
         if (online != this.online) {
             this.online = online;
             return true;
@@ -1292,6 +1354,64 @@ public class User implements Comparable<User> {
     
     public synchronized void setHighlighted() {
         lastHighlight = System.currentTimeMillis();
+        lastActivity = lastHighlight;
+    }
+    
+    public synchronized long getLastHighlight() {
+        return lastHighlight;
+    }
+    
+    /**
+     * When this user was last active (created, sent a message, joined or was
+     * highlighted).
+     * 
+     * @return The time in milliseconds
+     */
+    public synchronized long getLastActivity() {
+        return lastActivity;
+    }
+    
+    /**
+     * Check if the user is in the addressbook (if one is set).
+     * 
+     * @return 
+     */
+    public boolean isInAddressbook() {
+        return userSettings.addressbook != null
+                && userSettings.addressbook.get(nick) != null;
+    }
+    
+    /**
+     * Roughly estimates the number of bytes used by this object, including
+     * Strings and badges, but not including objects that are shared between
+     * users (such as the message store or colors).
+     * 
+     * @return The estimated number of bytes
+     */
+    public synchronized long estimateMemoryUsage() {
+        long result = 200;
+        result += estimateStringSize(nick);
+        if (displayNick != nick) {
+            result += estimateStringSize(displayNick);
+        }
+        result += estimateStringSize(customNick);
+        result += estimateStringSize(fullNick);
+        result += estimateStringSize(id);
+        if (twitchBadges != null) {
+            // Array and Strings for id and version
+            result += 16 + twitchBadges.size() * 2 * (8 + 48);
+        }
+        if (lines != null) {
+            result += lines.getAllocatedBytes();
+        }
+        return result;
+    }
+    
+    private static long estimateStringSize(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return 40 + value.length() * 2;
     }
     
     public static class Message {
@@ -9,6 +9,9 @@ import chatty.util.StringUtil;
 import chatty.util.settings.Settings;
 import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 /**
@@ -20,6 +23,21 @@ import java.util.logging.Logger;
  * Although it could be useful to add some caching again (e.g. for showing
  * user type in userlist before the user said something).
  * 
+ * <p>
+ * The users are stored in concurrent maps per channel, so that getting a User
+ * (which happens for every message) doesn't have to wait for other threads and
+ * operations on all users (e.g. clearing old messages) don't block message
+ * handling.
+ * </p>
+ * 
+ * <p>
+ * Users that haven't been active for a while and aren't in the channel anymore
+ * are removed regularly, unless they are still referenced somewhere (e.g. in
+ * an open User Dialog, the Addressbook or a recent highlight). If a channel
+ * still has too many users after that, the least recently active ones that
+ * can be removed are removed.
+ * </p>
+ * 
  * @author tduva
  */
 public class UserManager {
@@ -28,21 +46,35 @@ public class UserManager {
     
     private static final int CLEAR_MESSAGES_TIMER = 1*60*60*1000;
     
-    private final Set<UserManagerListener> listeners = new HashSet<>();
+    /**
+     * Default for the max size of the message store of each channel in KB, if
+     * no setting is available.
+     */
+    private static final long DEFAULT_MESSAGE_STORE_KB = 16*1024;
+    
+    /**
+     * Defaults for removing users, if no setting is available.
+     */
+    private static final long DEFAULT_REMOVE_IDLE_HOURS = 24;
+    private static final long DEFAULT_MAX_USERS_PER_CHANNEL = 50000;
+    
+    private final Set<UserManagerListener> listeners = new CopyOnWriteArraySet<>();
+    private final Set<Predicate<User>> keepUserChecks = new CopyOnWriteArraySet<>();
     
     private volatile String localUsername;
     public final User specialUser = new User("[specialUser]", Room.createRegular("[nochannel]"));
     
-    private final HashMap<String, HashMap<String, User>> users = new HashMap<>();
-    private final HashMap<String, String> cachedColors = new HashMap<>();
-    private boolean capitalizedNames = false;
+    private final Map<String, Map<String, User>> users = new ConcurrentHashMap<>();
+    private final Map<String, String> cachedColors = new ConcurrentHashMap<>();
+    private final Map<String, UserMessageStore> messageStores = new ConcurrentHashMap<>();
+    private volatile boolean capitalizedNames = false;
     
     private final User errorUser = new User("[Error]", Room.createRegular("#[error]"));
 
-    private CustomNames customNamesManager;
-    private BotNameManager botNameManager;
-    private Settings settings;
-    private UserSettings userSettings;
+    private volatile CustomNames customNamesManager;
+    private volatile BotNameManager botNameManager;
+    private volatile Settings settings;
+    private volatile UserSettings userSettings;
     
     public UserManager() {
         Timer clearMessageTimer = new Timer("Clear User Messages", true);
@@ -51,6 +83,7 @@ public class UserManager {
             @Override
             public void run() {
                 clearLinesOfInactiveUsers();
+                removeIdleUsers();
             }
         }, CLEAR_MESSAGES_TIMER, CLEAR_MESSAGES_TIMER);
     }
@@ -91,6 +124,19 @@ public class UserManager {
         }
     }
     
+    /**
+     * Add a check that can prevent users from being removed, for example
+     * because they are currently shown somewhere. The check may be called
+     * from any thread.
+     * 
+     * @param check Should return true if the given user should be kept
+     */
+    public void addKeepUserCheck(Predicate<User> check) {
+        if (check != null) {
+            keepUserChecks.add(check);
+        }
+    }
+    
     private void userUpdated(User user) {
         for (UserManagerListener listener : listeners) {
             listener.userUpdated(user);
@@ -139,14 +185,22 @@ public class UserManager {
      * @param channel
      * @return 
      */
-    public synchronized HashMap<String, User> getUsersByChannel(String channel) {
-        HashMap<String, User> result = users.get(channel);
+    public Map<String, User> getUsersByChannel(String channel) {
+        String key = key(channel);
+        Map<String, User> result = users.get(key);
         if (result == null) {
-            result = new HashMap<>();
-            users.put(channel, result);
+            result = users.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
         }
         return result;
     }
+    
+    /**
+     * The concurrent maps don't allow null keys, so use an empty String
+     * instead, just in case.
+     */
+    private static String key(String channel) {
+        return channel != null ? channel : "";
+    }
 
     /**
      * Searches all channels for the given username and returns a List of all
@@ -156,12 +210,15 @@ public class UserManager {
      * @param name The username to search for
      * @return The List of User-objects.
      */
-    public synchronized List<User> getUsersByName(String name) {
+    public List<User> getUsersByName(String name) {
         name = StringUtil.toLowerCase(name);
         List<User> result = new ArrayList<>();
-        Iterator<HashMap<String, User>> it = users.values().iterator();
+        if (name == null) {
+            return result;
+        }
+        Iterator<Map<String, User>> it = users.values().iterator();
         while (it.hasNext()) {
-            HashMap<String, User> channelUsers = it.next();
+            Map<String, User> channelUsers = it.next();
             User user = channelUsers.get(name);
             if (user != null) {
                 result.add(user);
@@ -178,8 +235,9 @@ public class UserManager {
      * @param name
      * @return The {@code User} object or null if none exists
      */
-    public synchronized User getUserIfExists(String channel, String name) {
-        return getUsersByChannel(channel).get(name);
+    public User getUserIfExists(String channel, String name) {
+        Map<String, User> channelUsers = users.get(key(channel));
+        return channelUsers != null && name != null ? channelUsers.get(name) : null;
     }
     
     /**
@@ -191,58 +249,75 @@ public class UserManager {
      * @return The matching User object
      * @see User
      */
-    public synchronized User getUser(Room room, String name) {
+    public User getUser(Room room, String name) {
         // Not sure if this makes sense
         if (name == null || name.isEmpty()) {
             return errorUser;
         }
         name = StringUtil.toLowerCase(name);
-        User user = getUserIfExists(room.getChannel(), name);
+        Map<String, User> channelUsers = getUsersByChannel(room.getChannel());
+        User user = channelUsers.get(name);
         if (user == null) {
-            // Capitalize name if enabled (might still be overwritten by setting
-            // displayNick from tags)
-            String capitalizedName = name;
-            if (capitalizedNames) {
-                capitalizedName = name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
-            }
+            user = channelUsers.computeIfAbsent(name, k -> createUser(room, k));
             /**
-             * Use this constructor to provide the name already used for the map
-             * key, so that there aren't duplicate Strings (before it would
-             * lowercase the capitalized name in the User constructor).
+             * The color may have been cached after the User was created, but
+             * before it was added (so setColorForUsername() wouldn't have
+             * found it).
              */
-            user = new User(name, capitalizedName, null, room);
-            user.setUserSettings(userSettings);
-            if (customNamesManager != null) {
-                user.setCustomNick(customNamesManager.getCustomName(name));
-            }
-            if (botNameManager != null && botNameManager.isBotName(room.getOwnerChannel(), name)) {
-                user.setBot(true);
+            String cachedColor = cachedColors.get(name);
+            if (cachedColor != null && user.hasDefaultColor()) {
+                user.setColor(cachedColor);
             }
-            // Initialize some values if present for this name
-            if (cachedColors.containsKey(name)) {
-                user.setColor(cachedColors.get(name));
+        }
+        return user;
+    }
+    
+    private User createUser(Room room, String name) {
+        // Capitalize name if enabled (might still be overwritten by setting
+        // displayNick from tags)
+        String capitalizedName = name;
+        if (capitalizedNames) {
+            capitalizedName = name.substring(0, 1).toUpperCase(Locale.ROOT) + name.substring(1);
+        }
+        /**
+         * Use this constructor to provide the name already used for the map
+         * key, so that there aren't duplicate Strings (before it would
+         * lowercase the capitalized name in the User constructor).
+         */
+        User user = new User(name, capitalizedName, null, room);
+        user.setUserSettings(userSettings);
+        user.setMessageStore(getMessageStore(room.getChannel()));
+        CustomNames customNames = customNamesManager;
+        if (customNames != null) {
+            user.setCustomNick(customNames.getCustomName(name));
+        }
+        BotNameManager botNames = botNameManager;
+        if (botNames != null && botNames.isBotName(room.getOwnerChannel(), name)) {
+            user.setBot(true);
+        }
+        // Initialize some values if present for this name
+        String cachedColor = cachedColors.get(name);
+        if (cachedColor != null) {
+            user.setColor(cachedColor);
+        }
+        if (name.equals(localUsername)) {
+            /**
+             * Set initial data for local user that is globally valid. This
+             * data would have been received from the GLOBALUSERSTATE
+             * command which may not be send after every join or sent
+             * message.
+             */
+            user.setAdmin(specialUser.isAdmin());
+            user.setStaff(specialUser.isStaff());
+            user.setTurbo(specialUser.hasTurbo());
+            user.setId(specialUser.getId());
+            user.setLocalUser(true);
+            if (!specialUser.hasDefaultColor()) {
+                user.setColor(specialUser.getPlainColor());
             }
-            if (name.equals(localUsername)) {
-                /**
-                 * Set initial data for local user that is globally valid. This
-                 * data would have been received from the GLOBALUSERSTATE
-                 * command which may not be send after every join or sent
-                 * message.
-                 */
-                user.setAdmin(specialUser.isAdmin());
-                user.setStaff(specialUser.isStaff());
-                user.setTurbo(specialUser.hasTurbo());
-                user.setId(specialUser.getId());
-                user.setLocalUser(true);
-                if (!specialUser.hasDefaultColor()) {
-                    user.setColor(specialUser.getPlainColor());
-                }
-                if (specialUser.hasDisplayNickSet()) {
-                    user.setDisplayNick(specialUser.getDisplayNick());
-                }
+            if (specialUser.hasDisplayNickSet()) {
+                user.setDisplayNick(specialUser.getDisplayNick());
             }
-            // Put User into the map for the channel
-            getUsersByChannel(room.getChannel()).put(name, user);
         }
         return user;
     }
@@ -254,16 +329,19 @@ public class UserManager {
      * @param name The username to be searched for
      * @return A Map with channel->User association
      */
-    public synchronized HashMap<String,User> getChannelsAndUsersByUserName(String name) {
+    public HashMap<String,User> getChannelsAndUsersByUserName(String name) {
         String lowercaseName = StringUtil.toLowerCase(name);
         HashMap<String,User> result = new HashMap<>();
+        if (lowercaseName == null) {
+            return result;
+        }
         
-        Iterator<Entry<String, HashMap<String, User>>> it = users.entrySet().iterator();
+        Iterator<Entry<String, Map<String, User>>> it = users.entrySet().iterator();
         while (it.hasNext()) {
-            Entry<String, HashMap<String, User>> channel = it.next();
+            Entry<String, Map<String, User>> channel = it.next();
             
             String channelName = channel.getKey();
-            HashMap<String,User> channelUsers = channel.getValue();
+            Map<String,User> channelUsers = channel.getValue();
             
             User user = channelUsers.get(lowercaseName);
             if (user != null) {
@@ -273,11 +351,46 @@ public class UserManager {
         return result;
     }
     
+    /**
+     * Get the store for the messages of all users in the given channel,
+     * creating it if necessary.
+     * 
+     * @param channel
+     * @return 
+     */
+    private UserMessageStore getMessageStore(String channel) {
+        return messageStores.computeIfAbsent(key(channel), k -> {
+            long maxKb = DEFAULT_MESSAGE_STORE_KB;
+            Settings currentSettings = settings;
+            if (currentSettings != null) {
+                maxKb = currentSettings.getLong("userMessagesChannelMemory");
+            }
+            return new UserMessageStore(maxKb*1024);
+        });
+    }
+    
+    /**
+     * Information about the message stores of all channels.
+     * 
+     * @return 
+     */
+    public String getMessageStoreStats() {
+        StringBuilder b = new StringBuilder();
+        for (Map.Entry<String, UserMessageStore> entry : messageStores.entrySet()) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append(entry.getKey()).append(": ").append(entry.getValue().getStats());
+        }
+        return b.toString();
+    }
+    
     /**
      * Remove all users.
      */
-    public synchronized void clear() {
+    public void clear() {
         users.clear();
+        messageStores.clear();
     }
     
     /**
@@ -285,11 +398,15 @@ public class UserManager {
      * 
      * @param channel 
      */
-    public synchronized void clear(String channel) {
-        getUsersByChannel(channel).clear();
+    public void clear(String channel) {
+        Map<String, User> channelUsers = users.get(key(channel));
+        if (channelUsers != null) {
+            channelUsers.clear();
+        }
+        messageStores.remove(key(channel));
     }
     
-    public synchronized void clearLinesOfInactiveUsers() {
+    public void clearLinesOfInactiveUsers() {
         if (settings == null) {
             return;
         }
@@ -305,6 +422,143 @@ public class UserManager {
         }
     }
     
+    /**
+     * Remove users based on the "removeIdleUsers" and "maxUsersPerChannel"
+     * settings.
+     * 
+     * @return The number of removed users
+     */
+    public int removeIdleUsers() {
+        long idleHours = DEFAULT_REMOVE_IDLE_HOURS;
+        long maxPerChannel = DEFAULT_MAX_USERS_PER_CHANNEL;
+        Settings currentSettings = settings;
+        if (currentSettings != null) {
+            idleHours = currentSettings.getLong("removeIdleUsers");
+            maxPerChannel = currentSettings.getLong("maxUsersPerChannel");
+        }
+        int removed = removeIdleUsers(idleHours >= 0 ? idleHours*60*60*1000 : -1, maxPerChannel);
+        LOGGER.info("Removed "+removed+" idle users");
+        return removed;
+    }
+    
+    /**
+     * Remove users that have been idle for the given time, then remove the
+     * least recently active users of channels that have more than the given
+     * number of users. Only users that can be removed are affected (not in the
+     * channel, not the local user, no lines still stored, never highlighted
+     * and not otherwise referenced), so channels can still have more users
+     * than the limit.
+     * 
+     * @param maxIdle Time in milliseconds, or -1 to not remove idle users
+     * @param maxPerChannel Max number of users per channel, or 0 or lower for
+     * no limit
+     * @return The number of removed users
+     */
+    protected int removeIdleUsers(long maxIdle, long maxPerChannel) {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Map<String, User> channelUsers : users.values()) {
+            List<User> removable = new ArrayList<>();
+            for (User user : channelUsers.values()) {
+                if (!canRemove(user)) {
+                    continue;
+                }
+                if (maxIdle >= 0 && now - user.getLastActivity() > maxIdle) {
+                    if (remove(channelUsers, user)) {
+                        removed++;
+                    }
+                }
+                else {
+                    removable.add(user);
+                }
+            }
+            if (maxPerChannel > 0 && channelUsers.size() > maxPerChannel) {
+                removable.sort((a, b) -> Long.compare(a.getLastActivity(), b.getLastActivity()));
+                for (User user : removable) {
+                    if (channelUsers.size() <= maxPerChannel) {
+                        break;
+                    }
+                    if (remove(channelUsers, user)) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * Remove the user, unless it has been replaced or became active in the
+     * meantime.
+     */
+    private static boolean remove(Map<String, User> channelUsers, User user) {
+        long lastActivity = user.getLastActivity();
+        return channelUsers.computeIfPresent(user.getName(), (k, v) -> {
+            if (v == user && v.getLastActivity() == lastActivity && !v.isOnline()) {
+                return null;
+            }
+            return v;
+        }) == null;
+    }
+    
+    private boolean canRemove(User user) {
+        if (user.isOnline() || user.isLocalUser() || user.isInAddressbook()) {
+            return false;
+        }
+        /**
+         * Lines in chat and in the Highlighted Messages are associated with
+         * the User instance (e.g. for striking through messages on a ban), so
+         * a re-created User wouldn't affect them anymore. Lines of a user are
+         * only cleared after a while ("clearUserMessages"), while highlights
+         * may be kept indefinitely.
+         */
+        if (user.hasLines() || user.getLastHighlight() != -1) {
+            return false;
+        }
+        for (Predicate<User> check : keepUserChecks) {
+            if (check.test(user)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Information about the number of users and the estimated memory usage of
+     * each channel. The memory usage includes the message store of the
+     * channel.
+     * 
+     * @return 
+     */
+    public String getMemoryReport() {
+        StringBuilder b = new StringBuilder();
+        long totalBytes = 0;
+        int totalUsers = 0;
+        for (Map.Entry<String, Map<String, User>> entry : new TreeMap<>(users).entrySet()) {
+            int count = 0;
+            int online = 0;
+            long bytes = 0;
+            for (User user : entry.getValue().values()) {
+                count++;
+                if (user.isOnline()) {
+                    online++;
+                }
+                bytes += user.estimateMemoryUsage();
+            }
+            UserMessageStore store = messageStores.get(entry.getKey());
+            if (store != null) {
+                bytes += store.getAllocatedBytes();
+            }
+            b.append(String.format(Locale.ROOT, "%s: %d users (%d online) %,dKB, ",
+                    entry.getKey(), count, online, bytes / 1024));
+            totalBytes += bytes;
+            totalUsers += count;
+        }
+        b.append(String.format(Locale.ROOT, "Total: %d users %,dKB",
+                totalUsers, totalBytes / 1024));
+        return b.toString();
+    }
+    
     /**
      * Clear all lines of a user, or only the number of messages.
      * 
@@ -314,7 +568,7 @@ public class UserManager {
      * @return The number of users affected (whether something actually changed
      * or not)
      */
-    public synchronized int clearLines(String channel, boolean messageNumberOnly) {
+    public int clearLines(String channel, boolean messageNumberOnly) {
         if (channel == null) {
             int result = 0;
             for (String chan : users.keySet()) {
@@ -345,8 +599,8 @@ public class UserManager {
     /**
      * Set all users offline.
      */
-    public synchronized void setAllOffline() {
-        Iterator<HashMap<String,User>> it = users.values().iterator();
+    public void setAllOffline() {
+        Iterator<Map<String,User>> it = users.values().iterator();
         while (it.hasNext()) {
             setAllOffline(it.next());
         }
@@ -357,9 +611,10 @@ public class UserManager {
      * 
      * @param channel 
      */
-    public synchronized void setAllOffline(String channel) {
+    public void setAllOffline(String channel) {
         if (channel == null) {
             setAllOffline();
+            return;
         }
         Map<String, User> usersInChannel = users.get(channel);
         if (usersInChannel != null) {
@@ -384,7 +639,7 @@ public class UserManager {
      * @param userName String The name of the user
      * @param color String The color as a string representation
      */
-    protected synchronized void setColorForUsername(String userName, String color) {
+    protected void setColorForUsername(String userName, String color) {
         userName = StringUtil.toLowerCase(userName);
         cachedColors.put(userName,color);
         
@@ -402,7 +657,7 @@ public class UserManager {
      * @param modsList
      * @return 
      */
-    protected synchronized List<User> modsListReceived(Room room, List<String> modsList) {
+    protected List<User> modsListReceived(Room room, List<String> modsList) {
         // Demod everyone on the channel
         Map<String,User> usersToDemod = getUsersByChannel(room.getChannel());
         for (User user : usersToDemod.values()) {
@@ -0,0 +1,523 @@
+
+package chatty;
+
+import chatty.User.Message;
+import chatty.User.TextMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Stores the message history of all users of one channel in a compact way.
+ * Each {@link User} only keeps the sequence numbers of it's own messages (see
+ * {@link Lines}).
+ *
+ * <p>
+ * Regular chat messages, which are by far the most common, are not stored as
+ * objects. Their timestamp, flags and message id are stored in primitive
+ * arrays, while the text is stored as UTF-8 in a shared byte array. Other
+ * message types are rare and are stored as they are. The {@link Message}
+ * objects are created again when requested (e.g. for the User Dialog).
+ * </p>
+ *
+ * <p>
+ * The store grows as needed up to the max number of bytes given when it was
+ * created, after which the oldest messages of the channel are removed. Users
+ * whose messages have been removed simply don't have them anymore, the same as
+ * if they had been removed because of inactivity.
+ * </p>
+ *
+ * @author tduva
+ */
+public class UserMessageStore {
+
+    /**
+     * Approximate number of bytes used for each entry in the arrays.
+     */
+    private static final int ENTRY_BYTES = 45;
+
+    private static final int INITIAL_ENTRIES = 16;
+    private static final int INITIAL_TEXT_BYTES = 1024;
+
+    private static final int KIND_MASK = 0x0F;
+    private static final int KIND_TEXT = 1;
+    private static final int KIND_OBJECT = 2;
+    private static final int FLAG_ACTION = 0x10;
+    private static final int FLAG_NO_TEXT = 0x20;
+    private static final int FLAG_UUID = 0x40;
+
+    private final int maxEntries;
+    private final int maxTextBytes;
+
+    //--------------------------
+    // Entries (at index seq % capacity)
+    //--------------------------
+    private long[] times;
+    private byte[] flags;
+    private long[] textPos;
+    private int[] textLength;
+    private long[] idHigh;
+    private long[] idLow;
+    /**
+     * The Message for object entries, or the id for text entries if it isn't
+     * a UUID.
+     */
+    private Object[] objects;
+
+    /**
+     * Valid entries are from firstSeq (inclusive) to nextSeq (exclusive).
+     */
+    private long firstSeq;
+    private long nextSeq;
+
+    //--------------------------
+    // Text
+    //--------------------------
+    private byte[] text;
+
+    /**
+     * The position after the last written text. Positions keep increasing,
+     * the index in the array is position % length.
+     */
+    private long textEnd;
+
+    private long removedCount;
+
+    /**
+     * Create a new store.
+     *
+     * @param maxBytes The approximate max number of bytes used, which is
+     * split between the entries and the text
+     */
+    public UserMessageStore(long maxBytes) {
+        maxBytes = Math.max(maxBytes, 16*1024);
+        this.maxTextBytes = (int) Math.min(maxBytes / 4 * 3, Integer.MAX_VALUE / 2);
+        this.maxEntries = (int) Math.min(maxBytes / 4 / ENTRY_BYTES, Integer.MAX_VALUE / 2);
+        allocateEntries(INITIAL_ENTRIES);
+        text = new byte[INITIAL_TEXT_BYTES];
+    }
+
+    /**
+     * Add a message.
+     *
+     * @param message The message
+     * @return The sequence number to retrieve the message with
+     */
+    public synchronized long add(Message message) {
+        byte[] bytes = null;
+        boolean compact = isCompactMessage(message);
+        if (compact) {
+            String msgText = ((TextMessage) message).text;
+            if (msgText != null) {
+                bytes = msgText.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > maxTextBytes / 4) {
+                    compact = false;
+                    bytes = null;
+                }
+            }
+        }
+        if (bytes != null) {
+            makeTextSpace(bytes.length);
+        }
+        makeEntrySpace();
+        long seq = nextSeq++;
+        int index = index(seq);
+        times[index] = message.getTime();
+        textPos[index] = textEnd;
+        textLength[index] = 0;
+        idHigh[index] = 0;
+        idLow[index] = 0;
+        objects[index] = null;
+        if (compact) {
+            TextMessage msg = (TextMessage) message;
+            int f = KIND_TEXT;
+            if (msg.action) {
+                f |= FLAG_ACTION;
+            }
+            if (bytes == null) {
+                f |= FLAG_NO_TEXT;
+            }
+            else {
+                writeText(bytes);
+                textLength[index] = bytes.length;
+            }
+            UUID uuid = parseUUID(msg.id);
+            if (uuid != null) {
+                f |= FLAG_UUID;
+                idHigh[index] = uuid.getMostSignificantBits();
+                idLow[index] = uuid.getLeastSignificantBits();
+            }
+            else {
+                objects[index] = msg.id;
+            }
+            flags[index] = (byte) f;
+        }
+        else {
+            flags[index] = KIND_OBJECT;
+            objects[index] = message;
+        }
+        return seq;
+    }
+
+    /**
+     * Get the message with the given sequence number.
+     *
+     * @param seq
+     * @return The message, or null if it has already been removed
+     */
+    public synchronized Message get(long seq) {
+        if (!isValid(seq)) {
+            return null;
+        }
+        int index = index(seq);
+        int f = flags[index] & 0xFF;
+        if ((f & KIND_MASK) == KIND_OBJECT) {
+            return (Message) objects[index];
+        }
+        String msgText = null;
+        if ((f & FLAG_NO_TEXT) == 0) {
+            msgText = readText(textPos[index], textLength[index]);
+        }
+        String id;
+        if ((f & FLAG_UUID) != 0) {
+            id = new UUID(idHigh[index], idLow[index]).toString();
+        }
+        else {
+            id = (String) objects[index];
+        }
+        return new TextMessage(times[index], msgText, (f & FLAG_ACTION) != 0, id, null);
+    }
+
+    /**
+     * Get the time of the message with the given sequence number.
+     *
+     * @param seq
+     * @return The time, or -1 if it has already been removed
+     */
+    public synchronized long getTime(long seq) {
+        if (!isValid(seq)) {
+            return -1;
+        }
+        return times[index(seq)];
+    }
+
+    /**
+     * Replace the message with the given sequence number.
+     *
+     * @param seq
+     * @param message
+     * @return true if the message was replaced, false if it has already been
+     * removed
+     */
+    public synchronized boolean set(long seq, Message message) {
+        if (!isValid(seq)) {
+            return false;
+        }
+        int index = index(seq);
+        flags[index] = KIND_OBJECT;
+        objects[index] = message;
+        // Text stays in place until it's overwritten, for simplicity
+        return true;
+    }
+
+    public synchronized boolean isValid(long seq) {
+        return seq >= firstSeq && seq < nextSeq;
+    }
+
+    /**
+     * The number of messages currently stored.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return (int) (nextSeq - firstSeq);
+    }
+
+    /**
+     * The approximate number of bytes currently allocated.
+     *
+     * @return
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) times.length * ENTRY_BYTES + text.length;
+    }
+
+    public synchronized String getStats() {
+        return String.format(Locale.ROOT, "%d messages (%d removed), %,dKB/%,dKB",
+                size(),
+                removedCount,
+                getAllocatedBytes() / 1024,
+                ((long) maxEntries * ENTRY_BYTES + maxTextBytes) / 1024);
+    }
+
+    //==========================
+    // Internal
+    //==========================
+
+    /**
+     * Only regular text messages are stored in the compact form, messages with
+     * additional data (e.g. shared chat) are stored as objects.
+     */
+    private static boolean isCompactMessage(Message message) {
+        return message.getClass() == TextMessage.class
+                && ((TextMessage) message).lowTrust == null;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % times.length);
+    }
+
+    private void allocateEntries(int capacity) {
+        times = new long[capacity];
+        flags = new byte[capacity];
+        textPos = new long[capacity];
+        textLength = new int[capacity];
+        idHigh = new long[capacity];
+        idLow = new long[capacity];
+        objects = new Object[capacity];
+    }
+
+    /**
+     * Grow the arrays or remove the oldest entry, so one entry can be added.
+     */
+    private void makeEntrySpace() {
+        if (nextSeq - firstSeq < times.length) {
+            return;
+        }
+        if (times.length < maxEntries) {
+            long[] oldTimes = times;
+            byte[] oldFlags = flags;
+            long[] oldTextPos = textPos;
+            int[] oldTextLength = textLength;
+            long[] oldIdHigh = idHigh;
+            long[] oldIdLow = idLow;
+            Object[] oldObjects = objects;
+            int oldCapacity = oldTimes.length;
+            allocateEntries((int) Math.min((long) oldCapacity * 2, maxEntries));
+            for (long seq = firstSeq; seq < nextSeq; seq++) {
+                int from = (int) (seq % oldCapacity);
+                int to = index(seq);
+                times[to] = oldTimes[from];
+                flags[to] = oldFlags[from];
+                textPos[to] = oldTextPos[from];
+                textLength[to] = oldTextLength[from];
+                idHigh[to] = oldIdHigh[from];
+                idLow[to] = oldIdLow[from];
+                objects[to] = oldObjects[from];
+            }
+        }
+        else {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        objects[index(firstSeq)] = null;
+        firstSeq++;
+        removedCount++;
+    }
+
+    /**
+     * The position of the oldest text that is still in use.
+     */
+    private long getTextStart() {
+        if (firstSeq < nextSeq) {
+            return textPos[index(firstSeq)];
+        }
+        return textEnd;
+    }
+
+    /**
+     * Grow the text array or remove the oldest entries, so that the given
+     * number of bytes can be written.
+     */
+    private void makeTextSpace(int length) {
+        while (textEnd - getTextStart() + length > text.length) {
+            if (text.length < maxTextBytes) {
+                long start = getTextStart();
+                long used = textEnd - start;
+                int newSize = (int) Math.min(Math.max((long) text.length * 2, used + length), maxTextBytes);
+                byte[] newText = new byte[newSize];
+                for (long pos = start; pos < textEnd; pos++) {
+                    newText[(int) (pos % newSize)] = text[(int) (pos % text.length)];
+                }
+                text = newText;
+            }
+            else {
+                removeOldest();
+            }
+        }
+    }
+
+    private void writeText(byte[] bytes) {
+        int offset = (int) (textEnd % text.length);
+        int first = Math.min(bytes.length, text.length - offset);
+        System.arraycopy(bytes, 0, text, offset, first);
+        System.arraycopy(bytes, first, text, 0, bytes.length - first);
+        textEnd += bytes.length;
+    }
+
+    private String readText(long pos, int length) {
+        int offset = (int) (pos % text.length);
+        if (offset + length <= text.length) {
+            return new String(text, offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        int first = text.length - offset;
+        System.arraycopy(text, offset, bytes, 0, first);
+        System.arraycopy(text, 0, bytes, first, length - first);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse the id as a UUID, but only if it would result in the same String
+     * again.
+     */
+    private static UUID parseUUID(String id) {
+        if (id == null || id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            if (uuid.toString().equals(id)) {
+                return uuid;
+            }
+        }
+        catch (IllegalArgumentException ex) {
+            // Not a UUID
+        }
+        return null;
+    }
+
+    //==========================
+    // Lines
+    //==========================
+
+    /**
+     * The messages of a single user, referring to the messages in a store by
+     * sequence number. Not thread-safe, the user has to synchronize access.
+     */
+    public static class Lines {
+
+        private final UserMessageStore store;
+        private final int maxLines;
+
+        private long[] refs = new long[1];
+        private int start;
+        private int count;
+
+        public Lines(UserMessageStore store, int maxLines) {
+            this.store = store;
+            this.maxLines = Math.max(maxLines, 1);
+        }
+
+        public void add(Message message) {
+            long seq = store.add(message);
+            if (count == refs.length) {
+                if (refs.length < maxLines) {
+                    long[] newRefs = new long[Math.min(refs.length * 2, maxLines)];
+                    for (int i = 0; i < count; i++) {
+                        newRefs[i] = refs[(start + i) % refs.length];
+                    }
+                    refs = newRefs;
+                    start = 0;
+                }
+                else {
+                    start = (start + 1) % refs.length;
+                    count--;
+                }
+            }
+            refs[(start + count) % refs.length] = seq;
+            count++;
+        }
+
+        /**
+         * The number of lines that are still available.
+         *
+         * @return
+         */
+        public int size() {
+            removeRemoved();
+            return count;
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /**
+         * Get the message at the given index, starting at the oldest.
+         *
+         * @param index
+         * @return The message, or null if it has been removed from the store
+         * since the last call to {@link #size()}
+         */
+        public Message get(int index) {
+            return store.get(ref(index));
+        }
+
+        /**
+         * Get the time of the message at the given index.
+         *
+         * @param index
+         * @return The time, or -1 if the message has been removed from the
+         * store since the last call to {@link #size()}
+         */
+        public long getTime(int index) {
+            return store.getTime(ref(index));
+        }
+
+        public void set(int index, Message message) {
+            store.set(ref(index), message);
+        }
+
+        /**
+         * Get all messages that are still available.
+         *
+         * @return A new list
+         */
+        public List<Message> getAll() {
+            int size = size();
+            List<Message> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Message m = get(i);
+                if (m != null) {
+                    result.add(m);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Estimated number of bytes used by this object (not including the
+         * messages, which are in the store).
+         *
+         * @return
+         */
+        public long getAllocatedBytes() {
+            return 48 + 16 + refs.length * 8L;
+        }
+
+        private long ref(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException(index+"/"+count);
+            }
+            return refs[(start + index) % refs.length];
+        }
+
+        /**
+         * Messages are removed from the store oldest first, so only the
+         * oldest lines have to be checked.
+         */
+        private void removeRemoved() {
+            while (count > 0 && !store.isValid(refs[start])) {
+                start = (start + 1) % refs.length;
+                count--;
+            }
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@ import chatty.Addressbook;
 import chatty.Helper;
 import chatty.Logging;
 import chatty.User;
+import chatty.util.CopypastaDetector;
 import chatty.util.DateTime;
 import chatty.util.Debugging;
 import chatty.util.MiscUtil;
@@ -1126,6 +1127,20 @@ public class Highlighter {
                                 }
                             });
                         }
+                        else if (part.startsWith("copypasta")) {
+                            String[] split = part.split("\\|");
+                            int requiredUsers;
+                            if (split.length == 2 && split[1].matches("[0-9]+")) {
+                                requiredUsers = Integer.parseInt(split[1]);
+                            }
+                            else {
+                                // Tag won't be set if general setting isn't satisified
+                                requiredUsers = 1;
+                            }
+                            addTagsItem("Copypasta by several users", String.valueOf(requiredUsers), t -> {
+                                return CopypastaDetector.getCount(t) >= requiredUsers;
+                            });
+                        }
                         else if (part.startsWith("live") || part.startsWith("!live")) {
                             parseLive(part);
                         }
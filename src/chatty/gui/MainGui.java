@@ -48,6 +48,7 @@ import chatty.gui.components.AutoReplyLogStore;
 import chatty.gui.components.AutoReplyStatusIndicator;
 import chatty.gui.components.AutoModDialog;
 import chatty.gui.components.AutoReplyLogDialog;
+import chatty.gui.components.LogSearchDialog;
 import chatty.gui.components.EmotesDialog;
 import chatty.gui.components.ErrorMessage;
 import chatty.gui.components.eventlog.EventLog;
@@ -102,6 +103,7 @@ import chatty.util.irc.MsgTags;
 import chatty.util.settings.FileManager;
 import chatty.util.settings.Setting;
 import chatty.util.settings.SettingChangeListener;
+import chatty.util.settings.SettingHandle;
 import chatty.util.settings.Settings;
 import chatty.util.settings.SettingsListener;
 import java.awt.*;
@@ -180,6 +182,7 @@ public class MainGui extends JFrame implements Runnable {
     private ModerationLog moderationLog;
     private AutoModDialog autoModDialog;
     private AutoReplyLogDialog autoReplyLogDialog;
+    private LogSearchDialog logSearchDialog;
     private EventLog eventLog;
     
     // Helpers
@@ -201,6 +204,11 @@ public class MainGui extends JFrame implements Runnable {
     public final HotkeyManager hotkeyManager = new HotkeyManager(this);
     public final LocalEmotesSetting localEmotes;
     public RoutingManager routingManager;
+    
+    // Settings read for every message
+    private final SettingHandle<Long> emojiZWJSetting;
+    private final SettingHandle<String> cheersTypeSetting;
+    private final SettingHandle<Long> whisperDisplayModeSetting;
 
     // Listeners that need to be returned by methods
     private ActionListener actionListener;
@@ -211,6 +219,9 @@ public class MainGui extends JFrame implements Runnable {
     
     public MainGui(TwitchClient client) {
         this.client = client;
+        emojiZWJSetting = client.settings.getLongHandle("emojiZWJ");
+        cheersTypeSetting = client.settings.getStringHandle("cheersType");
+        whisperDisplayModeSetting = client.settings.getLongHandle("whisperDisplayMode");
         msgColorManager = new MsgColorManager(client.settings);
         localEmotes = new LocalEmotesSetting(client.settings, this);
         repeatMsg = new RepeatMsgHelper(client.settings);
@@ -625,6 +636,15 @@ EventLog.setMain(eventLog);
             }
         });
         
+        addMenuAction("dialog.searchLogs", "Dialog: Search Logs",
+                KeyEvent.VK_UNDEFINED, new AbstractAction() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                openLogSearchDialog();
+            }
+        });
+        
         addMenuAction("dialog.channelInfo", "Dialog: Channel Info Dialog (toggle)",
                 KeyEvent.VK_C, new AbstractAction() {
 
@@ -1678,6 +1698,17 @@ EventLog.setMain(eventLog);
         userInfoDialog.update(user, client.getUsername());
     }
     
+    /**
+     * Check if the given user is shown in an open User Dialog. Can be called
+     * from any thread.
+     * 
+     * @param user
+     * @return 
+     */
+    public boolean isUserShownInDialog(User user) {
+        return userInfoDialog != null && userInfoDialog.isShowingUser(user);
+    }
+    
     private void updateLiveStreamsDialog() {
         liveStreamsDialog.setSorting(
                 client.settings.getString("liveStreamsSorting"),
@@ -2971,6 +3002,9 @@ EventLog.setMain(eventLog);
         client.commands.addEdt("search", p -> {
             openSearchDialog();
         });
+        client.commands.addEdt("searchLogs", p -> {
+            openLogSearchDialog();
+        });
         client.commands.addEdt("insert", p -> {
             insert(p.getRoom(), p.getArgs(), false);
         });
@@ -3411,6 +3445,14 @@ EventLog.setMain(eventLog);
         }
     }
     
+    private void openLogSearchDialog() {
+        if (logSearchDialog == null) {
+            logSearchDialog = new LogSearchDialog(this);
+        }
+        logSearchDialog.showDialog(client.chatLog != null ? client.chatLog.getPath() : null,
+                channels.getLastActiveChannel().getRoom().getFilename());
+    }
+    
     private void openAutoModDialog() {
         windowStateManager.setWindowPosition(autoModDialog);
         autoModDialog.showDialog();
@@ -3667,7 +3709,7 @@ EventLog.setMain(eventLog);
                  * Twitch emote indices work with codepoint counts, so it's
                  * fine.
                  */
-                boolean decodeZWF = client.settings.getLong("emojiZWJ") > 0;
+                boolean decodeZWF = emojiZWJSetting.get() > 0;
                 String text = decodeZWF ? EmojiUtil.decodeZWJ(text2) : text2;
                 
                 MsgTags tags = tags1;
@@ -3679,7 +3721,7 @@ EventLog.setMain(eventLog);
                 
                 // Disable Cheer emotes altogether if disabled in the settings
                 int bitsForEmotes = bitsAmount;
-                if (client.settings.getString("cheersType").equals("none")) {
+                if (cheersTypeSetting.get().equals("none")) {
                     bitsForEmotes = 0;
                 }
                 
@@ -3688,7 +3730,7 @@ EventLog.setMain(eventLog);
                  * settings
                  */
                 if (channel.equals(WhisperManager.WHISPER_CHANNEL)) {
-                    int whisperSetting = (int)client.settings.getLong("whisperDisplayMode");
+                    int whisperSetting = whisperDisplayModeSetting.get().intValue();
                     if (whisperSetting == WhisperManager.DISPLAY_ONE_WINDOW) {
                         chan = channels.getChannel(client.roomManager.getRoom(channel));
                     } else if (whisperSetting == WhisperManager.DISPLAY_PER_USER) {
@@ -176,6 +176,7 @@ public class MainMenu extends JMenuBar {
         extra.addSeparator();
         addItem(extra,"dialog.moderationLog");
         addItem(extra,"dialog.autoModDialog");
+        addItem(extra,"dialog.searchLogs");
         extra.addSeparator();
         JMenu streamChat = new JMenu("Stream Chat");
         addItem(streamChat,"dialog.streamchat");
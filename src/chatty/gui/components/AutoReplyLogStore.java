@@ -6,6 +6,7 @@ import chatty.Chatty;
 import chatty.Chatty.PathType;
 import chatty.util.StringUtil;
 import chatty.util.settings.Settings;
+import chatty.util.settings.SidecarStore;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -30,10 +31,17 @@ import java.util.logging.Logger;
 /**
  * Persists auto-reply log entries and broadcasts updates to any listeners that
  * want to render them.
+ *
+ * The entries are stored in the "autoReplyLog" store (instead of the settings)
+ * and only loaded when first needed.
  */
 public class AutoReplyLogStore implements AutoReplyService.Listener {
 
+    /**
+     * The setting the entries were previously saved in.
+     */
     public static final String SETTING_KEY = "autoReplyLogEntries";
+    public static final String STORE_ID = "autoReplyLog";
 
     private static final Logger LOGGER = Logger.getLogger(AutoReplyLogStore.class.getName());
     private static final DateTimeFormatter DATE_HEADER_FORMATTER = DateTimeFormatter.ofPattern("EEEE, MMMM d, uuuu");
@@ -41,17 +49,18 @@ public class AutoReplyLogStore implements AutoReplyService.Listener {
     private static final String LOG_DIR_NAME = "auto-reply";
     private static final String LOG_FILE_NAME = "auto-reply-log.txt";
 
-    private static final int MAX_ENTRIES = 400;
+    public static final int MAX_ENTRIES = 400;
 
-    private final Settings settings;
+    private final SidecarStore store;
     private final List<AutoReplyLogEntry> entries = new ArrayList<>();
     private final List<Listener> listeners = new CopyOnWriteArrayList<>();
     private LocalDate lastWrittenDate;
+    private boolean loaded;
 
     public AutoReplyLogStore(Settings settings) {
-        this.settings = Objects.requireNonNull(settings);
-        loadFromSettings();
-        rebuildLastWrittenDates();
+        Objects.requireNonNull(settings);
+        this.store = settings.getSidecarStore(STORE_ID);
+        migrateFromSettings(settings);
     }
 
     @Override
@@ -59,7 +68,8 @@ public class AutoReplyLogStore implements AutoReplyService.Listener {
         addEntry(AutoReplyLogEntry.fromEvent(event));
     }
 
-    public List<AutoReplyLogEntry> getEntries() {
+    public synchronized List<AutoReplyLogEntry> getEntries() {
+        load();
         return Collections.unmodifiableList(new ArrayList<>(entries));
     }
 
@@ -76,9 +86,12 @@ public class AutoReplyLogStore implements AutoReplyService.Listener {
     }
 
     public void clear() {
-        entries.clear();
-        lastWrittenDate = null;
-        persist();
+        synchronized (this) {
+            load();
+            entries.clear();
+            lastWrittenDate = null;
+            store.clear();
+        }
         notifyListeners(null);
     }
 
@@ -86,12 +99,15 @@ public class AutoReplyLogStore implements AutoReplyService.Listener {
         if (entry == null) {
             return;
         }
-        entries.add(entry);
-        while (entries.size() > MAX_ENTRIES) {
-            entries.remove(0);
+        synchronized (this) {
+            load();
+            entries.add(entry);
+            while (entries.size() > MAX_ENTRIES) {
+                entries.remove(0);
+            }
+            store.add(entry.toMap());
+            writeEntryToFile(entry);
         }
-        persist();
-        writeEntryToFile(entry);
         notifyListeners(entry);
     }
 
@@ -107,18 +123,31 @@ public class AutoReplyLogStore implements AutoReplyService.Listener {
         }
     }
 
-    private void loadFromSettings() {
+    /**
+     * Move entries from the setting they were previously saved in into the
+     * store.
+     */
+    private static void migrateFromSettings(Settings settings) {
         @SuppressWarnings("unchecked")
         Collection<Object> raw = settings.getList(SETTING_KEY);
-        if (raw == null) {
+        if (!raw.isEmpty() && settings.getSidecarStore(STORE_ID).migrate(raw)) {
+            settings.listClear(SETTING_KEY);
+            settings.setSettingChanged(SETTING_KEY);
+        }
+    }
+
+    private void load() {
+        if (loaded) {
             return;
         }
-        for (Object item : raw) {
+        loaded = true;
+        for (Object item : store.getAll()) {
             AutoReplyLogEntry entry = AutoReplyLogEntry.fromSettings(item);
             if (entry != null) {
                 entries.add(entry);
             }
         }
+        rebuildLastWrittenDates();
     }
 
     private void rebuildLastWrittenDates() {
@@ -170,15 +199,6 @@ public class AutoReplyLogStore implements AutoReplyService.Listener {
         }
     }
 
-    private void persist() {
-        List<Object> data = new ArrayList<>();
-        for (AutoReplyLogEntry entry : entries) {
-            data.add(entry.toMap());
-        }
-        settings.putList(SETTING_KEY, data);
-        settings.setSettingChanged(SETTING_KEY);
-    }
-
     public interface Listener {
 
         void onLogUpdated(List<AutoReplyLogEntry> entries, AutoReplyLogEntry newEntry);
@@ -5,6 +5,7 @@ import chatty.gui.components.completion.AutoCompletionServer;
 import chatty.Room;
 import chatty.User;
 import chatty.gui.MainGui;
+import chatty.util.ImageLoader;
 import chatty.util.StringUtil;
 import chatty.util.api.Emoticon;
 import chatty.util.api.Emoticons;
@@ -305,7 +306,7 @@ public class ChannelCompletion implements AutoCompletionServer {
                 public void iconLoaded(Image oldImage, Image newImage, boolean sizeChanged) {
                     c.repaint();
                 }
-            }).getImageIcon();
+            }).getImageIcon(ImageLoader.Priority.DIALOG);
             return new ImageIcon(icon.getImage());
         }
 
@@ -13,6 +13,7 @@ import chatty.gui.components.settings.SettingsUtil;
 import chatty.lang.Language;
 import chatty.util.ChattyMisc;
 import chatty.util.Debugging;
+import chatty.util.ImageLoader;
 import chatty.util.MiscUtil;
 import chatty.util.StringUtil;
 import chatty.util.TwitchEmotesApi;
@@ -670,7 +671,7 @@ public class EmotesDialog extends JDialog {
             CachedImage<Emoticon> emoteImage = emote.getIcon(scale, 0, imageType, emoteUser);
             this.code = emote.code;
             this.emote = emoteImage;
-            setIcon(emoteImage.getImageIcon());
+            setIcon(emoteImage.getImageIcon(ImageLoader.Priority.DIALOG));
             setToolTipText(emote.code);
             if (emote.type == Emoticon.Type.EMOJI) {
                 setToolTipText(emote.getInfos().toString());
@@ -0,0 +1,251 @@
+
+package chatty.gui.components;
+
+import chatty.gui.GuiUtil;
+import chatty.lang.Language;
+import chatty.util.chatlog.LogSearch;
+import chatty.util.chatlog.LogSearch.Query;
+import chatty.util.chatlog.LogSearch.Result;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+/**
+ * Dialog to search the chat log files by channel, user, time range and text.
+ * The search runs in a separate thread and results are added while it's
+ * running.
+ *
+ * @author tduva
+ */
+public class LogSearchDialog extends JDialog {
+
+    private static final int MAX_RESULTS = 5000;
+    private static final int RESULT_BATCH = 100;
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final DateTimeFormatter DATE_TIME_SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JTextField channel = new JTextField(10);
+    private final JTextField user = new JTextField(10);
+    private final JTextField from = new JTextField(12);
+    private final JTextField to = new JTextField(12);
+    private final JTextField text = new JTextField(20);
+    private final JButton searchButton = new JButton(Language.getString("logSearch.button.search"));
+    private final JButton stopButton = new JButton(Language.getString("logSearch.button.stop"));
+    private final JLabel status = new JLabel(" ");
+    private final DefaultListModel<String> results = new DefaultListModel<>();
+
+    private LogSearch search;
+    private Thread searchThread;
+
+    /**
+     * Increased for every search, so that results of a previous search that
+     * are still being added are ignored.
+     */
+    private int searchId;
+
+    public LogSearchDialog(Window owner) {
+        super(owner);
+        setTitle(Language.getString("logSearch.title"));
+
+        JPanel options = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(2, 4, 2, 4);
+        gbc.anchor = GridBagConstraints.WEST;
+        addOption(options, gbc, 0, 0, "logSearch.channel", channel);
+        addOption(options, gbc, 2, 0, "logSearch.user", user);
+        addOption(options, gbc, 0, 1, "logSearch.from", from);
+        addOption(options, gbc, 2, 1, "logSearch.to", to);
+        addOption(options, gbc, 0, 2, "logSearch.text", text);
+        from.setToolTipText(Language.getString("logSearch.dateFormat"));
+        to.setToolTipText(Language.getString("logSearch.dateFormat"));
+
+        JPanel buttons = new JPanel();
+        buttons.add(searchButton);
+        buttons.add(stopButton);
+        gbc.gridx = 2;
+        gbc.gridy = 2;
+        gbc.gridwidth = 2;
+        options.add(buttons, gbc);
+
+        JList<String> list = new JList<>(results);
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(600, 300));
+
+        add(options, BorderLayout.NORTH);
+        add(scroll, BorderLayout.CENTER);
+        add(status, BorderLayout.SOUTH);
+
+        searchButton.addActionListener(e -> search());
+        channel.addActionListener(e -> search());
+        user.addActionListener(e -> search());
+        from.addActionListener(e -> search());
+        to.addActionListener(e -> search());
+        text.addActionListener(e -> search());
+        stopButton.addActionListener(e -> stop());
+        stopButton.setEnabled(false);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                stop();
+            }
+        });
+        GuiUtil.installEscapeCloseOperation(this);
+        pack();
+    }
+
+    private static void addOption(JPanel panel, GridBagConstraints gbc, int x, int y, String labelKey, JTextField field) {
+        gbc.gridx = x;
+        gbc.gridy = y;
+        gbc.gridwidth = 1;
+        gbc.fill = GridBagConstraints.NONE;
+        panel.add(new JLabel(Language.getString(labelKey)), gbc);
+        gbc.gridx = x + 1;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        panel.add(field, gbc);
+    }
+
+    /**
+     * Show the dialog.
+     *
+     * @param logPath The base path of the chat logs
+     * @param channel The channel to prefill, may be null
+     */
+    public void showDialog(Path logPath, String channel) {
+        search = logPath != null ? new LogSearch(logPath) : null;
+        if (channel != null && this.channel.getText().isEmpty()) {
+            this.channel.setText(channel);
+        }
+        setLocationRelativeTo(getOwner());
+        setVisible(true);
+    }
+
+    private void search() {
+        stop();
+        results.clear();
+        if (search == null) {
+            status.setText(Language.getString("logSearch.noPath"));
+            return;
+        }
+        long fromTime;
+        long toTime;
+        try {
+            fromTime = parseTime(from.getText(), false);
+            toTime = parseTime(to.getText(), true);
+        }
+        catch (DateTimeParseException ex) {
+            status.setText(Language.getString("logSearch.invalidDate", Language.getString("logSearch.dateFormat")));
+            return;
+        }
+        Query query = new Query(channel.getText(), user.getText(), fromTime, toTime, text.getText(), MAX_RESULTS);
+        int id = ++searchId;
+        status.setText(Language.getString("logSearch.searching"));
+        searchButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        LogSearch currentSearch = search;
+        searchThread = new Thread(() -> {
+            List<String> batch = new ArrayList<>();
+            currentSearch.search(query, result -> {
+                batch.add(format(result));
+                if (batch.size() >= RESULT_BATCH) {
+                    addResults(id, new ArrayList<>(batch), false);
+                    batch.clear();
+                }
+                return true;
+            });
+            addResults(id, batch, true);
+        }, "LogSearch");
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    private void stop() {
+        if (searchThread != null) {
+            searchThread.interrupt();
+            searchThread = null;
+        }
+        searchId++;
+        searchButton.setEnabled(true);
+        stopButton.setEnabled(false);
+    }
+
+    private void addResults(int id, List<String> lines, boolean done) {
+        SwingUtilities.invokeLater(() -> {
+            if (id != searchId) {
+                return;
+            }
+            for (String line : lines) {
+                results.addElement(line);
+            }
+            if (done) {
+                searchThread = null;
+                searchButton.setEnabled(true);
+                stopButton.setEnabled(false);
+                status.setText(Language.getString("logSearch.results", results.size()));
+            }
+            else {
+                status.setText(Language.getString("logSearch.searchingResults", results.size()));
+            }
+        });
+    }
+
+    private static String format(Result result) {
+        String time = "";
+        if (result.time != -1) {
+            time = "["+LocalDateTime.ofInstant(Instant.ofEpochMilli(result.time), ZoneId.systemDefault()).format(DATE_TIME_SECONDS)+"] ";
+        }
+        return time + result.channel + ": " + result.line;
+    }
+
+    /**
+     * Parse a date ("yyyy-MM-dd") or date and time ("yyyy-MM-dd HH:mm").
+     *
+     * @param input The input
+     * @param end If true, a date only is the end of that day, otherwise the
+     * start
+     * @return The time in milliseconds, or -1 if the input is empty
+     */
+    private static long parseTime(String input, boolean end) {
+        input = input.trim();
+        if (input.isEmpty()) {
+            return -1;
+        }
+        LocalDateTime dateTime;
+        if (input.length() <= 10) {
+            LocalDate date = LocalDate.parse(input);
+            dateTime = end ? date.atTime(23, 59, 59) : date.atStartOfDay();
+        }
+        else {
+            dateTime = LocalDateTime.parse(input, DATE_TIME);
+            if (end) {
+                dateTime = dateTime.plusSeconds(59);
+            }
+        }
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+}
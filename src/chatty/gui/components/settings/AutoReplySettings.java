@@ -742,6 +742,7 @@ public class AutoReplySettings extends SettingsPanel {
         private final JSpinner minUsersSpinner;
         private final JSpinner minMentionsSpinner;
         private final JSpinner timeWindowSpinner;
+        private final JSpinner minCopypastaSpinner;
         private final JComboBox<String> soundCombo;
         private final JCheckBox enabledCheck;
         private final JCheckBox notifyCheck;
@@ -972,11 +973,19 @@ public class AutoReplySettings extends SettingsPanel {
                 refreshValidation();
             });
 
+            minCopypastaSpinner = new JSpinner(new SpinnerNumberModel(trigger.getMinCopypastaUsers(), 0L, Long.MAX_VALUE, 1L));
+            minCopypastaSpinner.setToolTipText(Language.getString("settings.autoReply.trigger.minCopypastaUsers.tip"));
+            minCopypastaSpinner.addChangeListener(e -> {
+                trigger.setMinCopypastaUsers(((Number) minCopypastaSpinner.getValue()).longValue());
+                refreshValidation();
+            });
+
             JPanel thresholdRow = new JPanel(new GridBagLayout());
             thresholdRow.setOpaque(false);
             addLabeledSpinner(thresholdRow, Language.getString("settings.autoReply.trigger.minUniqueUsers"), minUsersSpinner, 0);
             addLabeledSpinner(thresholdRow, Language.getString("settings.autoReply.trigger.minMentionsPerUser"), minMentionsSpinner, 2);
             addLabeledSpinner(thresholdRow, Language.getString("settings.autoReply.trigger.timeWindow"), timeWindowSpinner, 4);
+            addLabeledSpinner(thresholdRow, Language.getString("settings.autoReply.trigger.minCopypastaUsers"), minCopypastaSpinner, 6);
 
             gbc.gridy = 5;
             add(thresholdRow, gbc);
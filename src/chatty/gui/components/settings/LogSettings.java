@@ -208,6 +208,8 @@ public class LogSettings extends SettingsPanel {
                 d.makeGbcCloser(0, 11, 1, 1, GridBagConstraints.WEST));
         typesPanel.add(d.addSimpleBooleanSetting("logBits"),
                 d.makeGbcCloser(0, 12, 1, 1, GridBagConstraints.WEST));
+        typesPanel.add(d.addSimpleBooleanSetting("logStructured"),
+                SettingsDialog.makeGbcCloser(0, 13, 1, 1, GridBagConstraints.WEST));
         
         extraPanel.add(d.addSimpleBooleanSetting("logHighlighted2"),
                 d.makeGbcCloser(0, 0, 1, 1, GridBagConstraints.WEST));
@@ -264,6 +266,12 @@ public class LogSettings extends SettingsPanel {
         otherSettings.add(d.addSimpleBooleanSetting("logLockFiles"),
                 d.makeGbcCloser(2, 2, 1, 1, GridBagConstraints.WEST));
         
+        otherSettings.add(d.addSimpleBooleanSetting("logIndex"),
+                SettingsDialog.makeGbcCloser(2, 3, 1, 1, GridBagConstraints.WEST));
+        
+        otherSettings.add(d.addSimpleBooleanSetting("logCompress"),
+                SettingsDialog.makeGbcCloser(2, 4, 1, 1, GridBagConstraints.WEST));
+        
         /**
          * Add panels to the dialog
          */
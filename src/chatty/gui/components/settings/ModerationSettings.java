@@ -108,8 +108,11 @@ public class ModerationSettings extends SettingsPanel {
         SettingsUtil.addLabeledComponent(userInfoMsg, "userDialogMessageLimit", 0, 5, 1, EAST,
                 d.addSimpleLongSetting("userDialogMessageLimit", 3, true));
         
+        SettingsUtil.addLabeledComponent(userInfoMsg, "userMessagesChannelMemory", 0, 6, 1, EAST,
+                d.addSimpleLongSetting("userMessagesChannelMemory", 6, true));
+        
         SettingsUtil.addLabeledComponent(userInfoMsg, "userMessagesHighlight",
-                0, 6, 2, GridBagConstraints.EAST,
+                0, 7, 2, GridBagConstraints.EAST,
                 new HighlightOptions("userMessagesHighlight", d));
         
         userInfoTabs.addTab(Language.getString("settings.userInfo.tab.general"), userInfoGeneral);
@@ -166,6 +169,30 @@ public class ModerationSettings extends SettingsPanel {
         repeatMsgPanel.add(new LinkLabel("Tip: Add <code>config:repeatedmsg</code> to e.g. [help:Highlight Highlight] list to match on detected repetition.",
                 d.getSettingsHelpLinkLabelListener()),
                 SettingsDialog.makeGbc(0, 6, 4, 1));
+        
+        //==========================
+        // Copypasta
+        //==========================
+        JPanel copypastaPanel = addTitledPanel(Language.getString("settings.section.copypasta"), 3);
+        
+        JCheckBox copypasta = d.addSimpleBooleanSetting("copypasta");
+        copypastaPanel.add(copypasta,
+                SettingsDialog.makeGbc(0, 0, 4, 1, GridBagConstraints.WEST));
+        
+        SettingsUtil.addLabeledComponent(copypastaPanel, "copypastaUsers", 0, 1, 1, GridBagConstraints.EAST,
+                d.addSimpleLongSetting("copypastaUsers", 4, true));
+        
+        SettingsUtil.addLabeledComponent(copypastaPanel, "copypastaTime", 2, 1, 1, GridBagConstraints.EAST,
+                d.addSimpleLongSetting("copypastaTime", 4, true));
+        
+        SettingsUtil.addLabeledComponent(copypastaPanel, "copypastaLen", 0, 2, 1, GridBagConstraints.EAST,
+                d.addSimpleLongSetting("copypastaLen", 4, true));
+        
+        SettingsUtil.addSubsettings(copypasta, copypastaPanel.getComponents());
+        
+        copypastaPanel.add(new LinkLabel("Tip: Add <code>config:copypasta</code> to e.g. [help:Highlight Highlight] or Ignore list to match on detected copypastas.",
+                d.getSettingsHelpLinkLabelListener()),
+                SettingsDialog.makeGbc(0, 3, 4, 1));
     }
     
     /**
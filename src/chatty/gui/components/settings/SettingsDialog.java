@@ -104,9 +104,9 @@ public class SettingsDialog extends JDialog implements ActionListener {
             "inputFont",
             "bttvEmotes", "botNamesBTTV", "botNamesFFZ", "ffzEvent", "seventv",
             "logPath", "logTimestamp", "logSplit", "logSubdirectories",
-            "logLockFiles", "logMessageTemplate",
+            "logLockFiles", "logIndex", "logCompress", "logMessageTemplate",
             "laf", "lafTheme", "lafFontScale", "language", "timezone", "locale",
-            "userDialogMessageLimit", "cachePath", "imgPath", "exportPath",
+            "userDialogMessageLimit", "userMessagesChannelMemory", "cachePath", "imgPath", "exportPath",
             "webp", "inputLimitsEnabled", "chatInsertTop"
     ));
     
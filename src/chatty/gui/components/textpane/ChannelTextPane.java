@@ -25,6 +25,7 @@ import chatty.util.ChattyMisc;
 import chatty.util.ChattyMisc.CombinedEmotesInfo;
 import chatty.util.DateTime;
 import chatty.util.Debugging;
+import chatty.util.ImageLoader;
 import chatty.util.MiscUtil;
 import chatty.util.Pair;
 import chatty.util.RepeatMsgHelper;
@@ -37,6 +38,7 @@ import chatty.util.api.Emoticon;
 import chatty.util.api.Emoticons;
 import chatty.util.api.Emoticons.TagEmotes;
 import chatty.util.api.CachedImage;
+import chatty.util.api.ChannelEmotes;
 import chatty.util.api.CachedImage.ImageType;
 import chatty.util.colors.ColorCorrectionNew;
 import chatty.util.colors.ColorCorrector;
@@ -500,6 +502,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             
             if (northOfVisibleRect) {
                 v.setDontRepaint();
+                v.cancelImageLoading();
                 kit.debug();
             }
         } catch (BadLocationException ex) {
@@ -2997,14 +3000,14 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
     private void findEmoticons(String text, User user, Map<Integer, Integer> ranges,
             Map<Integer, MutableAttributeSet> rangesStyle, TagEmotes tagEmotes, boolean gigantified) {
         
-        Set<String> accessToSets = user.isLocalUser() ? main.emoticons.getLocalEmotesets() : null;
-        findEmoticons(user, main.emoticons.getCustomEmotes(), text, ranges, rangesStyle, accessToSets);
+        ChannelEmotes channelEmotes = main.emoticons.getChannelEmotes(user.getStream());
+        findEmoticons(user.isLocalUser() ? channelEmotes.localCustom : channelEmotes.custom, text, ranges, rangesStyle);
         
         //-------
         // Emoji
         //-------
         if (Debugging.isEnabled("emoji2") || EmojiUtil.mightContainEmoji(text)) {
-            findEmoticons(user, main.emoticons.getEmoji(), text, ranges, rangesStyle);
+            findEmoji(user, text, ranges, rangesStyle);
         }
         
         //---------------
@@ -3019,30 +3022,27 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         
         // Sent messages
         if (user.isLocalUser()) {
-            findEmoticons(main.emoticons.getUsableGlobalTwitchEmotes(), text, ranges, rangesStyle);
-            findEmoticons(main.emoticons.getUsableFollowerEmotes(user.getStream()), text, ranges, rangesStyle);
-            findEmoticons(main.emoticons.getSmilies(), text, ranges, rangesStyle);
+            findEmoticons(channelEmotes.localTwitch, text, ranges, rangesStyle);
+            findEmoticons(channelEmotes.localFollower, text, ranges, rangesStyle);
+            findEmoticons(channelEmotes.smilies, text, ranges, rangesStyle);
         }
         
         //-------------
         // Third-party
         //-------------
         // By stream emotes first so they can overwrite third-party global emotes
-        Set<Emoticon> channelEmotes = main.emoticons.getEmoticonsByStream(user.getStream());
-        findEmoticons(channelEmotes, text, ranges, rangesStyle);
+        findEmoticons(channelEmotes.channel, text, ranges, rangesStyle);
         
         // All-channels emotes
         if (user.isLocalUser()) {
-            findEmoticons(main.emoticons.getUsableGlobalOtherEmotes(), text, ranges, rangesStyle);
+            findEmoticons(channelEmotes.localOther, text, ranges, rangesStyle);
         }
         else {
             if (tagEmotes == null) {
                 // Not sure that this should even occur
-                Set<Emoticon> emoticons = main.emoticons.getGlobalTwitchEmotes();
-                findEmoticons(emoticons, text, ranges, rangesStyle);
+                findEmoticons(channelEmotes.globalTwitch, text, ranges, rangesStyle);
             }
-            Set<Emoticon> emoticons = main.emoticons.getOtherGlobalEmotes();
-            findEmoticons(emoticons, text, ranges, rangesStyle);
+            findEmoticons(channelEmotes.otherGlobal, text, ranges, rangesStyle);
         }
         
         //---------
@@ -3187,42 +3187,35 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
         }
     }
     
-    private void findEmoticons(Set<Emoticon> emoticons, String text,
+    /**
+     * Find the emotes of the given group, already filtered for the channel and
+     * for ignored emotes.
+     */
+    private void findEmoticons(ChannelEmotes.Index emotes, String text,
             Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
-        findEmoticons(null, emoticons, text, ranges, rangesStyle);
+        emotes.find(text, (emote, start, end) -> {
+            addEmoticon(emote, start, end - 1, ranges, rangesStyle, false);
+        });
     }
     
-    private void findEmoticons(User user, Set<Emoticon> emoticons, String text,
+    /**
+     * Find Emoji in a single pass over the text. Longer Emoji (e.g. ZWJ
+     * sequences) take precedence over shorter ones at the same position. Emoji
+     * followed by the text style variation selector are not turned into an
+     * image.
+     */
+    private void findEmoji(User user, String text,
             Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
-        findEmoticons(user, emoticons, text, ranges, rangesStyle, null);
-    }
-    
-    private void findEmoticons(User user, Set<Emoticon> emoticons, String text,
-            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle,
-            Set<String> accessToSets) {
-        // Find emoticons
-        for (Emoticon emoticon : emoticons) {
-            // Check the text for every single emoticon
-            if (!emoticon.matchesUser(user, accessToSets)) {
-                continue;
-            }
-            if (main.emoticons.isEmoteIgnored(emoticon, IgnoredEmotes.CHAT)) {
-                continue;
+        main.emoticons.getEmojiTrie().find(text, (emoji, start, end, textStyle) -> {
+            if (textStyle) {
+                return true;
             }
-            Matcher m = emoticon.getMatcher(text);
-            while (m.find()) {
-                // As long as this emoticon is still found in the text, add
-                // it's position (if it doesn't overlap with something already
-                // found) and move on
-                int start = m.start();
-                int end = m.end() - 1;
-                // For Emoji, check for text style variation selector
-                boolean textEmoji = emoticon.type == Emoticon.Type.EMOJI && m.group().endsWith("\uFE0E");
-                if (!textEmoji) {
-                    addEmoticon(emoticon, start, end, ranges, rangesStyle, false);
-                }
+            if (!emoji.matchesUser(user, null)
+                    || main.emoticons.isEmoteIgnored(emoji, IgnoredEmotes.CHAT)) {
+                return false;
             }
-        }
+            return addEmoticon(emoji, start, end - 1, ranges, rangesStyle, false);
+        });
     }
     
     private void findBits(Set<CheerEmoticon> emotes, String text,
@@ -4551,7 +4544,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             SimpleAttributeSet emoteStyle = new SimpleAttributeSet();
             CachedImage<Emoticon> emoteImage = emoticon.getIcon(
                     emoticonScaleFactor(gigantified), emoticonMaxHeight(gigantified), emoticonImageType(), ChannelTextPane.this);
-            StyleConstants.setIcon(emoteStyle, emoteImage.getImageIcon());
+            StyleConstants.setIcon(emoteStyle, emoteImage.getImageIcon(imageLoadPriority()));
             
             emoteStyle.addAttribute(Attribute.EMOTICON, emoteImage);
             emoteStyle.addAttribute(Attribute.IMAGE_ID, idCounter.getAndIncrement());
@@ -4559,6 +4552,16 @@ public class ChannelTextPane extends JTextPane implements LinkListener, CachedIm
             return emoteStyle;
         }
         
+        /**
+         * Images in a chat that isn't currently shown can be loaded after
+         * images that are actually visible.
+         * 
+         * @return 
+         */
+        private ImageLoader.Priority imageLoadPriority() {
+            return isShowing() ? ImageLoader.Priority.VISIBLE : ImageLoader.Priority.PREFETCH;
+        }
+        
         public ImageType emoticonImageType() {
             return Emoticon.makeImageType(isEnabled(Setting.EMOTICONS_ANIMATED));
         }
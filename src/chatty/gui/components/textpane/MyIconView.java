@@ -3,6 +3,8 @@ package chatty.gui.components.textpane;
 
 import chatty.gui.components.textpane.ChannelTextPane.Attribute;
 import chatty.util.Debugging;
+import chatty.util.ImageLoader;
+import chatty.util.api.CachedImage;
 import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.awt.Shape;
@@ -167,6 +169,35 @@ class MyIconView extends IconView {
         }
         s = tempRect;
         super.paint(g, s);
+        // Being painted means visible, so load image first if not loaded yet
+        CachedImage<?> image = getCachedImage();
+        if (image != null) {
+            image.prioritize(ImageLoader.Priority.VISIBLE, this);
+        }
+    }
+    
+    /**
+     * Cancel loading the image of this view, if it hasn't started loading yet,
+     * for example when it isn't visible anymore. It will be loaded when the
+     * view is painted again. Other views of the same image that are still
+     * waiting for it keep it loading.
+     */
+    public void cancelImageLoading() {
+        CachedImage<?> image = getCachedImage();
+        if (image != null) {
+            image.cancelLoading(this);
+        }
+    }
+    
+    private CachedImage<?> getCachedImage() {
+        Object image = getAttributes().getAttribute(Attribute.EMOTICON);
+        if (image == null) {
+            image = getAttributes().getAttribute(Attribute.USERICON);
+        }
+        if (image instanceof CachedImage) {
+            return (CachedImage<?>) image;
+        }
+        return null;
     }
     
     private int moveUpBy() {
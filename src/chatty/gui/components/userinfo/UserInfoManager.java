@@ -21,8 +21,8 @@ import java.awt.Window;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 /**
@@ -31,7 +31,10 @@ import java.util.function.Consumer;
  */
 public class UserInfoManager {
     
-    private final List<UserInfoDialog> dialogs = new ArrayList<>();
+    /**
+     * Modified on the EDT, but may also be read from other threads.
+     */
+    private final List<UserInfoDialog> dialogs = new CopyOnWriteArrayList<>();
     private final WindowListener closeListener;
     
     private final Window dummyWindow = new Window(null);
@@ -140,6 +143,22 @@ public class UserInfoManager {
         dialogToShow.show(owner, user, msgId, autoModMsgId, localUsername);
     }
     
+    /**
+     * Check if the given user is currently shown in an open dialog. Can be
+     * called from any thread.
+     * 
+     * @param user
+     * @return 
+     */
+    public boolean isShowingUser(User user) {
+        for (UserInfoDialog dialog : dialogs) {
+            if (dialog.getUser() == user && dialog.isVisible()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     private UserInfoDialog getFirstUnpinned() {
         for (UserInfoDialog dialog : dialogs) {
             if (!dialog.isPinned()) {
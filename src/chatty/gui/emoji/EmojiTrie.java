@@ -0,0 +1,214 @@
+
+package chatty.gui.emoji;
+
+import chatty.util.api.Emoticon;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Codepoint trie of all Emoji codes, used to find Emoji in a text in a single
+ * left-to-right pass instead of running a separate regex for every Emoji.
+ *
+ * <p>
+ * At each position the longest Emoji (e.g. a full ZWJ sequence) is tried
+ * first, then shorter ones starting at the same position. A variation selector
+ * directly following an Emoji is included in the match, where {@code U+FE0E}
+ * (text style) marks the match as not to be turned into an image.
+ * </p>
+ *
+ * <p>
+ * The trie is immutable once built, so it can be used from any thread.
+ * </p>
+ *
+ * @author tduva
+ */
+public class EmojiTrie {
+
+    private static final char TEXT_STYLE = '\uFE0E';
+    private static final char EMOJI_STYLE = '\uFE0F';
+
+    public interface MatchListener {
+
+        /**
+         * An Emoji was found in the text.
+         *
+         * @param emoji The Emoji
+         * @param start The start index (inclusive)
+         * @param end The end index (exclusive), including a variation selector
+         * @param textStyle Whether the Emoji is followed by the text style
+         * variation selector
+         * @return true if the match was used, in which case searching continues
+         * after it, false to try shorter Emoji at the same position
+         */
+        boolean match(Emoticon emoji, int start, int end, boolean textStyle);
+    }
+
+    private final Node root;
+
+    /**
+     * The maximum number of codepoints of any Emoji, which is the maximum
+     * number of candidates at one position.
+     */
+    private final int maxDepth;
+    private final int size;
+
+    private EmojiTrie(Node root, int maxDepth, int size) {
+        this.root = root;
+        this.maxDepth = maxDepth;
+        this.size = size;
+    }
+
+    /**
+     * Build a trie from the codes of the given Emoji. If several Emoji have
+     * the same code, the first one is used.
+     *
+     * @param emoji The Emoji, must not be null
+     * @return The trie
+     */
+    public static EmojiTrie build(Collection<Emoticon> emoji) {
+        BuildNode buildRoot = new BuildNode();
+        int maxDepth = 0;
+        int size = 0;
+        for (Emoticon emote : emoji) {
+            String code = emote.code;
+            if (code == null || code.isEmpty()) {
+                continue;
+            }
+            BuildNode node = buildRoot;
+            int depth = 0;
+            for (int i = 0; i < code.length();) {
+                int cp = code.codePointAt(i);
+                node = node.children.computeIfAbsent(cp, k -> new BuildNode());
+                i += Character.charCount(cp);
+                depth++;
+            }
+            if (node.emoji == null) {
+                node.emoji = emote;
+                size++;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return new EmojiTrie(buildRoot.toNode(), maxDepth, size);
+    }
+
+    /**
+     * The number of Emoji codes in this trie.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find all Emoji in the given text. Emoji are reported in order of their
+     * position, longest first at each position. Matches don't overlap as long
+     * as the listener accepts them.
+     *
+     * @param text The text to search in
+     * @param listener Receives the matches
+     */
+    public void find(String text, MatchListener listener) {
+        Emoticon[] candidates = new Emoticon[maxDepth];
+        int[] candidateEnds = new int[maxDepth];
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            //--------------------------
+            // Collect candidates at i
+            //--------------------------
+            int count = 0;
+            Node node = root;
+            int pos = i;
+            while (pos < length) {
+                int cp = text.codePointAt(pos);
+                node = node.get(cp);
+                if (node == null) {
+                    break;
+                }
+                pos += Character.charCount(cp);
+                if (node.emoji != null) {
+                    candidates[count] = node.emoji;
+                    candidateEnds[count] = pos;
+                    count++;
+                }
+            }
+            //---------------------------
+            // Try longest to shortest
+            //---------------------------
+            int next = -1;
+            for (int c = count - 1; c >= 0; c--) {
+                int end = candidateEnds[c];
+                boolean textStyle = false;
+                if (end < length) {
+                    char ch = text.charAt(end);
+                    if (ch == TEXT_STYLE) {
+                        textStyle = true;
+                        end++;
+                    }
+                    else if (ch == EMOJI_STYLE) {
+                        end++;
+                    }
+                }
+                if (listener.match(candidates[c], i, end, textStyle)) {
+                    next = end;
+                    break;
+                }
+            }
+            if (next == -1) {
+                next = i + Character.charCount(text.codePointAt(i));
+            }
+            i = next;
+        }
+    }
+
+    /**
+     * Immutable node, with children sorted by codepoint for binary search.
+     */
+    private static class Node {
+
+        private static final int[] NO_KEYS = new int[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final int[] keys;
+        private final Node[] children;
+        private final Emoticon emoji;
+
+        Node(int[] keys, Node[] children, Emoticon emoji) {
+            this.keys = keys.length == 0 ? NO_KEYS : keys;
+            this.children = children.length == 0 ? NO_CHILDREN : children;
+            this.emoji = emoji;
+        }
+
+        Node get(int codepoint) {
+            int index = Arrays.binarySearch(keys, codepoint);
+            return index >= 0 ? children[index] : null;
+        }
+
+    }
+
+    /**
+     * Mutable node only used while building.
+     */
+    private static class BuildNode {
+
+        private final Map<Integer, BuildNode> children = new TreeMap<>();
+        private Emoticon emoji;
+
+        Node toNode() {
+            int[] keys = new int[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Integer, BuildNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().toNode();
+                i++;
+            }
+            return new Node(keys, nodes, emoji);
+        }
+
+    }
+
+}
@@ -0,0 +1,357 @@
+
+package chatty.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The bigrams of a String, prepared for repeatedly comparing it to other
+ * Strings. Gives the same results as {@link StringUtil#getSimilarity(String, String)}
+ * (method 1) and {@link StringUtil#getSimilarity2(String, String)} (method 2),
+ * but without creating boxed values for every comparison.
+ *
+ * <p>
+ * Each signature also contains a small MinHash sketch of the bigrams, which
+ * is used to skip the exact comparison for Strings that are clearly not
+ * similar. The sketch only rejects Strings whose estimated similarity is far
+ * below the minimum, so it is very unlikely to affect the result.
+ * </p>
+ *
+ * <p>
+ * Like with the StringUtil methods, whitespace etc. should already be removed
+ * from the String (see
+ * {@link StringUtil#prepareForSimilarityComparison(String, char[])}).
+ * </p>
+ *
+ * @author tduva
+ */
+public class BigramSignature {
+
+    /**
+     * Number of buckets of the sketch (one permutation MinHash). Must be a
+     * power of two.
+     */
+    private static final int SKETCH_SIZE = 32;
+    private static final int SKETCH_SHIFT = 32 - Integer.numberOfTrailingZeros(SKETCH_SIZE);
+    private static final int EMPTY = Integer.MAX_VALUE;
+
+    /**
+     * The sketch is only used if at least this many buckets are filled in
+     * either signature, otherwise the estimate is too inaccurate (and the
+     * Strings are short, so the exact comparison is cheap anyway).
+     */
+    private static final int SKETCH_MIN_BUCKETS = 24;
+
+    /**
+     * How many standard deviations the number of matching buckets has to be
+     * below the number expected for the minimum similarity to skip the exact
+     * comparison.
+     */
+    private static final double SKETCH_MARGIN = 5;
+
+    private final String text;
+
+    /**
+     * The distinct bigrams (sorted) and how often each occurs.
+     */
+    private final int[] keys;
+    private final int[] counts;
+
+    /**
+     * MinHash sketch of the distinct bigrams (for method 2) and of the
+     * bigrams including repetitions (for method 1).
+     */
+    private final int[] setSketch;
+    private final int[] multiSketch;
+
+    private BigramSignature(String text, int[] keys, int[] counts) {
+        this.text = text;
+        this.keys = keys;
+        this.counts = counts;
+        this.setSketch = new int[SKETCH_SIZE];
+        this.multiSketch = new int[SKETCH_SIZE];
+        Arrays.fill(setSketch, EMPTY);
+        Arrays.fill(multiSketch, EMPTY);
+        for (int i = 0; i < keys.length; i++) {
+            addToSketch(setSketch, mix(keys[i]));
+            for (int occ = 0; occ < counts[i]; occ++) {
+                addToSketch(multiSketch, mix(keys[i] + occ * 0x9E3779B9));
+            }
+        }
+    }
+
+    /**
+     * Create the signature for the given String.
+     *
+     * @param text The String, should already be prepared for comparison (must
+     * not be null)
+     * @return
+     */
+    public static BigramSignature of(String text) {
+        if (text.length() < 2) {
+            return new BigramSignature(text, new int[0], new int[0]);
+        }
+        IntCounter counter = new IntCounter(text.length() - 1);
+        for (int i = 0; i < text.length() - 1; i++) {
+            counter.increment(bigram(text, i));
+        }
+        int[] keys = counter.getKeys();
+        Arrays.sort(keys);
+        int[] counts = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            counts[i] = counter.get(keys[i]);
+        }
+        return new BigramSignature(text, keys, counts);
+    }
+
+    /**
+     * Encoding two chars in one int, same as in StringUtil.
+     */
+    private static int bigram(String text, int i) {
+        return text.charAt(i) + (text.charAt(i + 1) << 16);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * The same as {@link StringUtil#checkSimilarity(String, String, float, int)},
+     * except that clearly dissimilar Strings may be skipped based on the
+     * sketch.
+     *
+     * @param other The signature to compare to
+     * @param min The minimum similarity score the Strings need to reach
+     * @param method The comparison algorithm (1 or 2)
+     * @return The score if the Strings reach at least min similiarty score, 0
+     * otherwise
+     */
+    public float checkSimilarity(BigramSignature other, float min, int method) {
+        String a = text;
+        String b = other.text;
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        if (method != 2 && StringUtil.getLengthSimilarity(a, b) < min) {
+            return 0;
+        }
+        if (min > 0 && isClearlyDissimilar(other, min, method)) {
+            return 0;
+        }
+        float sim = getSimilarity(other, method);
+        return sim >= min ? sim : 0;
+    }
+
+    /**
+     * The exact similarity to the other signature.
+     *
+     * @param other The signature to compare to
+     * @param method 2 for {@link StringUtil#getSimilarity2(String, String)},
+     * otherwise {@link StringUtil#getSimilarity(String, String)}
+     * @return A float between 0 (not at all similiar) and 1
+     */
+    public float getSimilarity(BigramSignature other, int method) {
+        String a = text;
+        String b = other.text;
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        if (a.equals(b)) {
+            return 1;
+        }
+        if (a.length() < 2 || b.length() < 2) {
+            return 0;
+        }
+        // Merge the sorted bigrams
+        int distinct = 0;
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            int compare = Integer.compare(keys[i], other.keys[j]);
+            if (compare == 0) {
+                distinct++;
+                total += Math.min(counts[i], other.counts[j]);
+                i++;
+                j++;
+            }
+            else if (compare < 0) {
+                i++;
+            }
+            else {
+                j++;
+            }
+        }
+        if (method == 2) {
+            return 2f * distinct / (keys.length + other.keys.length);
+        }
+        return 2f * total / (a.length() + b.length() - 2);
+    }
+
+    //==========================
+    // Sketch
+    //==========================
+
+    private boolean isClearlyDissimilar(BigramSignature other, float min, int method) {
+        int[] sketchA = method == 2 ? setSketch : multiSketch;
+        int[] sketchB = method == 2 ? other.setSketch : other.multiSketch;
+        int union = 0;
+        int matches = 0;
+        for (int i = 0; i < SKETCH_SIZE; i++) {
+            if (sketchA[i] != EMPTY || sketchB[i] != EMPTY) {
+                union++;
+                if (sketchA[i] == sketchB[i]) {
+                    matches++;
+                }
+            }
+        }
+        if (union < SKETCH_MIN_BUCKETS) {
+            return false;
+        }
+        /**
+         * Both methods are a Dice coefficient (of sets or of multisets), which
+         * relates to the Jaccard index (estimated by the sketch) like this:
+         * J = D / (2 - D)
+         */
+        double minJaccard = min / (2 - min);
+        double expected = minJaccard * union;
+        double deviation = Math.sqrt(union * minJaccard * (1 - minJaccard));
+        return matches < expected - SKETCH_MARGIN * deviation;
+    }
+
+    private static void addToSketch(int[] sketch, int hash) {
+        int bucket = hash >>> SKETCH_SHIFT;
+        int value = hash & (EMPTY >>> (32 - SKETCH_SHIFT));
+        if (value < sketch[bucket]) {
+            sketch[bucket] = value;
+        }
+    }
+
+    /**
+     * Finalization step of MurmurHash3.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    //==========================
+    // Helper classes
+    //==========================
+
+    /**
+     * Counts int values, using open addressing so that no boxed values are
+     * created.
+     */
+    static class IntCounter {
+
+        private final int[] keys;
+        private final int[] counts;
+        private int size;
+
+        IntCounter(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+            keys = new int[capacity];
+            counts = new int[capacity];
+        }
+
+        void increment(int key) {
+            int index = indexOf(key);
+            if (counts[index] == 0) {
+                keys[index] = key;
+                size++;
+            }
+            counts[index]++;
+        }
+
+        int get(int key) {
+            return counts[indexOf(key)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] getKeys() {
+            int[] result = new int[size];
+            int pos = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (counts[i] > 0) {
+                    result[pos++] = keys[i];
+                }
+            }
+            return result;
+        }
+
+        /**
+         * The index of the key, or the free slot where it would be added (the
+         * table is created large enough for the expected number of keys, so
+         * there is always a free slot).
+         */
+        private int indexOf(int key) {
+            int mask = keys.length - 1;
+            int index = mix(key) & mask;
+            while (counts[index] > 0 && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+    }
+
+    /**
+     * Caches the signatures of recently compared Strings, prepared using the
+     * given ignored chars. Not thread-safe.
+     */
+    public static class Cache {
+
+        private final char[] ignoredChars;
+        private final Map<String, BigramSignature> cache;
+
+        /**
+         *
+         * @param maxSize The max number of signatures cached
+         * @param ignoredChars The chars to remove when preparing the Strings
+         * for comparison, may be null
+         */
+        public Cache(int maxSize, char[] ignoredChars) {
+            this.ignoredChars = ignoredChars;
+            this.cache = new LinkedHashMap<String, BigramSignature>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, BigramSignature> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        /**
+         * Get the signature for the given unprepared String.
+         *
+         * @param text The String, as it appeared in chat (must not be null)
+         * @return
+         */
+        public BigramSignature get(String text) {
+            BigramSignature result = cache.get(text);
+            if (result == null) {
+                result = of(StringUtil.prepareForSimilarityComparison(text, ignoredChars));
+                cache.put(text, result);
+            }
+            return result;
+        }
+
+        public int size() {
+            return cache.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+
+package chatty.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared state of all {@link CachedBulkManager} instances.
+ *
+ * <ul>
+ * <li>Runs the regular requests of all managers on one shared daemon thread,
+ * instead of a timer thread per manager.</li>
+ * <li>Collects statistics about how well keys are packed into requests.</li>
+ * </ul>
+ *
+ * @author tduva
+ */
+public class BulkRequestScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkRequestScheduler.class.getName());
+
+    private static final BulkRequestScheduler INSTANCE = new BulkRequestScheduler();
+
+    public static BulkRequestScheduler get() {
+        return INSTANCE;
+    }
+
+    private final ScheduledExecutorService timer;
+
+    private final Map<String, Stats> stats = new TreeMap<>();
+
+    private BulkRequestScheduler() {
+        timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "CachedBulkManager");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Stats {
+
+        private int maxBatchSize;
+        private int batches;
+        private int keys;
+
+    }
+
+    /**
+     * Run the given task regularly on the shared thread.
+     *
+     * @param task The task
+     * @param delay The delay before the first run and between runs, in
+     * milliseconds
+     */
+    public void schedule(Runnable task, long delay) {
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            }
+            catch (Exception ex) {
+                // Would cancel any further runs otherwise
+                LOGGER.log(Level.WARNING, "Error running bulk request", ex);
+            }
+        }, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    //=======
+    // Stats
+    //=======
+
+    /**
+     * Set the maximum batch size for the given name, used to show how full
+     * the requests were.
+     *
+     * @param name The name of the endpoint or manager
+     * @param maxBatchSize The maximum number of keys per request
+     */
+    void setMaxBatchSize(String name, int maxBatchSize) {
+        synchronized (stats) {
+            stats.computeIfAbsent(name, e -> new Stats()).maxBatchSize = maxBatchSize;
+        }
+    }
+
+    /**
+     * Add a request (batch) to the statistics.
+     *
+     * @param name The name of the endpoint or manager
+     * @param keys The number of keys in the request
+     */
+    void addBatch(String name, int keys) {
+        synchronized (stats) {
+            Stats s = stats.computeIfAbsent(name, e -> new Stats());
+            s.batches++;
+            s.keys += keys;
+        }
+    }
+
+    /**
+     * The number of requests and keys per name, how full the requests were in
+     * relation to the maximum batch size, and how many requests were saved by
+     * requesting several keys at once.
+     *
+     * @return A text for debugging
+     */
+    public String getStats() {
+        StringBuilder b = new StringBuilder();
+        synchronized (stats) {
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                Stats s = entry.getValue();
+                if (b.length() > 0) {
+                    b.append("\n");
+                }
+                b.append(String.format(Locale.ROOT, "%s: %d requests, %d keys",
+                        entry.getKey(), s.batches, s.keys));
+                if (s.maxBatchSize > 1 && s.batches > 0) {
+                    b.append(String.format(Locale.ROOT, " (fill %d%%)",
+                            s.keys * 100 / (s.batches * s.maxBatchSize)));
+                }
+                b.append(String.format(Locale.ROOT, ", %d requests saved",
+                        s.keys - s.batches));
+            }
+        }
+        return b.toString();
+    }
+
+}
@@ -14,11 +14,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
@@ -105,7 +104,11 @@ public class CachedBulkManager<Key,Item> {
     /**
      * Runs the request timer in daemon mode. Only has an effect on instance
      * creation, not queries.
+     * 
+     * @deprecated Requests are now always run by the shared daemon thread of
+     * the {@link BulkRequestScheduler}, so this doesn't have an effect anymore
      */
+    @Deprecated
     public static final int DAEMON = 16;
     
     /**
@@ -135,6 +138,9 @@ public class CachedBulkManager<Key,Item> {
     private final String debugPrefix;
     private long cacheRefresh;
     private long cacheRemove;
+    private long notFoundExpire;
+    private String statsName;
+    private int maxBatchSize;
     private long testTimestamp = -1;
 
     // Queries
@@ -150,7 +156,7 @@ public class CachedBulkManager<Key,Item> {
     // Errors
     private final Map<Key, Long> lastError = new HashMap<>();
     private final Map<Key, Integer> errorCount = new HashMap<>();
-    private final Set<Key> notFound = new HashSet<>();
+    private final Map<Key, Long> notFound = new HashMap<>();
     
     public CachedBulkManager(Requester<Key, Item> requester, int settings) {
         this(requester, "Default", settings);
@@ -161,14 +167,26 @@ public class CachedBulkManager<Key,Item> {
         this.options = new Options(settings);
         this.debugPrefix = debugPrefix;
         int timerDelay = 10*1000;
-        Timer timer = new Timer("CachedBulkManager."+debugPrefix, options.contains(DAEMON));
-        timer.schedule(new TimerTask() {
-
-            @Override
-            public void run() {
-                doRequests();
-            }
-        }, timerDelay, timerDelay);
+        BulkRequestScheduler.get().schedule(this::doRequests, timerDelay);
+    }
+    
+    /**
+     * Set the maximum number of keys the Requester puts into one request. If
+     * it is more than 1, more than one request may be performed per run,
+     * until all keys that should be requested are.
+     * 
+     * <p>Should be set right after creation, before adding queries.
+     * 
+     * @param name The name the requests are counted under in the stats (e.g.
+     * the API endpoint)
+     * @param maxBatchSize The maximum number of keys per request
+     */
+    public void setBatchSize(String name, int maxBatchSize) {
+        synchronized (LOCK) {
+            this.statsName = name;
+            this.maxBatchSize = maxBatchSize;
+        }
+        BulkRequestScheduler.get().setMaxBatchSize(name, maxBatchSize);
     }
     
     /**
@@ -189,6 +207,35 @@ public class CachedBulkManager<Key,Item> {
         }
     }
     
+    /**
+     * Set how long a key that was not found is remembered as such, after
+     * which it may be requested again. By default it is remembered until a
+     * result is set for the key.
+     * 
+     * @param expire The time, 0 to not expire
+     * @param unit The unit of the time
+     */
+    public void setNotFoundTime(int expire, TimeUnit unit) {
+        synchronized (LOCK) {
+            this.notFoundExpire = unit.toMillis(expire);
+        }
+    }
+    
+    /**
+     * Synchronization: Within LOCK
+     */
+    private boolean isNotFound(Key key) {
+        Long time = notFound.get(key);
+        if (time == null) {
+            return false;
+        }
+        if (notFoundExpire > 0 && currentTimestamp() - time >= notFoundExpire) {
+            notFound.remove(key);
+            return false;
+        }
+        return true;
+    }
+    
     private boolean shouldRemove(CacheItem<Item> item) {
         return item == null
                 || (cacheRemove > 0 && item.millisecondsPassed(cacheRemove));
@@ -201,8 +248,155 @@ public class CachedBulkManager<Key,Item> {
     }
     
     private void checkRemoveCache(Key key) {
-        if (shouldRemove(cache.get(key))) {
-            cache.remove(key);
+        if (shouldRemove(getCacheItem(key))) {
+            removeCacheItem(key);
+        }
+    }
+    
+    //-------------
+    // Persistence
+    //-------------
+    
+    /**
+     * Converts keys and items for storing them in a {@link KeyValueStore}.
+     * 
+     * @param <Key>
+     * @param <Item> 
+     */
+    public interface Codec<Key, Item> {
+        
+        /**
+         * The key to use in the store. If several managers use the same
+         * store, the keys should be distinct (e.g. by adding a prefix).
+         * 
+         * @param key
+         * @return The key, must not be null
+         */
+        public String encodeKey(Key key);
+        
+        /**
+         * 
+         * @param item
+         * @return The item as text, or null if it should not be stored
+         */
+        public String encodeItem(Item item);
+        
+        /**
+         * 
+         * @param key
+         * @param data
+         * @return The item, or null if it could not be decoded
+         */
+        public Item decodeItem(Key key, String data);
+        
+    }
+    
+    private KeyValueStore store;
+    private Codec<Key, Item> codec;
+    private long storeExpire;
+    private int storeHits;
+    
+    /**
+     * Store results in the given store, so they are available after a
+     * restart. When a key is not in the memory cache, it is looked up in the
+     * store (the results are then handled as if they had been set with the
+     * timestamp they were originally received with).
+     * 
+     * <p>The store is loaded in the background. Reading and writing the store
+     * never happens while holding the lock of this manager, since that may
+     * be needed on the EDT. Keys that are queried before the store is loaded
+     * are not looked up in the store.
+     * 
+     * @param store The store (can be shared with other managers)
+     * @param codec Converts keys and items
+     * @param expire How long after being received a stored result expires (it
+     * may still be removed earlier depending on the cache times)
+     * @param unit The unit of expire
+     */
+    public void setPersistence(KeyValueStore store, Codec<Key, Item> codec, int expire, TimeUnit unit) {
+        synchronized (LOCK) {
+            this.store = store;
+            this.codec = codec;
+            this.storeExpire = unit.toMillis(expire);
+        }
+        store.loadAsync();
+    }
+    
+    /**
+     * Load the items for the given keys that are not in memory from the store
+     * (if it has already been loaded), so they are available in the memory
+     * cache.
+     * 
+     * Synchronization: Must NOT be called within LOCK
+     */
+    private void loadFromStore(Collection<Key> keys) {
+        KeyValueStore currentStore;
+        Codec<Key, Item> currentCodec;
+        List<Key> missing = new ArrayList<>();
+        synchronized (LOCK) {
+            if (store == null) {
+                return;
+            }
+            currentStore = store;
+            currentCodec = codec;
+            for (Key key : keys) {
+                if (!cache.containsKey(key)) {
+                    missing.add(key);
+                }
+            }
+        }
+        Map<Key, CacheItem<Item>> loaded = new HashMap<>();
+        for (Key key : missing) {
+            KeyValueStore.Entry entry = currentStore.getIfLoaded(currentCodec.encodeKey(key));
+            if (entry != null) {
+                Item value = currentCodec.decodeItem(key, entry.value);
+                if (value != null) {
+                    loaded.put(key, new CacheItem<>(value, entry.timestamp));
+                }
+            }
+        }
+        if (!loaded.isEmpty()) {
+            synchronized (LOCK) {
+                for (Map.Entry<Key, CacheItem<Item>> entry : loaded.entrySet()) {
+                    // A result may have been received in the meantime
+                    if (cache.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                        storeHits++;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Get the cached item from memory (see {@link #loadFromStore(Collection)}
+     * for the store).
+     * 
+     * Synchronization: Within LOCK
+     */
+    private CacheItem<Item> getCacheItem(Key key) {
+        return cache.get(key);
+    }
+    
+    /**
+     * Synchronization: Within LOCK
+     */
+    private void removeCacheItem(Key key) {
+        cache.remove(key);
+        if (store != null) {
+            store.removeAsync(codec.encodeKey(key));
+        }
+    }
+    
+    /**
+     * Synchronization: Within LOCK
+     */
+    private void putCacheItem(Key key, Item item, long timestamp) {
+        cache.put(key, new CacheItem<>(item, timestamp));
+        if (store != null) {
+            String data = codec.encodeItem(item);
+            if (data != null) {
+                store.putAsync(codec.encodeKey(key), data, timestamp, timestamp + storeExpire);
+            }
         }
     }
     
@@ -317,6 +511,9 @@ public class CachedBulkManager<Key,Item> {
             unique = new Object();
         }
         Query<Key, Item> query = new Query<>(listener, settings, keys);
+        if (!option(query, REFRESH)) {
+            loadFromStore(query.keys);
+        }
         synchronized(LOCK) {
             if (option(query, UNIQUE) && queries.containsValue(query)) {
                 return null;
@@ -327,7 +524,7 @@ public class CachedBulkManager<Key,Item> {
             queries.put(unique, query);
             if (option(query, REFRESH)) {
                 for (Key key : query.keys) {
-                    cache.remove(key);
+                    removeCacheItem(key);
                 }
             }
         }
@@ -381,9 +578,10 @@ public class CachedBulkManager<Key,Item> {
      * @return 
      */
     public Item get(Key key) {
+        loadFromStore(Collections.singleton(key));
         synchronized(LOCK) {
             checkRemoveCache(key);
-            CacheItem<Item> cached = cache.get(key);
+            CacheItem<Item> cached = getCacheItem(key);
             if (cached != null) {
                 return cached.value;
             }
@@ -393,7 +591,7 @@ public class CachedBulkManager<Key,Item> {
     
     public void removeCachedValue(Key key) {
         synchronized (LOCK) {
-            cache.remove(key);
+            removeCacheItem(key);
         }
     }
     
@@ -411,9 +609,10 @@ public class CachedBulkManager<Key,Item> {
      */
     public Item getOrQuerySingle(Object unique, ResultListener<Key, Item> listener, int settings, Key key) {
         Item result = null;
+        loadFromStore(Collections.singleton(key));
         synchronized(LOCK) {
             checkRemoveCache(key);
-            CacheItem<Item> cached = cache.get(key);
+            CacheItem<Item> cached = getCacheItem(key);
             if (cached != null) {
                 result = cached.value;
             }
@@ -448,6 +647,7 @@ public class CachedBulkManager<Key,Item> {
      */
     public Result<Key, Item> getOrQuery(Object unique, ResultListener<Key, Item> listener, int settings, Collection<Key> keys) {
         Query<Key, Item> request = new Query<>(listener, settings, keys);
+        loadFromStore(request.keys);
         Result<Key, Item> result = getResult(request);
         if (result == null || !result.hasAllKeys) {
             query(unique, listener, settings, keys);
@@ -483,8 +683,9 @@ public class CachedBulkManager<Key,Item> {
     
     public void setNotFound(Collection<Key> keys) {
         synchronized(LOCK) {
-            notFound.addAll(keys);
+            long now = currentTimestamp();
             for (Key key : keys) {
+                notFound.put(key, now);
                 errorCount.remove(key);
                 setResponseReceived(key);
             }
@@ -524,7 +725,7 @@ public class CachedBulkManager<Key,Item> {
      * @param item 
      */
     private void setResultInternal(Key key, Item item, long timestamp) {
-        cache.put(key, new CacheItem<>(item, timestamp));
+        putCacheItem(key, item, timestamp);
         errorCount.remove(key);
         notFound.remove(key);
         setResponseReceived(key);
@@ -549,8 +750,8 @@ public class CachedBulkManager<Key,Item> {
     
     public String debug() {
         synchronized(LOCK) {
-            return String.format("requests: %d pending: %d",
-                    queries.size(), requestPending.size());
+            return String.format("requests: %d pending: %d cached: %d (from store: %d)",
+                    queries.size(), requestPending.size(), cache.size(), storeHits);
         }
     }
     
@@ -580,6 +781,8 @@ public class CachedBulkManager<Key,Item> {
                 for (Key key : keys) {
                     requestPending.put(key, MiscUtil.ems());
                 }
+                requestedBatches++;
+                BulkRequestScheduler.get().addBatch(statsName != null ? statsName : debugPrefix.trim(), keys.size());
             }
         }
     }
@@ -612,17 +815,54 @@ public class CachedBulkManager<Key,Item> {
     // Perform requests
     //------------------
 
+    /**
+     * Maximum number of times the Requester is called in one run, if a batch
+     * size has been set.
+     */
+    private static final int MAX_BATCHES_PER_RUN = 10;
+    
     private volatile boolean requestingInProgress;
     
+    /**
+     * Counts calls of setRequested(), to check if the Requester requested
+     * anything.
+     */
+    private int requestedBatches;
+    
     public void doRequests() {
         if (requestingInProgress) {
             LOGGER.warning("Ignored doRequests");
             return;
         }
         requestingInProgress = true;
+        try {
+            int batches = 0;
+            /**
+             * If there are more keys than fit into one request, request
+             * further batches right away (as long as the Requester actually
+             * requests something).
+             */
+            while (doRequestsOnce()
+                    && maxBatchSize > 1
+                    && ++batches < MAX_BATCHES_PER_RUN) {
+                // Continue
+            }
+        }
+        finally {
+            requestingInProgress = false;
+        }
+    }
+    
+    /**
+     * Call the Requester once, if there are keys to request.
+     * 
+     * @return true if the Requester set any keys as requested
+     */
+    private boolean doRequestsOnce() {
         Set<Key> asap = new HashSet<>();
         Set<Key> normal = new HashSet<>();
         Set<Key> backlog = new HashSet<>();
+        int batchesBefore;
         
         synchronized(LOCK) {
             for (Query<Key, Item> request : queries.values()) {
@@ -636,11 +876,15 @@ public class CachedBulkManager<Key,Item> {
             for (Key key : normal) {
                 backlog.remove(key);
             }
+            batchesBefore = requestedBatches;
         }
         if (!asap.isEmpty() || !normal.isEmpty()) {
             requester.request(this, asap, normal, backlog);
+            synchronized (LOCK) {
+                return requestedBatches != batchesBefore;
+            }
         }
-        requestingInProgress = false;
+        return false;
     }
     
     private void addKeys(Query<Key, Item> query, Set<Key> asap, Set<Key> normal, Set<Key> backlog) {
@@ -745,7 +989,7 @@ public class CachedBulkManager<Key,Item> {
                 }
                 
                 checkRemoveCache(k);
-                CacheItem<Item> cached = cache.get(k);
+                CacheItem<Item> cached = getCacheItem(k);
                 /**
                  * The cached should not be included if a request should still
                  * take place, because otherwise it may not be requested.
@@ -754,7 +998,7 @@ public class CachedBulkManager<Key,Item> {
                         || (cached != null && q.isResponseReceived(k))) {
                     results.put(k, cached.value);
                 }
-                else if (notFound.contains(k)) {
+                else if (isNotFound(k)) {
                     results.put(k, null);
                 }
                 else if (secondsPassed(lastError, k) < errorDelay(k, q)) {
@@ -1121,7 +1365,7 @@ v4/channels/<stream_id> -> set[]
                     test++;
                 }
             });
-        }, DAEMON);
+        }, NONE);
         m.setCacheTimes(100, 200, TimeUnit.MILLISECONDS);
         
         Collection<String> keys = new ArrayList<>();
@@ -0,0 +1,345 @@
+
+package chatty.util;
+
+import chatty.User;
+import chatty.util.irc.MsgTags;
+import chatty.util.settings.Settings;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects the same (or nearly the same) message being posted by several users
+ * in a channel within a short time, for example copypastas or raid spam.
+ *
+ * <p>
+ * Each message is reduced to a 64-bit SimHash of it's character trigrams, so
+ * that similar messages have hashes that only differ in a few bits. The hash
+ * is split into {@link #BANDS} parts and the recent messages are indexed by
+ * each part. Messages that differ in at most {@link #MAX_DISTANCE} bits share
+ * at least one part, so only the few messages in the same buckets have to be
+ * checked, regardless of how many messages are in the time window.
+ * </p>
+ *
+ * <p>
+ * Similar messages are grouped in a cluster, which counts the different users
+ * that posted it. Messages are tagged with the cluster id and count (similar
+ * to {@link RepeatMsgHelper}), so that Highlight/Ignore items and other
+ * features can use it without looking at old messages again.
+ * </p>
+ *
+ * @author tduva
+ */
+public class CopypastaDetector {
+
+    private static final String TAGS_KEY_COUNT = "chatty-copypasta-count";
+    private static final String TAGS_KEY_ID = "chatty-copypasta-id";
+
+    /**
+     * Max number of bits two hashes can differ in to be considered similar.
+     */
+    static final int MAX_DISTANCE = 3;
+
+    /**
+     * Number of parts the hash is split into for indexing. Must be more than
+     * MAX_DISTANCE, so that similar hashes always have at least one equal
+     * part.
+     */
+    static final int BANDS = MAX_DISTANCE + 1;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final long BAND_MASK = (1L << BAND_BITS) - 1;
+
+    /**
+     * Limits per channel, so memory usage stays bounded even with a lot of
+     * messages in the time window.
+     */
+    private static final int MAX_ENTRIES = 4000;
+    private static final int MAX_PER_BUCKET = 16;
+    private static final int MAX_USERS_PER_CLUSTER = 1000;
+
+    private final Map<String, ChannelState> channels = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+    private volatile long timeframe;
+    private volatile int minLen;
+    private volatile int minUsers;
+    private long clusterIdCounter;
+
+    /**
+     * Create a detector that is configured by the "copypasta" settings.
+     *
+     * @param settings
+     */
+    public CopypastaDetector(Settings settings) {
+        loadSettings(settings);
+        settings.addSettingChangeListener((setting, type, value) -> {
+            if (setting.startsWith("copypasta")) {
+                loadSettings(settings);
+            }
+        });
+    }
+
+    /**
+     * Create an enabled detector with the given configuration.
+     *
+     * @param timeframe Time in milliseconds messages are remembered
+     * @param minLen Minimum length of messages (without whitespace) to check
+     * @param minUsers Minimum number of users that have to post a similar
+     * message for it to be tagged
+     */
+    CopypastaDetector(long timeframe, int minLen, int minUsers) {
+        this.enabled = true;
+        this.timeframe = timeframe;
+        this.minLen = minLen;
+        this.minUsers = minUsers;
+    }
+
+    private void loadSettings(Settings settings) {
+        enabled = settings.getBoolean("copypasta");
+        timeframe = settings.getLong("copypastaTime") * 1000;
+        minLen = settings.getInt("copypastaLen");
+        minUsers = settings.getInt("copypastaUsers");
+        if (!enabled) {
+            channels.clear();
+        }
+    }
+
+    /**
+     * Add the message and return the tags with the copypasta info added, if
+     * enough users posted similar messages. Can be called from any thread.
+     *
+     * @param user The user that posted the message
+     * @param text The message text
+     * @param tags The current tags
+     * @return The same tags or new tags with info added
+     */
+    public MsgTags check(User user, String text, MsgTags tags) {
+        if (!enabled || user == null || text == null) {
+            return tags;
+        }
+        Cluster cluster = add(user.getChannel(), user.getName(), text, System.currentTimeMillis());
+        if (cluster != null) {
+            tags = MsgTags.addTag(tags, TAGS_KEY_ID, String.valueOf(cluster.id));
+            tags = MsgTags.addTag(tags, TAGS_KEY_COUNT, String.valueOf(cluster.count));
+        }
+        return tags;
+    }
+
+    /**
+     * Add the message to the given channel.
+     *
+     * @return Info about the cluster the message belongs to, or null if not
+     * enough users posted it
+     */
+    Cluster add(String channel, String username, String text, long time) {
+        String prepared = StringUtil.prepareForSimilarityComparison(text, null).toLowerCase(Locale.ROOT);
+        if (prepared.length() < Math.max(minLen, 3)) {
+            return null;
+        }
+        long hash = simHash(prepared);
+        ChannelState state = channels.computeIfAbsent(channel != null ? channel : "", k -> new ChannelState());
+        synchronized (state) {
+            state.expire(time - timeframe);
+            ClusterData data = state.find(hash);
+            if (data == null) {
+                data = new ClusterData(nextClusterId());
+            }
+            if (data.users.size() < MAX_USERS_PER_CLUSTER) {
+                data.users.add(username);
+            }
+            state.add(new Entry(hash, time, data));
+            int count = data.users.size();
+            if (count >= minUsers) {
+                return new Cluster(data.id, count);
+            }
+            return null;
+        }
+    }
+
+    private synchronized long nextClusterId() {
+        return ++clusterIdCounter;
+    }
+
+    /**
+     * Remove all data of the given channel.
+     *
+     * @param channel
+     */
+    public void clear(String channel) {
+        channels.remove(channel);
+    }
+
+    public static int getCount(MsgTags tags) {
+        return tags.getInteger(TAGS_KEY_COUNT, 0);
+    }
+
+    public static long getClusterId(MsgTags tags) {
+        return tags.getLong(TAGS_KEY_ID, -1);
+    }
+
+    //==========================
+    // Hashing
+    //==========================
+
+    /**
+     * Calculate a SimHash based on the character trigrams of the given String.
+     *
+     * @param text Should be at least 3 characters
+     * @return
+     */
+    static long simHash(String text) {
+        int[] weights = new int[64];
+        for (int i = 0; i < text.length() - 2; i++) {
+            long trigram = text.charAt(i)
+                    | ((long) text.charAt(i + 1) << 16)
+                    | ((long) text.charAt(i + 2) << 32);
+            long h = mix(trigram);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((h >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long result = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                result |= 1L << bit;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finalization step of MurmurHash3 (64-bit).
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int bucketKey(long hash, int band) {
+        return (band << BAND_BITS) | (int) ((hash >>> (band * BAND_BITS)) & BAND_MASK);
+    }
+
+    //==========================
+    // Data
+    //==========================
+
+    /**
+     * The recent messages of a channel. Entries are added in order of time,
+     * so the oldest are always at the start of each queue.
+     */
+    private static class ChannelState {
+
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private final Map<Integer, ArrayDeque<Entry>> buckets = new HashMap<>();
+
+        /**
+         * Find the cluster of a recent message similar to the given hash.
+         */
+        ClusterData find(long hash) {
+            ClusterData best = null;
+            int bestDistance = MAX_DISTANCE + 1;
+            for (int band = 0; band < BANDS; band++) {
+                ArrayDeque<Entry> bucket = buckets.get(bucketKey(hash, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Entry entry : bucket) {
+                    int distance = Long.bitCount(entry.hash ^ hash);
+                    if (distance < bestDistance) {
+                        best = entry.cluster;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            return best;
+        }
+
+        void add(Entry entry) {
+            if (entries.size() >= MAX_ENTRIES) {
+                remove(entries.peekFirst());
+            }
+            entries.addLast(entry);
+            for (int band = 0; band < BANDS; band++) {
+                ArrayDeque<Entry> bucket = buckets.computeIfAbsent(bucketKey(entry.hash, band), k -> new ArrayDeque<>());
+                if (bucket.size() >= MAX_PER_BUCKET) {
+                    /**
+                     * Only removed from this bucket, the entry is still in the
+                     * other buckets until it expires.
+                     */
+                    bucket.removeFirst();
+                }
+                bucket.addLast(entry);
+            }
+        }
+
+        void expire(long before) {
+            while (!entries.isEmpty() && entries.peekFirst().time < before) {
+                remove(entries.peekFirst());
+            }
+        }
+
+        private void remove(Entry entry) {
+            entries.removeFirst();
+            for (int band = 0; band < BANDS; band++) {
+                int key = bucketKey(entry.hash, band);
+                ArrayDeque<Entry> bucket = buckets.get(key);
+                if (bucket != null && bucket.peekFirst() == entry) {
+                    bucket.removeFirst();
+                    if (bucket.isEmpty()) {
+                        buckets.remove(key);
+                    }
+                }
+            }
+        }
+
+    }
+
+    private static class Entry {
+
+        final long hash;
+        final long time;
+        final ClusterData cluster;
+
+        Entry(long hash, long time, ClusterData cluster) {
+            this.hash = hash;
+            this.time = time;
+            this.cluster = cluster;
+        }
+
+    }
+
+    private static class ClusterData {
+
+        final long id;
+        final Set<String> users = new HashSet<>();
+
+        ClusterData(long id) {
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * Immutable info about a cluster at the time a message was added.
+     */
+    static class Cluster {
+
+        final long id;
+        final int count;
+
+        Cluster(long id, int count) {
+            this.id = id;
+            this.count = count;
+        }
+
+    }
+
+}
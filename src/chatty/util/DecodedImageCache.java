@@ -0,0 +1,288 @@
+
+package chatty.util;
+
+import chatty.util.ImageCache.ImageResult;
+import chatty.util.gif.AnimatedImage;
+import chatty.util.gif.AnimatedImageSource;
+import chatty.util.gif.ListAnimatedImage;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.swing.ImageIcon;
+
+/**
+ * In-memory LRU cache of already decoded images, used by {@link ImageCache} in
+ * front of the cache files, so that the same image (e.g. when switching tabs
+ * or reopening the Emotes dialog) doesn't have to be read and decoded again.
+ *
+ * <p>
+ * Static images are stored as pixels, animated images as their (compressed)
+ * frames. Every hit creates a new Image from that, since the returned icons may
+ * be modified and the chat keeps track of animated images by Image instance.
+ * </p>
+ *
+ * <p>
+ * The cache is limited by the estimated number of bytes used. When the JVM
+ * memory usage gets high, most of the cache is cleared.
+ * </p>
+ *
+ * @author tduva
+ */
+public class DecodedImageCache {
+
+    private static final Logger LOGGER = Logger.getLogger(DecodedImageCache.class.getName());
+
+    private static final long DEFAULT_MAX_BYTES = 32*1024*1024;
+
+    /**
+     * If this percentage of the max JVM memory is used, the cache is trimmed.
+     */
+    private static final int MEMORY_PRESSURE_PERCENTAGE = 85;
+
+    /**
+     * Fraction of the max bytes the cache is trimmed to on memory pressure.
+     */
+    private static final int MEMORY_PRESSURE_TRIM_DIVISOR = 4;
+
+    private static final long MEMORY_CHECK_DELAY = 10*1000;
+
+    private static final DecodedImageCache INSTANCE = new DecodedImageCache(DEFAULT_MAX_BYTES);
+
+    public static DecodedImageCache get() {
+        return INSTANCE;
+    }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+
+    // Guarded by entries
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long pressureTrims;
+    private long lastMemoryCheck;
+
+    DecodedImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a new result for the given key, if the image is cached.
+     *
+     * @param key The key, as returned by
+     * {@link ImageCache.ImageRequest#getMemoryCacheKey()}
+     * @param expireTime Entries added longer ago than this number of seconds
+     * are not used (0 or lower for no expiration)
+     * @return A new ImageResult, or null if none is cached
+     */
+    public ImageResult get(String key, int expireTime) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && expireTime > 0
+                    && System.currentTimeMillis() - entry.created > expireTime*1000L) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return entry.createResult();
+    }
+
+    /**
+     * Add the given result, if it can be cached. Images that can't be safely
+     * recreated (e.g. animated GIFs loaded by the legacy loader) are not
+     * cached.
+     *
+     * @param key The key, as returned by
+     * {@link ImageCache.ImageRequest#getMemoryCacheKey()}
+     * @param result The loaded image
+     */
+    public void put(String key, ImageResult result) {
+        if (result == null || !result.isValidImage()) {
+            return;
+        }
+        Entry entry = Entry.create(result);
+        if (entry == null || entry.bytes > maxBytes / 4) {
+            return;
+        }
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += entry.bytes;
+            trim(maxBytes);
+            checkMemory();
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    public String getStats() {
+        synchronized (entries) {
+            long total = hits + misses;
+            return String.format(Locale.ROOT,
+                    "[DecodedImageCache] %d images, %,dKB/%,dKB, hits: %d/%d (%d%%), evictions: %d, memory trims: %d",
+                    entries.size(),
+                    bytes / 1024,
+                    maxBytes / 1024,
+                    hits,
+                    total,
+                    total > 0 ? hits*100 / total : 0,
+                    evictions,
+                    pressureTrims);
+        }
+    }
+
+    long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getEvictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    //==========================
+    // Internal (guarded by entries)
+    //==========================
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Remove least recently used entries until the given size is reached.
+     */
+    private void trim(long targetBytes) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > targetBytes && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void checkMemory() {
+        long now = System.currentTimeMillis();
+        if (now - lastMemoryCheck < MEMORY_CHECK_DELAY) {
+            return;
+        }
+        lastMemoryCheck = now;
+        if (LogUtil.getMemoryPercentageOfMax() > MEMORY_PRESSURE_PERCENTAGE) {
+            long before = bytes;
+            trim(maxBytes / MEMORY_PRESSURE_TRIM_DIVISOR);
+            pressureTrims++;
+            LOGGER.info(String.format(Locale.ROOT,
+                    "DecodedImageCache: Memory usage high, trimmed from %,dKB to %,dKB",
+                    before / 1024, bytes / 1024));
+        }
+    }
+
+    //==========================
+    // Entry
+    //==========================
+
+    private static class Entry {
+
+        private final BufferedImage staticImage;
+        private final AnimatedImage animatedImage;
+        private final Dimension actualBaseSize;
+        private final boolean loadedAsGif;
+        private final String description;
+        private final long bytes;
+        private final long created = System.currentTimeMillis();
+
+        private Entry(BufferedImage staticImage, AnimatedImage animatedImage,
+                ImageResult result, long bytes) {
+            this.staticImage = staticImage;
+            this.animatedImage = animatedImage;
+            this.actualBaseSize = result.actualBaseSize;
+            this.loadedAsGif = result.loadedAsGif;
+            this.description = result.icon.getDescription();
+            this.bytes = bytes;
+        }
+
+        /**
+         * Create an entry for the given result.
+         *
+         * @return The entry, or null if the image can't be cached
+         */
+        static Entry create(ImageResult result) {
+            Image image = result.icon.getImage();
+            if (image.getSource() instanceof AnimatedImageSource) {
+                AnimatedImage animated = ((AnimatedImageSource) image.getSource()).getAnimatedImage();
+                long bytes;
+                if (animated instanceof ListAnimatedImage) {
+                    bytes = ((ListAnimatedImage) animated).getCompressedSize();
+                }
+                else {
+                    Dimension size = animated.getSize();
+                    bytes = (long) size.width * size.height * 4 * animated.getFrameCount();
+                }
+                return new Entry(null, animated, result, bytes);
+            }
+            String desc = result.icon.getDescription();
+            if (result.loadedAsGif || (desc != null && desc.startsWith("GIF"))) {
+                // Probably an animated image that can't be recreated
+                return null;
+            }
+            int width = result.icon.getIconWidth();
+            int height = result.icon.getIconHeight();
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = copy.createGraphics();
+            g.drawImage(image, 0, 0, width, height, null);
+            g.dispose();
+            return new Entry(copy, null, result, (long) width * height * 4);
+        }
+
+        ImageResult createResult() {
+            Image image;
+            if (animatedImage != null) {
+                image = Toolkit.getDefaultToolkit().createImage(new AnimatedImageSource(animatedImage));
+            }
+            else {
+                image = Toolkit.getDefaultToolkit().createImage(staticImage.getSource());
+            }
+            ImageIcon icon = new ImageIcon(image);
+            icon.setDescription(description);
+            return new ImageResult(icon, new Dimension(actualBaseSize), loadedAsGif);
+        }
+
+    }
+
+}
@@ -9,23 +9,17 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -117,6 +111,7 @@ public class ImageCache {
      * @return The number of deleted files, or -1 if failed
      */
     public static int clearCache(String prefix) {
+        DecodedImageCache.get().clear();
         return clearCache(defaultPath, prefix);
     }
     
@@ -316,7 +311,12 @@ public class ImageCache {
      * 
      * <p>
      * Files that are considered local (protocol of "file" or "jar") are not
-     * cached.
+     * cached in files.
+     * </p>
+     * 
+     * <p>
+     * In front of the cache files, already decoded images are kept in memory
+     * by {@link DecodedImageCache}, which also applies the expire time.
      * </p>
      * 
      * <p>
@@ -332,13 +332,20 @@ public class ImageCache {
      * @return The ImageIcon or null if an error occured
      */
     public static ImageResult getImage(ImageRequest request, Path path, String prefix, int expireTime) {
+        String memoryKey = request.getMemoryCacheKey();
+        ImageResult fromMemory = DecodedImageCache.get().get(memoryKey, expireTime);
+        if (fromMemory != null) {
+            return fromMemory;
+        }
+        ImageResult result = null;
         if (cachingEnabled && !isLocalURL(request.requestedURL)) {
-            ImageResult image = getCachedImage(request, path, prefix, expireTime);
-            if (image != null) {
-                return image;
-            }
+            result = getCachedImage(request, path, prefix, expireTime);
         }
-        return getImageDirectly(request);
+        if (result == null) {
+            result = getImageDirectly(request);
+        }
+        DecodedImageCache.get().put(memoryKey, result);
+        return result;
     }
     
     /**
@@ -394,14 +401,7 @@ public class ImageCache {
         path = path.resolve(GLOBAL_PREFIX+prefix).resolve(id.substring(0, 1));
         path.toFile().mkdirs();
         Path file = path.resolve(getFilename(prefix, id));
-        ImageResult result = null;
-        
-        Object o = getLockObject(id);
-        synchronized(o) {
-            result = getCachedImage2(request, file, expireTime);
-        }
-        removeLockObject(id);
-        return result;
+        return getCachedImage2(request, file, expireTime);
     }
     
     private static ImageResult getCachedImage2(ImageRequest request, Path file, int expireTime) {
@@ -409,15 +409,20 @@ public class ImageCache {
         if (fromFile == null) {
             // The image was NOT read from file successfully
             //System.out.println("Loading image from server (cache not found)"+url);
-            if (saveFile(request.requestedURL, file)) {
+            /**
+             * The file may exist but couldn't be read (e.g. corrupt), so don't
+             * revalidate, since a "not modified" response would keep it.
+             */
+            if (saveFile(request.requestedURL, file, false) == ImageDownloader.Result.DOWNLOADED) {
                 fromFile = getImageFromFile(file, request);
             }
         } else {
             // The image was read from file successfully
             if (hasExpired(expireTime, file)) {
                 //System.out.println("Loading image from server (expired)"+url);
-                if (saveFile(request.requestedURL, file)) {
+                if (saveFile(request.requestedURL, file, true) == ImageDownloader.Result.DOWNLOADED) {
                     // Only use new image from file if it was saved successfully
+                    // (if not modified, the already loaded one is still current)
                     fromFile = getImageFromFile(file, request);
                 }
             }
@@ -438,19 +443,26 @@ public class ImageCache {
         return GLOBAL_PREFIX+prefix+"__"+id;
     }
     
-    private static boolean saveFile(URL url, Path file) {
-        try {
-            URLConnection c = url.openConnection();
-            try (InputStream is = c.getInputStream()) {
-                long written = Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
-                if (written > 0) {
-                    return true;
-                }
-            }
-        } catch (IOException ex) {
-            LOGGER.warning("Error saving " + url + " to " + file + ": " + ex);
-        }
-        return false;
+    /**
+     * Download the file, or revalidate it if it already exists. Downloads run
+     * in the {@link ImageDownloader}, which also prevents the same file from
+     * being downloaded by several threads at once.
+     * 
+     * <p>
+     * This waits for the download to finish, since the image is returned
+     * directly by {@link #getImage(ImageRequest, Path, String, int)}. That is
+     * intended, it's called from background threads (like the
+     * {@link ImageLoader} threads), not the EDT.
+     * </p>
+     * 
+     * @param url
+     * @param file
+     * @param revalidate Whether to use a conditional request if the file
+     * exists, should only be true if the existing file is valid
+     * @return 
+     */
+    private static ImageDownloader.Result saveFile(URL url, Path file, boolean revalidate) {
+        return ImageDownloader.get().download(url, file, revalidate).join();
     }
     
     private static ImageResult getImageFromFile(Path file, ImageRequest request) {
@@ -494,25 +506,6 @@ public class ImageCache {
                 || "jar".equalsIgnoreCase(url.getProtocol());
     }
     
-    private static final Map<String, Object> lockObjects = new HashMap<>();
-    
-    private static Object getLockObject(String file) {
-        synchronized(lockObjects) {
-            Object o = lockObjects.get(file);
-            if (o == null) {
-                o = new Object();
-                lockObjects.put(file, o);
-            }
-            return o;
-        }
-    }
-    
-    private static void removeLockObject(String file) {
-        synchronized(lockObjects) {
-            lockObjects.remove(file);
-        }
-    }
-    
     /**
      * Handles determining the scaled size and fitting URL for loading an image.
      */
@@ -592,6 +585,24 @@ public class ImageCache {
             this.defaultSize = forceDefaultAsBase ? defaultSize : null;
         }
         
+        /**
+         * The key for the in-memory cache, which includes everything that
+         * affects how the image is decoded and scaled.
+         * 
+         * @return 
+         */
+        public String getMemoryCacheKey() {
+            StringBuilder b = new StringBuilder();
+            b.append(requestedURL).append('|');
+            if (resize) {
+                b.append(scaleFactor).append('|').append(maxHeight);
+                if (defaultSize != null) {
+                    b.append('|').append(defaultSize.width).append('x').append(defaultSize.height);
+                }
+            }
+            return b.toString();
+        }
+        
         public void setCacheFile(Path file) throws MalformedURLException {
             this.cacheURL = file.toUri().toURL();
         }
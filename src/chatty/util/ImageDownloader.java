@@ -0,0 +1,315 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+/**
+ * Downloads image files for the {@link ImageCache} in background threads.
+ *
+ * <ul>
+ * <li>Downloads of the same URL to the same file that are already running are
+ * reused instead of starting another one.</li>
+ * <li>The ETag and Last-Modified headers of a download are stored next to the
+ * file, so when the file has expired it can be revalidated with a conditional
+ * request, which doesn't transfer the image again if it hasn't changed.</li>
+ * <li>The data is written to a temporary file first and then moved in place,
+ * so a partially written file is never read.</li>
+ * <li>The number of simultaneous downloads from the same host is limited.</li>
+ * </ul>
+ *
+ * <p>
+ * HTTP connections are made through the {@link SharedHttpClient}, which reuses
+ * connections and limits the connections per host.
+ * </p>
+ *
+ * @author tduva
+ */
+public class ImageDownloader {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageDownloader.class.getName());
+
+    private static final int THREADS = 8;
+
+    private static final int CONNECT_TIMEOUT = 20*1000;
+    private static final int READ_TIMEOUT = 30*1000;
+
+    /**
+     * Suffix for the file that stores the validators for a downloaded file.
+     */
+    private static final String META_SUFFIX = ".meta";
+
+    private static final ImageDownloader INSTANCE = new ImageDownloader();
+
+    public static ImageDownloader get() {
+        return INSTANCE;
+    }
+
+    public enum Result {
+        /**
+         * The file was downloaded and written.
+         */
+        DOWNLOADED,
+        /**
+         * The server confirmed the existing file is still current.
+         */
+        NOT_MODIFIED,
+        FAILED
+    }
+
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    private ImageDownloader() {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "ImageDownloader-"+count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Download the given URL to the given file. If the file already exists and
+     * validators were stored for it, a conditional request is made.
+     *
+     * @param url The URL to download
+     * @param file The target file
+     * @return A future that completes with the result, which may be shared
+     * with other callers requesting the same download
+     */
+    public CompletableFuture<Result> download(URL url, Path file) {
+        return download(url, file, true);
+    }
+
+    /**
+     * Download the given URL to the given file.
+     *
+     * @param url The URL to download
+     * @param file The target file
+     * @param revalidate If true and the file already exists and validators
+     * were stored for it, a conditional request is made, otherwise the file
+     * is always downloaded again (e.g. if the existing file couldn't be read)
+     * @return A future that completes with the result, which may be shared
+     * with other callers requesting the same download (the revalidate value
+     * of the request that started the download applies)
+     */
+    public CompletableFuture<Result> download(URL url, Path file, boolean revalidate) {
+        String key = url+" "+file;
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CompletableFuture<Result> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        executor.execute(() -> {
+            Result result = Result.FAILED;
+            try {
+                result = downloadNow(url, file, revalidate);
+            }
+            finally {
+                inFlight.remove(key);
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+
+    private static Result downloadNow(URL url, Path file, boolean revalidate) {
+        Path metaFile = getMetaFile(file);
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Result result;
+            Validators validators = null;
+            if (url.getProtocol().equals("http") || url.getProtocol().equals("https")) {
+                HttpResult httpResult = downloadHttp(url, file, metaFile, tempFile, revalidate);
+                result = httpResult.result;
+                validators = httpResult.validators;
+            }
+            else {
+                result = downloadOther(url, tempFile);
+            }
+            if (result == Result.DOWNLOADED) {
+                move(tempFile, file);
+                tempFile = null;
+                // Only after the move, so they always belong to the file
+                if (validators != null) {
+                    writeValidators(validators, metaFile);
+                }
+            }
+            return result;
+        }
+        catch (IOException | URISyntaxException ex) {
+            LOGGER.warning("Error saving " + url + " to " + file + ": " + ex);
+        }
+        finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                }
+                catch (IOException ex) {
+                    // Will eventually be removed as an expired cache file
+                }
+            }
+        }
+        return Result.FAILED;
+    }
+    
+    private static void writeValidators(Validators validators, Path metaFile) {
+        try {
+            validators.write(metaFile);
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error writing " + metaFile + ": " + ex);
+            try {
+                // Don't keep validators of a previous download
+                Files.deleteIfExists(metaFile);
+            }
+            catch (IOException ex2) {
+                // Without validators the file is just downloaded again
+            }
+        }
+    }
+    
+    private static HttpResult downloadHttp(URL url, Path file, Path metaFile, Path tempFile, boolean revalidate) throws IOException, URISyntaxException {
+        HttpGet request = new HttpGet(url.toURI());
+        if (revalidate && Files.exists(file)) {
+            Validators validators = Validators.read(metaFile);
+            if (validators.etag != null) {
+                request.setHeader("If-None-Match", validators.etag);
+            }
+            if (validators.lastModified != null) {
+                request.setHeader("If-Modified-Since", validators.lastModified);
+            }
+        }
+        return SharedHttpClient.execute(request, CONNECT_TIMEOUT, READ_TIMEOUT, (response, encoding) -> {
+            if (response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                // Mark as current, so it doesn't count as expired anymore
+                long now = System.currentTimeMillis();
+                file.toFile().setLastModified(now);
+                metaFile.toFile().setLastModified(now);
+                return new HttpResult(Result.NOT_MODIFIED, null);
+            }
+            HttpEntity entity = response.getEntity();
+            if (response.getCode() != HttpStatus.SC_OK || entity == null) {
+                EntityUtils.consume(entity);
+                LOGGER.warning("Error saving " + url + " to " + file + ": HTTP " + response.getCode());
+                return new HttpResult(Result.FAILED, null);
+            }
+            long written;
+            try (InputStream is = entity.getContent()) {
+                written = Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (written <= 0) {
+                return new HttpResult(Result.FAILED, null);
+            }
+            return new HttpResult(Result.DOWNLOADED, new Validators(
+                    SharedHttpClient.getHeader(response, "ETag"),
+                    SharedHttpClient.getHeader(response, "Last-Modified")));
+        });
+    }
+    
+    private static class HttpResult {
+        
+        final Result result;
+        final Validators validators;
+        
+        HttpResult(Result result, Validators validators) {
+            this.result = result;
+            this.validators = validators;
+        }
+        
+    }
+    
+    private static Result downloadOther(URL url, Path tempFile) throws IOException {
+        URLConnection c = url.openConnection();
+        c.setConnectTimeout(CONNECT_TIMEOUT);
+        c.setReadTimeout(READ_TIMEOUT);
+        long written;
+        try (InputStream is = c.getInputStream()) {
+            written = Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return written > 0 ? Result.DOWNLOADED : Result.FAILED;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The file that stores the validators. It starts with the name of the
+     * cache file, so it is removed together with it.
+     */
+    private static Path getMetaFile(Path file) {
+        return file.resolveSibling(file.getFileName().toString()+META_SUFFIX);
+    }
+
+    /**
+     * The ETag and Last-Modified values of a download, each can be null.
+     */
+    static class Validators {
+
+        final String etag;
+        final String lastModified;
+
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        static Validators read(Path metaFile) {
+            try {
+                List<String> lines = Files.readAllLines(metaFile, StandardCharsets.UTF_8);
+                return new Validators(
+                        getLine(lines, 0),
+                        getLine(lines, 1));
+            }
+            catch (IOException ex) {
+                return new Validators(null, null);
+            }
+        }
+
+        private static String getLine(List<String> lines, int index) {
+            if (lines.size() > index && !lines.get(index).isEmpty()) {
+                return lines.get(index);
+            }
+            return null;
+        }
+
+        void write(Path metaFile) throws IOException {
+            if (etag == null && lastModified == null) {
+                Files.deleteIfExists(metaFile);
+                return;
+            }
+            String data = (etag != null ? etag : "")+"\n"+(lastModified != null ? lastModified : "");
+            Files.write(metaFile, data.getBytes(StandardCharsets.UTF_8));
+        }
+
+    }
+
+}
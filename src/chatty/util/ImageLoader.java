@@ -0,0 +1,361 @@
+
+package chatty.util;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Loads images in a fixed number of background threads, with the order based
+ * on the priority of the request (images visible in chat first) and a limit on
+ * how many images may be loaded from the same host at the same time.
+ *
+ * <p>
+ * Requests that haven't started loading yet can have their priority changed or
+ * be cancelled (for example if they are not visible anymore). The results are
+ * handed to the EDT in batches, so that many images finishing at the same time
+ * don't each have to queue up on the EDT separately.
+ * </p>
+ *
+ * @author tduva
+ */
+public class ImageLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(ImageLoader.class.getName());
+
+    private static final int THREADS = 6;
+    private static final int MAX_PER_HOST = 4;
+
+    private static final ImageLoader INSTANCE = new ImageLoader(THREADS, MAX_PER_HOST);
+
+    /**
+     * The shared instance used for loading emotes, badges and other images.
+     *
+     * @return
+     */
+    public static ImageLoader get() {
+        return INSTANCE;
+    }
+
+    public enum Priority {
+        /**
+         * The image is visible (e.g. in the chat viewport).
+         */
+        VISIBLE,
+        /**
+         * The image is shown in a dialog (e.g. Emotes Dialog).
+         */
+        DIALOG,
+        /**
+         * The image may be needed later (e.g. a chat that isn't currently
+         * shown).
+         */
+        PREFETCH
+    }
+
+    private final Object LOCK = new Object();
+
+    /**
+     * Waiting tasks by host, sorted by priority and then by the order they
+     * were added.
+     */
+    private final Map<String, TreeSet<Task<?>>> queueByHost = new HashMap<>();
+
+    /**
+     * The tasks that can be started right away, sorted the same way. Contains
+     * the first task of each host that isn't at the limit and all tasks
+     * without a host.
+     */
+    private final TreeSet<Task<?>> ready = new TreeSet<>();
+
+    /**
+     * Number of currently loading tasks by host.
+     */
+    private final Map<String, Integer> runningByHost = new HashMap<>();
+
+    private final int maxPerHost;
+    private long counter;
+    private int queued;
+
+    private final Queue<Runnable> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean completedScheduled = new AtomicBoolean();
+
+    ImageLoader(int threads, int maxPerHost) {
+        this.maxPerHost = maxPerHost;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::work, "ImageLoader-"+i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Add an image to be loaded.
+     *
+     * @param <V> The type of the result
+     * @param url The URL the image is loaded from, used to limit loading from
+     * the same host (may be null)
+     * @param priority The initial priority
+     * @param loader Run in a background thread, loads the image
+     * @param done Run on the EDT with the result, or null if an error occured
+     * @return The task, which can be used to change the priority or cancel
+     */
+    public <V> Task<V> submit(String url, Priority priority, Callable<V> loader, Consumer<V> done) {
+        Task<V> task;
+        synchronized (LOCK) {
+            task = new Task<>(this, getHost(url), priority, counter++, loader, done);
+            enqueue(task);
+        }
+        return task;
+    }
+
+    /**
+     * Get the host of the given URL. Local files (e.g. Emoji in the jar) don't
+     * have a host, so they aren't limited.
+     *
+     * @param url
+     * @return The host, or null if none could be determined
+     */
+    private static String getHost(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            return new URI(url).getHost();
+        }
+        catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Task<?> task;
+            try {
+                task = take();
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            try {
+                task.run();
+            }
+            finally {
+                release(task);
+            }
+        }
+    }
+
+    /**
+     * Take the highest priority task whose host isn't at the limit yet,
+     * waiting until one is available.
+     */
+    private Task<?> take() throws InterruptedException {
+        synchronized (LOCK) {
+            while (ready.isEmpty()) {
+                LOCK.wait();
+            }
+            Task<?> task = ready.first();
+            dequeue(task);
+            task.started = true;
+            if (task.host != null) {
+                runningByHost.merge(task.host, 1, Integer::sum);
+                updateReady(task.host);
+            }
+            return task;
+        }
+    }
+
+    private void release(Task<?> task) {
+        synchronized (LOCK) {
+            if (task.host != null) {
+                runningByHost.computeIfPresent(task.host, (k, v) -> v > 1 ? v - 1 : null);
+                updateReady(task.host);
+            }
+        }
+    }
+
+    //=================
+    // Queue (in LOCK)
+    //=================
+
+    private void enqueue(Task<?> task) {
+        queued++;
+        if (task.host == null) {
+            ready.add(task);
+            LOCK.notifyAll();
+        }
+        else {
+            TreeSet<Task<?>> hostQueue = queueByHost.computeIfAbsent(task.host, k -> new TreeSet<>());
+            if (!hostQueue.isEmpty()) {
+                ready.remove(hostQueue.first());
+            }
+            hostQueue.add(task);
+            updateReady(task.host);
+        }
+    }
+
+    private void dequeue(Task<?> task) {
+        queued--;
+        ready.remove(task);
+        if (task.host != null) {
+            TreeSet<Task<?>> hostQueue = queueByHost.get(task.host);
+            hostQueue.remove(task);
+            if (hostQueue.isEmpty()) {
+                queueByHost.remove(task.host);
+            }
+            else {
+                updateReady(task.host);
+            }
+        }
+    }
+
+    /**
+     * Make the first task of the given host ready (if it isn't at the limit)
+     * or not ready (if it is).
+     */
+    private void updateReady(String host) {
+        TreeSet<Task<?>> hostQueue = queueByHost.get(host);
+        if (hostQueue == null) {
+            return;
+        }
+        Task<?> first = hostQueue.first();
+        if (runningByHost.getOrDefault(host, 0) < maxPerHost) {
+            if (ready.add(first)) {
+                LOCK.notifyAll();
+            }
+        }
+        else {
+            ready.remove(first);
+        }
+    }
+
+    /**
+     * Run the given result handler on the EDT, together with other handlers
+     * that are added before the EDT gets to them.
+     */
+    private void complete(Runnable runnable) {
+        completed.add(runnable);
+        if (completedScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                completedScheduled.set(false);
+                Runnable r;
+                while ((r = completed.poll()) != null) {
+                    try {
+                        r.run();
+                    }
+                    catch (Exception ex) {
+                        LOGGER.warning("Error handling loaded image: "+ex);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Number of tasks waiting to be loaded.
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        synchronized (LOCK) {
+            return queued;
+        }
+    }
+
+    /**
+     * A single image loading request.
+     *
+     * @param <V> The type of the result
+     */
+    public static class Task<V> implements Comparable<Task<?>> {
+
+        private final ImageLoader loader;
+        private final String host;
+        private final long id;
+        private final Callable<V> load;
+        private final Consumer<V> done;
+
+        // Guarded by loader.LOCK
+        private Priority priority;
+        private boolean started;
+        private boolean cancelled;
+
+        private Task(ImageLoader loader, String host, Priority priority, long id, Callable<V> load, Consumer<V> done) {
+            this.loader = loader;
+            this.host = host;
+            this.priority = priority;
+            this.id = id;
+            this.load = load;
+            this.done = done;
+        }
+
+        private void run() {
+            V result = null;
+            try {
+                result = load.call();
+            }
+            catch (Throwable ex) {
+                // Also Errors, e.g. running out of memory for a huge image,
+                // so the worker thread keeps running
+                LOGGER.log(Level.WARNING, "Unexpected error when loading image", ex);
+            }
+            V finalResult = result;
+            loader.complete(() -> done.accept(finalResult));
+        }
+
+        /**
+         * Change the priority, if the task hasn't started yet.
+         *
+         * @param priority The new priority
+         */
+        public void setPriority(Priority priority) {
+            synchronized (loader.LOCK) {
+                if (!started && !cancelled && this.priority != priority) {
+                    loader.dequeue(this);
+                    this.priority = priority;
+                    loader.enqueue(this);
+                }
+            }
+        }
+
+        /**
+         * Remove the task from the queue, if it hasn't started yet. The result
+         * handler will not be called in that case.
+         *
+         * @return true if the task was cancelled, false if it already started
+         */
+        public boolean cancel() {
+            synchronized (loader.LOCK) {
+                if (!started) {
+                    if (!cancelled) {
+                        cancelled = true;
+                        loader.dequeue(this);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> o) {
+            int result = priority.compareTo(o.priority);
+            if (result == 0) {
+                result = Long.compare(id, o.id);
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,548 @@
+
+package chatty.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull-based JSON reader that reads tokens directly from a {@link Reader},
+ * so that large responses can be turned into the target objects without
+ * first reading the whole text into a String and building a tree of
+ * JSONObjects.
+ *
+ * <p>
+ * Objects and arrays are entered and left explicitly, values that aren't
+ * needed can be skipped with {@link #skipValue()}:
+ * </p>
+ *
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     if (name.equals("id")) {
+ *         id = reader.nextString();
+ *     }
+ *     else {
+ *         reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();
+ * </pre>
+ *
+ * <p>
+ * Syntax errors or calling a method that doesn't match the next token throw
+ * an IOException.
+ * </p>
+ *
+ * @author tduva
+ */
+public class JsonReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING,
+        NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // Scopes
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    /**
+     * Name has been read, but not the value.
+     */
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    /**
+     * The token that has been peeked, but not consumed yet, or null.
+     */
+    private Token peeked;
+    private boolean peekedBoolean;
+    private String peekedNumber;
+
+    private final StringBuilder b = new StringBuilder();
+
+    public JsonReader(Reader in) {
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    //=========
+    // Tokens
+    //=========
+
+    /**
+     * Get the type of the next token, without consuming it.
+     *
+     * @return The token type
+     * @throws IOException If reading failed or the JSON is invalid
+     */
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    private Token doPeek() throws IOException {
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[stackSize - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c == '}') {
+                        return Token.END_OBJECT;
+                    }
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                else if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected name");
+                }
+                return Token.NAME;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                break;
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (!skipWhitespace()) {
+                    return Token.END_DOCUMENT;
+                }
+                throw syntaxError("Expected end of document");
+        }
+        c = nextNonWhitespace();
+        switch (c) {
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    return Token.END_ARRAY;
+                }
+                throw syntaxError("Unexpected ']'");
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                readLiteral("alse");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                readLiteral("ull");
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    peekedNumber = readNumber((char) c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '"+(char) c+"'");
+        }
+    }
+
+    private void expect(Token token) throws IOException {
+        if (peek() != token) {
+            throw syntaxError("Expected "+token+" but was "+peeked);
+        }
+        peeked = null;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * Whether the current object or array has another element.
+     *
+     * @return true if there is another name or value
+     * @throws IOException If reading failed or the JSON is invalid
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY
+                && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Read a string value. Numbers are returned as their text.
+     *
+     * @return The string
+     * @throws IOException If the next token isn't a string or number, or
+     * reading failed
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return peekedNumber;
+        }
+        expect(Token.STRING);
+        return readString();
+    }
+
+    /**
+     * Read a string value, or {@code null} if the value is null.
+     *
+     * @return The string or null
+     * @throws IOException If the next token isn't a string, number or null,
+     * or reading failed
+     */
+    public String nextStringOrNull() throws IOException {
+        if (peek() == Token.NULL) {
+            peeked = null;
+            return null;
+        }
+        return nextString();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedBoolean;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    public double nextDouble() throws IOException {
+        return parseNumber(nextNumberText());
+    }
+
+    public long nextLong() throws IOException {
+        String text = nextNumberText();
+        try {
+            return Long.parseLong(text);
+        }
+        catch (NumberFormatException ex) {
+            return (long) parseNumber(text);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    /**
+     * The number as text, numbers stored in strings are accepted as well.
+     */
+    private String nextNumberText() throws IOException {
+        if (peek() == Token.STRING) {
+            peeked = null;
+            return readString();
+        }
+        expect(Token.NUMBER);
+        return peekedNumber;
+    }
+
+    private double parseNumber(String text) throws IOException {
+        try {
+            return Double.parseDouble(text);
+        }
+        catch (NumberFormatException ex) {
+            throw syntaxError("Invalid number '"+text+"'");
+        }
+    }
+
+    /**
+     * The number of objects and arrays that have been begun, but not ended
+     * yet.
+     *
+     * @return The depth, 0 on the top level
+     */
+    public int getDepth() {
+        return stackSize - 1;
+    }
+
+    /**
+     * Skip the rest of the current objects and arrays until the given depth is
+     * reached again. This can be used to continue after an unexpected value
+     * inside of an object, which doesn't consume the value. If the JSON itself
+     * is broken, this will throw an exception as well.
+     *
+     * @param depth The depth, as returned by {@link #getDepth()} before
+     * beginning the object or array
+     * @throws IOException If reading failed or the JSON is invalid
+     */
+    public void skipToDepth(int depth) throws IOException {
+        while (getDepth() > depth) {
+            switch (peek()) {
+                case END_OBJECT:
+                    endObject();
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    skipValue();
+            }
+        }
+    }
+
+    /**
+     * Skip the next value, including all nested values if it's an object or
+     * array. If the next token is a name, both name and value are skipped.
+     *
+     * @throws IOException If reading failed or the JSON is invalid
+     */
+    public void skipValue() throws IOException {
+        if (peek() == Token.NAME) {
+            peeked = null;
+            skipString();
+        }
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    skipString();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    peeked = null;
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    //==========
+    // Reading
+    //==========
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private boolean fill() throws IOException {
+        limit = in.read(buffer, 0, buffer.length);
+        pos = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * Skip whitespace.
+     *
+     * @return true if there is a non-whitespace character left
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return true;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        if (!skipWhitespace()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++];
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw syntaxError("Invalid literal");
+            }
+        }
+    }
+
+    private String readNumber(char first) throws IOException {
+        b.setLength(0);
+        b.append(first);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E'
+                    || c == '-' || c == '+') {
+                b.append(c);
+                pos++;
+            }
+            else {
+                break;
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Read the rest of a string, after the opening quote.
+     */
+    private String readString() throws IOException {
+        b.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            // Copy chunks without special characters at once
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"') {
+                    b.append(buffer, start, pos - start);
+                    pos++;
+                    return b.toString();
+                }
+                if (c == '\\') {
+                    b.append(buffer, start, pos - start);
+                    pos++;
+                    b.append(readEscape());
+                    start = pos;
+                }
+                else {
+                    pos++;
+                }
+            }
+            b.append(buffer, start, pos - start);
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readEscape();
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int result = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    result = result * 16 + digit;
+                }
+                return (char) result;
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape");
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("JSON: "+message);
+    }
+
+}
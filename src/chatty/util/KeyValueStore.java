@@ -0,0 +1,720 @@
+
+package chatty.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A simple persistent key/value store with string keys and values.
+ *
+ * <p>
+ * The file is append-only: each put or remove adds a record at the end, and
+ * an in-memory index stores where the current record for each key is (the
+ * values themselves are only read from the file when requested). Outdated
+ * records are removed by compacting the file in the background, once they
+ * take up more space than the current ones.
+ * </p>
+ *
+ * <p>
+ * Each entry has an expiry time, after which it isn't returned anymore and
+ * removed on the next compaction.
+ * </p>
+ *
+ * <p>
+ * The file is only opened and indexed on first access, or in the background
+ * with {@link #loadAsync()}. A record that was only partially written (e.g.
+ * the program was closed at that moment) is detected by its checksum and
+ * removed.
+ * </p>
+ *
+ * <p>
+ * Callers that shouldn't wait for the file (e.g. because they hold other
+ * locks or run on the EDT) can use {@link #getIfLoaded(String)},
+ * {@link #putAsync(String, String, long, long)} and
+ * {@link #removeAsync(String)}.
+ * </p>
+ *
+ * <p>
+ * Record format: int body length, int CRC32 of body, body (byte type, long
+ * timestamp, long expires, UTF key, int value length, value bytes).
+ * </p>
+ *
+ * @author tduva
+ */
+public class KeyValueStore {
+
+    private static final Logger LOGGER = Logger.getLogger(KeyValueStore.class.getName());
+
+    private static final byte[] MAGIC = "CKV1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte TYPE_PUT = 0;
+    private static final byte TYPE_REMOVE = 1;
+
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * Maximum length of a record body, anything larger is considered corrupt.
+     */
+    private static final int MAX_RECORD = 16*1024*1024;
+
+    /**
+     * Minimum size of outdated records before compacting.
+     */
+    private static final long MIN_GARBAGE = 256*1024;
+
+    /**
+     * Performs loading, asynchronous writes and compacting, in the order they
+     * were added.
+     */
+    private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "KeyValueStore");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Path file;
+    private final Map<String, IndexEntry> index = new HashMap<>();
+    private final Object compactLock = new Object();
+
+    /**
+     * Keys with an asynchronous remove that hasn't been performed yet (and
+     * how many), so they aren't returned anymore in the meantime.
+     */
+    private final Map<String, Integer> pendingRemoves = new ConcurrentHashMap<>();
+
+    private FileChannel channel;
+    /**
+     * Also read without holding the lock, to check if the file has been
+     * loaded yet.
+     */
+    private volatile boolean loaded;
+    private boolean failed;
+    private long end;
+    private long liveBytes;
+    private boolean compactionPending;
+
+    public KeyValueStore(Path file) {
+        this.file = file;
+    }
+
+    private static class IndexEntry {
+
+        /**
+         * Position of the record (including the record header).
+         */
+        private final long offset;
+        private final int length;
+        private final long expires;
+
+        IndexEntry(long offset, int length, long expires) {
+            this.offset = offset;
+            this.length = length;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return expires <= now;
+        }
+
+        IndexEntry moved(long offset) {
+            return new IndexEntry(offset, length, expires);
+        }
+
+    }
+
+    public static class Entry {
+
+        public final String value;
+        public final long timestamp;
+        public final long expires;
+
+        private Entry(String value, long timestamp, long expires) {
+            this.value = value;
+            this.timestamp = timestamp;
+            this.expires = expires;
+        }
+
+    }
+
+    //=================
+    // Public Methods
+    //=================
+
+    /**
+     * Get the entry for the given key.
+     *
+     * @param key The key
+     * @return The entry, or null if none exists, it is expired or an error
+     * occured
+     */
+    public synchronized Entry get(String key) {
+        if (!load()) {
+            return null;
+        }
+        IndexEntry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            removeFromIndex(key);
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            readFully(channel, buffer, entry.offset);
+            buffer.flip();
+            Record record = Record.parse(buffer);
+            if (record != null && record.key.equals(key)) {
+                return new Entry(record.value, record.timestamp, record.expires);
+            }
+            LOGGER.warning("Invalid record in "+file+" for "+key);
+            removeFromIndex(key);
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error reading "+file+": "+ex);
+        }
+        return null;
+    }
+
+    /**
+     * Get the entry for the given key, but only if the file has already been
+     * loaded, so this doesn't wait for the file to be indexed.
+     *
+     * @param key The key
+     * @return The entry, or null if none exists, it is expired, an error
+     * occured or the file isn't loaded yet
+     * @see #loadAsync()
+     */
+    public Entry getIfLoaded(String key) {
+        if (!loaded || pendingRemoves.containsKey(key)) {
+            return null;
+        }
+        return get(key);
+    }
+
+    /**
+     * Add or replace the entry for the given key.
+     *
+     * @param key The key
+     * @param value The value
+     * @param timestamp A timestamp that is stored with the value (e.g. when it
+     * was retrieved)
+     * @param expires When the entry expires (in System.currentTimeMillis()
+     * time)
+     */
+    public synchronized void put(String key, String value, long timestamp, long expires) {
+        if (!load()) {
+            return;
+        }
+        try {
+            byte[] record = Record.create(TYPE_PUT, key, value, timestamp, expires);
+            long offset = append(record);
+            removeFromIndex(key);
+            index.put(key, new IndexEntry(offset, record.length, expires));
+            liveBytes += record.length;
+            checkCompact();
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error writing "+file+": "+ex);
+        }
+    }
+
+    /**
+     * Same as {@link #put(String, String, long, long)}, but performed on the
+     * background thread.
+     *
+     * @param key The key
+     * @param value The value
+     * @param timestamp A timestamp that is stored with the value
+     * @param expires When the entry expires
+     */
+    public void putAsync(String key, String value, long timestamp, long expires) {
+        BACKGROUND.execute(() -> put(key, value, timestamp, expires));
+    }
+
+    /**
+     * Same as {@link #remove(String)}, but performed on the background
+     * thread.
+     *
+     * @param key The key
+     */
+    public void removeAsync(String key) {
+        pendingRemoves.merge(key, 1, Integer::sum);
+        BACKGROUND.execute(() -> {
+            try {
+                remove(key);
+            }
+            finally {
+                pendingRemoves.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null);
+            }
+        });
+    }
+
+    public synchronized void remove(String key) {
+        if (!load() || !index.containsKey(key)) {
+            return;
+        }
+        try {
+            append(Record.create(TYPE_REMOVE, key, null, 0, 0));
+            removeFromIndex(key);
+            checkCompact();
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error writing "+file+": "+ex);
+        }
+    }
+
+    /**
+     * The number of entries, which may include expired ones.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        load();
+        return index.size();
+    }
+
+    /**
+     * Close the file, after asynchronous writes that have already been added
+     * are performed. It is opened again on the next access.
+     */
+    public void close() {
+        waitForBackground();
+        synchronized (this) {
+            closeInternal();
+        }
+    }
+
+    private void closeInternal() {
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException ex) {
+                LOGGER.warning("Error closing "+file+": "+ex);
+            }
+            channel = null;
+        }
+        loaded = false;
+        index.clear();
+    }
+
+    /**
+     * Wait until the tasks added to the background thread so far are done.
+     */
+    void waitForBackground() {
+        try {
+            BACKGROUND.submit(() -> {}).get();
+        }
+        catch (InterruptedException | ExecutionException ex) {
+            LOGGER.warning("Error waiting for "+file+": "+ex);
+        }
+    }
+
+    //=========
+    // Loading
+    //=========
+
+    /**
+     * Open and index the file on the background thread, if not already done,
+     * so that it is ready when it is first needed.
+     */
+    public void loadAsync() {
+        BACKGROUND.execute(() -> {
+            synchronized (this) {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Open the file and read the index, if not already done.
+     *
+     * @return true if the store can be used
+     */
+    private boolean load() {
+        if (loaded) {
+            return true;
+        }
+        if (failed) {
+            return false;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            // Left over if the program was closed during compacting
+            if (Files.deleteIfExists(getTempFile())) {
+                LOGGER.info("Removed unfinished compacted file for "+file);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear();
+            liveBytes = 0;
+            end = readIndex(channel, index);
+            if (end < channel.size()) {
+                LOGGER.warning(String.format("Removing %d invalid bytes from %s",
+                        channel.size() - end, file));
+                channel.truncate(end);
+            }
+            long now = System.currentTimeMillis();
+            Iterator<IndexEntry> it = index.values().iterator();
+            while (it.hasNext()) {
+                IndexEntry entry = it.next();
+                if (entry.isExpired(now)) {
+                    it.remove();
+                }
+                else {
+                    liveBytes += entry.length;
+                }
+            }
+            loaded = true;
+            LOGGER.info(String.format("Loaded %s (%d entries, %d/%d bytes used)",
+                    file, index.size(), liveBytes, end));
+            checkCompact();
+            return true;
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error loading "+file+": "+ex);
+            failed = true;
+            closeInternal();
+            return false;
+        }
+    }
+
+    /**
+     * Read all valid records of the file into the index.
+     *
+     * @return The position after the last valid record
+     */
+    private static long readIndex(FileChannel channel, Map<String, IndexEntry> index) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            channel.write(ByteBuffer.wrap(MAGIC), 0);
+            return MAGIC.length;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        if (size < MAGIC.length
+                || !readFully(channel, magic, 0)
+                || !ByteBuffer.wrap(MAGIC).equals(magic.flip())) {
+            throw new IOException("Invalid file format");
+        }
+        long pos = MAGIC.length;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (pos < size) {
+            header.clear();
+            if (!readFully(channel, header, pos)) {
+                break;
+            }
+            header.flip();
+            int bodyLength = header.getInt();
+            if (bodyLength <= 0 || bodyLength > MAX_RECORD || pos + RECORD_HEADER + bodyLength > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + bodyLength);
+            readFully(channel, record, pos);
+            record.flip();
+            Record parsed = Record.parse(record);
+            if (parsed == null) {
+                break;
+            }
+            if (parsed.type == TYPE_PUT) {
+                index.put(parsed.key, new IndexEntry(pos, RECORD_HEADER + bodyLength, parsed.expires));
+            }
+            else {
+                index.remove(parsed.key);
+            }
+            pos += RECORD_HEADER + bodyLength;
+        }
+        return pos;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long append(byte[] record) throws IOException {
+        long offset = end;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        end += record.length;
+        return offset;
+    }
+
+    private void removeFromIndex(String key) {
+        IndexEntry removed = index.remove(key);
+        if (removed != null) {
+            liveBytes -= removed.length;
+        }
+    }
+
+    //============
+    // Compacting
+    //============
+
+    private void checkCompact() {
+        long garbage = end - MAGIC.length - liveBytes;
+        if (!compactionPending && garbage > MIN_GARBAGE && garbage > liveBytes) {
+            compactionPending = true;
+            BACKGROUND.execute(() -> {
+                try {
+                    compact();
+                }
+                catch (IOException ex) {
+                    LOGGER.warning("Error compacting "+file+": "+ex);
+                }
+                finally {
+                    synchronized (this) {
+                        compactionPending = false;
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrite the file with only the current records. Most of the copying
+     * happens without holding the lock, records added in the meantime are
+     * copied afterwards. The temporary file is always removed when done.
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        // Only one compaction at a time, since they use the same temp file
+        synchronized (compactLock) {
+            compactInternal();
+        }
+    }
+
+    private void compactInternal() throws IOException {
+        Map<String, IndexEntry> snapshot;
+        long snapshotEnd;
+        FileChannel source;
+        synchronized (this) {
+            if (!load()) {
+                return;
+            }
+            snapshot = new HashMap<>(index);
+            snapshotEnd = end;
+            source = channel;
+        }
+        Path temp = getTempFile();
+        long now = System.currentTimeMillis();
+        Map<String, IndexEntry> newIndex = new HashMap<>();
+        try {
+            long pos;
+            try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                pos = target.write(ByteBuffer.wrap(MAGIC));
+                for (Map.Entry<String, IndexEntry> entry : snapshot.entrySet()) {
+                    IndexEntry e = entry.getValue();
+                    if (e.isExpired(now)) {
+                        continue;
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(e.length);
+                    readFully(source, buffer, e.offset);
+                    buffer.flip();
+                    newIndex.put(entry.getKey(), e.moved(pos));
+                    while (buffer.hasRemaining()) {
+                        pos += target.write(buffer, pos);
+                    }
+                }
+            }
+            synchronized (this) {
+                if (channel != source) {
+                    // Closed in the meantime (temp file removed in finally)
+                    return;
+                }
+                // Copy records that were added in the meantime
+                long tailStart = pos;
+                long tailLength = end - snapshotEnd;
+                try (FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    if (tailLength > 0) {
+                        pos += channel.transferTo(snapshotEnd, tailLength, target.position(pos));
+                    }
+                    target.force(false);
+                }
+                long newLiveBytes = 0;
+                Map<String, IndexEntry> updated = new HashMap<>();
+                for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                    IndexEntry e = entry.getValue();
+                    IndexEntry moved;
+                    if (e.offset >= snapshotEnd) {
+                        moved = e.moved(e.offset - snapshotEnd + tailStart);
+                    }
+                    else {
+                        moved = newIndex.get(entry.getKey());
+                    }
+                    if (moved != null) {
+                        updated.put(entry.getKey(), moved);
+                        newLiveBytes += moved.length;
+                    }
+                }
+                // Can't be moved while open on some systems
+                channel.close();
+                try {
+                    move(temp, file);
+                }
+                catch (IOException ex) {
+                    // Old file (with the old index still valid)
+                    reopen();
+                    throw ex;
+                }
+                reopen();
+                index.clear();
+                index.putAll(updated);
+                LOGGER.info(String.format("Compacted %s (%d -> %d bytes)", file, end, pos));
+                end = pos;
+                liveBytes = newLiveBytes;
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Open the file again after compacting. If that fails the store can't be
+     * used anymore, since the index may not fit whatever file is there now.
+     *
+     * @throws IOException
+     */
+    private void reopen() throws IOException {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error reopening "+file+", disabling store: "+ex);
+            channel = null;
+            failed = true;
+            closeInternal();
+            throw ex;
+        }
+    }
+
+    private Path getTempFile() {
+        return file.resolveSibling(file.getFileName()+".tmp");
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //=========
+    // Records
+    //=========
+
+    private static class Record {
+
+        private final byte type;
+        private final String key;
+        private final String value;
+        private final long timestamp;
+        private final long expires;
+
+        private Record(byte type, String key, String value, long timestamp, long expires) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+            this.timestamp = timestamp;
+            this.expires = expires;
+        }
+
+        static byte[] create(byte type, String key, String value, long timestamp, long expires) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeByte(type);
+            out.writeLong(timestamp);
+            out.writeLong(expires);
+            out.writeUTF(key);
+            if (value != null) {
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(valueBytes.length);
+                out.write(valueBytes);
+            }
+            else {
+                out.writeInt(-1);
+            }
+            byte[] bodyBytes = body.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bodyBytes);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + bodyBytes.length);
+            record.putInt(bodyBytes.length);
+            record.putInt((int) crc.getValue());
+            record.put(bodyBytes);
+            return record.array();
+        }
+
+        /**
+         * Parse a complete record (including header).
+         *
+         * @param buffer The buffer, positioned at the start of the record
+         * @return The record, or null if it is invalid
+         */
+        static Record parse(ByteBuffer buffer) {
+            try {
+                int length = buffer.getInt();
+                int crcValue = buffer.getInt();
+                if (length != buffer.remaining()) {
+                    return null;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                if ((int) crc.getValue() != crcValue) {
+                    return null;
+                }
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                        buffer.array(), buffer.arrayOffset() + buffer.position(), length));
+                byte type = in.readByte();
+                long timestamp = in.readLong();
+                long expires = in.readLong();
+                String key = in.readUTF();
+                int valueLength = in.readInt();
+                String value = null;
+                if (valueLength >= 0) {
+                    byte[] valueBytes = new byte[valueLength];
+                    in.readFully(valueBytes);
+                    value = new String(valueBytes, StandardCharsets.UTF_8);
+                }
+                return new Record(type, key, value, timestamp, expires);
+            }
+            catch (RuntimeException | IOException ex) {
+                return null;
+            }
+        }
+
+    }
+
+}
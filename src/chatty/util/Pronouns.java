@@ -75,8 +75,9 @@ public class Pronouns {
                     }
                 });
             }
-        }, "[Pronouns] ", CachedBulkManager.DAEMON | CachedBulkManager.UNIQUE);
+        }, "[Pronouns] ", CachedBulkManager.UNIQUE);
         
+        data.setBatchSize("pronouns/users", 1);
         data.setCacheTimes(1, 14, TimeUnit.DAYS);
         data.loadCacheFromFile(CACHE_FILE2, input -> {
             String[] split = input.split(",", 2);
@@ -3,6 +3,7 @@ package chatty.util;
 
 import chatty.Chatty;
 import chatty.TwitchConnection;
+import chatty.util.chatlog.StructuredLog;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -248,6 +249,44 @@ public class RawMessageTest {
         return null;
     }
     
+    /**
+     * Replay a structured log file (see {@link StructuredLog}), keeping the
+     * time between messages (but at most one second).
+     * 
+     * @param c The connection to simulate the messages on
+     * @param filename The file, relative to the log directory
+     */
+    public static void simulateLogFile(TwitchConnection c, String filename) {
+        new Thread("SimulateLogFile") {
+
+            @Override
+            public void run() {
+                Path file = Chatty.getPath(Chatty.PathType.LOGS).resolve(filename);
+                long[] prevTime = new long[]{-1};
+                try {
+                    StructuredLog.read(file, record -> {
+                        if (prevTime[0] != -1) {
+                            long delay = Math.min(record.time - prevTime[0], 1000);
+                            if (delay > 0) {
+                                try {
+                                    Thread.sleep(delay);
+                                } catch (InterruptedException ex) {
+                                    return false;
+                                }
+                            }
+                        }
+                        prevTime[0] = record.time;
+                        c.simulate(record.raw);
+                        return true;
+                    });
+                } catch (IOException ex) {
+                    Logger.getLogger(RawMessageTest.class.getName()).warning("Error reading "+file+": "+ex);
+                }
+            }
+
+        }.start();
+    }
+    
     /**
      * Read a bunch of raw IRC messages from a file and simulate on a randomized
      * delay.
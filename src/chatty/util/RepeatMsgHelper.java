@@ -15,6 +15,12 @@ import chatty.util.settings.Settings;
 public class RepeatMsgHelper {
     
     private static final String TAGS_KEY = "chatty-repeatmsg-count";
+    
+    /**
+     * Number of message signatures kept, so that the same recent messages
+     * don't have to be prepared again for every check.
+     */
+    private static final int SIGNATURE_CACHE_SIZE = 2000;
 
     private final Settings settings;
     
@@ -25,6 +31,7 @@ public class RepeatMsgHelper {
     private float minSim;
     private int method;
     private char[] ignoredChars;
+    private BigramSignature.Cache signatures;
     
     public RepeatMsgHelper(Settings settings) {
         this.settings = settings;
@@ -56,7 +63,7 @@ public class RepeatMsgHelper {
         if (!matcher.matches(Highlighter.HighlightItem.Type.REGULAR, text, user, localUser, tags)) {
             return tags;
         }
-        int repCount = user.getNumberOfSimilarChatMessages(text, method, time, minSim, minLen, ignoredChars) + 1;
+        int repCount = user.getNumberOfSimilarChatMessages(text, method, time, minSim, minLen, signatures) + 1;
         if (repCount >= minRep) {
             // Plus one count to include the current message
             return MsgTags.addTag(tags, TAGS_KEY, String.valueOf(repCount));
@@ -110,9 +117,11 @@ public class RepeatMsgHelper {
             if (ignoredChars.length == 0) {
                 ignoredChars = null;
             }
+            signatures = new BigramSignature.Cache(SIGNATURE_CACHE_SIZE, ignoredChars);
         }
         else {
             matcher = null;
+            signatures = null;
         }
     }
     
@@ -33,7 +33,7 @@ public class RetryManager {
                 }
             }
         }
-    }, "[RetryManager] ", CachedBulkManager.DAEMON | ASAP);
+    }, "[RetryManager] ", ASAP);
     
     private final Map<Object, Consumer<Object>> requests = new HashMap<>();
     
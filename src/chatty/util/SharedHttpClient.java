@@ -0,0 +1,313 @@
+
+package chatty.util;
+
+import chatty.Chatty;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * A single HTTP client shared by all requests (API, emotes, images), so that
+ * connections are kept alive and reused.
+ *
+ * <ul>
+ * <li>Connections are pooled, with a limit of connections per host (further
+ * requests to the same host wait for a connection to become free) and in
+ * total.</li>
+ * <li>Responses are requested compressed and transparently decompressed.</li>
+ * <li>The time until the response headers were received and until the
+ * response was handled completely is recorded per host.</li>
+ * </ul>
+ *
+ * @author tduva
+ */
+public class SharedHttpClient {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedHttpClient.class.getName());
+
+    public static final String USER_AGENT = "Chatty "+Chatty.VERSION;
+
+    private static final int MAX_TOTAL = 40;
+    private static final int MAX_PER_HOST = 6;
+
+    /**
+     * Threads for performing async requests.
+     */
+    private static final int THREADS = 12;
+
+    /**
+     * How long a connection may stay unused in the pool before it's closed.
+     */
+    private static final long IDLE_TIMEOUT = 60;
+
+    /**
+     * Context attribute for the Content-Encoding of the response, which is
+     * removed from the response when it is decompressed.
+     */
+    private static final String ENCODING_ATTRIBUTE = "chatty.content-encoding";
+
+    private static PoolingHttpClientConnectionManager manager;
+    private static CloseableHttpClient client;
+    private static ExecutorService executor;
+    private static ExecutorService callbackExecutor;
+
+    private static final Map<String, HostStats> stats = new TreeMap<>();
+
+    private static synchronized CloseableHttpClient getClient() {
+        if (client == null) {
+            // System properties for proxy and SSLContext (which may have been
+            // changed by SSLUtil)
+            manager = PoolingHttpClientConnectionManagerBuilder.create()
+                    .useSystemProperties()
+                    .setMaxConnTotal(MAX_TOTAL)
+                    .setMaxConnPerRoute(MAX_PER_HOST)
+                    .setValidateAfterInactivity(TimeValue.ofSeconds(10))
+                    .build();
+            client = HttpClientBuilder.create()
+                    .useSystemProperties()
+                    .setConnectionManager(manager)
+                    .setUserAgent(USER_AGENT)
+                    .disableCookieManagement()
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofSeconds(IDLE_TIMEOUT))
+                    .addResponseInterceptorFirst((response, entity, context) -> {
+                        Header encoding = response.getFirstHeader("Content-Encoding");
+                        if (encoding != null) {
+                            context.setAttribute(ENCODING_ATTRIBUTE, encoding.getValue());
+                        }
+                    })
+                    .build();
+            LOGGER.info("Created shared HTTP client");
+        }
+        return client;
+    }
+
+    /**
+     * Perform the given request in a thread of the shared pool for requests,
+     * instead of creating a new thread for each request. The callback is run
+     * in a separate thread, so that slow callbacks (e.g. parsing or waiting
+     * for the EDT) don't hold up other requests.
+     *
+     * @param <T>
+     * @param request Performs the request
+     * @param callback Receives the result of the request
+     */
+    public static <T> void async(Supplier<T> request, Consumer<T> callback) {
+        getExecutor().execute(() -> {
+            T result = request.get();
+            getCallbackExecutor().execute(() -> callback.accept(result));
+        });
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread thread = new Thread(r, "Http-"+count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private static synchronized ExecutorService getCallbackExecutor() {
+        if (callbackExecutor == null) {
+            AtomicInteger count = new AtomicInteger();
+            // Idle threads are removed after a while
+            callbackExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "HttpCallback-"+count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return callbackExecutor;
+    }
+
+    public interface ResponseHandler<T> {
+
+        /**
+         * Handle the response. The response is closed afterwards, so the
+         * entity has to be read in here.
+         *
+         * @param response The response
+         * @param encoding The Content-Encoding the response was originally
+         * received with (the entity is already decompressed), may be null
+         * @return Anything, will be returned by execute()
+         * @throws IOException
+         */
+        T handle(ClassicHttpResponse response, String encoding) throws IOException;
+
+    }
+
+    /**
+     * Perform the request on the current thread, waiting for a free
+     * connection if necessary.
+     *
+     * @param <T>
+     * @param request The request
+     * @param connectTimeout Connect timeout in milliseconds
+     * @param readTimeout Timeout for receiving data in milliseconds
+     * @param handler Handles the response
+     * @return The value returned by the handler
+     * @throws IOException If an error occured
+     */
+    public static <T> T execute(HttpUriRequestBase request, int connectTimeout, int readTimeout, ResponseHandler<T> handler) throws IOException {
+        request.setConfig(RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                // Waiting for a pooled connection
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeout+readTimeout))
+                .build());
+        String host = request.getAuthority() != null ? request.getAuthority().getHostName() : "";
+        HttpContext context = HttpClientContext.create();
+        long start = System.nanoTime();
+        long responseTime = -1;
+        boolean success = false;
+        try (CloseableHttpResponse response = getClient().execute(request, context)) {
+            responseTime = System.nanoTime() - start;
+            T result = handler.handle(response, (String) context.getAttribute(ENCODING_ATTRIBUTE));
+            success = true;
+            return result;
+        }
+        finally {
+            addStats(host, responseTime, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Read the entity as UTF-8 text.
+     *
+     * @param entity The entity, may be null
+     * @return The text, or null if entity is null
+     * @throws IOException
+     */
+    public static String getText(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return null;
+        }
+        try {
+            return EntityUtils.toString(entity, StandardCharsets.UTF_8);
+        }
+        catch (ParseException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    public static int getIntHeader(ClassicHttpResponse response, String name, int defaultValue) {
+        Header header = response.getFirstHeader(name);
+        if (header != null) {
+            try {
+                return Integer.parseInt(header.getValue().trim());
+            }
+            catch (NumberFormatException ex) {
+                // Return default
+            }
+        }
+        return defaultValue;
+    }
+
+    public static String getHeader(ClassicHttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    //=======
+    // Stats
+    //=======
+
+    private static class HostStats {
+
+        private int requests;
+        private int failed;
+        private int responses;
+        private long responseTotal;
+        private long responseMax;
+        private long total;
+        private long max;
+
+    }
+
+    private static void addStats(String host, long responseTime, long totalTime, boolean success) {
+        synchronized (stats) {
+            HostStats s = stats.computeIfAbsent(host, h -> new HostStats());
+            s.requests++;
+            if (!success) {
+                s.failed++;
+            }
+            if (responseTime != -1) {
+                s.responses++;
+                s.responseTotal += responseTime;
+                s.responseMax = Math.max(s.responseMax, responseTime);
+            }
+            s.total += totalTime;
+            s.max = Math.max(s.max, totalTime);
+        }
+    }
+
+    /**
+     * Connection pool status and the request times per host (average/max, in
+     * milliseconds, until response headers and until completely handled).
+     *
+     * @return A text for debugging
+     */
+    public static String getStats() {
+        StringBuilder b = new StringBuilder();
+        synchronized (SharedHttpClient.class) {
+            if (manager != null) {
+                PoolStats pool = manager.getTotalStats();
+                b.append(String.format(Locale.ROOT, "Pool: %d leased, %d available, %d pending (max %d/%d per host)",
+                        pool.getLeased(), pool.getAvailable(), pool.getPending(),
+                        pool.getMax(), MAX_PER_HOST));
+            }
+            else {
+                b.append("Pool: not created");
+            }
+        }
+        synchronized (stats) {
+            for (Map.Entry<String, HostStats> entry : stats.entrySet()) {
+                HostStats s = entry.getValue();
+                b.append(String.format(Locale.ROOT, "\n%s: %d requests (%d failed), response %d/%dms, total %d/%dms",
+                        entry.getKey(),
+                        s.requests,
+                        s.failed,
+                        toMillis(s.responses > 0 ? s.responseTotal / s.responses : 0),
+                        toMillis(s.responseMax),
+                        toMillis(s.total / s.requests),
+                        toMillis(s.max)));
+            }
+        }
+        return b.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+}
@@ -1,21 +1,20 @@
 
 package chatty.util;
 
-import chatty.Chatty;
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.FilterReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 /**
  * General URL Request that just reads the whole file into a String.
@@ -28,8 +27,6 @@ public class UrlRequest {
     
     private static final Charset CHARSET = Charset.forName("UTF-8");
     
-    private static final String VERSION = "Chatty "+Chatty.VERSION;
-    
     private String url;
     
     /**
@@ -85,22 +82,42 @@ public class UrlRequest {
     }
 
     public void async(ResultListener listener) {
-        new Thread(() -> {
+        SharedHttpClient.async(() -> {
             FullResult result = new FullResult();
             performRequest(result);
             if (Debugging.isEnabled("requestresponse") && result.result != null) {
                 LOGGER.info(result.result);
             }
-            listener.result(result.getResult(), result.getResponseCode());
-        }).start();
+            return result;
+        }, result -> listener.result(result.getResult(), result.getResponseCode()));
     }
     
     public void asyncLines(ResultLinesListener listener) {
-        new Thread(() -> {
+        SharedHttpClient.async(() -> {
             LinesResult result = new LinesResult();
             performRequest(result);
-            listener.result(result.getResult(), result.getResponseCode());
-        }).start();
+            return result;
+        }, result -> listener.result(result.getResult(), result.getResponseCode()));
+    }
+    
+    /**
+     * Request and parse the response directly from the stream with the
+     * given parser, without reading it into a String first.
+     *
+     * @param <T>
+     * @param parser Parses the response, called on the request thread
+     * @param listener Receives the parsed result, which is null if an error
+     * occured
+     */
+    public <T> void asyncParse(Parser<T> parser, ParsedResultListener<T> listener) {
+        SharedHttpClient.async(() -> syncParse(parser),
+                result -> listener.result(result.getResult(), result.getResponseCode()));
+    }
+    
+    public <T> ParsedResult<T> syncParse(Parser<T> parser) {
+        ParsedResult<T> result = new ParsedResult<>(parser);
+        performRequest(result);
+        return result;
     }
     
     public FullResult sync() {
@@ -124,49 +141,38 @@ public class UrlRequest {
     private void performRequest(Result result) {
         // Only output custom header keys in case an API token or something is used
         LOGGER.info("<"+label+" "+url+(properties != null ? " "+properties.keySet() : ""));
-        HttpURLConnection connection = null;
         try {
-            connection = (HttpURLConnection) new URL(url).openConnection();
+            HttpGet request = new HttpGet(url);
             if (properties != null) {
                 for (Map.Entry<String, String> header : properties.entrySet()) {
-                    connection.setRequestProperty(header.getKey(), header.getValue());
+                    request.setHeader(header.getKey(), header.getValue());
                 }
             }
-            connection.setRequestProperty("User-Agent", VERSION);
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            
-            connection.setConnectTimeout(connectTimeout);
-            connection.setReadTimeout(readTimeout);
-            String encoding = connection.getContentEncoding();
-            
-            // Read response
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
-
-            int responseCode = connection.getResponseCode();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET))) {
-                result.fill(reader, responseCode);
-            }
-            LOGGER.info(String.format(">%s (%s, %,d%s): %s",
-                    label,
-                    responseCode,
-                    result.getLength(),
-                    (encoding != null ? ", " + encoding : ""),
-                    url));
-        } catch (IOException ex) {
-            if (ex instanceof FileNotFoundException) {
-                result.responseCode = 404;
-            }
+            SharedHttpClient.execute(request, connectTimeout, readTimeout, (response, encoding) -> {
+                int responseCode = response.getCode();
+                result.responseCode = responseCode;
+                if (responseCode < 200 || responseCode >= 300) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new IOException("HTTP "+responseCode);
+                }
+                HttpEntity entity = response.getEntity();
+                if (entity != null) {
+                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), CHARSET))) {
+                        result.fill(reader, responseCode);
+                    }
+                }
+                LOGGER.info(String.format(">%s (%s, %,d%s): %s",
+                        label,
+                        responseCode,
+                        result.getLength(),
+                        (encoding != null ? ", " + encoding : ""),
+                        url));
+                return null;
+            });
+        } catch (IOException | IllegalArgumentException ex) {
             LOGGER.warning(String.format("!%s (%s): %s",
                     label, ex, url));
             result.error = ex.getClass().getSimpleName()+" ("+ex.getLocalizedMessage()+")";
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
     
@@ -179,6 +185,23 @@ public class UrlRequest {
         public void result(List<String> lines, int responseCode);
     }
     
+    public interface ParsedResultListener<T> {
+        public void result(T result, int responseCode);
+    }
+    
+    public interface Parser<T> {
+        
+        /**
+         * Parse the response.
+         * 
+         * @param reader The response body
+         * @return The result, may be null
+         * @throws IOException If reading or parsing failed, which is treated
+         * as an error of the request
+         */
+        public T parse(Reader reader) throws IOException;
+    }
+    
     
     public static abstract class Result {
         
@@ -256,6 +279,53 @@ public class UrlRequest {
         
     }
     
+    public static class ParsedResult<T> extends Result {
+        
+        private final Parser<T> parser;
+        private T result;
+        
+        public ParsedResult(Parser<T> parser) {
+            this.parser = parser;
+        }
+        
+        @Override
+        public void fill(BufferedReader reader, int responseCode) throws IOException {
+            this.responseCode = responseCode;
+            
+            // Count the characters for the debug message
+            result = parser.parse(new FilterReader(reader) {
+                
+                @Override
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c != -1) {
+                        length++;
+                    }
+                    return c;
+                }
+                
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    int read = super.read(cbuf, off, len);
+                    if (read > 0) {
+                        length += read;
+                    }
+                    return read;
+                }
+            });
+        }
+        
+        /**
+         * The parsed result of the request.
+         * 
+         * @return the result, or null if an error occured
+         */
+        public T getResult() {
+            return result;
+        }
+        
+    }
+    
     
     public static void main(String[] args) {
         //UrlRequest request = new UrlRequest("http://tduva.com/res/emotesetinfo.txt");
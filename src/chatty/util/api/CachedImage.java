@@ -4,6 +4,7 @@ package chatty.util.api;
 import chatty.util.ImageCache;
 import chatty.util.ImageCache.ImageRequest;
 import chatty.util.ImageCache.ImageResult;
+import chatty.util.ImageLoader;
 import chatty.util.gif.AnimatedImageSource;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -15,11 +16,9 @@ import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
-import javax.swing.SwingWorker;
 
 /**
  * Used for loading an image concurrently for Emoticon and Usericon.
@@ -143,6 +142,16 @@ public class CachedImage<T> {
 
     private boolean loading = false;
     private boolean loadingError = false;
+    private boolean loadingCancelled = false;
+    private ImageLoader.Task<ImageIcon> loadingTask;
+    
+    /**
+     * Views that are visible and waiting for the image to be loaded. Loading
+     * is only cancelled once no view is waiting anymore. Weak references, so
+     * views that are removed without cancelling don't stay in here.
+     */
+    private Set<Object> waiters;
+    private ImageLoader.Priority loadingPriority = ImageLoader.Priority.VISIBLE;
     private boolean isLoaded = false;
     private volatile int loadingAttempts = 0;
     private long lastLoadingAttempt;
@@ -170,8 +179,21 @@ public class CachedImage<T> {
      * @return
      */
     public ImageIcon getImageIcon() {
+        return getImageIcon(ImageLoader.Priority.VISIBLE);
+    }
+    
+    /**
+     * Same as {@link #getImageIcon()}, but if the image has to be loaded, the
+     * given priority is used for it. If the image is already waiting to be
+     * loaded with a lower priority, the priority is increased.
+     *
+     * @param priority The loading priority
+     * @return 
+     */
+    public ImageIcon getImageIcon(ImageLoader.Priority priority) {
         lastUsed = System.currentTimeMillis();
         if (icon == null) {
+            loadingPriority = priority;
             /**
              * Note: The temporary image (as well as the actual image) are used
              * as a key for GIF handling in ChannelTextPane, so it is important
@@ -187,9 +209,93 @@ public class CachedImage<T> {
                 LOGGER.warning("Trying to load " + object + " again (" + sourceUrl + ")");
             }
         }
+        else {
+            prioritize(priority);
+        }
         return icon;
     }
 
+    /**
+     * Increase the loading priority, if the image is still waiting to be
+     * loaded, or start loading again if loading was cancelled. Should only be
+     * called from the EDT.
+     *
+     * @param priority The priority
+     */
+    public void prioritize(ImageLoader.Priority priority) {
+        prioritize(priority, null);
+    }
+    
+    /**
+     * Same as {@link #prioritize(ImageLoader.Priority)}, but also registers
+     * the given waiter, so that {@link #cancelLoading(Object)} for another
+     * waiter doesn't cancel loading while this one is still waiting. Should
+     * only be called from the EDT.
+     *
+     * @param priority The priority
+     * @param waiter The waiter (e.g. a view), may be null
+     */
+    public void prioritize(ImageLoader.Priority priority, Object waiter) {
+        if (waiter != null && !isLoaded) {
+            if (waiters == null) {
+                waiters = Collections.newSetFromMap(new WeakHashMap<>());
+            }
+            waiters.add(waiter);
+        }
+        if (priority.compareTo(loadingPriority) < 0) {
+            loadingPriority = priority;
+            if (loadingTask != null) {
+                loadingTask.setPriority(priority);
+            }
+        }
+        if (loadingCancelled) {
+            loadingPriority = priority;
+            loadingCancelled = false;
+            loadImage();
+        }
+    }
+    
+    /**
+     * Cancel loading the image, if it hasn't started loading yet (e.g. because
+     * it is not visible anymore). Loading will start again when the image is
+     * requested again. Should only be called from the EDT.
+     */
+    public void cancelLoading() {
+        if (waiters != null) {
+            waiters.clear();
+        }
+        cancelLoadingNow();
+    }
+    
+    /**
+     * The given waiter doesn't wait for the image anymore. Loading is only
+     * cancelled if no other waiter registered through
+     * {@link #prioritize(ImageLoader.Priority, Object)} is still waiting.
+     * Should only be called from the EDT.
+     *
+     * @param waiter The waiter
+     */
+    public void cancelLoading(Object waiter) {
+        if (waiters != null) {
+            waiters.remove(waiter);
+            if (!waiters.isEmpty()) {
+                return;
+            }
+        }
+        cancelLoadingNow();
+    }
+    
+    private void cancelLoadingNow() {
+        if (loadingTask != null && loadingTask.cancel()) {
+            loadingTask = null;
+            loading = false;
+            loadingCancelled = true;
+            // Cancelled attempt shouldn't count
+            loadingAttempts--;
+            lastLoadingAttempt = 0;
+        }
+    }
+
     public long getLastUsedAge() {
         return System.currentTimeMillis() - lastUsed;
     }
@@ -234,7 +340,12 @@ public class CachedImage<T> {
             loadingError = false;
             loadingAttempts++;
             lastLoadingAttempt = System.currentTimeMillis();
-            (new IconLoader(this)).execute();
+            IconLoader loader = new IconLoader(this);
+            loadingTask = ImageLoader.get().submit(
+                    requester.getImageUrl(1, imageType),
+                    loadingPriority,
+                    loader::load,
+                    loader::done);
             return true;
         }
         return false;
@@ -280,6 +391,8 @@ public class CachedImage<T> {
      */
     private void setLoadingDone() {
         loading = false;
+        loadingTask = null;
+        waiters = null;
     }
 
     private void setLoaded() {
@@ -385,10 +498,10 @@ public class CachedImage<T> {
     // Load Image
     //==========================
     /**
-     * A Worker class to load the Icon. Not doing this in it's own thread can
-     * lead to lag when a lot of new icons are being loaded.
+     * Loads the Icon through the {@link ImageLoader}. Not doing this in it's
+     * own thread can lead to lag when a lot of new icons are being loaded.
      */
-    private class IconLoader extends SwingWorker<ImageIcon, Object> {
+    private class IconLoader {
 
         private final CachedImage<T> image;
 
@@ -396,8 +509,10 @@ public class CachedImage<T> {
             this.image = image;
         }
 
-        @Override
-        protected ImageIcon doInBackground() throws Exception {
+        /**
+         * Run in a background thread.
+         */
+        private ImageIcon load() {
 
             // Get the assumed size or size loaded from the size cache
             Dimension defaultSize = requester.getBaseSize();
@@ -444,24 +559,19 @@ public class CachedImage<T> {
 
         /**
          * The image should be done loading, replace the defaulticon with the
-         * actual loaded icon and tell the user that it's loaded.
+         * actual loaded icon and tell the user that it's loaded. Run in the
+         * EDT.
+         * 
+         * @param loadedIcon The loaded icon, null if an error occured
          */
-        @Override
-        protected void done() {
-            try {
-                // This is null if an error occured
-                ImageIcon loadedIcon = get();
-                if (loadedIcon == null) {
-                    image.setLoadingError();
-                }
-                else {
-                    image.setImageIcon(loadedIcon, true);
-                }
-                image.setLoadingDone();
+        private void done(ImageIcon loadedIcon) {
+            if (loadedIcon == null) {
+                image.setLoadingError();
             }
-            catch (InterruptedException | ExecutionException ex) {
-                LOGGER.warning("Unexpected error when loading emoticon: " + ex);
+            else {
+                image.setImageIcon(loadedIcon, true);
             }
+            image.setLoadingDone();
         }
     }
 }
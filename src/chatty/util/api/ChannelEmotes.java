@@ -0,0 +1,220 @@
+
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable snapshot of the emotes that can be found in chat messages of a
+ * single channel, as returned by {@link Emoticons#getChannelEmotes(String)}.
+ *
+ * <p>
+ * Emotes ignored for chat are already removed and channel/emoteset
+ * restrictions are already checked, so the emotes don't have to be filtered for
+ * every message. Each group of emotes is stored in an {@link Index} that looks
+ * up most emotes by word.
+ * </p>
+ *
+ * <p>
+ * A snapshot is not updated when emotes change, instead a new one is created
+ * with a different version.
+ * </p>
+ *
+ * @author tduva
+ */
+public class ChannelEmotes {
+
+    public final String stream;
+
+    /**
+     * The {@link Emoticons} version this snapshot was created for.
+     */
+    public final long version;
+
+    /**
+     * The {@link EmotesetManager} version this snapshot was created for.
+     */
+    public final int emotesetsVersion;
+
+    /**
+     * Custom emotes for messages by other users.
+     */
+    public final Index custom;
+
+    /**
+     * Custom emotes for messages by the local user.
+     */
+    public final Index localCustom;
+
+    /**
+     * Global Twitch emotes usable by the local user.
+     */
+    public final Index localTwitch;
+
+    /**
+     * Follower emotes usable by the local user in this channel.
+     */
+    public final Index localFollower;
+
+    public final Index smilies;
+
+    /**
+     * Channel-specific emotes (e.g. FFZ/BTTV/7TV).
+     */
+    public final Index channel;
+
+    /**
+     * Global third-party emotes usable by the local user.
+     */
+    public final Index localOther;
+
+    /**
+     * All global Twitch emotes.
+     */
+    public final Index globalTwitch;
+
+    /**
+     * All global third-party emotes.
+     */
+    public final Index otherGlobal;
+
+    ChannelEmotes(Emoticons emoticons, String stream, long version, int emotesetsVersion) {
+        this.stream = stream;
+        this.version = version;
+        this.emotesetsVersion = emotesetsVersion;
+
+        Set<String> localSets = emoticons.getLocalEmotesets();
+        custom = new Index(emoticons, emoticons.getCustomEmotes(), stream, null);
+        localCustom = new Index(emoticons, emoticons.getCustomEmotes(), stream, localSets);
+        localTwitch = new Index(emoticons, emoticons.getUsableGlobalTwitchEmotes());
+        localFollower = new Index(emoticons, emoticons.getUsableFollowerEmotes(stream));
+        smilies = new Index(emoticons, emoticons.getSmilies());
+        channel = new Index(emoticons, emoticons.getEmoticonsByStream(stream));
+        localOther = new Index(emoticons, emoticons.getUsableGlobalOtherEmotes());
+        globalTwitch = new Index(emoticons, emoticons.getGlobalTwitchEmotes());
+        otherGlobal = new Index(emoticons, emoticons.getOtherGlobalEmotes());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%d/%d", stream, version, emotesetsVersion);
+    }
+
+    public interface MatchListener {
+
+        /**
+         * An emote was found in the text.
+         *
+         * @param emote The emote
+         * @param start The start index (inclusive)
+         * @param end The end index (exclusive)
+         */
+        void match(Emoticon emote, int start, int end);
+    }
+
+    /**
+     * A group of emotes, where emotes that only match their exact code as a
+     * separate word are looked up by word and all others are searched for
+     * using their regex.
+     */
+    public static class Index {
+
+        private final Map<String, Emoticon> byCode;
+        private final List<Emoticon> other;
+        private final List<Pattern> otherPatterns;
+
+        private Index(Emoticons emoticons, Collection<Emoticon> emotes) {
+            this(emoticons, emotes, null, null, false);
+        }
+
+        private Index(Emoticons emoticons, Collection<Emoticon> emotes, String stream, Set<String> accessToSets) {
+            this(emoticons, emotes, stream, accessToSets, true);
+        }
+
+        private Index(Emoticons emoticons, Collection<Emoticon> emotes,
+                String stream, Set<String> accessToSets, boolean checkAccess) {
+            Map<String, Emoticon> byCode = new HashMap<>();
+            List<Emoticon> other = new ArrayList<>();
+            List<Pattern> otherPatterns = new ArrayList<>();
+            for (Emoticon emote : emotes) {
+                if (checkAccess && !emote.matchesStream(stream, accessToSets)) {
+                    continue;
+                }
+                if (emoticons.isEmoteIgnored(emote, IgnoredEmotes.CHAT)) {
+                    continue;
+                }
+                String literalCode = emote.getLiteralCode();
+                if (literalCode != null) {
+                    byCode.putIfAbsent(literalCode, emote);
+                }
+                else {
+                    other.add(emote);
+                    otherPatterns.add(emote.getPattern());
+                }
+            }
+            this.byCode = byCode.isEmpty() ? Collections.emptyMap() : byCode;
+            this.other = other.isEmpty() ? Collections.emptyList() : other;
+            this.otherPatterns = otherPatterns.isEmpty() ? Collections.emptyList() : otherPatterns;
+        }
+
+        public boolean isEmpty() {
+            return byCode.isEmpty() && other.isEmpty();
+        }
+
+        public int size() {
+            return byCode.size() + other.size();
+        }
+
+        /**
+         * Find all emotes in the given text. A new Matcher is used for regex
+         * emotes, so this can be used from any thread.
+         *
+         * @param text The text to search in
+         * @param listener Receives the matches
+         */
+        public void find(String text, MatchListener listener) {
+            if (!byCode.isEmpty()) {
+                int length = text.length();
+                int start = -1;
+                for (int i = 0; i <= length; i++) {
+                    if (i == length || isWhitespace(text.charAt(i))) {
+                        if (start != -1) {
+                            Emoticon emote = byCode.get(text.substring(start, i));
+                            if (emote != null) {
+                                listener.match(emote, start, i);
+                            }
+                            start = -1;
+                        }
+                    }
+                    else if (start == -1) {
+                        start = i;
+                    }
+                }
+            }
+            for (int i = 0; i < other.size(); i++) {
+                Matcher m = otherPatterns.get(i).matcher(text);
+                while (m.find()) {
+                    listener.match(other.get(i), m.start(), m.end());
+                }
+            }
+        }
+
+        /**
+         * Same characters as the regex {@code \s}, which is used to separate
+         * regular emotes.
+         */
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                    || c == '\f' || c == '\r';
+        }
+
+    }
+
+}
@@ -28,6 +28,11 @@ public class EmotesetManager {
      */
     private final Set<String> emotesets = new HashSet<>();
     
+    /**
+     * Increased whenever the emotesets of a channel change.
+     */
+    private volatile int version;
+    
     public EmotesetManager(TwitchApi api, MainGui g, Settings settings) {
         this.api = api;
         this.g = g;
@@ -60,6 +65,9 @@ public class EmotesetManager {
             if (prevSets == null || prevSets.size() != newSets.size()) {
                 changed = true;
             }
+            if (prevSets == null || !prevSets.equals(newSets)) {
+                version++;
+            }
             if (prevSets == null) {
                 ircEmotesets.put(channel, new HashSet<>());
             }
@@ -73,6 +81,16 @@ public class EmotesetManager {
         api.getEmotesBySets(newSets);
     }
 
+    /**
+     * Get the version, which changes whenever the emotesets returned by
+     * {@link #getEmotesetsByChannel(String)} may have changed.
+     * 
+     * @return 
+     */
+    public int getVersion() {
+        return version;
+    }
+    
     public synchronized Set<String> getEmotesetsByChannel(String channel) {
         if (!ircEmotesets.containsKey(channel)) {
             return new HashSet<>();
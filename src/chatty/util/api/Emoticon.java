@@ -478,6 +478,42 @@ public class Emoticon {
         }
     }
     
+    /**
+     * Characters that cause a search String to be interpreted as regex instead
+     * of plain text.
+     */
+    private static final String REGEX_SPECIAL = "\\^$.|?*+()[]{}";
+    
+    /**
+     * Gets the text this emote matches, if the matcher created for this emote
+     * only matches the exact text (surrounded by whitespace or start/end of the
+     * message). This allows looking up most emotes by word, instead of running
+     * the regex for every single emote.
+     * 
+     * @return The exact text, or null if this emote matches in a different way
+     * (e.g. is an actual regex or an Emoji)
+     */
+    public String getLiteralCode() {
+        if (type == Type.EMOJI || !StringUtil.isNullOrEmpty(regex)) {
+            return null;
+        }
+        // Same as in createMatcher()
+        String search = code;
+        if (search.length() < 4) {
+            search = Emoticons.toRegex(search);
+        }
+        for (int i = 0; i < search.length(); i++) {
+            char c = search.charAt(i);
+            if (Character.isWhitespace(c)) {
+                return null;
+            }
+            if (!literal && !LITERAL.contains(search) && REGEX_SPECIAL.indexOf(c) != -1) {
+                return null;
+            }
+        }
+        return search.isEmpty() ? null : search;
+    }
+    
     /**
      * Gets the stream restrictions set for this Emoticon.
      * 
@@ -603,6 +639,17 @@ public class Emoticon {
         return matcher.reset(text);
     }
     
+    /**
+     * Gets the pattern used to find this emoticon. Unlike the shared matcher,
+     * matchers created from it can be used in any thread.
+     * 
+     * @return 
+     */
+    public Pattern getPattern() {
+        createMatcher();
+        return matcher.pattern();
+    }
+    
     /**
      * Get a scaled image for this Emoticon. Should only be called from the EDT.
      *
@@ -774,12 +821,25 @@ public class Emoticon {
         if (user == null) {
             return true;
         }
+        return matchesStream(user.getStream(), accessToSets);
+    }
+    
+    /**
+     * Check if this emote can be used in the given stream, with access to the
+     * given emotesets.
+     * 
+     * @param stream The stream name
+     * @param accessToSets The emotesets (non-global emotesets require access),
+     * may be null
+     * @return true if this emote can be used
+     */
+    public boolean matchesStream(String stream, Set<String> accessToSets) {
         if (!hasGlobalEmoteset()
                 && (accessToSets == null || !accessToSets.contains(emoteset))) {
             return false;
         }
         if (hasStreamRestrictions()
-                && !streamRestrictionContains(user.getStream())) {
+                && !streamRestrictionContains(stream)) {
             return false;
         }
         return true;
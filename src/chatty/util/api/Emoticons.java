@@ -3,9 +3,11 @@ package chatty.util.api;
 
 import chatty.Chatty;
 import chatty.Helper;
+import chatty.gui.emoji.EmojiTrie;
 import chatty.gui.emoji.EmojiUtil;
 import chatty.util.CombinedEmoticon;
 import chatty.util.CombinedIterator;
+import chatty.util.Debugging;
 import chatty.util.LogUtil;
 import chatty.util.MiscUtil;
 import chatty.util.StringUtil;
@@ -34,6 +36,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -196,6 +199,22 @@ public class Emoticons {
     
     private EmotesetManager localEmotesetManager;
     
+    //====================
+    // Channel Snapshots
+    //====================
+    
+    /**
+     * Increased whenever emotes change in a way that may affect the emotes
+     * found in messages.
+     */
+    private volatile long version;
+    
+    /**
+     * The most recently built snapshot for each channel. Only written on the
+     * EDT, but can be read from any thread.
+     */
+    private final Map<String, ChannelEmotes> channelEmotes = new ConcurrentHashMap<>();
+    
     private static final int DEFAULT_IMAGE_EXPIRE_MINUTES = 4*60;
     private static final int FASTER_IMAGE_EXPIRE_MINUTES = 1*60;
     
@@ -230,6 +249,7 @@ public class Emoticons {
     }
     
     public void updateEmoticons(EmoticonUpdate update) {
+        changed();
         removeEmoticons(update);
         if (!update.emotesToAdd.isEmpty()) {
             addEmoticons(update.emotesToAdd);
@@ -341,6 +361,7 @@ public class Emoticons {
      * @param newEmoticons 
      */
     public void addEmoticons(Set<Emoticon> newEmoticons) {
+        changed();
         for (Emoticon emote : newEmoticons) {
             Set<String> channelRestrictions = emote.getStreamRestrictions();
             if (channelRestrictions != null) {
@@ -440,6 +461,7 @@ public class Emoticons {
     }
     
     public void setSmilies(Set<Emoticon> emotes) {
+        changed();
         smilies.clear();
         if (emotes != null) {
             smilies.addAll(emotes);
@@ -509,6 +531,22 @@ public class Emoticons {
         return emoji;
     }
     
+    /**
+     * Get the trie of all Emoji codes, used to find Emoji in messages. It is
+     * only built on first use after the Emoji have been set.
+     * 
+     * @return The trie (never null, but may be empty)
+     */
+    public EmojiTrie getEmojiTrie() {
+        EmojiTrie result = emojiTrie;
+        if (result == null) {
+            result = EmojiTrie.build(emoji);
+            emojiTrie = result;
+            LOGGER.info("Built Emoji trie with "+result.size()+" Emoji");
+        }
+        return result;
+    }
+    
     /**
      * Gets a list of all emoticons that don't have an emoteset associated
      * with them. This returns the original Set, so it should not be modified.
@@ -590,7 +628,10 @@ public class Emoticons {
     }
     
     public void setLocalEmotesetManager(EmotesetManager manager) {
-        this.localEmotesetManager = manager;
+        if (this.localEmotesetManager != manager) {
+            this.localEmotesetManager = manager;
+            changed();
+        }
     }
     
     public Set<Emoticon> getUsableFollowerEmotes(String stream) {
@@ -609,6 +650,59 @@ public class Emoticons {
         return usableGlobalEmotes.getOther();
     }
     
+    //====================
+    // Channel Snapshots
+    //====================
+    
+    /**
+     * Get the emotes that can be found in messages in the given channel, with
+     * ignored emotes already removed and restrictions already checked.
+     * 
+     * <p>
+     * The snapshot is only rebuilt if emotes have changed since it was last
+     * built. Building it accesses the emote collections that are not
+     * thread-safe, so this must only be called from the EDT (like changing
+     * emotes). The returned snapshot itself is immutable and can be used from
+     * any thread.
+     * </p>
+     * 
+     * @param stream The channel name (without leading "#"), may be null
+     * @return The snapshot, never null
+     */
+    public ChannelEmotes getChannelEmotes(String stream) {
+        Debugging.edt();
+        String key = stream == null ? "" : stream;
+        long currentVersion = version;
+        int currentSetsVersion = localEmotesetManager != null ? localEmotesetManager.getVersion() : 0;
+        ChannelEmotes result = channelEmotes.get(key);
+        if (result == null
+                || result.version != currentVersion
+                || result.emotesetsVersion != currentSetsVersion) {
+            result = new ChannelEmotes(this, stream, currentVersion, currentSetsVersion);
+            channelEmotes.put(key, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Get the current emotes version, which changes whenever the snapshots
+     * returned by {@link #getChannelEmotes(String)} have to be rebuilt.
+     * 
+     * @return 
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Should be called whenever emotes change in a way that may affect the
+     * emotes found in messages.
+     */
+    private void changed() {
+        version++;
+        channelEmotes.clear();
+    }
+    
     public Collection<Emoticon> getUsableEmotesByStream(String stream) {
         Collection<Emoticon> result = usableStreamEmotes.get(stream);
         return result == null ? EMPTY_SET : result;
@@ -621,6 +715,7 @@ public class Emoticons {
      * @param emotesets
      */
     public void updateLocalEmotes(Set<String> emotesets) {
+        changed();
         /**
          * Global emotes use the "localEmotesets", which should more likely be
          * up-to-date in regards to non-channel-specific emotesets.
@@ -776,6 +871,7 @@ public class Emoticons {
      */
     public void setIgnoredEmotes(Collection<String> ignoredEmotes) {
         this.ignoredEmotes.setData(ignoredEmotes);
+        changed();
     }
     
     /**
@@ -787,6 +883,7 @@ public class Emoticons {
      */
     public void setEmoteIgnored(Emoticon emote, int context, Settings settings) {
         ignoredEmotes.add(emote, context);
+        changed();
         settings.putList("ignoredEmotes", ignoredEmotes.getData());
     }
     
@@ -1008,6 +1105,7 @@ public class Emoticons {
      * parsing of each line.
      */
     public void loadCustomEmotes() {
+        changed();
         customEmotes.clear();
         customEmotesById.clear();
         
@@ -1291,9 +1389,16 @@ public class Emoticons {
     
     private volatile Map<Pattern, String> emojiReplacement;
     
+    /**
+     * Lookup structure for finding Emoji in messages, built lazily from the
+     * current {@code emoji}.
+     */
+    private volatile EmojiTrie emojiTrie;
+    
     public void addEmoji(String sourceId) {
         emoji.clear();
         emoji.addAll(EmojiUtil.makeEmoticons(sourceId));
+        emojiTrie = null;
         Map<Pattern, String> replacements = new HashMap<>();
         for (Emoticon e : emoji) {
             if (e.stringId != null) {
@@ -69,6 +69,15 @@ public class Requests {
         this.newApi = new QueuedApi();
     }
     
+    /**
+     * Info about the state of the request queue, for debugging.
+     * 
+     * @return 
+     */
+    public String getQueueStats() {
+        return newApi.getStats();
+    }
+    
     
     //====================
     // Channel Information
@@ -77,7 +86,7 @@ public class Requests {
     protected void requestFollowers(String streamId, String stream) {
         String url = String.format("https://api.twitch.tv/helix/users/follows?to_id=%s&first=100",
                 streamId);
-        newApi.add(url, "GET", api.defaultToken, (r) -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, (r) -> {
             api.followerManager.received(r.responseCode, stream, r.text);
         });
     }
@@ -93,7 +102,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/followers",
                 "broadcaster_id", streamId,
                 "first", "100");
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.followerManager.received(r.responseCode, stream, r.text);
         });
     }
@@ -101,14 +110,14 @@ public class Requests {
     protected void requestSubscribers(String streamId, String stream) {
         String url = String.format("https://api.twitch.tv/helix/subscriptions?broadcaster_id=%s&first=100",
                 streamId);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.subscriberManager.received(r.responseCode, stream, r.text);
         });
     }
     
     public void getChannelStatus(String streamId, String stream) {
         String url = "https://api.twitch.tv/helix/channels?broadcaster_id="+streamId;
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             if (r.responseCode == 200) {
                 List<ChannelStatus> parsed = ChannelStatus.parseJson(r.text);
                 if (parsed != null && parsed.size() > 0) {
@@ -141,7 +150,7 @@ public class Requests {
         if (!StringUtil.isNullOrEmpty(cursor)) {
             url += "&after="+cursor;
         }
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.streamInfoManager.requestResultFollows(r.text, r.responseCode);
         });
     }
@@ -153,14 +162,14 @@ public class Requests {
      */
     protected void requestStreamInfo(String stream) {
         String url = "https://api.twitch.tv/helix/streams?first=100&user_login="+stream;
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.streamInfoManager.requestResult(r.text, r.responseCode, stream);
         });
     }
     
     protected void requestStreamsInfo(Set<String> streams, Set<StreamInfo> expected) {
         String url = "https://api.twitch.tv/helix/streams?first=100&"+makeNewApiParameters("user_login", streams);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.streamInfoManager.requestResultStreams(r.text, r.responseCode, expected);
         });
     }
@@ -207,7 +216,7 @@ public class Requests {
     
     public void requestUserInfo(Set<String> usernames) {
         String url = "https://api.twitch.tv/helix/users?"+makeNewApiParameters("login", usernames);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             Collection<UserInfo> parsedResult = UserInfoManager.parseJSON(r.text);
             Map<String, String> ids = null;
             if (parsedResult != null) {
@@ -228,7 +237,7 @@ public class Requests {
 
     public void requestUserInfoById(Set<String> requestedIds) {
         String url = "https://api.twitch.tv/helix/users?" + makeNewApiParameters("id", requestedIds);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             Collection<UserInfo> parsedResult = UserInfoManager.parseJSON(r.text);
             Map<String, String> ids = null;
             Set<String> usernames = new HashSet<>();
@@ -259,7 +268,7 @@ public class Requests {
                 "https://api.twitch.tv/helix/users/follows?from_id=%s&to_id=%s",
                 userID,
                 streamID);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.followerManager.receivedSingle(r.responseCode, stream, r.text, user, false);
         });
     }
@@ -286,7 +295,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/followers",
                 "broadcaster_id", streamID,
                 "user_id", userID);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.followerManager.receivedSingle(r.responseCode, stream, r.text, user, false);
         });
     }
@@ -298,7 +307,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/followed",
                 "broadcaster_id", streamID,
                 "user_id", userID);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.followerManager.receivedSingle(r.responseCode, stream, r.text, user, true);
         });
     }
@@ -312,7 +321,7 @@ public class Requests {
             return;
         }
         String url = "https://api.twitch.tv/helix/channels?broadcaster_id=" + userId;
-        newApi.add(url, "PATCH", info.makePutJson(), token, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "PATCH", info.makePutJson(), token, r -> {
             switch (r.responseCode) {
                 case 204:
                     listener.putChannelInfoResult(TwitchApi.RequestResultCode.SUCCESS, null);
@@ -329,7 +338,7 @@ public class Requests {
     }
     
     public void getContentLabels() {
-        newApi.add("https://api.twitch.tv/helix/content_classification_labels", "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, "https://api.twitch.tv/helix/content_classification_labels", "GET", api.defaultToken, r -> {
             if (r.responseCode == 200) {
                 StreamLabels.dataReceived(r.text);
             }
@@ -347,7 +356,7 @@ public class Requests {
             Logger.getLogger(TwitchApi.class.getName()).log(Level.SEVERE, null, ex);
         }
         final String url = "https://api.twitch.tv/helix/search/categories?query="+encodedGame;
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             if (r.text != null) {
                 Set<StreamCategory> categories = Parsing.parseCategorySearch(r.text);
                 if (categories != null) {
@@ -366,7 +375,7 @@ public class Requests {
                 "broadcaster_id", userId,
                 "length", length
         );
-        newApi.add(url, "POST", json, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", json, api.defaultToken, r -> {
             String resultText = "Failed to start commercial (error " + r.responseCode + ")";
             RequestResultCode resultCode = RequestResultCode.UNKNOWN;
             if (r.responseCode == 204 || r.responseCode == 200) {
@@ -384,7 +393,7 @@ public class Requests {
                 "msg_id", msgId,
                 "action", action == AutoModAction.ALLOW ? "ALLOW" : "DENY");
         
-        newApi.add(url, "POST", json, token, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", json, token, r -> {
             boolean handled = false;
             for (AutoModActionResult result : AutoModActionResult.values()) {
                 if (r.responseCode == result.responseCode) {
@@ -406,7 +415,7 @@ public class Requests {
         if (!StringUtil.isNullOrEmpty(cursor)) {
             url += "&after="+cursor;
         }
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.blockedTermsManager.resultReceived(streamId, login, r.text, r.responseCode);
         });
     }
@@ -417,7 +426,7 @@ public class Requests {
                 api.localUserId);
         Map<String, String> data = new HashMap<>();
         data.put("text", text);
-        newApi.add(url, "POST", data, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", data, api.defaultToken, r -> {
             BlockedTerms parsed = BlockedTerms.parse(r.text, streamId, streamName);
             if (parsed != null && !parsed.hasError() && parsed.data.size() == 1) {
                 listener.accept(parsed.data.get(0));
@@ -433,7 +442,7 @@ public class Requests {
                 term.streamId,
                 api.localUserId,
                 term.id);
-        newApi.add(url, "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "DELETE", api.defaultToken, r -> {
             if (r.responseCode == 204) {
                 listener.accept(term);
             }
@@ -449,7 +458,7 @@ public class Requests {
         if (description != null && !description.isEmpty()) {
             data.put("description", description);
         }
-        newApi.add("https://api.twitch.tv/helix/streams/markers", "POST", data, token, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, "https://api.twitch.tv/helix/streams/markers", "POST", data, token, r -> {
             switch (r.responseCode) {
                 case 200:
                     listener.streamMarkerResult(null);
@@ -473,7 +482,7 @@ public class Requests {
     public void createClip(String userId) {
         String url = makeUrl("https://api.twitch.tv/helix/clips",
                              "broadcaster_id", userId);
-        newApi.add(url, "POST", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", api.defaultToken, r -> {
             String error = null;
             if (r.responseCode == 202) {
                 String editUrl = Parsing.getClipUrl(r.text);
@@ -520,7 +529,7 @@ public class Requests {
                 "message", message,
                 "color", StringUtil.toLowerCase(color)
         );
-        newApi.add(url, "POST", json, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", json, api.defaultToken, r -> {
             if (r.responseCode == 204) {
                 // All fine
             }
@@ -549,7 +558,7 @@ public class Requests {
         }
         JSONObject json = new JSONObject();
         json.put("data", data);
-        newApi.add(url, "POST", json.toJSONString(), api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", json.toJSONString(), api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -559,7 +568,7 @@ public class Requests {
                 "broadcaster_id", streamId,
                 "moderator_id", api.localUserId,
                 "user_id", targetId);
-        newApi.add(url, "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "DELETE", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -571,7 +580,7 @@ public class Requests {
         if (!StringUtil.isNullOrEmpty(msgId)) {
             url += "&message_id="+msgId;
         }
-        newApi.add(url, "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "DELETE", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -581,7 +590,7 @@ public class Requests {
                 "from_broadcaster_id", streamId,
                 "moderator_id", api.localUserId,
                 "to_broadcaster_id", targetId);
-        newApi.add(url, "POST", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -595,7 +604,7 @@ public class Requests {
         data.put("reason", reason);
         JSONObject json = new JSONObject();
         json.put("data", data);
-        newApi.add(url, "POST", json.toJSONString(), api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", json.toJSONString(), api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -604,7 +613,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/vips",
                 "broadcaster_id", streamId,
                 "user_id", targetId);
-        newApi.add(url, add ? "POST" : "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, add ? "POST" : "DELETE", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -613,7 +622,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/moderation/moderators",
                 "broadcaster_id", streamId,
                 "user_id", targetId);
-        newApi.add(url, add ? "POST" : "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, add ? "POST" : "DELETE", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -622,7 +631,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/moderation/moderators",
                 "broadcaster_id", streamId,
                 "first", "100");
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             handleModerators(r, listener, "moderators");
         });
     }
@@ -631,7 +640,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/channels/vips",
                 "broadcaster_id", streamId,
                 "first", "100");
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             handleModerators(r, listener, "VIPs");
         });
     }
@@ -655,7 +664,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/raids",
                 "from_broadcaster_id", streamId,
                 "to_broadcaster_id", targetId);
-        newApi.add(url, "POST", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -663,7 +672,7 @@ public class Requests {
     public void cancelRaid(String streamId, SimpleRequestResultListener listener) {
         String url = makeUrl("https://api.twitch.tv/helix/raids",
                 "broadcaster_id", streamId);
-        newApi.add(url, "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "DELETE", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -673,7 +682,7 @@ public class Requests {
                 "from_user_id", api.localUserId,
                 "to_user_id", targetId);
         String json = JSONUtil.listMapToJSON("message", msg);
-        newApi.add(url, "POST", json, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", json, api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -683,7 +692,7 @@ public class Requests {
                 "broadcaster_id", streamId,
                 "moderator_id", api.localUserId);
         String json = JSONUtil.listMapToJSON(data);
-        newApi.add(url, "PATCH", json, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "PATCH", json, api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -692,7 +701,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/chat/color",
                 "user_id", api.localUserId,
                 "color", makeColor(color));
-        newApi.add(url, "PUT", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "PUT", api.defaultToken, r -> {
             handleResult(r, listener);
         });
     }
@@ -731,7 +740,7 @@ public class Requests {
         data.put("is_active", enabled);
 //        JSONObject json = new JSONObject();
 //        json.put("data", data);
-        newApi.add(url, "PUT", data.toJSONString(), api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "PUT", data.toJSONString(), api.defaultToken, r -> {
             handleResult(r, listener);
             Parsing.ShieldModeStatus status = Parsing.ShieldModeStatus.decode(r.text, stream);
             if (status != null) {
@@ -746,7 +755,7 @@ public class Requests {
         String url = makeUrl("https://api.twitch.tv/helix/moderation/shield_mode",
                 "broadcaster_id", streamId,
                 "moderator_id", api.localUserId);
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             Parsing.ShieldModeStatus status = Parsing.ShieldModeStatus.decode(r.text, stream);
             if (status != null) {
                 api.resultManager.inform(ResultManager.Type.SHIELD_MODE_RESULT, (ShieldModeResult l) -> {
@@ -832,7 +841,7 @@ public class Requests {
         if (replyToMsgId != null) {
             data.put("reply_parent_message_id", replyToMsgId);
         }
-        newApi.add(url, "POST", data, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_URGENT, url, "POST", data, api.defaultToken, r -> {
             if (r.responseCode == 200) {
                 listener.accept(SendMessageResult.parse(r.text));
             }
@@ -846,20 +855,20 @@ public class Requests {
     
     protected void requestGlobalBadges() {
         String url = "https://api.twitch.tv/helix/chat/badges/global";
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             listener.receivedUsericons(api.badgeManager.handleGlobalBadgesResult(r.text));
         });
     }
     
     protected void requestRoomBadges(String roomId, String stream) {
         String url = "https://api.twitch.tv/helix/chat/badges?broadcaster_id="+roomId;
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             listener.receivedUsericons(api.badgeManager.handleRoomBadgesResult(r.text, stream));
         });
     }
     
     public void requestEmotesByChannelId(String stream, String id, String requestId) {
-        newApi.add("https://api.twitch.tv/helix/chat/emotes?broadcaster_id="+id, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, "https://api.twitch.tv/helix/chat/emotes?broadcaster_id="+id, "GET", api.defaultToken, r -> {
             EmoticonUpdate parsed = EmoticonParsing.parseEmoteList(r.text, EmoticonUpdate.Source.HELIX_CHANNEL, stream, id);
             if (parsed != null) {
                 listener.receivedEmoticons(parsed);
@@ -881,7 +890,7 @@ public class Requests {
         if (emotesets != null && !emotesets.isEmpty()) {
             String emotesetsParam = StringUtil.join(emotesets, "&emote_set_id=");
             String url = "https://api.twitch.tv/helix/chat/emotes/set?emote_set_id="+emotesetsParam;
-            newApi.add(url, "GET", api.defaultToken, r -> {
+            newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
                 EmoticonUpdate result = EmoticonParsing.parseEmoteList(r.text, EmoticonUpdate.Source.HELIX_SETS, null, null);
                 if (result != null) {
                     listener.receivedEmoticons(result);
@@ -895,26 +904,26 @@ public class Requests {
     
     public void requestCheerEmoticons(String channelId, String stream) {
         String url = "https://api.twitch.tv/helix/bits/cheermotes?broadcaster_id="+channelId;
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             api.cheersManager2.dataReceived(r.text, stream, channelId);
         });
     }
     
     public void test() {
         String url = "https://api.twitch.tv/helix/...";
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             System.out.println(r.text);
         });
     }
     
     public void addEventSub(String body, Consumer<EventSubAddResult> listener) {
-        newApi.add("https://api.twitch.tv/helix/eventsub/subscriptions", "POST", body, api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, "https://api.twitch.tv/helix/eventsub/subscriptions", "POST", body, api.defaultToken, r -> {
             listener.accept(EventSubAddResult.decode(r));
         });
     }
     
     public void removeEventSub(String id, Consumer<Integer> listener) {
-        newApi.add("https://api.twitch.tv/helix/eventsub/subscriptions?id="+id, "DELETE", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, "https://api.twitch.tv/helix/eventsub/subscriptions?id="+id, "DELETE", api.defaultToken, r -> {
             listener.accept(r.responseCode);
         });
     }
@@ -924,7 +933,7 @@ public class Requests {
         if (cursor != null) {
             url += "&after="+cursor;
         }
-        newApi.add(url, "GET", api.defaultToken, r -> {
+        newApi.add(QueuedApi.PRIORITY_NORMAL, url, "GET", api.defaultToken, r -> {
             String nextCursor = getCursor(r.text);
             EventSubSubs result2 = result;
             if (result2 == null) {
@@ -276,6 +276,13 @@ public class TwitchApi {
         return userInfoManager.getCachedOnly(login);
     }
     
+    /**
+     * Close files used for caching, should be called on exit.
+     */
+    public void close() {
+        userInfoManager.close();
+    }
+    
     //===================
     // Stream Information
     //===================
@@ -362,6 +369,10 @@ public class TwitchApi {
         requests.revokeToken(token);
     }
     
+    public String getQueueStats() {
+        return requests.getQueueStats();
+    }
+    
     //=========
     // User IDs
     //=========
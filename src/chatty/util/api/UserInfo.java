@@ -6,6 +6,8 @@ import chatty.util.JSONUtil;
 import chatty.util.StringUtil;
 import java.util.logging.Logger;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 /**
  *
@@ -13,6 +15,8 @@ import org.json.simple.JSONObject;
  */
 public class UserInfo {
     
+    private static final Logger LOGGER = Logger.getLogger(UserInfo.class.getName());
+    
     public final String id;
     public final String login;
     public final String displayName;
@@ -53,4 +57,49 @@ public class UserInfo {
         return null;
     }
     
+    /**
+     * Turn into JSON for storing in the cache, can be read by
+     * {@link #fromJSON(String)}.
+     * 
+     * @return 
+     */
+    public String toJSON() {
+        return JSONUtil.listMapToJSON(
+                "id", id,
+                "login", login,
+                "display_name", displayName,
+                "broadcaster_type", broadcasterType,
+                "description", description,
+                "profile_image_url", profileImageUrl,
+                "created_at", createdAt,
+                "view_count", views);
+    }
+    
+    /**
+     * Parse JSON created by {@link #toJSON()}.
+     * 
+     * @param json
+     * @return The UserInfo, or null if invalid
+     */
+    public static UserInfo fromJSON(String json) {
+        try {
+            JSONObject data = (JSONObject) new JSONParser().parse(json);
+            String id = JSONUtil.getString(data, "id");
+            String login = JSONUtil.getString(data, "login");
+            String displayName = JSONUtil.getString(data, "display_name");
+            String broadcasterType = JSONUtil.getString(data, "broadcaster_type");
+            String description = JSONUtil.getString(data, "description");
+            String profileImageUrl = JSONUtil.getString(data, "profile_image_url");
+            long createdAt = JSONUtil.getLong(data, "created_at", -1);
+            int views = JSONUtil.getInteger(data, "view_count", 0);
+            if (!StringUtil.isNullOrEmpty(id, login, displayName)) {
+                return new UserInfo(id, login, displayName, broadcasterType, description, profileImageUrl, createdAt, views);
+            }
+        }
+        catch (ParseException | ClassCastException ex) {
+            LOGGER.warning("Error parsing cached user info: "+ex);
+        }
+        return null;
+    }
+    
 }
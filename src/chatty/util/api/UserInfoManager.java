@@ -1,13 +1,16 @@
 
 package chatty.util.api;
 
+import chatty.Chatty;
 import chatty.util.CachedBulkManager;
+import chatty.util.KeyValueStore;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
@@ -21,16 +24,29 @@ import org.json.simple.parser.JSONParser;
 public class UserInfoManager {
     
     private static final Logger LOGGER = Logger.getLogger(UserInfoManager.class.getName());
+    
+    /**
+     * Maximum number of logins/ids per Helix request.
+     */
+    private static final int MAX_BATCH_SIZE = 100;
+    
+    /**
+     * How long user info is kept in the persistent cache.
+     */
+    private static final int STORE_EXPIRE_HOURS = 24;
+    
+    private static final String STORE_FILE = "userinfo.kv";
 
     private final CachedBulkManager<String, UserInfo> perLogin;
     private final CachedBulkManager<String, UserInfo> perId;
+    private final KeyValueStore store;
     
     public UserInfoManager(TwitchApi api) {
         perLogin = new CachedBulkManager<>(new CachedBulkManager.Requester<String, UserInfo>() {
             
             @Override
             public void request(CachedBulkManager<String, UserInfo> manager, Set<String> asap, Set<String> normal, Set<String> backlog) {
-                Set<String> toRequest = manager.makeAndSetRequested(asap, normal, backlog, 100);
+                Set<String> toRequest = manager.makeAndSetRequested(asap, normal, backlog, MAX_BATCH_SIZE);
                 api.requests.requestUserInfo(toRequest);
             }
             
@@ -38,11 +54,53 @@ public class UserInfoManager {
 
         perId = new CachedBulkManager<>(
             (manager, asap, normal, backlog) -> {
-                Set<String> toRequest = manager.makeAndSetRequested(asap, normal, backlog, 100);
+                Set<String> toRequest = manager.makeAndSetRequested(asap, normal, backlog, MAX_BATCH_SIZE);
                 api.requests.requestUserInfoById(toRequest);
             },
             CachedBulkManager.NONE
         );
+        perLogin.setBatchSize("helix/users?login", MAX_BATCH_SIZE);
+        perId.setBatchSize("helix/users?id", MAX_BATCH_SIZE);
+        // Names may become valid (or ids not be suspended anymore) later
+        perLogin.setNotFoundTime(1, TimeUnit.HOURS);
+        perId.setNotFoundTime(1, TimeUnit.HOURS);
+        
+        // Both stored in the same file, so keys need a prefix
+        store = new KeyValueStore(Chatty.getPath(Chatty.PathType.CACHE).resolve(STORE_FILE));
+        perLogin.setPersistence(store, new UserInfoCodec("login:"), STORE_EXPIRE_HOURS, TimeUnit.HOURS);
+        perId.setPersistence(store, new UserInfoCodec("id:"), STORE_EXPIRE_HOURS, TimeUnit.HOURS);
+    }
+    
+    /**
+     * Close the persistent cache, waiting for pending writes.
+     */
+    public void close() {
+        store.close();
+    }
+    
+    private static class UserInfoCodec implements CachedBulkManager.Codec<String, UserInfo> {
+        
+        private final String prefix;
+        
+        UserInfoCodec(String prefix) {
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public String encodeKey(String key) {
+            return prefix+key;
+        }
+        
+        @Override
+        public String encodeItem(UserInfo item) {
+            return item.toJSON();
+        }
+        
+        @Override
+        public UserInfo decodeItem(String key, String data) {
+            return UserInfo.fromJSON(data);
+        }
+        
     }
     
     public UserInfo getCachedOnly(String login) {
@@ -135,6 +135,12 @@ public class Connection extends JWSClient {
         }
     }
     
+    public boolean isFull() {
+        synchronized(topics) {
+            return topics.size() >= MAX_TOPICS;
+        }
+    }
+    
     public int numTopics() {
         synchronized(topics) {
             return topics.size();
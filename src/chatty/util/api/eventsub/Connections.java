@@ -17,13 +17,24 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Manage several connections.
  * 
+ * <p>
+ * Topics are spread over the allowed number of connections. Creating and
+ * deleting the subscriptions is done through a {@link SubscriptionQueue}, so
+ * that e.g. resubscribing a lot of topics after a reconnect doesn't send all
+ * requests at once.
+ * </p>
+ * 
  * @author tduva
  */
 public class Connections {
@@ -33,11 +44,21 @@ public class Connections {
     private static final int MAX_CONNECTIONS = 3;
     private static final int MAX_RETRY_TOPIC_COUNT = 5;
     
+    /**
+     * Topics per connection before another connection is opened, so that
+     * topics are spread over the allowed connections. A reconnect then only
+     * affects some of the topics and resubscribing is split between several
+     * sessions. Once all connections are opened, each connection is filled up
+     * to the maximum.
+     */
+    private static final int BALANCE_TOPICS = 100;
+    
     private final Map<Integer, Connection> connections;
     private final URI server;
     private final ConnectionsMessageHandler handler;
     private final TwitchApi api;
-    private final Timer timer = new Timer("EventSub");
+    private final ScheduledExecutorService timer;
+    private final SubscriptionQueue queue;
     
     /**
      * These topics will pontentially be registered when possible, but they are
@@ -70,16 +91,40 @@ public class Connections {
         this.server = server;
         this.handler = handler;
         this.api = api;
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                checkConnection();
-                checkRetry();
-                // Unregister first, which will also check if topic is to be added
-                unregisterTopics();
-                addTopics();
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "EventSub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queue = new SubscriptionQueue(r -> {
+            try {
+                timer.execute(r);
             }
-        }, 5000, 5000);
+            catch (RejectedExecutionException ex) {
+                // Responses may still arrive after disconnect()
+            }
+        }, System::currentTimeMillis);
+        schedule(() -> {
+            checkConnection();
+            checkRetry();
+            // Unregister first, which will also check if topic is to be added
+            unregisterTopics();
+            addTopics();
+        }, 5000);
+        // Continue after the queue was paused
+        schedule(queue::dispatch, 1000);
+    }
+    
+    private void schedule(Runnable task, long delay) {
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            }
+            catch (Exception ex) {
+                // Would cancel any further runs otherwise
+                LOGGER.log(Level.WARNING, "[EventSub] Error running timer task", ex);
+            }
+        }, delay, delay, TimeUnit.MILLISECONDS);
     }
     
     public synchronized boolean addTopic(Topic topic) {
@@ -99,18 +144,17 @@ public class Connections {
     }
     
     private synchronized boolean addTopicInternal(Topic topic) {
-        for (Connection c : connections.values()) {
-            if (c.addTopic(topic)) {
-                Debugging.println("es", "Add Topic: %s (added to %s)", topic, c.id);
-                if (c.getSessionId() != null) {
-                    registerTopic(c, topic);
-                }
-                return true;
+        Connection c = getConnectionForTopic();
+        if (c != null && c.addTopic(topic)) {
+            Debugging.println("es", "Add Topic: %s (added to %s)", topic, c.id);
+            if (c.getSessionId() != null) {
+                registerTopic(c, topic);
             }
+            return true;
         }
         // Not added yet, add to new connection
         if (connections.size() < MAX_CONNECTIONS) {
-            Connection c = addConnection(server);
+            c = addConnection(server);
             boolean result = c.addTopic(topic);
             Debugging.println("es", "Add Topic: %s (added to new %s)", topic, c.id);
             c.init();
@@ -119,6 +163,30 @@ public class Connections {
         return false;
     }
     
+    /**
+     * Get the connection with the fewest topics that has space left, unless
+     * they all already have enough topics and another connection can be
+     * opened.
+     *
+     * @return The connection, or null if a new connection should be opened
+     */
+    private synchronized Connection getConnectionForTopic() {
+        Connection result = null;
+        for (Connection c : connections.values()) {
+            // Topics on a connection about to be replaced would get lost
+            if (!c.isFull() && !hasReplacement(c)
+                    && (result == null || c.numTopics() < result.numTopics())) {
+                result = c;
+            }
+        }
+        if (result != null
+                && result.numTopics() >= BALANCE_TOPICS
+                && connections.size() < MAX_CONNECTIONS) {
+            return null;
+        }
+        return result;
+    }
+    
     private synchronized Connection addConnection(URI server) {
         int connId = connIdCounter++;
         Connection c = new Connection(server, createHandler(connId), connId);
@@ -149,6 +217,13 @@ public class Connections {
             }
         }
         
+        // Not registered yet, so it can just be removed
+        if (existingTopic != null && queue.cancelCreate(existingTopic)) {
+            requestPending.remove(existingTopic);
+            removeTopicInternal(existingTopic);
+            return;
+        }
+        
         /**
          * If it is already set to remove then don't try immediately (since it
          * would have already done that), but wait for the unregisterTopics()
@@ -295,7 +370,7 @@ public class Connections {
         for (Connection c : connections.values()) {
             c.disconnect();
         }
-        timer.cancel();
+        timer.shutdown();
     }
     
     public synchronized void reconnect() {
@@ -453,10 +528,14 @@ public class Connections {
         if (!hasReplacement(c)) {
             for (Topic topic : c.getTopics()) {
                 if (topic.getCost() > 0) {
-                    totalCost = -topic.getCost();
+                    totalCost -= topic.getCost();
                 }
                 topic.setCost(0);
                 topic.setId(null);
+                // Will be queued again with the new session
+                if (queue.cancelCreate(topic)) {
+                    requestPending.remove(topic);
+                }
             }
         }
 
@@ -473,9 +552,24 @@ public class Connections {
     
     
     private void registerTopic(Connection c, Topic topic) {
-        String sessionId = c.getSessionId();
         requestPending.add(topic);
+        queue.create(topic, done -> {
+            String sessionId = c.getSessionId();
+            if (sessionId == null) {
+                // Disconnected while queued, registered again on reconnect
+                synchronized (Connections.this) {
+                    requestPending.remove(topic);
+                }
+                done.accept(0);
+                return;
+            }
+            registerTopicNow(c, topic, sessionId, done);
+        });
+    }
+    
+    private void registerTopicNow(Connection c, Topic topic, String sessionId, IntConsumer done) {
         api.addEventSub(topic.make(sessionId), r -> {
+            done.accept(r.responseCode);
             if (!r.hasError) {
                 synchronized (Connections.this) {
                     // Check if connection has reconnected in the meantime
@@ -574,7 +668,24 @@ public class Connections {
         }
         Debugging.println("es", "Unregister %s", topic);
         requestPending.add(topic);
-        api.removeEventSub(topic.getId(), r -> {
+        queue.delete(topic, done -> {
+            String id = topic.getId();
+            if (id == null) {
+                // Revoked while queued
+                synchronized (Connections.this) {
+                    requestPending.remove(topic);
+                }
+                done.accept(0);
+                return;
+            }
+            unregisterTopicNow(topic, id, done);
+        });
+        return true;
+    }
+    
+    private void unregisterTopicNow(Topic topic, String id, IntConsumer done) {
+        api.removeEventSub(id, r -> {
+            done.accept(r);
             if (r == 204 || r == 404) {
                 synchronized (Connections.this) {
                     if (topic.getCost() > 0 && r == 204) {
@@ -595,7 +706,6 @@ public class Connections {
                 }
             }
         });
-        return true;
     }
     
     private void log(String event, int connectionId) {
@@ -619,8 +729,9 @@ public class Connections {
     public String getDebugText() {
         String result;
         synchronized (Connections.this) {
-            result = String.format("Cost: %d/%d L:%s E:%s A:%s R:%s",
-                totalCost, maxTotalCost, errorLimitReachedTopics, errorTopics, removedAuthTopics, toRemove);
+            result = String.format("Cost: %d/%d L:%s E:%s A:%s R:%s\n%s",
+                totalCost, maxTotalCost, errorLimitReachedTopics, errorTopics, removedAuthTopics, toRemove,
+                queue.getStats());
         }
         return result;
     }
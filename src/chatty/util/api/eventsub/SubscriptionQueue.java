@@ -0,0 +1,226 @@
+
+package chatty.util.api.eventsub;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Queue for the API requests to create and delete EventSub subscriptions, so
+ * that a lot of topics (e.g. when resubscribing after a reconnect) aren't all
+ * sent to the API at once.
+ *
+ * <ul>
+ * <li>Only a limited number of requests are in flight at the same time, the
+ * next ones are sent as soon as responses arrive.</li>
+ * <li>Deletes are sent before creates, since they may free up space. Creates
+ * with a lower expected cost are sent first, since they are less likely to
+ * run into the cost limit.</li>
+ * <li>When a create receives a 429 response, further creates are paused for
+ * a while (increasing with consecutive 429 responses).</li>
+ * <li>A create that hasn't been sent yet can be cancelled, for example if the
+ * topic is removed again before it was registered.</li>
+ * </ul>
+ *
+ * <p>
+ * The API doesn't allow creating several subscriptions in one request, so each
+ * topic is still a separate request, which also goes through the rate limit of
+ * the regular API queue.
+ * </p>
+ *
+ * @author tduva
+ */
+class SubscriptionQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(SubscriptionQueue.class.getName());
+
+    private static final int MAX_IN_FLIGHT = 5;
+    private static final long MIN_PAUSE = 5*1000;
+    private static final long MAX_PAUSE = 2*60*1000;
+
+    /**
+     * Performs the request. The given callback must be called with the
+     * response code once the request is done (or 0 if no request was
+     * performed).
+     */
+    interface Operation extends Consumer<IntConsumer> {
+    }
+
+    private static class Entry {
+
+        private final Topic topic;
+        private final boolean delete;
+        private final Operation operation;
+
+        Entry(Topic topic, boolean delete, Operation operation) {
+            this.topic = topic;
+            this.delete = delete;
+            this.operation = operation;
+        }
+
+    }
+
+    private final Executor executor;
+    private final LongSupplier clock;
+
+    private final Map<Topic, Entry> creates = new LinkedHashMap<>();
+    private final Map<Topic, Entry> deletes = new LinkedHashMap<>();
+
+    private int inFlight;
+    private long pausedUntil;
+    private long pause;
+
+    //--------
+    // Stats
+    //--------
+    private int statsCreates;
+    private int statsDeletes;
+    private int statsCancelled;
+    private int statsPaused;
+    private int statsMaxQueued;
+
+    /**
+     * @param executor Runs the operations (should not be the calling thread
+     * in general, since the caller may hold locks)
+     * @param clock The current time in milliseconds
+     */
+    SubscriptionQueue(Executor executor, LongSupplier clock) {
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Queue creating a subscription. Replaces an already queued create for the
+     * same topic.
+     *
+     * @param topic The topic
+     * @param operation Performs the request
+     */
+    void create(Topic topic, Operation operation) {
+        synchronized (this) {
+            creates.put(topic, new Entry(topic, false, operation));
+            statsMaxQueued = Math.max(statsMaxQueued, creates.size() + deletes.size());
+        }
+        executor.execute(this::dispatch);
+    }
+
+    /**
+     * Queue deleting a subscription. Replaces an already queued delete for the
+     * same topic.
+     *
+     * @param topic The topic
+     * @param operation Performs the request
+     */
+    void delete(Topic topic, Operation operation) {
+        synchronized (this) {
+            deletes.put(topic, new Entry(topic, true, operation));
+            statsMaxQueued = Math.max(statsMaxQueued, creates.size() + deletes.size());
+        }
+        executor.execute(this::dispatch);
+    }
+
+    /**
+     * Remove a queued create for the given topic, if it hasn't been sent yet.
+     *
+     * @param topic The topic
+     * @return true if a create was removed
+     */
+    synchronized boolean cancelCreate(Topic topic) {
+        if (creates.remove(topic) != null) {
+            statsCancelled++;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized int size() {
+        return creates.size() + deletes.size();
+    }
+
+    /**
+     * Send as many queued operations as currently allowed. Also called
+     * regularly, so that creates continue after a pause.
+     */
+    void dispatch() {
+        List<Entry> toRun = new ArrayList<>();
+        synchronized (this) {
+            boolean paused = clock.getAsLong() < pausedUntil;
+            while (inFlight < MAX_IN_FLIGHT) {
+                Entry entry = takeDelete();
+                if (entry == null && !paused) {
+                    entry = takeCreate();
+                }
+                if (entry == null) {
+                    break;
+                }
+                inFlight++;
+                toRun.add(entry);
+            }
+        }
+        for (Entry entry : toRun) {
+            entry.operation.accept(responseCode -> finished(entry, responseCode));
+        }
+    }
+
+    private Entry takeDelete() {
+        Iterator<Entry> it = deletes.values().iterator();
+        if (it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            statsDeletes++;
+            return entry;
+        }
+        return null;
+    }
+
+    private Entry takeCreate() {
+        Entry result = null;
+        for (Entry entry : creates.values()) {
+            if (result == null || entry.topic.getExpectedCost() < result.topic.getExpectedCost()) {
+                result = entry;
+            }
+        }
+        if (result != null) {
+            creates.remove(result.topic);
+            statsCreates++;
+        }
+        return result;
+    }
+
+    private void finished(Entry entry, int responseCode) {
+        synchronized (this) {
+            inFlight--;
+            // Only creates are paused
+            if (!entry.delete) {
+                if (responseCode == 429) {
+                    pause = pause == 0 ? MIN_PAUSE : Math.min(pause * 2, MAX_PAUSE);
+                    pausedUntil = clock.getAsLong() + pause;
+                    statsPaused++;
+                    LOGGER.info(String.format(Locale.ROOT, "[EventSub] Pausing subscriptions for %ds (%s)",
+                            pause / 1000, entry.topic));
+                }
+                else if (responseCode >= 200 && responseCode < 300) {
+                    pause = 0;
+                }
+            }
+        }
+        executor.execute(this::dispatch);
+    }
+
+    synchronized String getStats() {
+        long pausedFor = pausedUntil - clock.getAsLong();
+        return String.format(Locale.ROOT, "Queue: %d creates, %d deletes, %d in flight%s (sent %d creates, %d deletes, %d cancelled, %d paused, max queued %d)",
+                creates.size(), deletes.size(), inFlight,
+                pausedFor > 0 ? String.format(Locale.ROOT, ", paused %ds", pausedFor / 1000) : "",
+                statsCreates, statsDeletes, statsCancelled, statsPaused, statsMaxQueued);
+    }
+
+}
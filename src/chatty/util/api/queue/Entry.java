@@ -20,11 +20,17 @@ public class Entry implements Comparable<Entry> {
     public final Request request;
     public final ResultListener listener;
     
+    /**
+     * When the entry was created (System.nanoTime()), for stats.
+     */
+    public final long created;
+    
     public Entry(int priority, Request request, ResultListener listener) {
         this.entryNum = seq.getAndIncrement();
         this.priority = priority;
         this.request = request;
         this.listener = listener;
+        this.created = System.nanoTime();
     }
 
     @Override
@@ -3,22 +3,46 @@ package chatty.util.api.queue;
 
 import chatty.util.Debugging;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
- *
+ * Performs API requests in a queue, ordered by priority. Requests are only sent
+ * when the {@link RateLimiter} allows it, so regular requests are spread out
+ * and urgent requests can still be performed when the rate limit gets low.
+ * 
  * @author tduva
  */
 public class QueuedApi {
     
     private static final Logger LOGGER = Logger.getLogger(QueuedApi.class.getName());
     
+    /**
+     * Priority for requests that should be performed as soon as possible,
+     * usually user-initiated actions (like bans or sending messages).
+     */
+    public static final int PRIORITY_URGENT = 0;
+    
+    /**
+     * Priority for other requests, like regularly refreshing data.
+     */
+    public static final int PRIORITY_NORMAL = 1;
+    
+    /**
+     * Ratelimit tokens that can only be used by urgent requests.
+     */
+    private static final int RATELIMIT_RESERVE = 60;
+    
+    private static final int MAX_ACTIVE_REQUESTS = 10;
+    
     /**
      * Queued requests are removed when they are taken from the queue in order
      * to perform the request.
@@ -32,10 +56,9 @@ public class QueuedApi {
     private final Set<Entry> requestPending = new HashSet<>();
     
     /**
-     * Rate limit remaining from the most recent request response, or -1 if no
-     * data is available yet.
+     * Models the rate limit to decide when requests can be sent.
      */
-    private volatile int ratelimitRemaining = -1;
+    private final RateLimiter rateLimiter = new RateLimiter(RATELIMIT_RESERVE);
     
     /**
      * Limits the number of active requests. This is different to active threads
@@ -46,7 +69,24 @@ public class QueuedApi {
      * immediatelly use up all the ratelimit tokens (although this is quite
      * unlikely with the number of usual requests anyway).
      */
-    private final Semaphore activeRequests = new Semaphore(10);
+    private final Semaphore activeRequests = new Semaphore(MAX_ACTIVE_REQUESTS);
+    
+    /**
+     * Notified when an entry is added, so that waiting because of the rate
+     * limit can be interrupted when a more urgent entry is added.
+     */
+    private final Object added = new Object();
+    private long addedCount;
+    
+    //--------
+    // Stats
+    //--------
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private long statsRequests;
+    private long statsWaitTotal;
+    private long statsWaitMax;
+    private long statsThrottled;
+    private long statsThrottledTime;
     
     public QueuedApi() {
         ExecutorService executor = Executors.newCachedThreadPool();
@@ -58,20 +98,34 @@ public class QueuedApi {
             public void run() {
                 while (true) {
                     try {
-                        if (ratelimitRemaining != -1 && ratelimitRemaining < 60) {
-                            LOGGER.info("Waiting..");
-                            Thread.sleep(10*1000);
-                        }
                         activeRequests.acquire();
-                        //System.out.println("Waiting for entry.. Permits: "+activeRequests.availablePermits());
+                        long addedBefore = getAddedCount();
                         Entry entry = queue.take();
-                        //System.out.println("Entry taken: "+entry.request+" Permits: "+activeRequests.availablePermits());
-                        entry.request.setResultListener((result, responseCode, errorResult, ratelimitRemaining) -> {
+                        long delay = rateLimiter.getDelay(entry.priority == PRIORITY_URGENT, System.currentTimeMillis());
+                        if (delay > 0) {
+                            /**
+                             * Put back and wait, unless something new was
+                             * added in the meantime (which may be more urgent
+                             * and could be performed right away).
+                             */
+                            queue.add(entry);
+                            activeRequests.release();
+                            throttled(entry, delay);
+                            waitForAdded(addedBefore, delay);
+                            continue;
+                        }
+                        rateLimiter.sent(System.currentTimeMillis());
+                        inFlight.incrementAndGet();
+                        addWaitStats(entry);
+                        entry.request.setResultListener((result, responseCode, errorResult, ratelimitLimit, ratelimitRemaining, ratelimitReset) -> {
                             /**
                              * Executed in an executor thread.
                              */
                             // Get some data from the response and forward to external listener
-                            QueuedApi.this.ratelimitRemaining = ratelimitRemaining;
+                            int currentInFlight = inFlight.decrementAndGet();
+                            rateLimiter.update(ratelimitLimit, ratelimitRemaining,
+                                    ratelimitReset != -1 ? ratelimitReset * 1000 : -1,
+                                    currentInFlight, System.currentTimeMillis());
                             activeRequests.release();
                             if (Debugging.isEnabled("requestresponse")) {
                                 if (result != null) {
@@ -84,7 +138,6 @@ public class QueuedApi {
                             // This may run a while (e.g. loading images etc.)
                             entry.listener.result(new ResultListener.Result(result, responseCode, errorResult));
                             removePending(entry);
-                            //System.out.println("Entry done: "+entry.request+" Permits: "+activeRequests.availablePermits());
                         });
                         executor.execute(entry.request);
                         
@@ -99,55 +152,111 @@ public class QueuedApi {
         thread.start();
     }
     
+    private long getAddedCount() {
+        synchronized (added) {
+            return addedCount;
+        }
+    }
+    
+    private void waitForAdded(long addedBefore, long delay) throws InterruptedException {
+        synchronized (added) {
+            if (addedCount == addedBefore) {
+                added.wait(delay);
+            }
+        }
+    }
+    
+    private synchronized void throttled(Entry entry, long delay) {
+        if (statsThrottled % 100 == 0) {
+            LOGGER.info(String.format(Locale.ROOT, "Waiting %dms for ratelimit (%s) [%s]",
+                    delay, entry.request, getStats()));
+        }
+        statsThrottled++;
+        statsThrottledTime += delay;
+    }
+    
+    private synchronized void addWaitStats(Entry entry) {
+        long wait = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.created);
+        statsRequests++;
+        statsWaitTotal += wait;
+        statsWaitMax = Math.max(statsWaitMax, wait);
+    }
+    
+    /**
+     * Get the current state and stats of the queue, for debugging.
+     * 
+     * @return A String with human-readable info
+     */
+    public synchronized String getStats() {
+        return String.format(Locale.ROOT, "Queued: %d / In flight: %d / Ratelimit: %d/%d / Requests: %d (wait avg: %dms, max: %dms) / Throttled: %d (%dms)",
+                queue.size(),
+                inFlight.get(),
+                rateLimiter.getTokens(System.currentTimeMillis()),
+                rateLimiter.getLimit(),
+                statsRequests,
+                statsRequests > 0 ? statsWaitTotal / statsRequests : 0,
+                statsWaitMax,
+                statsThrottled,
+                statsThrottledTime);
+    }
+    
     /**
      * Perform a request.
      * 
+     * @param priority {@link #PRIORITY_URGENT} for user-initiated actions,
+     * {@link #PRIORITY_NORMAL} otherwise
      * @param url
      * @param requestMethod
      * @param token
      * @param listener 
      */
-    public void add(String url, String requestMethod, String token,
-            ResultListener listener) {
+    public void add(int priority, String url, String requestMethod,
+            String token, ResultListener listener) {
         Request request = new Request(url);
         request.setToken(token);
         request.setRequestType(requestMethod);
-        addRequest(1, request, listener);
+        addRequest(priority, request, listener);
     }
     
     /**
      * Perform a request with JSON data.
      * 
+     * @param priority {@link #PRIORITY_URGENT} for user-initiated actions,
+     * {@link #PRIORITY_NORMAL} otherwise
      * @param url
      * @param requestMethod Only set if jsonData is not null
      * @param jsonData
      * @param token
      * @param listener 
      */
-    public void add(String url, String requestMethod, String jsonData,
-            String token, ResultListener listener) {
+    public void add(int priority, String url, String requestMethod,
+            String jsonData, String token, ResultListener listener) {
         Request request = new Request(url);
         request.setToken(token);
         if (jsonData != null) {
             request.setJSONData(requestMethod, jsonData);
         }
-        addRequest(1, request, listener);
+        addRequest(priority, request, listener);
     }
     
-    public void add(String url, String requestMethod, Map<String, String> data,
-            String token, ResultListener listener) {
+    public void add(int priority, String url, String requestMethod,
+            Map<String, String> data, String token, ResultListener listener) {
         Request request = new Request(url);
         request.setToken(token);
         if (data != null) {
             request.setJSONData(requestMethod, data);
         }
-        addRequest(1, request, listener);
+        addRequest(priority, request, listener);
     }
     
     private void addRequest(int priority, Request request, ResultListener listener) {
         Entry entry = new Entry(priority, request, listener);
         if (checkPending(entry)) {
             queue.add(entry);
+            synchronized (added) {
+                addedCount++;
+                added.notifyAll();
+            }
         } else {
             System.out.println("Duped "+request);
         }
@@ -0,0 +1,175 @@
+
+package chatty.util.api.queue;
+
+/**
+ * Models the Helix rate limit token bucket based on the "Ratelimit-*" response
+ * headers, to decide when the next request can be sent.
+ *
+ * <p>
+ * The bucket contains up to "Ratelimit-Limit" tokens and is refilled at a rate
+ * of that many tokens per minute (fully refilled at "Ratelimit-Reset"). Each
+ * request uses one token. Since responses arrive delayed, the remaining tokens
+ * are estimated locally (counting down on every sent request and refilling
+ * over time), and corrected whenever a response is received.
+ * </p>
+ *
+ * <p>
+ * Regular requests leave some tokens in reserve for urgent requests, and are
+ * spread out (sent at about the refill rate) once the bucket is half empty, so
+ * they don't use up all tokens in a burst.
+ * </p>
+ *
+ * <p>
+ * All times are in milliseconds, but relative to whatever the caller uses
+ * (only differences are used, except for the reset time).
+ * </p>
+ *
+ * @author tduva
+ */
+public class RateLimiter {
+
+    /**
+     * Refill period of the bucket.
+     */
+    private static final long REFILL_PERIOD = 60*1000;
+
+    /**
+     * Assumed limit if the response doesn't contain it.
+     */
+    private static final int DEFAULT_LIMIT = 800;
+
+    /**
+     * Tokens that only urgent requests can use.
+     */
+    private final int reserve;
+
+    private int limit = -1;
+
+    /**
+     * Estimated remaining tokens, or -1 if unknown.
+     */
+    private double tokens = -1;
+
+    /**
+     * When the bucket will be full again, or -1 if unknown.
+     */
+    private long resetTime = -1;
+
+    private long lastRefill;
+    private long lastSent = -1;
+
+    /**
+     * @param reserve How many tokens to keep for urgent requests
+     */
+    public RateLimiter(int reserve) {
+        this.reserve = reserve;
+    }
+
+    /**
+     * Update with the rate limit info from a response.
+     *
+     * @param limit The Ratelimit-Limit header, or -1 if not present
+     * @param remaining The Ratelimit-Remaining header, or -1 if not present
+     * @param resetTime The Ratelimit-Reset header converted to the caller's
+     * time, or -1 if not present
+     * @param inFlight The number of other requests that have been sent, but
+     * not received a response yet (they may already have used tokens)
+     * @param now The current time
+     */
+    public synchronized void update(int limit, int remaining, long resetTime, int inFlight, long now) {
+        if (remaining < 0) {
+            return;
+        }
+        if (limit > 0) {
+            this.limit = limit;
+        }
+        else if (this.limit == -1) {
+            this.limit = Math.max(remaining, DEFAULT_LIMIT);
+        }
+        this.resetTime = resetTime;
+        lastRefill = now;
+        tokens = Math.max(Math.min(remaining, this.limit) - inFlight, 0);
+    }
+
+    /**
+     * How long to wait before a request with the given urgency can be sent.
+     *
+     * @param urgent Whether the request is urgent (may use reserved tokens and
+     * isn't spread out)
+     * @param now The current time
+     * @return The time to wait in milliseconds, 0 if it can be sent now
+     */
+    public synchronized long getDelay(boolean urgent, long now) {
+        if (tokens == -1) {
+            return 0;
+        }
+        refill(now);
+        double required = urgent ? 1 : reserve + 1;
+        if (tokens < required) {
+            long delay = (long) Math.ceil((required - tokens) / getRefillRate());
+            if (resetTime != -1) {
+                // The bucket is full at the reset time at the latest
+                delay = Math.min(delay, Math.max(resetTime - now, 0));
+            }
+            return delay;
+        }
+        if (!urgent && tokens < limit / 2.0 && lastSent != -1) {
+            long interval = (long) (1 / getRefillRate());
+            long next = lastSent + interval;
+            if (next > now) {
+                return next - now;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A request is being sent.
+     *
+     * @param now The current time
+     */
+    public synchronized void sent(long now) {
+        lastSent = now;
+        if (tokens != -1) {
+            refill(now);
+            tokens = Math.max(tokens - 1, 0);
+        }
+    }
+
+    /**
+     * The estimated remaining tokens.
+     *
+     * @param now The current time
+     * @return The number of tokens, or -1 if unknown
+     */
+    public synchronized int getTokens(long now) {
+        if (tokens == -1) {
+            return -1;
+        }
+        refill(now);
+        return (int) tokens;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    private void refill(long now) {
+        if (tokens != -1 && resetTime != -1 && now >= resetTime) {
+            tokens = limit;
+            resetTime = -1;
+        }
+        else if (tokens != -1 && now > lastRefill) {
+            tokens = Math.min(limit, tokens + (now - lastRefill) * getRefillRate());
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * Tokens per millisecond.
+     */
+    private double getRefillRate() {
+        return (double) limit / REFILL_PERIOD;
+    }
+
+}
@@ -7,6 +7,18 @@ package chatty.util.api.queue;
  */
 public interface RequestResultListener {
     
-    public void requestResult(String result, int responseCode, String errorResult, int ratelimitRemaining);
+    /**
+     * The request has finished.
+     * 
+     * @param result The response text, or null if an error occured
+     * @param responseCode The HTTP response code, or -1
+     * @param errorResult The response text if the request failed
+     * @param ratelimitLimit The Ratelimit-Limit header, or -1
+     * @param ratelimitRemaining The Ratelimit-Remaining header, or -1
+     * @param ratelimitReset The Ratelimit-Reset header (seconds since epoch),
+     * or -1
+     */
+    public void requestResult(String result, int responseCode, String errorResult,
+            int ratelimitLimit, int ratelimitRemaining, long ratelimitReset);
     
 }
@@ -54,7 +54,9 @@ public class ChatLog {
             String logSplit = settings.getString("logSplit");
             boolean logSubdirectories = settings.getBoolean("logSubdirectories");
             boolean lockFiles = settings.getBoolean("logLockFiles");
-            this.log = new LogManager(path, logSplit, logSubdirectories, lockFiles);
+            boolean index = settings.getBoolean("logIndex");
+            boolean compress = settings.getBoolean("logCompress");
+            this.log = new LogManager(path, logSplit, logSubdirectories, lockFiles, index, compress);
         }
         compactForChannels = new HashMap<>();
         try {
@@ -112,7 +114,7 @@ public class ChatLog {
             writeLine(channel, String.format(Locale.ROOT, "%sBITS: %s (%d)",
                     timestamp(),
                     user.getRegularDisplayNick(),
-                    amount));
+                    amount), user.getName());
         }
     }
     
@@ -137,7 +139,7 @@ public class ChatLog {
                             timestamp(user.getRoom(), includedChannel, false));
             String line = messageTemplate.replace(param);
             if (line != null && !line.isEmpty()) {
-                writeLine(channel, line);
+                writeLine(channel, line, user.getName());
             }
         }
     }
@@ -188,6 +190,18 @@ public class ChatLog {
         }
     }
     
+    /**
+     * Add a raw message to the structured log of the channel.
+     * 
+     * @param channel The channel
+     * @param raw The raw IRC message
+     */
+    public void raw(String channel, String raw) {
+        if (isSettingEnabled("logStructured") && isChanEnabled(channel)) {
+            log.writeStructured(channel, StructuredLog.makeRecord(System.currentTimeMillis(), raw));
+        }
+    }
+    
     public void system(String channel, String message) {
         if (isSettingEnabled("logSystem") && isChanEnabled(channel)) {
             writeLine(channel, timestamp()+message);
@@ -195,9 +209,21 @@ public class ChatLog {
     }
     
     private void writeLine(String channel, String message) {
+        writeLine(channel, message, null);
+    }
+    
+    /**
+     * Write a line to the log.
+     * 
+     * @param channel The channel (file) to write to
+     * @param message The line
+     * @param user The username if the line is a message by that user, so it
+     * can be added to the index
+     */
+    private void writeLine(String channel, String message, String user) {
         if (log != null) {
             compactClose(channel);
-            log.writeLine(channel, message);
+            log.writeLine(channel, message, user);
         }
     }
     
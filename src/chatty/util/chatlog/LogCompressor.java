@@ -0,0 +1,292 @@
+
+package chatty.util.chatlog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses finished log files in a low priority background thread.
+ *
+ * <p>
+ * The compressed file ("name.log.gz") consists of several gzip members, each
+ * containing a block of whole lines, so it can still be decompressed by
+ * regular gzip tools. The block table (uncompressed and compressed offset of
+ * each block) is stored in the {@link LogIndex#INDEX_DIR}, which allows
+ * {@link LogLines} to only decompress the block containing a line found by the
+ * index. The offsets in the {@link LogIndex} refer to the uncompressed
+ * content, so the existing index stays valid.
+ * </p>
+ *
+ * @author tduva
+ */
+public class LogCompressor {
+
+    private static final Logger LOGGER = Logger.getLogger(LogCompressor.class.getName());
+
+    public static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A block ends at the first line end after this many (uncompressed) bytes.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Log files that have a date prefix (so they are split and don't get
+     * written to anymore once the date has passed).
+     */
+    private static final Pattern SPLIT_FILE_NAME = Pattern.compile("\\d{4}-\\d{2}-\\d{2}_.+\\.log");
+
+    private final ExecutorService executor;
+
+    public LogCompressor() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "LogCompressor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Compress the given log file in the background. The file should already
+     * be closed.
+     *
+     * @param file The log file
+     */
+    public void compressLater(Path file) {
+        executor.execute(() -> {
+            try {
+                compress(file);
+            }
+            catch (IOException ex) {
+                LOGGER.warning("Log: Error compressing " + file + " (" + ex + ")");
+            }
+        });
+    }
+
+    /**
+     * Compress split log files in the given directory (and subdirectories if
+     * enabled) that don't start with the current date prefix, for example
+     * files that were closed because Chatty was closed before the date
+     * changed.
+     *
+     * @param path The log directory
+     * @param useSubdirectories Whether to look in subdirectories
+     * @param currentPrefix The date prefix of the log files currently being
+     * written to
+     */
+    public void compressOldLater(Path path, boolean useSubdirectories, String currentPrefix) {
+        executor.execute(() -> {
+            for (Path file : getOldFiles(path, useSubdirectories, currentPrefix)) {
+                compressLater(file);
+            }
+        });
+    }
+
+    static List<Path> getOldFiles(Path path, boolean useSubdirectories, String currentPrefix) {
+        if (!Files.isDirectory(path)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> stream = Files.walk(path, useSubdirectories ? 2 : 1)) {
+            return stream.filter(file -> {
+                String name = file.getFileName().toString();
+                return Files.isRegularFile(file)
+                        && SPLIT_FILE_NAME.matcher(name).matches()
+                        && !name.startsWith(currentPrefix);
+            }).collect(Collectors.toList());
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Log: Error listing log files for compression (" + ex + ")");
+            return new ArrayList<>();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(COMPRESSED_SUFFIX);
+    }
+
+    /**
+     * Get the path of the uncompressed log file, which is also what the index
+     * files are named after.
+     *
+     * @param file The compressed or uncompressed log file
+     * @return The uncompressed log file path
+     */
+    public static Path getUncompressedPath(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(COMPRESSED_SUFFIX)) {
+            return file.resolveSibling(name.substring(0, name.length() - COMPRESSED_SUFFIX.length()));
+        }
+        return file;
+    }
+
+    //==========================
+    // Compressing
+    //==========================
+
+    /**
+     * Compress the given log file and remove the original file.
+     *
+     * @param file The log file
+     * @return The compressed file
+     * @throws IOException
+     */
+    static Path compress(Path file) throws IOException {
+        return compress(file, BLOCK_SIZE);
+    }
+
+    static Path compress(Path file, int blockSize) throws IOException {
+        Path target = file.resolveSibling(file.getFileName() + COMPRESSED_SUFFIX);
+        Path tempTarget = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        Path blocksFile = LogIndex.getBlocksFile(file);
+        Path tempBlocksFile = blocksFile.resolveSibling(blocksFile.getFileName() + TEMP_SUFFIX);
+
+        long start = System.currentTimeMillis();
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        List<String> blocks = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file));
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempTarget))) {
+            BlockWriter writer = new BlockWriter(out, blocks, blockSize);
+            int b;
+            while ((b = in.read()) != -1) {
+                writer.write(b);
+            }
+            writer.finish();
+        }
+        Files.createDirectories(blocksFile.getParent());
+        Files.write(tempBlocksFile, blocks, StandardCharsets.UTF_8);
+
+        // The original file stays until everything else is written
+        Files.move(tempBlocksFile, blocksFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tempTarget, target, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(target, lastModified);
+        Files.delete(file);
+        LOGGER.info(String.format("Log: Compressed %s (%d blocks, %dKB -> %dKB, %dms)",
+                file, blocks.size() - 1,
+                getUncompressedSize(blocks) / 1024,
+                Files.size(target) / 1024,
+                System.currentTimeMillis() - start));
+        return target;
+    }
+
+    private static long getUncompressedSize(List<String> blocks) {
+        String last = blocks.get(blocks.size() - 1);
+        return Long.parseLong(last.substring(0, last.indexOf(' ')));
+    }
+
+    /**
+     * Collects bytes into blocks and writes each block as a gzip member.
+     */
+    private static class BlockWriter {
+
+        private final OutputStream out;
+        private final List<String> blocks;
+        private final int blockSize;
+        private final ByteArrayOutputStream block;
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private long offset;
+        private long compressedOffset;
+
+        BlockWriter(OutputStream out, List<String> blocks, int blockSize) {
+            this.out = out;
+            this.blocks = blocks;
+            this.blockSize = blockSize;
+            this.block = new ByteArrayOutputStream(blockSize + 1024);
+        }
+
+        void write(int b) throws IOException {
+            block.write(b);
+            if (b == '\n' && block.size() >= blockSize) {
+                writeBlock();
+            }
+        }
+
+        void finish() throws IOException {
+            if (block.size() > 0) {
+                writeBlock();
+            }
+            // End of the last block
+            blocks.add(offset + " " + compressedOffset);
+        }
+
+        private void writeBlock() throws IOException {
+            blocks.add(offset + " " + compressedOffset);
+            compressed.reset();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                block.writeTo(gzip);
+            }
+            compressed.writeTo(out);
+            offset += block.size();
+            compressedOffset += compressed.size();
+            block.reset();
+        }
+
+    }
+
+    //==========================
+    // Reading
+    //==========================
+
+    /**
+     * Read the block table of the given compressed log file.
+     *
+     * @param file The compressed log file
+     * @return Pairs of uncompressed and compressed offsets, with an additional
+     * last entry for the end of the last block, or null if no valid block
+     * table exists
+     * @throws IOException
+     */
+    static long[][] readBlocks(Path file) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(LogIndex.getBlocksFile(getUncompressedPath(file)), StandardCharsets.UTF_8);
+        }
+        catch (NoSuchFileException ex) {
+            return null;
+        }
+        if (lines.size() < 2) {
+            return null;
+        }
+        long[][] result = new long[lines.size()][];
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                String[] split = lines.get(i).split(" ");
+                result[i] = new long[]{Long.parseLong(split[0]), Long.parseLong(split[1])};
+            }
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            return null;
+        }
+        if (result[result.length - 1][1] != Files.size(file)) {
+            // Doesn't match the file
+            return null;
+        }
+        return result;
+    }
+
+}
@@ -13,7 +13,8 @@ import java.util.logging.Logger;
 
 /**
  * Open, lock and write to a single logfile. The name of the logfiles is based
- * on the given name, but with ".log" added to the end.
+ * on the given name, but with ".log" (or another given extension) added to the
+ * end.
  *
  * @author tduva
  */
@@ -34,6 +35,16 @@ public class LogFile {
      */
     private static final int MAX_ATTEMPTS = 3;
 
+    /**
+     * The default file extension.
+     */
+    private static final String EXTENSION = ".log";
+
+    /**
+     * The line separator written by the BufferedWriter.
+     */
+    private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().length();
+
     /**
      * Write buffer for the LogFile instance.
      */
@@ -56,13 +67,24 @@ public class LogFile {
     
     private boolean lockFile = true;
 
+    /**
+     * The byte offset in the file the next line will be written at.
+     */
+    private long position;
+
+    /**
+     * The index of this file, may be null.
+     */
+    private LogIndex index;
+
     /**
      * LogFile constructor.
      *
      * @param path The system path of where the LogFile will be stored.
      * @param name Name of the LogFile to be stored.
+     * @param extension The file extension (including the dot).
      */
-    private LogFile(Path path, String name, boolean lockFile) {
+    private LogFile(Path path, String name, boolean lockFile, String extension) {
         this.lockFile = lockFile;
         currentTime = Calendar.getInstance();
 
@@ -73,9 +95,9 @@ public class LogFile {
             String fileName;
 
             if (i == 0) {
-                fileName = name + ".log";
+                fileName = name + extension;
             } else {
-                fileName = name + "-" + i + ".log";
+                fileName = name + "-" + i + extension;
             }
 
             file = path.resolve(fileName);
@@ -94,29 +116,100 @@ public class LogFile {
      * @return The LogFile or null if an error occurred while opening the file.
      */
     public static LogFile get(Path path, String name, boolean lockFile) {
-        LogFile file = new LogFile(path, name, lockFile);
+        return get(path, name, lockFile, false);
+    }
+
+    /**
+     * Creates a LogFile object for the given path and name.
+     *
+     * @param path The path where the file should be created under.
+     * @param name The name of the log file to be created.
+     * @param lockFile Whether to lock the file.
+     * @param indexEnabled Whether to write a {@link LogIndex} for the file.
+     * @return The LogFile or null if an error occurred while opening the file.
+     */
+    public static LogFile get(Path path, String name, boolean lockFile, boolean indexEnabled) {
+        return get(path, name, lockFile, indexEnabled, EXTENSION);
+    }
+
+    /**
+     * Creates a LogFile object for the given path and name.
+     *
+     * @param path The path where the file should be created under.
+     * @param name The name of the log file to be created.
+     * @param lockFile Whether to lock the file.
+     * @param indexEnabled Whether to write a {@link LogIndex} for the file.
+     * @param extension The file extension (including the dot).
+     * @return The LogFile or null if an error occurred while opening the file.
+     */
+    public static LogFile get(Path path, String name, boolean lockFile, boolean indexEnabled, String extension) {
+        LogFile file = new LogFile(path, name, lockFile, extension);
         if (file.valid) {
+            if (indexEnabled) {
+                file.index = LogIndex.open(file.file);
+            }
             return file;
         }
         return null;
     }
 
     /**
-     * Attempt to write a new line to the LogFile.
+     * Attempt to write a new line to the LogFile. The line is buffered, so it
+     * may only actually be written to the file when {@link #flush()} or
+     * {@link #close()} is called.
      *
      * @param line The message to be written to the file.
      * @return Returns true if the message is successfully logged.
      */
     public boolean write(String line) {
+        return write(line, System.currentTimeMillis(), null);
+    }
+
+    /**
+     * Attempt to write a new line to the LogFile, adding it to the index with
+     * the given info.
+     *
+     * @param line The message to be written to the file.
+     * @param time The time the line was created.
+     * @param user The username, if this line is a message by a user.
+     * @return Returns true if the message is successfully logged.
+     */
+    public boolean write(String line, long time, String user) {
         if (!valid) {
             LOGGER.warning("Log: Tried writing to invalid file " + file + "");
             return false;
         }
 
         try {
+            if (index != null) {
+                index.add(position, time, user);
+            }
             writer.write(line);
             writer.newLine();
+            position += utf8Length(line) + LINE_SEPARATOR_LENGTH;
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error writing to " + file + " (" + ex.getLocalizedMessage() + ")");
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Write all buffered lines to the file.
+     *
+     * @return Returns true if the lines were successfully written.
+     */
+    public boolean flush() {
+        if (!valid) {
+            return false;
+        }
+
+        try {
             writer.flush();
+            if (index != null) {
+                index.flush();
+            }
             return true;
         } catch (IOException ex) {
             LOGGER.warning("Log: Error writing to " + file + " (" + ex.getLocalizedMessage() + ")");
@@ -138,6 +231,9 @@ public class LogFile {
      * Close the writer, if necessary.
      */
     private void closeResources() {
+        if (index != null) {
+            index.close();
+        }
         try {
             if (writer != null) {
                 writer.close();
@@ -160,6 +256,7 @@ public class LogFile {
             LOGGER.info("Log: Trying to open " + file.getAbsolutePath());
             RandomAccessFile raf = new RandomAccessFile(file, "rw");
             raf.seek(raf.length());
+            position = raf.length();
             FileChannel channel = raf.getChannel();
             if (lockFile) {
                 FileLock lock = channel.tryLock();
@@ -181,6 +278,34 @@ public class LogFile {
         return false;
     }
 
+    /**
+     * The number of bytes the given String has when encoded as UTF-8.
+     *
+     * @param s The String
+     * @return The number of bytes
+     */
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate is replaced with '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
     /**
      * Getter for the `valid` property.
      *
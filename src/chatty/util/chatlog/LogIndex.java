@@ -0,0 +1,277 @@
+
+package chatty.util.chatlog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Index for a single log file, written while lines are appended to the log
+ * file. The index files are stored in the {@link #INDEX_DIR} directory next to
+ * the log file.
+ *
+ * <p>
+ * The time index (".time" file) contains the time and byte offset of the first
+ * line written in every second (so all lines between two entries were written
+ * in the same second as the first entry). The user index (".users" file)
+ * contains the time, byte offset and username for every line of a user
+ * message.
+ * </p>
+ *
+ * <p>
+ * Both files contain one entry per line (values separated by spaces), so they
+ * can simply be appended to. Since lines written before the index was created
+ * aren't in the index, the offset of the first entry is where the indexed part
+ * of the log file starts.
+ * </p>
+ *
+ * @author tduva
+ */
+public class LogIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(LogIndex.class.getName());
+
+    public static final String INDEX_DIR = ".index";
+
+    private static final String TIME_SUFFIX = ".time";
+    private static final String USERS_SUFFIX = ".users";
+    private static final String BLOCKS_SUFFIX = ".blocks";
+
+    private final Path logFile;
+    private BufferedWriter timeWriter;
+    private BufferedWriter usersWriter;
+    private long lastSecond = -1;
+    private boolean valid = true;
+
+    private LogIndex(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * Open the index for appending entries for the given log file.
+     *
+     * @param logFile The log file
+     * @return The index, or null if it couldn't be opened
+     */
+    public static LogIndex open(Path logFile) {
+        LogIndex index = new LogIndex(logFile);
+        try {
+            Files.createDirectories(getIndexDir(logFile));
+            index.timeWriter = openWriter(getTimeFile(logFile));
+            index.usersWriter = openWriter(getUsersFile(logFile));
+            return index;
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Log: Failed to open index for " + logFile + " (" + ex + ")");
+            index.close();
+            return null;
+        }
+    }
+
+    private static BufferedWriter openWriter(Path file) throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Add a line that is about to be written to the log file.
+     *
+     * @param offset The byte offset in the log file the line starts at
+     * @param time The time the line was created (milliseconds)
+     * @param user The username if this is a message by a user, otherwise null
+     */
+    public void add(long offset, long time, String user) {
+        if (!valid) {
+            return;
+        }
+        try {
+            long second = time / 1000;
+            if (second != lastSecond) {
+                timeWriter.write(time + " " + offset);
+                timeWriter.newLine();
+                lastSecond = second;
+            }
+            if (user != null && !user.isEmpty()) {
+                usersWriter.write(time + " " + offset + " " + user.toLowerCase(Locale.ROOT));
+                usersWriter.newLine();
+            }
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Log: Error writing index for " + logFile + " (" + ex + ")");
+            close();
+        }
+    }
+
+    public void flush() {
+        if (!valid) {
+            return;
+        }
+        try {
+            timeWriter.flush();
+            usersWriter.flush();
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Log: Error writing index for " + logFile + " (" + ex + ")");
+            close();
+        }
+    }
+
+    public void close() {
+        valid = false;
+        closeWriter(timeWriter);
+        closeWriter(usersWriter);
+    }
+
+    private void closeWriter(BufferedWriter writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            }
+            catch (IOException ex) {
+                LOGGER.warning("Log: Could not close index for " + logFile + " (" + ex + ")");
+            }
+        }
+    }
+
+    //==========================
+    // Reading
+    //==========================
+
+    public static Path getIndexDir(Path logFile) {
+        return logFile.resolveSibling(INDEX_DIR);
+    }
+
+    static Path getTimeFile(Path logFile) {
+        return getIndexFile(logFile, TIME_SUFFIX);
+    }
+
+    static Path getUsersFile(Path logFile) {
+        return getIndexFile(logFile, USERS_SUFFIX);
+    }
+
+    /**
+     * The block table of a compressed log file (see {@link LogCompressor}).
+     */
+    static Path getBlocksFile(Path logFile) {
+        return getIndexFile(logFile, BLOCKS_SUFFIX);
+    }
+
+    /**
+     * Index files are named after the uncompressed log file, so they stay
+     * valid when the log file is compressed.
+     */
+    private static Path getIndexFile(Path logFile, String suffix) {
+        logFile = LogCompressor.getUncompressedPath(logFile);
+        return getIndexDir(logFile).resolve(logFile.getFileName() + suffix);
+    }
+
+    /**
+     * An entry of the time or user index.
+     */
+    public static class Entry {
+
+        public final long time;
+        public final long offset;
+        public final String user;
+
+        public Entry(long time, long offset, String user) {
+            this.time = time;
+            this.offset = offset;
+            this.user = user;
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + offset + (user != null ? " " + user : "");
+        }
+
+    }
+
+    /**
+     * Read the time index of the given log file.
+     *
+     * @param logFile The log file
+     * @return The entries (sorted by offset), or null if no index exists
+     * @throws IOException
+     */
+    public static List<Entry> readTimeIndex(Path logFile) throws IOException {
+        return read(getTimeFile(logFile), null);
+    }
+
+    /**
+     * Read the entries for the given user from the user index of the given
+     * log file.
+     *
+     * @param logFile The log file
+     * @param user The username (case-insensitive)
+     * @return The entries (sorted by offset), or null if no index exists
+     * @throws IOException
+     */
+    public static List<Entry> readUserIndex(Path logFile, String user) throws IOException {
+        return read(getUsersFile(logFile), user.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Read the entries of the given index file. The file is read line by line,
+     * since the user index contains all user messages of the log file, but
+     * usually only few entries are for the given user.
+     */
+    private static List<Entry> read(Path file, String user) throws IOException {
+        BufferedReader reader;
+        try {
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        }
+        catch (NoSuchFileException ex) {
+            return null;
+        }
+        List<Entry> result = new ArrayList<>();
+        String userSuffix = user != null ? " " + user : null;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Quick check before splitting, the username is at the end
+                if (userSuffix != null && !line.endsWith(userSuffix)) {
+                    continue;
+                }
+                Entry entry = parseEntry(line, user);
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    private static Entry parseEntry(String line, String user) {
+        String[] split = line.split(" ");
+        if (split.length < 2) {
+            return null;
+        }
+        if (user != null && (split.length < 3 || !split[2].equals(user))) {
+            return null;
+        }
+        try {
+            return new Entry(
+                    Long.parseLong(split[0]),
+                    Long.parseLong(split[1]),
+                    split.length > 2 ? split[2] : null);
+        }
+        catch (NumberFormatException ex) {
+            // Partially written line or something, just ignore
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+
+package chatty.util.chatlog;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads lines at given byte offsets from a log file, which may be a plain log
+ * file or one compressed by {@link LogCompressor}. Offsets always refer to the
+ * uncompressed content, so the same {@link LogIndex} can be used for both.
+ *
+ * @author tduva
+ */
+abstract class LogLines implements Closeable {
+
+    /**
+     * The size of the (uncompressed) content.
+     */
+    protected long size;
+
+    /**
+     * The offset after the line that was last read.
+     */
+    protected long nextOffset;
+
+    private byte[] lineBuffer = new byte[256];
+
+    /**
+     * Open the given log file for reading.
+     *
+     * @param file The log file
+     * @return The reader
+     * @throws IOException
+     */
+    public static LogLines open(Path file) throws IOException {
+        if (LogCompressor.isCompressed(file)) {
+            return new CompressedLines(file);
+        }
+        return new PlainLines(file);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Read the line starting at the given offset.
+     *
+     * @param offset The byte offset
+     * @return The line (without line separator), or null if the offset is at
+     * or after the end of the file
+     * @throws IOException
+     */
+    public String readLine(long offset) throws IOException {
+        if (offset >= size) {
+            nextOffset = size;
+            return null;
+        }
+        long pos = offset;
+        int length = 0;
+        while (pos < size) {
+            byte b = get(pos++);
+            if (b == '\n') {
+                break;
+            }
+            if (length == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+            }
+            lineBuffer[length++] = b;
+        }
+        nextOffset = pos;
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        return new String(lineBuffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the byte at the given (uncompressed) offset.
+     */
+    protected abstract byte get(long pos) throws IOException;
+
+    /**
+     * Reads lines from a plain file, reading a window of the file at the
+     * requested offset into a buffer that is reused.
+     *
+     * <p>
+     * Memory-mapping the file isn't used, since a mapping can't be released
+     * explicitly and the file can't be deleted (e.g. by {@link LogCompressor})
+     * on Windows while it still exists.
+     * </p>
+     */
+    private static class PlainLines extends LogLines {
+
+        private static final int WINDOW_SIZE = 64 * 1024;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE);
+        private long bufferStart = -1;
+
+        PlainLines(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+        }
+
+        @Override
+        protected byte get(long pos) throws IOException {
+            if (bufferStart == -1 || pos < bufferStart || pos >= bufferStart + buffer.limit()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(WINDOW_SIZE, size - pos));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, pos + buffer.position()) == -1) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                }
+                buffer.flip();
+                bufferStart = pos;
+            }
+            return buffer.get((int) (pos - bufferStart));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+    /**
+     * Reads lines from a compressed file, only decompressing the block that
+     * contains the requested offset (using the block table written by
+     * {@link LogCompressor}). If the block table is missing the whole file is
+     * decompressed as a single block.
+     */
+    private static class CompressedLines extends LogLines {
+
+        private final FileChannel channel;
+        private final long[][] blocks;
+        private byte[] block;
+        private int blockIndex = -1;
+
+        CompressedLines(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long[][] table = LogCompressor.readBlocks(file);
+            if (channel.size() == 0) {
+                table = new long[][]{{0, 0}};
+            }
+            else if (table == null) {
+                table = new long[][]{{0, 0}, {-1, channel.size()}};
+            }
+            blocks = table;
+            size = blocks[blocks.length - 1][0];
+            if (size == -1) {
+                // No block table, so the size is only known after decompressing
+                loadBlock(0);
+                size = block.length;
+                blocks[1][0] = size;
+            }
+        }
+
+        @Override
+        protected byte get(long pos) throws IOException {
+            if (blockIndex == -1 || pos < blocks[blockIndex][0] || pos >= blocks[blockIndex + 1][0]) {
+                loadBlock(findBlock(pos));
+            }
+            return block[(int) (pos - blocks[blockIndex][0])];
+        }
+
+        /**
+         * Find the index of the block containing the given offset.
+         */
+        private int findBlock(long pos) {
+            int low = 0;
+            int high = blocks.length - 2;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (blocks[mid][0] <= pos) {
+                    low = mid;
+                }
+                else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        private void loadBlock(int index) throws IOException {
+            long start = blocks[index][1];
+            long end = blocks[index + 1][1];
+            ByteBuffer compressed = ByteBuffer.allocate((int) (end - start));
+            while (compressed.hasRemaining()) {
+                if (channel.read(compressed, start + compressed.position()) == -1) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+                block = readAll(in);
+            }
+            blockIndex = index;
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            byte[] result = new byte[64 * 1024];
+            int length = 0;
+            int read;
+            while ((read = in.read(result, length, result.length - length)) != -1) {
+                length += read;
+                if (length == result.length) {
+                    result = Arrays.copyOf(result, result.length * 2);
+                }
+            }
+            return Arrays.copyOf(result, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            block = null;
+            channel.close();
+        }
+
+    }
+
+}
@@ -18,22 +18,35 @@ public class LogManager {
   
     private static final Logger LOGGER = Logger.getLogger(LogManager.class.getName());
     
-    private static final int QUEUE_CAPACITY = 100;
+    static final int QUEUE_CAPACITY = 10000;
     private static final int MAX_WAIT = 10*1000;
     
-    private final AtomicInteger errors = new AtomicInteger();
+    /**
+     * Number of lines that were dropped because the queue was full.
+     */
+    private final AtomicInteger dropped = new AtomicInteger();
 
     private final BlockingQueue<LogItem> queue;
     private final Thread writerThread;
 
-    public LogManager(Path path, String splitLogs, boolean useSubdirectories,
+    LogManager(Path path, String splitLogs, boolean useSubdirectories,
             boolean lockFiles) {
+        this(path, splitLogs, useSubdirectories, lockFiles, false);
+    }
+    
+    LogManager(Path path, String splitLogs, boolean useSubdirectories,
+            boolean lockFiles, boolean indexEnabled) {
+        this(path, splitLogs, useSubdirectories, lockFiles, indexEnabled, false);
+    }
+    
+    public LogManager(Path path, String splitLogs, boolean useSubdirectories,
+            boolean lockFiles, boolean indexEnabled, boolean compress) {
         path.toFile().mkdirs();
         if (!path.toFile().exists()) {
             LOGGER.warning("Log: Failed to create path: "+path);
         }
         this.queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
-        this.writerThread = new Thread(new LogWriter(queue, path, splitLogs, useSubdirectories, lockFiles), "LogWriter");
+        this.writerThread = new Thread(new LogWriter(queue, path, splitLogs, useSubdirectories, lockFiles, indexEnabled, compress), "LogWriter");
     }
     
     public void start() {
@@ -59,13 +72,56 @@ public class LogManager {
     }
 
     
+    /**
+     * Add a line to be written. This never blocks, if the queue is full (the
+     * writer can't keep up) the line is dropped and counted.
+     * 
+     * @param channel The channel
+     * @param line The line to write
+     */
     public void writeLine(String channel, String line) {
-        boolean added = queue.offer(new LogItem(channel, line));
-        if (!added) {
-            int current = errors.incrementAndGet();
-            if (current % 20 == 0) {
-                LOGGER.warning("Log: Failed writing "+errors+" lines (queue full)");
+        writeLine(channel, line, null);
+    }
+    
+    /**
+     * Add a line to be written.
+     * 
+     * @param channel The channel
+     * @param line The line to write
+     * @param user The username, if the line is a message by the user (for
+     * the index), can be null
+     * @see #writeLine(String, String)
+     */
+    public void writeLine(String channel, String line, String user) {
+        add(new LogItem(channel, line, user));
+    }
+    
+    /**
+     * Add a line to be written to the structured log of the channel (separate
+     * file, see {@link StructuredLog}).
+     * 
+     * @param channel The channel
+     * @param record The line to write
+     */
+    public void writeStructured(String channel, String record) {
+        add(new LogItem(channel, record, null, true));
+    }
+    
+    private void add(LogItem item) {
+        if (!queue.offer(item)) {
+            int current = dropped.incrementAndGet();
+            if (current % 100 == 1) {
+                LOGGER.warning("Log: Failed writing "+current+" lines (queue full)");
             }
         }
     }
+    
+    /**
+     * The number of lines that were not written because the queue was full.
+     * 
+     * @return 
+     */
+    public int getDroppedCount() {
+        return dropped.get();
+    }
 }
@@ -0,0 +1,359 @@
+
+package chatty.util.chatlog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Search the chat logs by channel, user and time range, using the
+ * {@link LogIndex} of the log files where available.
+ *
+ * <p>
+ * Results are read from the log files (see {@link LogLines}) and given to the
+ * listener as they are found, so this can be used for showing results while
+ * the search is still going. Files without an index (e.g. written before the
+ * index was enabled) are only searched when no time range is specified, and
+ * then only by checking if the line contains the username.
+ * </p>
+ *
+ * @author tduva
+ */
+public class LogSearch {
+
+    private static final Logger LOGGER = Logger.getLogger(LogSearch.class.getName());
+
+    /**
+     * Matches log file names, e.g. "#channel.log", "2024-01-01_#channel.log",
+     * "#channel-1.log" (if the first file couldn't be opened) or
+     * "2024-01-01_#channel.log.gz" (compressed).
+     */
+    private static final Pattern FILE_NAME = Pattern.compile("(?:\\d{4}-\\d{2}-\\d{2}_)?(.+?)(?:-\\d+)?\\.log(?:\\.gz)?");
+
+    private final Path path;
+
+    /**
+     * @param path The base log path (as used by {@link ChatLog})
+     */
+    public LogSearch(Path path) {
+        this.path = path;
+    }
+
+    public static class Query {
+
+        public final String channel;
+        public final String user;
+        public final long from;
+        public final long to;
+        public final String text;
+        public final int maxResults;
+
+        /**
+         * Create a search query.
+         *
+         * @param channel The channel (as in the log file name, e.g. "#name"),
+         * or null for all channels
+         * @param user The username (case-insensitive), or null for all lines
+         * @param from Only lines written at or after this time (milliseconds),
+         * or -1 for no limit
+         * @param to Only lines written at or before this time (milliseconds),
+         * or -1 for no limit
+         * @param text Only lines that contain this text (case-insensitive),
+         * or null
+         * @param maxResults Stop the search after this many results
+         */
+        public Query(String channel, String user, long from, long to, String text, int maxResults) {
+            this.channel = emptyToNull(channel);
+            this.user = emptyToNull(user) != null ? user.toLowerCase(Locale.ROOT) : null;
+            this.from = from;
+            this.to = to;
+            this.text = emptyToNull(text) != null ? text.toLowerCase(Locale.ROOT) : null;
+            this.maxResults = maxResults;
+        }
+
+        private boolean hasTimeRange() {
+            return from != -1 || to != -1;
+        }
+
+        private boolean matchesTime(long time) {
+            long second = time / 1000;
+            return (from == -1 || second >= from / 1000)
+                    && (to == -1 || second <= to / 1000);
+        }
+
+        private boolean matchesText(String line) {
+            return text == null || line.toLowerCase(Locale.ROOT).contains(text);
+        }
+
+        private static String emptyToNull(String s) {
+            return s == null || s.trim().isEmpty() ? null : s.trim();
+        }
+
+    }
+
+    public static class Result {
+
+        public final String channel;
+        public final Path file;
+        public final long offset;
+
+        /**
+         * The time the line was written (accurate to the second), or -1 if
+         * unknown.
+         */
+        public final long time;
+        public final String line;
+
+        public Result(String channel, Path file, long offset, long time, String line) {
+            this.channel = channel;
+            this.file = file;
+            this.offset = offset;
+            this.time = time;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return channel + " " + time + " " + line;
+        }
+
+    }
+
+    public interface Listener {
+
+        /**
+         * A line matching the query was found.
+         *
+         * @param result The result
+         * @return true to continue searching, false to stop
+         */
+        boolean result(Result result);
+
+    }
+
+    /**
+     * Search the logs. Runs in the current thread until all files have been
+     * searched, the max number of results has been found, the listener
+     * returned false or the thread was interrupted.
+     *
+     * @param query The query
+     * @param listener Receives the results
+     * @return The number of results
+     */
+    public int search(Query query, Listener listener) {
+        Counter counter = new Counter(query, listener);
+        for (Path file : getFiles(query.channel)) {
+            if (Thread.currentThread().isInterrupted() || counter.done) {
+                break;
+            }
+            try {
+                searchFile(file, getChannel(file), query, counter);
+            }
+            catch (IOException ex) {
+                LOGGER.warning("Log: Error searching " + file + " (" + ex + ")");
+            }
+        }
+        return counter.count;
+    }
+
+    /**
+     * Get the log files for the given channel, sorted by last modified.
+     *
+     * @param channel The channel, or null for all channels
+     * @return The files
+     */
+    List<Path> getFiles(String channel) {
+        if (path == null || !Files.isDirectory(path)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> stream = Files.walk(path, 2)) {
+            return stream
+                    .filter(file -> Files.isRegularFile(file)
+                            && !file.getParent().endsWith(LogIndex.INDEX_DIR))
+                    .filter(file -> {
+                        String fileChannel = getChannel(file);
+                        return fileChannel != null
+                                && (channel == null || fileChannel.equalsIgnoreCase(channel));
+                    })
+                    .sorted(Comparator.comparingLong(LogSearch::getLastModified))
+                    .collect(Collectors.toList());
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Log: Error listing log files (" + ex + ")");
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Get the channel from the log file name.
+     *
+     * @param file The file
+     * @return The channel, or null if this isn't a log file
+     */
+    static String getChannel(Path file) {
+        Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+        if (m.matches()) {
+            return m.group(1);
+        }
+        return null;
+    }
+
+    private static long getLastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        }
+        catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private void searchFile(Path file, String channel, Query query, Counter counter) throws IOException {
+        List<LogIndex.Entry> timeIndex = LogIndex.readTimeIndex(file);
+        if (timeIndex == null || timeIndex.isEmpty()) {
+            if (!query.hasTimeRange()) {
+                try (LogLines lines = LogLines.open(file)) {
+                    scanUnindexed(lines, file, channel, 0, lines.size(), query, counter);
+                }
+            }
+            return;
+        }
+        LogIndex.Entry first = timeIndex.get(0);
+        LogIndex.Entry last = timeIndex.get(timeIndex.size() - 1);
+        if ((query.from != -1 && last.time / 1000 < query.from / 1000)
+                || (query.to != -1 && first.time / 1000 > query.to / 1000)) {
+            return;
+        }
+        try (LogLines lines = LogLines.open(file)) {
+            if (!query.hasTimeRange() && first.offset > 0) {
+                scanUnindexed(lines, file, channel, 0, first.offset, query, counter);
+            }
+            if (query.user != null) {
+                searchUser(lines, file, channel, query, counter);
+            }
+            else {
+                searchTime(lines, file, channel, timeIndex, query, counter);
+            }
+        }
+    }
+
+    /**
+     * Read the lines of the given user using the user index.
+     */
+    private void searchUser(LogLines lines, Path file, String channel, Query query, Counter counter) throws IOException {
+        List<LogIndex.Entry> entries = LogIndex.readUserIndex(file, query.user);
+        if (entries == null) {
+            return;
+        }
+        for (LogIndex.Entry entry : entries) {
+            if (counter.done || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (!query.matchesTime(entry.time)) {
+                continue;
+            }
+            String line = lines.readLine(entry.offset);
+            if (line != null && query.matchesText(line)) {
+                counter.add(new Result(channel, file, entry.offset, entry.time, line));
+            }
+        }
+    }
+
+    /**
+     * Read all lines in the time range, using the time index to find where to
+     * start and stop reading.
+     */
+    private void searchTime(LogLines lines, Path file, String channel, List<LogIndex.Entry> timeIndex, Query query, Counter counter) throws IOException {
+        int startIndex = 0;
+        if (query.from != -1) {
+            startIndex = findFirstSecond(timeIndex, query.from / 1000);
+        }
+        if (startIndex >= timeIndex.size()) {
+            return;
+        }
+        long offset = timeIndex.get(startIndex).offset;
+        int entryIndex = startIndex;
+        while (offset < lines.size() && !counter.done && !Thread.currentThread().isInterrupted()) {
+            // Find the time of the current line
+            while (entryIndex + 1 < timeIndex.size() && timeIndex.get(entryIndex + 1).offset <= offset) {
+                entryIndex++;
+            }
+            long time = timeIndex.get(entryIndex).time;
+            if (query.to != -1 && time / 1000 > query.to / 1000) {
+                return;
+            }
+            String line = lines.readLine(offset);
+            long lineOffset = offset;
+            offset = lines.nextOffset();
+            if (line != null && query.matchesText(line)) {
+                counter.add(new Result(channel, file, lineOffset, time, line));
+            }
+        }
+    }
+
+    /**
+     * Find the index of the first entry in or after the given second.
+     */
+    private static int findFirstSecond(List<LogIndex.Entry> timeIndex, long second) {
+        int low = 0;
+        int high = timeIndex.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeIndex.get(mid).time / 1000 < second) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Read lines without index info, only checking if the line contains the
+     * username.
+     */
+    private void scanUnindexed(LogLines lines, Path file, String channel, long start, long end, Query query, Counter counter) throws IOException {
+        long offset = start;
+        while (offset < end && !counter.done && !Thread.currentThread().isInterrupted()) {
+            String line = lines.readLine(offset);
+            long lineOffset = offset;
+            offset = lines.nextOffset();
+            if (line != null
+                    && (query.user == null || line.toLowerCase(Locale.ROOT).contains(query.user))
+                    && query.matchesText(line)) {
+                counter.add(new Result(channel, file, lineOffset, -1, line));
+            }
+        }
+    }
+
+    private static class Counter {
+
+        private final Query query;
+        private final Listener listener;
+        private int count;
+        private boolean done;
+
+        Counter(Query query, Listener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+
+        void add(Result result) {
+            count++;
+            if (!listener.result(result) || count >= query.maxResults) {
+                done = true;
+            }
+        }
+
+    }
+
+}
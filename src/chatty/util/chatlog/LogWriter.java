@@ -3,17 +3,35 @@ package chatty.util.chatlog;
 
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
  * Handles writing the log files. Retrieves data from a queue and manages files
  * to write the log into.
+ * 
+ * All items currently in the queue are retrieved at once and written to the
+ * files without flushing. The files are only flushed when enough lines have
+ * been written or some time has passed since the oldest line that hasn't been
+ * flushed yet, so that many lines arriving at once don't result in a write to
+ * the file for every single line.
+ * 
+ * Structured log items are written to separate files (see
+ * {@link StructuredLog}), which use the same date splitting, but don't get
+ * any additional lines.
+ * 
+ * If compression is enabled, files that were split by date are compressed by
+ * the {@link LogCompressor} once they are finished.
  *
  * @author tduva
  */
@@ -26,6 +44,27 @@ public class LogWriter implements Runnable {
     private static final int STATS_INTERVAL = 25000;
     private static final int STATS_TIME_INTERVAL = 15 * 60 * 1000;
 
+    /**
+     * Max number of items to retrieve from the queue at once.
+     */
+    private static final int MAX_BATCH = 1000;
+
+    /**
+     * Flush files when this many lines have been written since the last flush.
+     */
+    private static final int FLUSH_LINES = 1000;
+
+    /**
+     * Flush files at the latest this many milliseconds after a line has been
+     * written.
+     */
+    private static final long FLUSH_DELAY = 1000;
+
+    /**
+     * Max number of latency values kept for stats.
+     */
+    private static final int MAX_LATENCIES = 32768;
+
     private final Map<String, LogFile> files = new HashMap<>();
     private final Set<String> errors = new HashSet<>();
     private final BlockingQueue<LogItem> queue;
@@ -33,6 +72,8 @@ public class LogWriter implements Runnable {
     private final String splitLogs;
     private final boolean useSubdirectories;
     private final boolean lockFiles;
+    private final boolean indexEnabled;
+    private final LogCompressor compressor;
 
     private long addedQueueSize;
     private int addedQueueSizeCount;
@@ -41,37 +82,73 @@ public class LogWriter implements Runnable {
     private int maxQueueSize;
     private int totalLines;
 
+    /**
+     * When the lines that haven't been flushed yet were added to the queue
+     * (System.nanoTime()).
+     */
+    private long[] pendingTimes = new long[128];
+    private int pendingLines;
+
+    /**
+     * Time from adding to the queue until flushed (milliseconds) of lines
+     * since the last stats output.
+     */
+    private final int[] latencies = new int[MAX_LATENCIES];
+    private int latencyCount;
+    private int flushCount;
+
     public LogWriter(BlockingQueue<LogItem> queue, Path path, String splitLogs,
-            boolean useSubdirectories, boolean lockFiles) {
+            boolean useSubdirectories, boolean lockFiles, boolean indexEnabled,
+            boolean compress) {
         this.queue = queue;
         this.path = path;
         this.splitLogs = splitLogs;
         this.useSubdirectories = useSubdirectories;
         this.lockFiles = lockFiles;
+        this.indexEnabled = indexEnabled;
+        if (compress && !splitLogs.equals("never")) {
+            this.compressor = new LogCompressor();
+        } else {
+            this.compressor = null;
+        }
     }
 
     @Override
     public void run() {
-        boolean run = true;
+        List<LogItem> batch = new ArrayList<>();
+        if (compressor != null) {
+            compressor.compressOldLater(path, useSubdirectories, getDatePrefix() + "_");
+        }
         try {
-            while (run) {
-                //System.out.println("Waiting for a new item..");
-                LogItem item = queue.take();
-                stats(queue.size());
-                if (item.channel == null) {
-                    if (item.message == null) {
-                        outputStats();
-                        run = false;
-                        closeAllFiles();
-                    } else {
-                        // Can't close any files here because it would
-                        // remove an item during iteration
-                        for (String channel : files.keySet()) {
-                            handleMessage(channel, item.message);
+            while (true) {
+                LogItem first;
+                if (pendingLines > 0) {
+                    // Wait at most until the pending lines should be flushed
+                    long wait = FLUSH_DELAY - nanosToMillis(System.nanoTime() - pendingTimes[0]);
+                    first = queue.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                } else {
+                    first = queue.take();
+                }
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (LogItem item : batch) {
+                        stats(queue.size());
+                        if (!handleItem(item)) {
+                            flushAll();
+                            outputStats();
+                            closeAllFiles();
+                            if (compressor != null) {
+                                compressor.shutdown();
+                            }
+                            return;
                         }
                     }
-                } else {
-                    handleMessage(item.channel, item.message);
+                    batch.clear();
+                }
+                if (pendingLines >= FLUSH_LINES
+                        || (pendingLines > 0 && nanosToMillis(System.nanoTime() - pendingTimes[0]) >= FLUSH_DELAY)) {
+                    flushAll();
                 }
             }
         } catch (InterruptedException ex) {
@@ -81,31 +158,106 @@ public class LogWriter implements Runnable {
         }
     }
 
+    /**
+     * Handle a single item from the queue.
+     *
+     * @param item The item
+     * @return false if the writer should stop, true otherwise
+     */
+    private boolean handleItem(LogItem item) {
+        if (item.channel == null) {
+            if (item.message == null) {
+                return false;
+            }
+            // Can't close any files here because it would
+            // remove an item during iteration
+            for (String key : files.keySet()) {
+                if (!isStructured(key)) {
+                    handleMessage(key, item);
+                }
+            }
+        } else {
+            handleMessage(item.channel, item);
+        }
+        addPending(item.created);
+        return true;
+    }
+
+    private void addPending(long created) {
+        if (pendingLines == pendingTimes.length) {
+            pendingTimes = Arrays.copyOf(pendingTimes, pendingTimes.length * 2);
+        }
+        pendingTimes[pendingLines++] = created;
+    }
+
+    /**
+     * Flush all open files and record how long it took for the flushed lines
+     * to be written.
+     */
+    private void flushAll() {
+        Iterator<Map.Entry<String, LogFile>> it = files.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, LogFile> entry = it.next();
+            if (!entry.getValue().flush()) {
+                it.remove();
+                errors.add(entry.getKey());
+                errorCount++;
+            }
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < pendingLines; i++) {
+            if (latencyCount < latencies.length) {
+                latencies[latencyCount++] = (int) nanosToMillis(now - pendingTimes[i]);
+            }
+        }
+        pendingLines = 0;
+        flushCount++;
+    }
+
+    private static long nanosToMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     private void closeAllFiles() {
-        for (String channel : files.keySet()) {
-            LogFile file = files.get(channel);
-            closeFile(file);
+        for (String key : files.keySet()) {
+            LogFile file = files.get(key);
+            closeFile(key, file);
         }
         files.clear();
     }
 
-    private void handleMessage(String channel, String message) {
-        if (message == null) {
+    private void handleMessage(String channel, LogItem item) {
+        if (item.message == null) {
             closeFileForChannel(channel);
+            closeFileForChannel(getKey(channel, true));
         } else {
-            writeLine(channel, message);
+            writeLine(channel, item);
         }
     }
 
-    private void writeLine(String channel, String line) {
-        LogFile file = getFile(channel);
-        if (file == null || !file.write(line)) {
-            fileError(channel);
+    private void writeLine(String channel, LogItem item) {
+        String key = getKey(channel, item.structured);
+        LogFile file = getFile(channel, item.structured);
+        if (file == null || !file.write(item.message, item.time, item.user)) {
+            fileError(key);
         }
     }
 
-    private LogFile getFile(String channel) {
-        LogFile file = files.get(channel);
+    /**
+     * The key for the files map, which is different for structured log files
+     * of a channel.
+     */
+    private static String getKey(String channel, boolean structured) {
+        return structured ? channel + StructuredLog.EXTENSION : channel;
+    }
+
+    private static boolean isStructured(String key) {
+        return key.endsWith(StructuredLog.EXTENSION);
+    }
+
+    private LogFile getFile(String channel, boolean structured) {
+        String key = getKey(channel, structured);
+        LogFile file = files.get(key);
         String datePrefix = "";
 
         if (!splitLogs.equals("never")) {
@@ -115,17 +267,20 @@ public class LogWriter implements Runnable {
         if (file != null && file.isValid()) {
             if (!datePrefix.isEmpty() && shouldSplitLog(file.getDate())) {
                 file.close();
-                return addFile(channel, datePrefix);
+                if (compressor != null && !structured) {
+                    compressor.compressLater(file.getPath());
+                }
+                return addFile(channel, datePrefix, structured);
             }
 
             return file;
         }
 
-        if (errors.contains(channel)) {
+        if (errors.contains(key)) {
             return null;
         }
 
-        return addFile(channel, datePrefix);
+        return addFile(channel, datePrefix, structured);
     }
 
     /**
@@ -183,7 +338,7 @@ public class LogWriter implements Runnable {
         return false;
     }
 
-    private LogFile addFile(String channel, String datePrefix) {
+    private LogFile addFile(String channel, String datePrefix, boolean structured) {
         Path channelPath = path;
 
         if (useSubdirectories) {
@@ -195,12 +350,20 @@ public class LogWriter implements Runnable {
             }
         }
 
-        LogFile file = LogFile.get(channelPath, datePrefix + channel, lockFiles);
+        String key = getKey(channel, structured);
+        LogFile file;
+        if (structured) {
+            file = LogFile.get(channelPath, datePrefix + channel, lockFiles, false, StructuredLog.EXTENSION);
+        } else {
+            file = LogFile.get(channelPath, datePrefix + channel, lockFiles, indexEnabled);
+        }
         if (file == null) {
-            errors.add(channel);
+            errors.add(key);
         } else {
-            files.put(channel, file);
-            file.write("# Log started: " + getDateTime());
+            files.put(key, file);
+            if (!structured) {
+                file.write("# Log started: " + getDateTime());
+            }
             LOGGER.info("Log: Opened file " + file.getPath()+(file.isLocked() ? " (locked)" : ""));
         }
         return file;
@@ -213,16 +376,18 @@ public class LogWriter implements Runnable {
         errorCount++;
     }
 
-    private void closeFileForChannel(String channel) {
-        LogFile file = files.get(channel);
-        closeFile(file);
-        files.remove(channel);
+    private void closeFileForChannel(String key) {
+        LogFile file = files.get(key);
+        closeFile(key, file);
+        files.remove(key);
     }
 
-    private void closeFile(LogFile file) {
+    private void closeFile(String key, LogFile file) {
         if (file != null && file.isValid()) {
-            file.write("# Log closed: " + getDateTime());
-            file.write("-");
+            if (!isStructured(key)) {
+                file.write("# Log closed: " + getDateTime());
+                file.write("-");
+            }
             file.close();
         }
     }
@@ -248,22 +413,75 @@ public class LogWriter implements Runnable {
     private void outputStats() {
         long avg = addedQueueSizeCount > 0 ? addedQueueSize / addedQueueSizeCount : 0;
         LOGGER.info("Log: total: " + totalLines + " / queue size (avg: " + avg + ", max: " + maxQueueSize
-                + ") / errors: " + errorCount);
+                + ") / errors: " + errorCount + " / flushes: " + flushCount
+                + " / latency ms (p50: " + getLatencyPercentile(50) + ", p99: " + getLatencyPercentile(99)
+                + ", max: " + getLatencyPercentile(100) + ")");
         addedQueueSize = 0;
         addedQueueSizeCount = 0;
         errorCount = 0;
         maxQueueSize = 0;
+        latencyCount = 0;
+        flushCount = 0;
         lastStatsTime = System.currentTimeMillis();
     }
 
+    /**
+     * Get the given percentile of the latencies recorded since the last stats
+     * output. Sorts the recorded latencies.
+     *
+     * @param percentile The percentile (0-100)
+     * @return The latency in milliseconds, or 0 if none were recorded
+     */
+    int getLatencyPercentile(int percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        Arrays.sort(latencies, 0, latencyCount);
+        int index = (int) Math.ceil(percentile / 100.0 * latencyCount) - 1;
+        return latencies[Math.max(0, Math.min(index, latencyCount - 1))];
+    }
+
     public static class LogItem {
 
         public final String channel;
         public final String message;
 
+        /**
+         * The username, if the message is by a user (for the index).
+         */
+        public final String user;
+
+        /**
+         * When the item was created (System.currentTimeMillis()), for the
+         * index.
+         */
+        public final long time;
+
+        /**
+         * When the item was created (System.nanoTime()), for stats.
+         */
+        public final long created;
+
+        /**
+         * Whether this is a line for the structured log.
+         */
+        public final boolean structured;
+
         public LogItem(String channel, String message) {
+            this(channel, message, null);
+        }
+
+        public LogItem(String channel, String message, String user) {
+            this(channel, message, user, false);
+        }
+
+        public LogItem(String channel, String message, String user, boolean structured) {
             this.channel = channel;
             this.message = message;
+            this.user = user;
+            this.structured = structured;
+            this.time = System.currentTimeMillis();
+            this.created = System.nanoTime();
         }
     }
 
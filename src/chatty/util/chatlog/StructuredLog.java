@@ -0,0 +1,108 @@
+
+package chatty.util.chatlog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Format of the structured log, which contains the raw IRC messages received
+ * for a channel, one JSON object per line (e.g.
+ * <code>{"t":1700000000000,"raw":"@badge-info=;.. PRIVMSG #channel :Hello"}</code>).
+ *
+ * <p>
+ * Since the raw message is stored as received, all information (tags,
+ * message ids, badges, emote positions) is retained and the log can be
+ * replayed (e.g. with <code>/simulate logfile</code>) to re-render or analyze
+ * a previous session.
+ * </p>
+ *
+ * @author tduva
+ */
+public class StructuredLog {
+
+    public static final String EXTENSION = ".jsonl";
+
+    /**
+     * Create a line for the structured log.
+     *
+     * @param time The time the message was received
+     * @param raw The raw IRC message
+     * @return The line (without line separator)
+     */
+    public static String makeRecord(long time, String raw) {
+        return "{\"t\":" + time + ",\"raw\":\"" + JSONValue.escape(raw) + "\"}";
+    }
+
+    public static class Record {
+
+        public final long time;
+        public final String raw;
+
+        public Record(long time, String raw) {
+            this.time = time;
+            this.raw = raw;
+        }
+
+    }
+
+    /**
+     * Parse a line of the structured log.
+     *
+     * @param line The line
+     * @return The record, or null if the line is invalid
+     */
+    public static Record parseRecord(String line) {
+        try {
+            JSONObject data = (JSONObject) new JSONParser().parse(line);
+            Object time = data.get("t");
+            Object raw = data.get("raw");
+            if (time instanceof Number && raw instanceof String) {
+                return new Record(((Number) time).longValue(), (String) raw);
+            }
+        }
+        catch (ParseException | ClassCastException ex) {
+            // Return null
+        }
+        return null;
+    }
+
+    public interface RecordListener {
+
+        /**
+         * A record was read.
+         *
+         * @param record The record
+         * @return true to continue reading, false to stop
+         */
+        boolean record(Record record);
+
+    }
+
+    /**
+     * Read the records of the given structured log file, skipping invalid
+     * lines.
+     *
+     * @param file The file
+     * @param listener Receives the records
+     * @throws IOException
+     */
+    public static void read(Path file, RecordListener listener) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Record record = parseRecord(line);
+                if (record != null && !listener.record(record)) {
+                    return;
+                }
+            }
+        }
+    }
+
+}
@@ -11,7 +11,8 @@ import java.util.Set;
 import java.util.logging.Logger;
 
 /**
- * An ImageProducer for animated images.
+ * An ImageProducer for animated images. The frames are updated by the shared
+ * {@link AnimationClock}.
  * 
  * @author tduva
  */
@@ -30,7 +31,7 @@ public class AnimatedImageSource implements ImageProducer {
     
     private int[] pixels;
     private int currentFrame = -1;
-    private Thread thread;
+    private boolean running;
     private ElapsedTime noConsumersTime;
     private boolean errorOccured;
     
@@ -58,7 +59,7 @@ public class AnimatedImageSource implements ImageProducer {
         consumers.add(ic);
         initConsumer(ic);
         sendFrame(ic);
-        startThread();
+        startAnimation();
     }
     
     @Override
@@ -86,62 +87,66 @@ public class AnimatedImageSource implements ImageProducer {
     
     public static volatile int ANIMATION_PAUSE = -1;
     
-    private void startThread() {
+    /**
+     * Register with the shared animation clock, if not already registered.
+     */
+    private void startAnimation() {
         if (errorOccured) {
             return;
         }
-        if (thread == null || !thread.isAlive()) {
-            thread = new Thread(() -> {
-                do {
-                    if (isActive()) {
-                        nextFrame();
-                    }
-                    else {
-                        // Animation is paused, switch frame if necessary
-                        int pauseFrame = 0;
-                        switch (ANIMATION_PAUSE) {
-                            case 0:
-                                pauseFrame = 0;
-                                break;
-                            case 1:
-                                pauseFrame = currentFrame;
-                                break;
-                            case 2:
-                                pauseFrame = image.getPreferredPauseFrame();
-                                break;
-                        }
-                        
-                        // If it hadn't played yet could be -1 from currentFrame
-                        if (pauseFrame < 0) {
-                            pauseFrame = 0;
-                        }
-                        
-                        if (pauseFrame != currentFrame || !hasPixels()) {
-                            currentFrame = pauseFrame - 1;
-                            nextFrame();
-                        }
-                    }
-                    try {
-                        Thread.sleep(getDelay());
-                    }
-                    catch (InterruptedException ex) {
-                        // Do nothing
-                    }
-                    if (checkStopThread() || Thread.interrupted()) {
-                        threadStopped();
-                        return;
-                    }
-                } while (true);
-            }, "AnimatedImage"+(image.getName() != null ? "-"+image.getName() : ""));
-            thread.setDaemon(true);
-            // ImageFetcher is setting a lower priority, so may make sense?
-            thread.setPriority(2);
-            thread.start();
+        if (!running) {
+            running = true;
+            AnimationClock.get().add(this::tick);
+        }
+    }
+    
+    /**
+     * Called by the animation clock, switches to the next frame.
+     * 
+     * @return The delay until the next call, or -1 if the animation stopped
+     */
+    private synchronized long tick() {
+        if (checkStop()) {
+            animationStopped();
+            return -1;
+        }
+        if (consumers.isEmpty()) {
+            // Nothing to show it on, so don't bother decoding frames
+            return getDelay();
+        }
+        if (isActive()) {
+            nextFrame();
+        }
+        else {
+            // Animation is paused, switch frame if necessary
+            int pauseFrame = 0;
+            switch (ANIMATION_PAUSE) {
+                case 0:
+                    pauseFrame = 0;
+                    break;
+                case 1:
+                    pauseFrame = currentFrame;
+                    break;
+                case 2:
+                    pauseFrame = image.getPreferredPauseFrame();
+                    break;
+            }
+
+            // If it hadn't played yet could be -1 from currentFrame
+            if (pauseFrame < 0) {
+                pauseFrame = 0;
+            }
+
+            if (pauseFrame != currentFrame || !hasPixels()) {
+                currentFrame = pauseFrame - 1;
+                nextFrame();
+            }
         }
+        return getDelay();
     }
     
     private synchronized int getDelay() {
-        return image.getDelay(currentFrame);
+        return image.getDelay(Math.max(currentFrame, 0));
     }
     
     private synchronized boolean isActive() {
@@ -154,11 +159,11 @@ public class AnimatedImageSource implements ImageProducer {
     
     /**
      * Check if enough time has passed with no consumers registered for the
-     * thread to stop.
+     * animation to stop.
      * 
      * @return 
      */
-    private synchronized boolean checkStopThread() {
+    private synchronized boolean checkStop() {
         if (errorOccured) {
             return true;
         }
@@ -172,8 +177,8 @@ public class AnimatedImageSource implements ImageProducer {
         return noConsumersTime.secondsElapsed(INACTIVITY_SECONDS);
     }
     
-    private synchronized void threadStopped() {
-        thread = null;
+    private synchronized void animationStopped() {
+        running = false;
         pixels = null;
     }
     
@@ -224,7 +229,7 @@ public class AnimatedImageSource implements ImageProducer {
                  * This class is only for animated images, but just in case only
                  * one frame is available, this would probably cause the
                  * consumer to unregister themselves, which would then
-                 * eventually cause the thread to stop.
+                 * eventually cause the animation to stop.
                  */
                 ic.imageComplete(ImageConsumer.STATICIMAGEDONE);
             }
@@ -0,0 +1,167 @@
+
+package chatty.util.gif;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Drives the frame updates of all animated images from a single thread, instead
+ * of each image having it's own thread.
+ *
+ * <p>
+ * Animations are sorted by the time their next frame is due. Animations that
+ * are due within a few milliseconds of each other are updated together, so
+ * that the thread wakes up less often.
+ * </p>
+ *
+ * @author tduva
+ */
+public class AnimationClock {
+
+    private static final Logger LOGGER = Logger.getLogger(AnimationClock.class.getName());
+
+    /**
+     * Animations due within this many milliseconds are updated together.
+     */
+    private static final long COALESCE_MS = 4;
+
+    private static final AnimationClock INSTANCE = new AnimationClock();
+
+    public static AnimationClock get() {
+        return INSTANCE;
+    }
+
+    public interface Animation {
+
+        /**
+         * Update the animation (e.g. send the next frame).
+         *
+         * @return The number of milliseconds until the next update, or a
+         * negative value if the animation should not be updated anymore
+         */
+        long tick();
+    }
+
+    private final PriorityQueue<Scheduled> queue = new PriorityQueue<>();
+    private long counter;
+    private Thread thread;
+
+    private AnimationClock() {
+        // Singleton
+    }
+
+    /**
+     * Add an animation, which will be updated for the first time right away.
+     * The same animation should not be added again while it is still being
+     * updated.
+     *
+     * @param animation The animation
+     */
+    public synchronized void add(Animation animation) {
+        queue.add(new Scheduled(animation, System.nanoTime(), counter++));
+        if (thread == null) {
+            thread = new Thread(this::run, "AnimatedImages");
+            thread.setDaemon(true);
+            // ImageFetcher is setting a lower priority, so may make sense?
+            thread.setPriority(2);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * The number of animations currently being updated.
+     *
+     * @return
+     */
+    public synchronized int getCount() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<Scheduled> due = new ArrayList<>();
+        while (true) {
+            try {
+                takeDue(due);
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            for (Scheduled s : due) {
+                long delay = -1;
+                try {
+                    delay = s.animation.tick();
+                }
+                catch (Exception ex) {
+                    LOGGER.warning("Error updating animation: "+ex);
+                }
+                if (delay >= 0) {
+                    reschedule(s, delay);
+                }
+            }
+            due.clear();
+        }
+    }
+
+    /**
+     * Wait until at least one animation is due, then remove all animations
+     * that are due now or very soon and add them to the given list.
+     */
+    private synchronized void takeDue(List<Scheduled> due) throws InterruptedException {
+        while (true) {
+            Scheduled next = queue.peek();
+            if (next == null) {
+                wait();
+                continue;
+            }
+            long waitMs = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime());
+            if (waitMs > COALESCE_MS) {
+                wait(waitMs - COALESCE_MS);
+                continue;
+            }
+            long limit = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COALESCE_MS);
+            while (!queue.isEmpty() && queue.peek().deadline - limit <= 0) {
+                due.add(queue.poll());
+            }
+            return;
+        }
+    }
+
+    private synchronized void reschedule(Scheduled s, long delay) {
+        long now = System.nanoTime();
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+        // Stay in sync with the previous deadline, unless falling behind
+        long deadline = s.deadline + delayNanos;
+        if (deadline - now < -delayNanos) {
+            deadline = now + delayNanos;
+        }
+        queue.add(new Scheduled(s.animation, deadline, counter++));
+    }
+
+    private static class Scheduled implements Comparable<Scheduled> {
+
+        private final Animation animation;
+        private final long deadline;
+        private final long id;
+
+        Scheduled(Animation animation, long deadline, long id) {
+            this.animation = animation;
+            this.deadline = deadline;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Scheduled o) {
+            int result = Long.compare(deadline - o.deadline, 0);
+            if (result == 0) {
+                result = Long.compare(id, o.id);
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -4,7 +4,13 @@ package chatty.util.gif;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * An implementation of AnimatedImage that stores the frames in a list, with
@@ -13,12 +19,23 @@ import java.util.List;
  * @author tduva
  */
 public class ListAnimatedImage implements AnimatedImage {
+    
+    /**
+     * All images still in use, for memory usage information.
+     */
+    private static final Map<ListAnimatedImage, Boolean> INSTANCES = Collections.synchronizedMap(new WeakHashMap<>());
 
     private final List<ListAnimatedImageFrame> frames;
     private final Dimension size;
     private final String name;
     private final int preferredPauseFrame;
     
+    /**
+     * Reused for decoding frames that need it, since frames are decoded over
+     * and over while animating.
+     */
+    private byte[] decodeBuffer;
+    
     public ListAnimatedImage(List<ListAnimatedImageFrame> frames, int width, int height, String name) {
         this.frames = frames;
         this.size = new Dimension(width, height);
@@ -42,6 +59,7 @@ public class ListAnimatedImage implements AnimatedImage {
         else {
             this.preferredPauseFrame = mostVisibleFrame;
         }
+        INSTANCES.put(this, Boolean.TRUE);
     }
     
     /**
@@ -53,7 +71,19 @@ public class ListAnimatedImage implements AnimatedImage {
      */
     @Override
     public void getFrame(int frame, int[] pixels) throws Exception {
-        frames.get(frame).getImage(pixels);
+        ListAnimatedImageFrame f = frames.get(frame);
+        int bufferSize = f.getDecodeBufferSize();
+        if (bufferSize == 0) {
+            f.getImage(pixels, null);
+            return;
+        }
+        // The same image may be animated in several places
+        synchronized (this) {
+            if (decodeBuffer == null || decodeBuffer.length < bufferSize) {
+                decodeBuffer = new byte[bufferSize];
+            }
+            f.getImage(pixels, decodeBuffer);
+        }
     }
 
     @Override
@@ -81,6 +111,51 @@ public class ListAnimatedImage implements AnimatedImage {
         return preferredPauseFrame;
     }
     
+    /**
+     * The number of bytes used by the compressed frames.
+     * 
+     * @return 
+     */
+    public int getCompressedSize() {
+        int result = 0;
+        for (ListAnimatedImageFrame frame : frames) {
+            result += frame.getCompressedSize();
+        }
+        return result;
+    }
+    
+    /**
+     * Get information about the images currently in use that have the most
+     * compressed frame data.
+     * 
+     * @param count The max number of images to return
+     * @return Lines of text, starting with a total
+     */
+    public static List<String> getMemoryUsageInfo(int count) {
+        List<ListAnimatedImage> images;
+        synchronized (INSTANCES) {
+            images = new ArrayList<>(INSTANCES.keySet());
+        }
+        long total = 0;
+        for (ListAnimatedImage image : images) {
+            total += image.getCompressedSize();
+        }
+        images.sort(Comparator.comparingInt(ListAnimatedImage::getCompressedSize).reversed());
+        List<String> result = new ArrayList<>();
+        result.add(String.format(Locale.ROOT, "[AnimatedImages] %d images, %,dKB",
+                images.size(), total / 1024));
+        for (int i = 0; i < Math.min(count, images.size()); i++) {
+            ListAnimatedImage image = images.get(i);
+            result.add(String.format(Locale.ROOT, "%,dKB (%d frames, %dx%d) %s",
+                    image.getCompressedSize() / 1024,
+                    image.getFrameCount(),
+                    image.size.width,
+                    image.size.height,
+                    image.name));
+        }
+        return result;
+    }
+    
     public Image createImage() {
         return Toolkit.getDefaultToolkit().createImage(new AnimatedImageSource(this));
     }
@@ -6,43 +6,104 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
- * A single frame of a ListAnimatedImage. The pixel data is compressed in the
- * PNG format. Decoding the pixel data on each frame may cause higher CPU usage
- * than just storing the entire frame uncompressed, however the difference seems
- * fairly small. It might make sense to make compression optional though.
+ * A single frame of a ListAnimatedImage, with the pixel data stored in a
+ * compressed form that is decoded for each frame update.
+ * 
+ * <p>
+ * Frames with at most 256 colors (which includes most GIF frames that aren't
+ * resized) can be stored as a palette and palette indices, either run-length
+ * encoded (fastest to decode) or deflated. Whichever of those and the PNG
+ * format is smallest is used, so the frame never takes up more memory than the
+ * PNG data would. PNG takes longer to decode, although the difference seems
+ * fairly small for emote sizes.
+ * </p>
  * 
  * @author tduva
  */
 public class ListAnimatedImageFrame {
     
+    private static final int MAX_PALETTE_SIZE = 256;
+    
+    private static final int FORMAT_PNG = 0;
+    private static final int FORMAT_INDICES = 1;
+    private static final int FORMAT_RLE = 2;
+    private static final int FORMAT_DEFLATE = 3;
+    
+    /**
+     * The PNG data, or the (possibly encoded) palette indices.
+     */
     private final byte[] compressed;
+    
+    /**
+     * The palette, or null if the PNG format is used.
+     */
+    private final int[] palette;
+    
+    private final int format;
+    
     private final int delay;
     private final int width;
     private final int height;
     private final int visiblePixelCount;
     
     public ListAnimatedImageFrame(BufferedImage image, int delay) throws IOException {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            new PngEncoder().withBufferedImage(image).withCompressionLevel(1).toStream(baos);
-            compressed = baos.toByteArray();
-        }
         this.delay = delay;
         this.width = image.getWidth();
         this.height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
         
         // Determine frame "visibility"
         int transparentPixelCount = 0;
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                int pixel = image.getRGB(x, y);
-                if ((pixel & 0xff000000) == 0) {
-                    transparentPixelCount++;
-                }
+        for (int pixel : pixels) {
+            if ((pixel & 0xff000000) == 0) {
+                transparentPixelCount++;
             }
         }
         this.visiblePixelCount = width * height - transparentPixelCount;
+        
+        // Compress
+        byte[] png = encodePng(image);
+        int[] paletteResult = createPalette(pixels);
+        byte[] indicesResult = null;
+        int formatResult = FORMAT_PNG;
+        if (paletteResult != null) {
+            byte[] indices = createIndices(pixels, paletteResult);
+            byte[] encoded = encodeRuns(indices);
+            if (encoded != null) {
+                indicesResult = encoded;
+                formatResult = FORMAT_RLE;
+            }
+            else {
+                indicesResult = indices;
+                formatResult = FORMAT_INDICES;
+            }
+            byte[] deflated = deflate(indices);
+            if (deflated.length < indicesResult.length) {
+                indicesResult = deflated;
+                formatResult = FORMAT_DEFLATE;
+            }
+        }
+        if (indicesResult != null
+                && indicesResult.length + paletteResult.length * 4 < png.length) {
+            compressed = indicesResult;
+            palette = paletteResult;
+            format = formatResult;
+        }
+        else {
+            compressed = png;
+            palette = null;
+            format = FORMAT_PNG;
+        }
     }
     
     /**
@@ -52,14 +113,69 @@ public class ListAnimatedImageFrame {
      * @throws IOException 
      */
     public void getImage(int[] pixels) throws IOException {
-        PNGDecoder decoder = new PNGDecoder(new ByteArrayInputStream(compressed));
-        decoder.decode(new ARGBBuffer(pixels), width * 4, PNGDecoder.Format.RGBA);
+        getImage(pixels, null);
+    }
+    
+    /**
+     * Fill the given pixels array with the decoded pixels.
+     * 
+     * @param pixels
+     * @param buffer Used for decoding if it is at least
+     * {@link #getDecodeBufferSize()} long, so it can be reused between frames
+     * instead of allocating a new one each time, may be null
+     * @throws IOException 
+     */
+    public void getImage(int[] pixels, byte[] buffer) throws IOException {
+        if (format == FORMAT_PNG) {
+            PNGDecoder decoder = new PNGDecoder(new ByteArrayInputStream(compressed));
+            decoder.decode(new ARGBBuffer(pixels), width * 4, PNGDecoder.Format.RGBA);
+        }
+        else if (format == FORMAT_DEFLATE) {
+            int length = width * height;
+            byte[] indices = buffer != null && buffer.length >= length ? buffer : new byte[length];
+            inflate(compressed, indices, length);
+            for (int i = 0; i < length; i++) {
+                pixels[i] = palette[indices[i] & 0xff];
+            }
+        }
+        else if (format == FORMAT_RLE) {
+            int pos = 0;
+            for (int i = 0; i < compressed.length; i += 2) {
+                int length = (compressed[i] & 0xff) + 1;
+                int color = palette[compressed[i + 1] & 0xff];
+                Arrays.fill(pixels, pos, pos + length, color);
+                pos += length;
+            }
+        }
+        else {
+            for (int i = 0; i < compressed.length; i++) {
+                pixels[i] = palette[compressed[i] & 0xff];
+            }
+        }
     }
     
     public int getDelay() {
         return delay;
     }
     
+    /**
+     * The size of the buffer needed for decoding this frame.
+     * 
+     * @return The size in bytes, 0 if no buffer is needed
+     */
+    public int getDecodeBufferSize() {
+        return format == FORMAT_DEFLATE ? width * height : 0;
+    }
+    
+    /**
+     * The approximate number of bytes used for storing the pixels.
+     * 
+     * @return 
+     */
+    public int getCompressedSize() {
+        return compressed.length + (palette != null ? palette.length * 4 : 0);
+    }
+    
     /**
      * Returns the number of pixels with higher than 0 alpha value.
      * 
@@ -69,4 +185,121 @@ public class ListAnimatedImageFrame {
         return visiblePixelCount;
     }
     
+    //==========================
+    // Encoding
+    //==========================
+    
+    /**
+     * Get the distinct colors of the given pixels.
+     * 
+     * @param pixels
+     * @return The colors, or null if there are too many for a palette
+     */
+    private static int[] createPalette(int[] pixels) {
+        Set<Integer> colors = new LinkedHashSet<>();
+        int prev = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            if (i > 0 && pixel == prev) {
+                continue;
+            }
+            prev = pixel;
+            if (colors.add(pixel) && colors.size() > MAX_PALETTE_SIZE) {
+                return null;
+            }
+        }
+        int[] result = new int[colors.size()];
+        int i = 0;
+        for (Integer color : colors) {
+            result[i++] = color;
+        }
+        return result;
+    }
+    
+    private static byte[] createIndices(int[] pixels, int[] palette) {
+        Map<Integer, Integer> indexByColor = new HashMap<>();
+        for (int i = 0; i < palette.length; i++) {
+            indexByColor.put(palette[i], i);
+        }
+        byte[] result = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            result[i] = (byte) (int) indexByColor.get(pixels[i]);
+        }
+        return result;
+    }
+    
+    static byte[] encodePng(BufferedImage image) throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            new PngEncoder().withBufferedImage(image).withCompressionLevel(1).toStream(baos);
+            return baos.toByteArray();
+        }
+    }
+    
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 4);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                result.write(buffer, 0, length);
+            }
+            return result.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+    
+    private static void inflate(byte[] data, byte[] result, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int pos = 0;
+            while (pos < length && !inflater.finished()) {
+                int read = inflater.inflate(result, pos, length - pos);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Incomplete frame data");
+                }
+                pos += read;
+            }
+        }
+        catch (DataFormatException ex) {
+            throw new IOException(ex);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+    
+    /**
+     * Run-length encode the given indices, as pairs of run length (minus one)
+     * and index.
+     * 
+     * @param indices
+     * @return The encoded data, or null if it wouldn't be smaller
+     */
+    static byte[] encodeRuns(byte[] indices) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(indices.length / 2);
+        int i = 0;
+        while (i < indices.length) {
+            byte value = indices[i];
+            int length = 1;
+            while (i + length < indices.length
+                    && indices[i + length] == value
+                    && length < 256) {
+                length++;
+            }
+            result.write(length - 1);
+            result.write(value);
+            i += length;
+            if (result.size() >= indices.length) {
+                return null;
+            }
+        }
+        return result.toByteArray();
+    }
+    
 }
@@ -14,6 +14,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
@@ -134,6 +135,62 @@ public class FileManager {
         return result.make();
     }
     
+    /**
+     * Append the given content to the file with the given id. This doesn't
+     * write a session backup (since it would only contain the appended
+     * content), so this should only be used for files where the whole content
+     * is also saved through {@link #save(String, String, boolean)} from time
+     * to time.
+     * 
+     * @param id The file id
+     * @param content The content to append
+     * @return The result
+     */
+    public synchronized SaveResult append(String id, String content) {
+        SaveResult.Builder result = new SaveResult.Builder(id);
+        FileSettings fileSettings = files.get(id);
+        if (savingPaused) {
+            result.setCancelled(CancelReason.SAVING_PAUSED);
+            return result.make();
+        }
+        if (fileSettings == null) {
+            LOGGER.warning("[Append] Invalid file id: "+id);
+            result.setCancelled(CancelReason.INVALID_ID);
+            return result.make();
+        }
+        if (backupLoaded.contains(id)) {
+            LOGGER.info("Not appending to "+id+" (backup loaded this session)");
+            result.setCancelled(CancelReason.BACKUP_LOADED);
+            return result.make();
+        }
+        // The content isn't known anymore in any case
+        knownContent.remove(id);
+        try {
+            Path target = fileSettings.path;
+            Files.createDirectories(target.getParent());
+            Files.write(target, content.getBytes(CHARSET),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            result.setWritten(target);
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Error appending to file: " + ex);
+            result.setWriteError(ex);
+        }
+        return result.make();
+    }
+    
+    /**
+     * Check whether the file with the given id currently exists.
+     * 
+     * @param id The file id
+     * @return true if the file exists, false if it doesn't or the id is
+     * invalid
+     */
+    public synchronized boolean exists(String id) {
+        FileSettings fileSettings = files.get(id);
+        return fileSettings != null && Files.exists(fileSettings.path);
+    }
+    
     /**
      * Load the contents from the file with the given id.
      * 
@@ -212,7 +269,8 @@ public class FileManager {
      * 
      * @param backupDelay How many seconds between backups, based on the latest
      * created backup
-     * @param keepCount How many backup files to keep, others may be deleted
+     * @param keepCount How many automatic backups to keep of each file,
+     * older ones may be deleted
      * @throws IOException If an error occured reading current backups or
      * creating the new backup
      */
@@ -238,19 +296,32 @@ public class FileManager {
         // Delete files
         //--------------------------
         /**
-         * In case the settings didn't load properly, it shouldn't delete many
-         * backups if the user had it higher than default.
+         * The count applies to each file separately, so that files that were
+         * added later (or aren't always backed up) don't affect how many
+         * backups of other files are kept.
          */
-        int toDelete = Math.min(autoFiles.size() - keepCount, 2);
-        for (FileInfo file : autoFiles) {
-            if (file.timestamp != -1 && toDelete > 0) {
-                try {
-                    Files.deleteIfExists(file.file);
-                    LOGGER.info("[Backup] Deleted old backup: "+file.file);
-                    toDelete--;
+        for (FileSettings fileSettings : files.values()) {
+            List<FileInfo> fileBackups = new ArrayList<>();
+            for (FileInfo file : autoFiles) {
+                if (file.settings == fileSettings) {
+                    fileBackups.add(file);
                 }
-                catch (IOException ex) {
-                    LOGGER.warning("[Backup] Failed to delete backup: " + ex);
+            }
+            /**
+             * In case the settings didn't load properly, it shouldn't delete
+             * many backups if the user had it higher than default.
+             */
+            int toDelete = Math.min(fileBackups.size() - keepCount, 2);
+            for (FileInfo file : fileBackups) {
+                if (file.timestamp != -1 && toDelete > 0) {
+                    try {
+                        Files.deleteIfExists(file.file);
+                        LOGGER.info("[Backup] Deleted old backup: "+file.file);
+                        toDelete--;
+                    }
+                    catch (IOException ex) {
+                        LOGGER.warning("[Backup] Failed to delete backup: " + ex);
+                    }
                 }
             }
         }
@@ -295,6 +366,11 @@ public class FileManager {
             fileResult.setCancelled(CancelReason.INVALID);
             return fileResult.make();
         }
+        if (!Files.exists(file.path)) {
+            // E.g. a store that hasn't been written yet
+            fileResult.setCancelled(CancelReason.INVALID);
+            return fileResult.make();
+        }
         try {
             String content = loadFromFile(file.path);
             FileContentInfo info = file.infoProvider.getInfo(content);
@@ -622,6 +698,17 @@ public class FileManager {
         public final boolean removed;
         public final CancelReason cancelReason;
         
+        /**
+         * Result for a file that wasn't saved because it hasn't changed since
+         * it was last saved (without having to compare the content).
+         * 
+         * @param id The file id
+         * @return 
+         */
+        static SaveResult notChanged(String id) {
+            return new Builder(id).setCancelled(CancelReason.KNOWN_CONTENT).make();
+        }
+        
         private SaveResult(Builder builder) {
             this.id = builder.id;
             this.written = builder.written;
@@ -0,0 +1,144 @@
+
+package chatty.util.settings;
+
+import java.util.Collection;
+import java.util.Map;
+import org.json.simple.JSONAware;
+
+/**
+ * Writes values to JSON, appending directly to a single StringBuilder instead
+ * of creating intermediate Strings for every nested Map/List like json-simple
+ * does. The output is the same as {@code JSONValue.toJSONString()} (including
+ * which characters are escaped), except that any Collection is written as an
+ * array.
+ *
+ * @author tduva
+ */
+class JsonWriter {
+
+    private JsonWriter() {
+        // Only static methods
+    }
+
+    public static String toJson(Object value) {
+        StringBuilder b = new StringBuilder();
+        write(value, b);
+        return b.toString();
+    }
+
+    public static void write(Object value, StringBuilder b) {
+        if (value == null) {
+            b.append("null");
+        }
+        else if (value instanceof String) {
+            writeString((String) value, b);
+        }
+        else if (value instanceof Double) {
+            Double d = (Double) value;
+            b.append(d.isInfinite() || d.isNaN() ? "null" : d.toString());
+        }
+        else if (value instanceof Float) {
+            Float f = (Float) value;
+            b.append(f.isInfinite() || f.isNaN() ? "null" : f.toString());
+        }
+        else if (value instanceof Number || value instanceof Boolean) {
+            b.append(value.toString());
+        }
+        else if (value instanceof JSONAware) {
+            b.append(((JSONAware) value).toJSONString());
+        }
+        else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value, b);
+        }
+        else if (value instanceof Collection) {
+            writeCollection((Collection<?>) value, b);
+        }
+        else {
+            b.append(value.toString());
+        }
+    }
+
+    private static void writeMap(Map<?, ?> map, StringBuilder b) {
+        b.append('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                b.append(',');
+            }
+            first = false;
+            writeString(String.valueOf(entry.getKey()), b);
+            b.append(':');
+            write(entry.getValue(), b);
+        }
+        b.append('}');
+    }
+
+    private static void writeCollection(Collection<?> collection, StringBuilder b) {
+        b.append('[');
+        boolean first = true;
+        for (Object item : collection) {
+            if (!first) {
+                b.append(',');
+            }
+            first = false;
+            write(item, b);
+        }
+        b.append(']');
+    }
+
+    /**
+     * Write the String in quotes, escaped the same way as
+     * {@code JSONValue.escape()}.
+     *
+     * @param s
+     * @param b
+     */
+    public static void writeString(String s, StringBuilder b) {
+        b.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    b.append("\\\"");
+                    break;
+                case '\\':
+                    b.append("\\\\");
+                    break;
+                case '/':
+                    b.append("\\/");
+                    break;
+                case '\b':
+                    b.append("\\b");
+                    break;
+                case '\f':
+                    b.append("\\f");
+                    break;
+                case '\n':
+                    b.append("\\n");
+                    break;
+                case '\r':
+                    b.append("\\r");
+                    break;
+                case '\t':
+                    b.append("\\t");
+                    break;
+                default:
+                    if (c <= '\u001F'
+                            || (c >= '\u007F' && c <= '\u009F')
+                            || (c >= '\u2000' && c <= '\u20FF')) {
+                        String hex = Integer.toHexString(c).toUpperCase();
+                        b.append("\\u");
+                        for (int k = hex.length(); k < 4; k++) {
+                            b.append('0');
+                        }
+                        b.append(hex);
+                    }
+                    else {
+                        b.append(c);
+                    }
+            }
+        }
+        b.append('"');
+    }
+
+}
@@ -34,11 +34,24 @@ public class Setting {
     private final Object defaultValue;
     private final int type;
     
-    private Object value;
+    /**
+     * Only changed while synchronized on the Settings lock, but may be read
+     * without it.
+     */
+    private volatile Object value;
     private boolean save = true;
     private String file;
     private boolean valueSet;
     
+    /**
+     * Counts changes to the value, so that the JSON of the value only has to
+     * be created again when it changed. Map and List values are modified in
+     * place, so {@link #markChanged()} has to be called for those.
+     */
+    private long modCount;
+    private long jsonModCount = -1;
+    private String json;
+    
     /**
      * Creates a new Setting object with some initial values.
      * 
@@ -111,9 +124,32 @@ public class Setting {
             return false;
         }
         this.value = value;
+        modCount++;
         return true;
     }
     
+    /**
+     * Mark the value as changed, for when a Map or List value was modified in
+     * place.
+     */
+    public void markChanged() {
+        modCount++;
+    }
+    
+    /**
+     * Gets the value as JSON, reusing the previously created JSON if the
+     * value hasn't changed since then.
+     * 
+     * @return The JSON
+     */
+    public String getJson() {
+        if (json == null || jsonModCount != modCount) {
+            json = JsonWriter.toJson(value);
+            jsonModCount = modCount;
+        }
+        return json;
+    }
+    
     /**
      * Reset value to default.
      * 
@@ -0,0 +1,46 @@
+
+package chatty.util.settings;
+
+/**
+ * Provides fast access to the current value of a single boolean, String or
+ * long setting. Getting the value only reads the volatile value of the
+ * setting, without having to look up the setting by name or locking, so it
+ * can be used in code that runs very often (e.g. for every message).
+ *
+ * Handles are retrieved from {@link Settings}, after the setting has been
+ * added. Changing the value still has to be done through {@link Settings}, so
+ * that listeners are informed.
+ *
+ * @author tduva
+ * @param <T> The type of the value (Boolean, String or Long)
+ */
+public class SettingHandle<T> {
+
+    private final String name;
+    private final Setting setting;
+
+    SettingHandle(String name, Setting setting) {
+        this.name = name;
+        this.setting = setting;
+    }
+
+    /**
+     * The current value.
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        return (T) setting.getValue();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name+"="+setting.getValue();
+    }
+
+}
@@ -8,6 +8,10 @@ import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -20,12 +24,34 @@ import org.json.simple.parser.ParseException;
  * settings and checking type isn't synchronized, but if settings are only
  * added once at the beginning this shouldn't be a problem.
  * 
+ * Values are changed while synchronized on the lock, but since boolean, String
+ * and long values are immutable and stored in a volatile field, they can be
+ * read without the lock. For settings that are read very often a
+ * {@link SettingHandle} can be used, which also avoids looking up the setting
+ * by name.
+ * 
+ * Each change increases the version of the file the setting is saved in, so
+ * that files without changes since the last save don't have to be turned into
+ * JSON again. The JSON of each setting is also kept until the setting changes.
+ * 
  * @author tduva
  */
 public class Settings {
     
     private final Object LOCK = new Object();
     
+    /**
+     * Held while saving, so that an older state of a file can't overwrite a
+     * newer one. Writing to the file is done without holding LOCK.
+     */
+    private final Object SAVE_LOCK = new Object();
+    
+    /**
+     * How long to wait before writing when saving is requested through
+     * {@link #saveSettingsToJsonLater()}.
+     */
+    private static final long SAVE_LATER_DELAY = 2000;
+    
     /**
      * Holds all settings of different Types. TreeMap to have setting names
      * lookup case-insenstive while still retaining the case for display.
@@ -37,6 +63,17 @@ public class Settings {
     private final FileManager fileManager;
     private final Set<String> files = new HashSet<>();
     private final Set<String> fileLoaded = new HashSet<>();
+    private final Map<String, SidecarStore> stores = new HashMap<>();
+    
+    /**
+     * The current version of each file (increased on every change) and the
+     * version that was last saved successfully.
+     */
+    private final Map<String, Long> fileVersions = new HashMap<>();
+    private final Map<String, Long> savedVersions = new HashMap<>();
+    
+    private ScheduledExecutorService saveExecutor;
+    private boolean saveScheduled;
     
     private static final Logger LOGGER = Logger.getLogger(Settings.class.getName());
     
@@ -69,6 +106,40 @@ public class Settings {
         files.add(fileName);
     }
     
+    /**
+     * Add a store for data that is saved in it's own file, separate from the
+     * settings files.
+     * 
+     * @param id The id of the store, also used as file name
+     * @param maxSize The max number of items (0 for no limit)
+     * @return The store
+     * @see SidecarStore
+     */
+    public SidecarStore addSidecarStore(String id, int maxSize) {
+        SidecarStore store = new SidecarStore(id, fileManager, maxSize, true);
+        synchronized(LOCK) {
+            stores.put(id, store);
+        }
+        return store;
+    }
+    
+    /**
+     * Get a store that was previously added.
+     * 
+     * @param id The id of the store
+     * @return The store
+     * @throws SettingNotFoundException if no store with this id exists
+     */
+    public SidecarStore getSidecarStore(String id) {
+        synchronized(LOCK) {
+            SidecarStore store = stores.get(id);
+            if (store == null) {
+                throw new SettingNotFoundException("Could not find store: "+id);
+            }
+            return store;
+        }
+    }
+    
     public void setFile(String settingName, String fileName) {
         if (!isSetting(settingName)) {
             throw new SettingNotFoundException("Could not find setting: "+settingName);
@@ -76,8 +147,32 @@ public class Settings {
         if (!files.contains(fileName)) {
             throw new SettingFileNotFoundException("Could not find setting file: "+fileName);
         }
-        Setting setting = settings.get(settingName);
-        setting.setFile(fileName);
+        synchronized(LOCK) {
+            Setting setting = settings.get(settingName);
+            fileChanged(setting.getFile());
+            setting.setFile(fileName);
+            fileChanged(fileName);
+        }
+    }
+    
+    /**
+     * Mark the given setting as changed. Must be called while synchronized on
+     * LOCK whenever a Map or List value is modified in place.
+     * 
+     * @param setting 
+     */
+    private void changed(Setting setting) {
+        setting.markChanged();
+        fileChanged(setting.getFile());
+    }
+    
+    /**
+     * Must be called while synchronized on LOCK.
+     * 
+     * @param fileName 
+     */
+    private void fileChanged(String fileName) {
+        fileVersions.merge(fileName, 1L, Long::sum);
     }
     
     private boolean isSetting(String settingName) {
@@ -207,6 +302,9 @@ public class Settings {
         else {
             settings.put(settingName, new Setting(value, type, save, defaultFile));
         }
+        synchronized(LOCK) {
+            fileChanged(defaultFile);
+        }
     }
     
     /**
@@ -231,6 +329,9 @@ public class Settings {
             } else {
                 changed = setting.setValue(value);
             }
+            if (changed) {
+                fileChanged(setting.getFile());
+            }
         }
         if (changed) {
             settingChanged(settingName,type,value);
@@ -249,15 +350,20 @@ public class Settings {
      * @return The Object value, which is actually of 'type'.
      */
     private Object get(String settingName, int type, boolean getDefault) {
-        synchronized(LOCK) {
-            if (!isOfType(settingName, type)) {
-                throw new SettingNotFoundException("Could not find setting: " + settingName);
-            }
-            if (getDefault) {
-                return settings.get(settingName).getDefault();
-            }
-            return settings.get(settingName).getValue();
+        /**
+         * Not synchronized, since the settings are only added at the start
+         * and the value is volatile. Map and List values are modified in
+         * place, so those still have to be retrieved while synchronized on
+         * the lock (which the callers already do).
+         */
+        Setting setting = settings.get(settingName);
+        if (setting == null || !setting.isOfType(type)) {
+            throw new SettingNotFoundException("Could not find setting: " + settingName);
         }
+        if (getDefault) {
+            return setting.getDefault();
+        }
+        return setting.getValue();
     }
     
     private Object get(String settingName, int type) {
@@ -270,6 +376,45 @@ public class Settings {
         }
     }
     
+    /**
+     * Get a handle to quickly read the current value of the given setting.
+     * The setting must already have been added.
+     * 
+     * @param settingName The name of the setting
+     * @return The handle
+     * @throws SettingNotFoundException if a setting with this name doesn't
+     * exist or isn't a boolean setting
+     */
+    public SettingHandle<Boolean> getBooleanHandle(String settingName) {
+        return getHandle(settingName, Setting.BOOLEAN);
+    }
+    
+    /**
+     * @param settingName
+     * @return 
+     * @see #getBooleanHandle(String)
+     */
+    public SettingHandle<String> getStringHandle(String settingName) {
+        return getHandle(settingName, Setting.STRING);
+    }
+    
+    /**
+     * @param settingName
+     * @return 
+     * @see #getBooleanHandle(String)
+     */
+    public SettingHandle<Long> getLongHandle(String settingName) {
+        return getHandle(settingName, Setting.LONG);
+    }
+    
+    private <T> SettingHandle<T> getHandle(String settingName, int type) {
+        Setting setting = settings.get(settingName);
+        if (setting == null || !setting.isOfType(type)) {
+            throw new SettingNotFoundException("Could not find setting: " + settingName);
+        }
+        return new SettingHandle<>(settingName, setting);
+    }
+    
     private Setting getSetting(String settingName) {
         Setting setting = settings.get(settingName);
         if (setting == null) {
@@ -370,8 +515,11 @@ public class Settings {
         synchronized (LOCK) {
             Map settingMap = getMapInternal(settingName);
             boolean changed = !settingMap.equals(map);
-            settingMap.clear();
-            settingMap.putAll(map);
+            if (changed) {
+                settingMap.clear();
+                settingMap.putAll(map);
+                changed(settings.get(settingName));
+            }
             return changed;
         }
     }
@@ -405,6 +553,7 @@ public class Settings {
     public void mapPut(String settingName, Object key, Object value) {
         synchronized(LOCK) {
             getMapInternal(settingName).put(key, value);
+            changed(settings.get(settingName));
         }
     }
     
@@ -420,6 +569,7 @@ public class Settings {
     public void mapClear(String settingName) {
         synchronized(LOCK) {
             getMapInternal(settingName).clear();
+            changed(settings.get(settingName));
         }
     }
     
@@ -436,7 +586,9 @@ public class Settings {
      */
     public Object mapRemove(String settingName, Object key) {
         synchronized (LOCK) {
-            return getMapInternal(settingName).remove(key);
+            Object removed = getMapInternal(settingName).remove(key);
+            changed(settings.get(settingName));
+            return removed;
         }
     }
     
@@ -490,6 +642,7 @@ public class Settings {
             Collection settingList = (Collection) get(settingName, Setting.LIST);
             settingList.clear();
             settingList.addAll(list);
+            changed(settings.get(settingName));
         }
     }
     
@@ -519,19 +672,25 @@ public class Settings {
      */
     public boolean listRemove(String settingName, Object value) {
         synchronized(LOCK) {
-            return getListInternal(settingName).remove(value);
+            boolean removed = getListInternal(settingName).remove(value);
+            if (removed) {
+                changed(settings.get(settingName));
+            }
+            return removed;
         }
     }
     
     public void listAdd(String settingName, Object value) {
         synchronized(LOCK) {
             getListInternal(settingName).add(value);
+            changed(settings.get(settingName));
         }
     }
     
     public void listClear(String settingName) {
         synchronized(LOCK) {
             getListInternal(settingName).clear();
+            changed(settings.get(settingName));
         }
     }
     
@@ -560,6 +719,7 @@ public class Settings {
             Collection settingList = getListInternal(settingName);
             if (!settingList.contains(value)) {
                 settingList.add(value);
+                changed(settings.get(settingName));
                 return true;
             }
             return false;
@@ -598,6 +758,11 @@ public class Settings {
      * @param settingName 
      */
     public void setSettingChanged(String settingName) {
+        if (isListSetting(settingName) || isMapSetting(settingName)) {
+            synchronized(LOCK) {
+                changed(settings.get(settingName));
+            }
+        }
         if (isListSetting(settingName)) {
             settingChanged(settingName, Setting.LIST, getList(settingName));
         } else if (isMapSetting(settingName)) {
@@ -1027,32 +1192,28 @@ public class Settings {
     }
     
     /**
-     * Turns all settings into a JSON String.
+     * Turns all settings of the given file into a JSON String. The JSON of
+     * settings that haven't changed since the last time is reused.
      * 
-     * @return The JSON
+     * @return The JSON, or null if there are no settings for this file
      */
     private String settingsToJson(String file) {
-        JSONObject obj = new JSONObject();
-        
-        Set<Map.Entry<String,Setting>> set = settings.entrySet();
-        for (Entry<String,Setting> entry : set) {
+        StringBuilder b = new StringBuilder();
+        for (Entry<String,Setting> entry : settings.entrySet()) {
             Setting setting = entry.getValue();
             if (setting.allowedToSave() && setting.getFile().equals(file)) {
-                String key = entry.getKey();
-                Object value = setting.getValue();
-                
-                // JSON Simple only supports List in this version
-                if (value instanceof Collection) {
-                    value = new ArrayList((Collection)value);
-                }
-                obj.put(key, value);
+                b.append(b.length() == 0 ? '{' : ',');
+                JsonWriter.writeString(entry.getKey(), b);
+                b.append(':');
+                b.append(setting.getJson());
             }
         }
         
-        if (obj.isEmpty()) {
+        if (b.length() == 0) {
             return null;
         }
-        return obj.toJSONString();
+        b.append('}');
+        return b.toString();
     }
     
     /**
@@ -1086,6 +1247,7 @@ public class Settings {
                     else {
                         setting.setValue(obj);
                     }
+                    changed(setting);
                 }
             }
         }
@@ -1141,24 +1303,100 @@ public class Settings {
      * @return 
      */
     public List<SaveResult> saveSettingsToJson(boolean force) {
-        List<SaveResult> result = new ArrayList<>();
         aboutToSaveSettings();
+        System.out.println("Saving settings to JSON.");
+        return saveFiles(force);
+    }
+    
+    /**
+     * Saves the settings soon in a background thread. Further calls until the
+     * settings are actually saved don't cause another write, so this can be
+     * used for settings that may change often in a short time.
+     * 
+     * Unlike {@link #saveSettingsToJson(boolean)} this doesn't inform the
+     * {@link SettingsListener} listeners, since it's intended for saving
+     * changes that have already been made to the settings.
+     */
+    public void saveSettingsToJsonLater() {
+        if (fileManager == null) {
+            return;
+        }
         synchronized(LOCK) {
-            System.out.println("Saving settings to JSON.");
-            result.add(saveSettingsToJson(defaultFile, force));
-            for (String fileName : files) {
-                result.add(saveSettingsToJson(fileName, force));
+            if (saveScheduled) {
+                return;
             }
+            saveScheduled = true;
+            if (saveExecutor == null) {
+                saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "SaveSettings");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            saveExecutor.schedule(() -> {
+                synchronized(LOCK) {
+                    saveScheduled = false;
+                }
+                try {
+                    saveFiles(false);
+                }
+                catch (Exception ex) {
+                    LOGGER.log(Level.WARNING, "Error saving settings", ex);
+                }
+            }, SAVE_LATER_DELAY, TimeUnit.MILLISECONDS);
         }
-        return result;
     }
     
-    private SaveResult saveSettingsToJson(String fileName, boolean force) {
-        String json = settingsToJson(fileName);
-        SaveResult result = fileManager.save(fileName, json, force);
-        return result;
+    /**
+     * Create the JSON of changed files while holding the lock, then write it
+     * without holding the lock, so changing settings doesn't have to wait for
+     * the write.
+     * 
+     * @param force Write even if unchanged
+     * @return 
+     */
+    private List<SaveResult> saveFiles(boolean force) {
+        synchronized(SAVE_LOCK) {
+            List<String> fileNames = new ArrayList<>();
+            List<String> contents = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            List<Boolean> unchanged = new ArrayList<>();
+            synchronized(LOCK) {
+                fileNames.add(defaultFile);
+                fileNames.addAll(files);
+                for (String fileName : fileNames) {
+                    long version = fileVersions.getOrDefault(fileName, 0L);
+                    boolean skip = !force && Objects.equals(savedVersions.get(fileName), version);
+                    contents.add(skip ? null : settingsToJson(fileName));
+                    versions.add(version);
+                    unchanged.add(skip);
+                }
+            }
+            List<SaveResult> result = new ArrayList<>();
+            for (int i = 0; i < fileNames.size(); i++) {
+                String fileName = fileNames.get(i);
+                String json = contents.get(i);
+                long version = versions.get(i);
+                if (unchanged.get(i)) {
+                    LOGGER.fine("Not writing "+fileName+" (unchanged)");
+                    result.add(SaveResult.notChanged(fileName));
+                    continue;
+                }
+                SaveResult saveResult = fileManager.save(fileName, json, force);
+                if (saveResult.writeError == null
+                        && (saveResult.cancelReason == null
+                            || saveResult.cancelReason == SaveResult.CancelReason.KNOWN_CONTENT)) {
+                    synchronized(LOCK) {
+                        savedVersions.put(fileName, version);
+                    }
+                }
+                result.add(saveResult);
+            }
+            return result;
+        }
     }
 
+
     /**
      * Loads the settings from a JSON file.
      * 
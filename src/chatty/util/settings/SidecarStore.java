@@ -0,0 +1,282 @@
+
+package chatty.util.settings;
+
+import chatty.util.settings.FileManager.FileContentInfo;
+import chatty.util.settings.FileManager.SaveResult;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A list of items that is saved in it's own file instead of in the settings,
+ * for data that can get large and isn't needed to start up (e.g. logs), so
+ * that the settings stay small and fast to load and save.
+ *
+ * <p>
+ * The file contains one item per line, each encoded as JSON. Adding an item
+ * only appends a line to the file, the whole file is only written again when
+ * the items are replaced or when it contains a lot more lines than the max
+ * number of items. The file is only loaded when the items are first accessed.
+ * </p>
+ *
+ * <p>
+ * The file is registered with the {@link FileManager}, so it can be included
+ * in backups like the settings files. Items should be values that can be
+ * turned into JSON (Map, List, String, Number, Boolean).
+ * </p>
+ *
+ * @author tduva
+ */
+public class SidecarStore {
+
+    private static final Logger LOGGER = Logger.getLogger(SidecarStore.class.getName());
+
+    private final String id;
+    private final FileManager fileManager;
+    private final int maxSize;
+    private final List<Object> items = new ArrayList<>();
+
+    private boolean loaded;
+
+    /**
+     * If the file couldn't be read, it shouldn't be overwritten (which might
+     * remove data that could still be recovered).
+     */
+    private boolean loadFailed;
+
+    /**
+     * The number of lines in the file, which may be more than the number of
+     * items (if old items were removed since the file was last rewritten).
+     */
+    private int fileLines;
+
+    /**
+     * The file may not end with a line break (e.g. if writing a line was
+     * interrupted), so the next appended line has to start with one, since it
+     * would otherwise become part of the incomplete line.
+     */
+    private boolean incompleteLine;
+
+    /**
+     * Create a new store and register it's file with the FileManager.
+     *
+     * @param id The file id and name (must be unique in the FileManager)
+     * @param fileManager The FileManager, if null the items are only kept in
+     * memory
+     * @param maxSize The max number of items, older items are removed when
+     * more are added (0 for no limit)
+     * @param backupEnabled Whether the file should be included in backups
+     */
+    public SidecarStore(String id, FileManager fileManager, int maxSize, boolean backupEnabled) {
+        this.id = id;
+        this.fileManager = fileManager;
+        this.maxSize = maxSize;
+        if (fileManager != null) {
+            fileManager.add(id, id, backupEnabled, SidecarStore::getInfo);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get a copy of all items, loading them from the file if they haven't been
+     * loaded yet.
+     *
+     * @return The items, oldest first
+     */
+    public synchronized List<Object> getAll() {
+        load();
+        return new ArrayList<>(items);
+    }
+
+    public synchronized int size() {
+        load();
+        return items.size();
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Add an item, appending it to the file.
+     *
+     * @param item The item (must not be null)
+     */
+    public synchronized void add(Object item) {
+        load();
+        items.add(item);
+        boolean removed = trim();
+        if (removed && fileLines + 1 >= maxSize * 2) {
+            // Too many lines of items that have already been removed
+            rewrite();
+        }
+        else {
+            append(JsonWriter.toJson(item) + "\n");
+        }
+    }
+
+    /**
+     * Replace all items and rewrite the file.
+     *
+     * @param data The new items
+     */
+    public synchronized void setAll(Collection<?> data) {
+        loaded = true;
+        items.clear();
+        items.addAll(data);
+        trim();
+        rewrite();
+    }
+
+    public synchronized void clear() {
+        setAll(new ArrayList<>());
+    }
+
+    /**
+     * Move data that was previously stored elsewhere (e.g. in a setting) into
+     * this store, but only if the file of the store doesn't exist yet.
+     *
+     * @param data The previously stored data
+     * @return true if the data is now in the store, either because it was
+     * just written or because the file already existed (in which case the
+     * given data is most likely outdated), false if the data couldn't be
+     * written
+     */
+    public synchronized boolean migrate(Collection<?> data) {
+        if (fileManager == null) {
+            return false;
+        }
+        if (fileManager.exists(id)) {
+            return true;
+        }
+        LOGGER.info(String.format(Locale.ROOT, "[%s] Migrating %d items", id, data.size()));
+        setAll(data);
+        return fileManager.exists(id);
+    }
+
+    //==========================
+    // Internal
+    //==========================
+
+    private boolean trim() {
+        boolean removed = false;
+        while (maxSize > 0 && items.size() > maxSize) {
+            items.remove(0);
+            removed = true;
+        }
+        return removed;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (fileManager == null) {
+            return;
+        }
+        try {
+            String content = fileManager.load(id);
+            if (content != null) {
+                List<Object> result = new ArrayList<>();
+                int invalid = parse(content, result);
+                if (invalid > 0) {
+                    LOGGER.warning(String.format(Locale.ROOT, "[%s] Skipped %d invalid lines", id, invalid));
+                }
+                items.addAll(result);
+                fileLines = result.size() + invalid;
+                incompleteLine = !content.isEmpty() && !content.endsWith("\n");
+                trim();
+            }
+        }
+        catch (NoSuchFileException ex) {
+            // Nothing saved yet
+        }
+        catch (IOException ex) {
+            LOGGER.warning(String.format("[%s] Error loading: %s", id, ex));
+            loadFailed = true;
+        }
+    }
+
+    private void append(String content) {
+        if (fileManager == null || loadFailed) {
+            return;
+        }
+        if (incompleteLine) {
+            content = "\n" + content;
+        }
+        SaveResult result = fileManager.append(id, content);
+        if (result.written) {
+            fileLines++;
+            incompleteLine = false;
+        }
+        else if (result.writeError != null) {
+            // May have been partially written
+            incompleteLine = true;
+        }
+    }
+
+    private void rewrite() {
+        if (fileManager == null || loadFailed) {
+            return;
+        }
+        StringBuilder b = new StringBuilder();
+        for (Object item : items) {
+            JsonWriter.write(item, b);
+            b.append("\n");
+        }
+        SaveResult result = fileManager.save(id, b.toString(), false);
+        if (result.written || result.cancelReason == SaveResult.CancelReason.KNOWN_CONTENT) {
+            fileLines = items.size();
+            incompleteLine = false;
+        }
+    }
+
+    /**
+     * Parse the lines of the given content.
+     *
+     * @param content The content of the file
+     * @param result The list to add the parsed items to
+     * @return The number of lines that couldn't be parsed
+     */
+    static int parse(String content, List<Object> result) {
+        JSONParser parser = new JSONParser();
+        int invalid = 0;
+        for (String line : content.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                Object item = parser.parse(line);
+                if (item != null) {
+                    result.add(item);
+                }
+            }
+            catch (ParseException ex) {
+                // E.g. line that was only partially written
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+    private static FileContentInfo getInfo(String content) {
+        List<Object> result = new ArrayList<>();
+        int invalid = parse(content, result);
+        if (!result.isEmpty() || invalid == 0) {
+            return new FileContentInfo(true, String.format(Locale.ROOT, "%d entries", result.size()));
+        }
+        return new FileContentInfo(false, "No valid entries");
+    }
+
+}
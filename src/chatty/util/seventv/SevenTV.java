@@ -2,9 +2,8 @@
 package chatty.util.seventv;
 
 import chatty.Helper;
-import chatty.util.Debugging;
 import chatty.util.EmoticonListener;
-import chatty.util.JSONUtil;
+import chatty.util.JsonReader;
 import chatty.util.MiscUtil;
 import chatty.util.RetryManager;
 import chatty.util.StringUtil;
@@ -12,14 +11,13 @@ import chatty.util.UrlRequest;
 import chatty.util.api.Emoticon;
 import chatty.util.api.EmoticonUpdate;
 import chatty.util.api.TwitchApi;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
 /**
  *
@@ -29,7 +27,7 @@ public class SevenTV {
     
     private static final Logger LOGGER = Logger.getLogger(SevenTV.class.getName());
     
-    private static enum Type {
+    static enum Type {
         GLOBAL, CHANNEL
     }
     
@@ -93,11 +91,12 @@ public class SevenTV {
         UrlRequest request = new UrlRequest();
         request.setLabel("SevenTV/"+stream);
         request.setUrl(url);
-        request.async((result, responseCode) -> {
+        // Emote lists can be large, so parse directly from the response
+        request.asyncParse(reader -> parseEmoteList(type, stream, reader), (result, responseCode) -> {
             if (Integer.toString(responseCode).startsWith("4")) {
                 RetryManager.getInstance().setNotFound(url);
             }
-            else if (responseCode != 200 && result == null) {
+            else if (result == null) {
                 RetryManager.getInstance().setError(url);
             }
             else {
@@ -107,11 +106,10 @@ public class SevenTV {
         });
     }
     
-    private void parseResult(Type type, String stream, String json) {
-        if (json == null) {
+    private void parseResult(Type type, String stream, Set<Emoticon> emotes) {
+        if (emotes == null) {
             return;
         }
-        Set<Emoticon> emotes = parseEmoteList(type, stream, json);
         LOGGER.info(String.format("|[SevenTV] (%s): %d emotes received.",
                 stream, emotes.size()));
         
@@ -123,94 +121,226 @@ public class SevenTV {
         listener.receivedEmoticons(updateBuilder.build());
     }
     
-    private Set<Emoticon> parseEmoteList(Type type, String stream, String json) {
+    /**
+     * Parse the emote list from the global emote set or the channel user
+     * response.
+     * 
+     * @param type The type of emote list
+     * @param stream The stream for channel emotes, null for global emotes
+     * @param input The response
+     * @return The emotes, never null (invalid emotes are skipped)
+     * @throws IOException If reading failed or the response is invalid (e.g.
+     * incomplete), so that it isn't treated as a successful request
+     */
+    static Set<Emoticon> parseEmoteList(Type type, String stream, Reader input) throws IOException {
         Set<Emoticon> result = new HashSet<>();
-        try {
-            JSONParser parser = new JSONParser();
-            JSONObject root = (JSONObject) parser.parse(json);
-            JSONObject set = root;
-            if (type == Type.CHANNEL) {
-                set = (JSONObject) root.get("emote_set");
-            }
-            if (set != null) {
-                JSONArray emotes = (JSONArray) set.get("emotes");
-                for (Object o : emotes) {
-                    if (o instanceof JSONObject) {
-                        Emoticon emote = parseEmote(stream, (JSONObject) o);
-                        if (emote != null) {
-                            result.add(emote);
-                        }
-                    }
+        JsonReader reader = new JsonReader(input);
+        if (type == Type.CHANNEL) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("emote_set")
+                        && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                    parseEmoteSet(stream, reader, result);
+                }
+                else {
+                    reader.skipValue();
                 }
             }
+            reader.endObject();
         }
-        catch (Exception ex) {
-            LOGGER.warning("Error parsing SevenTV emote list: "+ex);
+        else {
+            parseEmoteSet(stream, reader, result);
         }
         return result;
     }
     
-    private Emoticon parseEmote(String stream, JSONObject emoteObject) {
-        try {
-            String id = JSONUtil.getString(emoteObject, "id");
-            String code = JSONUtil.getString(emoteObject, "name");
-            
-            JSONObject data = (JSONObject) emoteObject.get("data");
-            boolean animated = JSONUtil.getBoolean(data, "animated", false);
-            JSONObject host = (JSONObject) data.get("host");
-
-            List<File> files = getFiles(host);
-            if (files == null) {
-                LOGGER.warning("SevenTV emote: No file found");
-                return null;
-            }
-            
-            int width = Integer.MAX_VALUE;
-            int height = Integer.MAX_VALUE;
-            
-            Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.SEVENTV, code);
-            for (File file : files) {
-                width = Integer.min(width, file.width);
-                height = Integer.min(height, file.height);
+    private static void parseEmoteSet(String stream, JsonReader reader, Set<Emoticon> result) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("emotes")
+                    && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                        int depth = reader.getDepth();
+                        try {
+                            Emoticon emote = parseEmote(stream, reader);
+                            if (emote != null) {
+                                result.add(emote);
+                            }
+                        }
+                        catch (IOException ex) {
+                            /**
+                             * Unexpected value in this emote, so only skip
+                             * this one (if the JSON itself is invalid, this
+                             * throws again).
+                             */
+                            LOGGER.warning("SevenTV emote: "+ex);
+                            reader.skipToDepth(depth);
+                        }
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
             }
-            for (File file : files) {
-                int scale = file.width / width;
-                b.addUrl(scale, file.url);
+            else {
+                reader.skipValue();
             }
-            b.setSize(width, height);
-            b.setStringId(id);
-            b.setAnimated(animated);
-            b.setLiteral(true);
-            b.setZeroWidth(MiscUtil.isBitEnabled(JSONUtil.getInteger(data, "flags", 0), 1 << 8));
-            
-            if (stream != null) {
-                b.addStreamRestriction(stream);
+        }
+        reader.endObject();
+    }
+    
+    private static Emoticon parseEmote(String stream, JsonReader reader) throws IOException {
+        String id = null;
+        String code = null;
+        boolean animated = false;
+        int flags = 0;
+        List<File> files = null;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextStringOrNull();
+                    break;
+                case "name":
+                    code = reader.nextStringOrNull();
+                    break;
+                case "data":
+                    if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "animated":
+                                animated = reader.peek() == JsonReader.Token.BOOLEAN && reader.nextBoolean();
+                                break;
+                            case "flags":
+                                flags = reader.nextInt();
+                                break;
+                            case "host":
+                                files = getFiles(reader);
+                                break;
+                            default:
+                                reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
             }
-            return b.build();
         }
-        catch (Exception ex) {
-            LOGGER.warning("Error parsing SevenTV emote: " + Debugging.getStacktrace(ex));
+        reader.endObject();
+        
+        if (code == null) {
+            LOGGER.warning("SevenTV emote: No name");
+            return null;
+        }
+        if (files == null || files.isEmpty()) {
+            LOGGER.warning("SevenTV emote: No file found");
             return null;
         }
+
+        int width = Integer.MAX_VALUE;
+        int height = Integer.MAX_VALUE;
+
+        Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.SEVENTV, code);
+        for (File file : files) {
+            width = Integer.min(width, file.width);
+            height = Integer.min(height, file.height);
+        }
+        for (File file : files) {
+            int scale = file.width / width;
+            b.addUrl(scale, file.url);
+        }
+        b.setSize(width, height);
+        b.setStringId(id);
+        b.setAnimated(animated);
+        b.setLiteral(true);
+        b.setZeroWidth(MiscUtil.isBitEnabled(flags, 1 << 8));
+
+        if (stream != null) {
+            b.addStreamRestriction(stream);
+        }
+        return b.build();
     }
     
-    private List<File> getFiles(JSONObject host) {
-        String baseUrl = JSONUtil.getString(host, "url");
-        if (baseUrl == null) {
+    private static List<File> getFiles(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            reader.skipValue();
             return null;
         }
+        String baseUrl = null;
         List<File> result = new ArrayList<>();
-        JSONArray files = (JSONArray) host.get("files");
-        for (Object o : files) {
-            JSONObject file = (JSONObject) o;
-            if (file.get("format").equals("WEBP")) {
-                String name = (String) file.get("name");
-                int width = JSONUtil.getInteger(file, "width", -1);
-                int height = JSONUtil.getInteger(file, "height", -1);
-                result.add(new File(baseUrl+"/"+name, width, height));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("url")) {
+                baseUrl = reader.nextStringOrNull();
+            }
+            else if (name.equals("files") && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    File file = getFile(reader);
+                    if (file != null) {
+                        result.add(file);
+                    }
+                }
+                reader.endArray();
+            }
+            else {
+                reader.skipValue();
             }
         }
-        return result;
+        reader.endObject();
+        if (baseUrl == null) {
+            return null;
+        }
+        // The url may come after the files
+        List<File> withUrl = new ArrayList<>();
+        for (File file : result) {
+            withUrl.add(new File(baseUrl+"/"+file.url, file.width, file.height));
+        }
+        return withUrl;
+    }
+    
+    /**
+     * Read a file entry, with only the name as url.
+     */
+    private static File getFile(JsonReader reader) throws IOException {
+        String name = null;
+        String format = null;
+        int width = -1;
+        int height = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = reader.nextStringOrNull();
+                    break;
+                case "format":
+                    format = reader.nextStringOrNull();
+                    break;
+                case "width":
+                    width = reader.nextInt();
+                    break;
+                case "height":
+                    height = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if ("WEBP".equals(format) && name != null) {
+            return new File(name, width, height);
+        }
+        return null;
     }
     
     private static class File {
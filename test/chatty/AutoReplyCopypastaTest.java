@@ -0,0 +1,50 @@
+package chatty;
+
+import chatty.AutoReplyManager.AutoReplyTrigger;
+import chatty.util.irc.MsgTags;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class AutoReplyCopypastaTest {
+
+    @Test
+    public void minCopypastaUsers() {
+        AutoReplyTrigger trigger = AutoReplyTrigger.create();
+        trigger.setPattern("hello");
+        trigger.setReply("hi");
+
+        // Disabled by default
+        assertTrue(AutoReplyService.matchesMessage(trigger, "hello", null));
+        assertTrue(AutoReplyService.matchesMessage(trigger, "hello", MsgTags.EMPTY));
+
+        trigger.setMinCopypastaUsers(3);
+        assertFalse(AutoReplyService.matchesMessage(trigger, "hello", null));
+        assertFalse(AutoReplyService.matchesMessage(trigger, "hello", MsgTags.EMPTY));
+        assertFalse(AutoReplyService.matchesMessage(trigger, "hello", copypasta(2)));
+        assertTrue(AutoReplyService.matchesMessage(trigger, "hello", copypasta(3)));
+        assertTrue(AutoReplyService.matchesMessage(trigger, "hello", copypasta(10)));
+
+        // Pattern still has to match
+        assertFalse(AutoReplyService.matchesMessage(trigger, "bye", copypasta(10)));
+    }
+
+    @Test
+    public void minCopypastaUsersPersisted() {
+        AutoReplyTrigger trigger = AutoReplyTrigger.create();
+        trigger.setMinCopypastaUsers(5);
+        assertEquals(5, trigger.copy().getMinCopypastaUsers());
+        assertEquals(5, trigger.copyWithNewId().getMinCopypastaUsers());
+        assertEquals(5L, trigger.toMap().get("minCopypastaUsers"));
+    }
+
+    private static MsgTags copypasta(int count) {
+        return MsgTags.create("chatty-copypasta-id", "1",
+                "chatty-copypasta-count", String.valueOf(count));
+    }
+
+}
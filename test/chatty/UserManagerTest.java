@@ -0,0 +1,149 @@
+
+package chatty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class UserManagerTest {
+
+    @Test
+    public void testGetUser() {
+        UserManager m = new UserManager();
+        Room room = Room.createRegular("#test");
+        User user = m.getUser(room, "Abc");
+        assertEquals("abc", user.getName());
+        assertSame(user, m.getUser(room, "abc"));
+        assertSame(user, m.getUserIfExists("#test", "abc"));
+        assertNull(m.getUserIfExists("#test2", "abc"));
+        assertNull(m.getUserIfExists(null, "abc"));
+
+        User user2 = m.getUser(Room.createRegular("#test2"), "abc");
+        assertNotSame(user, user2);
+        assertEquals(2, m.getUsersByName("ABC").size());
+        assertEquals(2, m.getChannelsAndUsersByUserName("abc").size());
+
+        m.setColorForUsername("abc", "#FF0000");
+        assertFalse(user.hasDefaultColor());
+        assertFalse(m.getUser(Room.createRegular("#test3"), "abc").hasDefaultColor());
+
+        m.clear("#test");
+        assertNull(m.getUserIfExists("#test", "abc"));
+        assertEquals(2, m.getUsersByName("abc").size());
+        m.setAllOffline(null);
+        m.clear();
+        assertTrue(m.getUsersByName("abc").isEmpty());
+    }
+
+    @Test
+    public void testConcurrentGetUser() throws Exception {
+        UserManager m = new UserManager();
+        Room room = Room.createRegular("#test");
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        List<List<User>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<User> result = new ArrayList<>();
+            results.add(result);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    result.add(m.getUser(room, "user"+i));
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+        Map<String, User> users = m.getUsersByChannel("#test");
+        assertEquals(1000, users.size());
+        for (List<User> result : results) {
+            for (int i = 0; i < 1000; i++) {
+                assertSame(users.get("user"+i), result.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveIdleUsers() throws Exception {
+        UserManager m = new UserManager();
+        Room room = Room.createRegular("#test");
+        User online = m.getUser(room, "online");
+        online.setOnline(true);
+        User kept = m.getUser(room, "kept");
+        m.getUser(room, "idle");
+        m.addKeepUserCheck(user -> user == kept);
+        Thread.sleep(20);
+
+        // Not idle long enough
+        assertEquals(0, m.removeIdleUsers(10000, 0));
+        assertEquals(3, m.getUsersByChannel("#test").size());
+
+        assertEquals(1, m.removeIdleUsers(10, 0));
+        assertNull(m.getUserIfExists("#test", "idle"));
+        assertSame(online, m.getUserIfExists("#test", "online"));
+        assertSame(kept, m.getUserIfExists("#test", "kept"));
+
+        // Per channel limit, least recently active are removed first
+        for (int i = 0; i < 5; i++) {
+            m.getUser(room, "user"+i);
+            Thread.sleep(2);
+        }
+        assertEquals(3, m.removeIdleUsers(-1, 4));
+        Map<String, User> users = m.getUsersByChannel("#test");
+        assertEquals(4, users.size());
+        assertTrue(users.containsKey("user3"));
+        assertTrue(users.containsKey("user4"));
+        assertTrue(users.containsKey("online"));
+        assertTrue(users.containsKey("kept"));
+
+        // Online users are kept, even above the limit
+        assertEquals(2, m.removeIdleUsers(-1, 1));
+        assertEquals(2, users.size());
+
+        assertTrue(m.getMemoryReport().contains("#test: 2 users (1 online)"));
+    }
+
+    @Test
+    public void testKeepReferencedUsers() throws Exception {
+        UserManager m = new UserManager();
+        Room room = Room.createRegular("#test");
+        User withLines = m.getUser(room, "withlines");
+        withLines.addMessage("abc", false, null);
+        User highlighted = m.getUser(room, "highlighted");
+        highlighted.setHighlighted();
+        for (int i = 0; i < 3; i++) {
+            m.getUser(room, "user"+i);
+        }
+        Thread.sleep(20);
+
+        // Least recently active, but still shown in chat or highlights
+        assertEquals(3, m.removeIdleUsers(-1, 1));
+        assertSame(withLines, m.getUserIfExists("#test", "withlines"));
+        assertSame(highlighted, m.getUserIfExists("#test", "highlighted"));
+        assertEquals(0, m.removeIdleUsers(10, 0));
+        assertEquals(2, m.getUsersByChannel("#test").size());
+
+        // Removable once the lines are cleared
+        withLines.clearLinesIfInactive(0);
+        assertEquals(1, m.removeIdleUsers(10, 0));
+        assertNull(m.getUserIfExists("#test", "withlines"));
+    }
+
+}
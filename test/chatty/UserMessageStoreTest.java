@@ -0,0 +1,111 @@
+
+package chatty;
+
+import chatty.User.BanMessage;
+import chatty.User.Message;
+import chatty.User.TextMessage;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class UserMessageStoreTest {
+
+    @Test
+    public void testStore() {
+        UserMessageStore store = new UserMessageStore(64*1024);
+        String uuid = "8a1f0a6c-2a3b-4c5d-9e8f-0123456789ab";
+        long seq1 = store.add(new TextMessage(123, "abc \u00E4\u00F6\u00FC \uD83D\uDE00", true, uuid, null));
+        long seq2 = store.add(new TextMessage(124, null, false, "not-a-uuid", null));
+        long seq3 = store.add(new TextMessage(125, "", false, null, null));
+        BanMessage ban = new BanMessage(126, 10, null, null, null);
+        long seq4 = store.add(ban);
+        assertEquals(4, store.size());
+
+        TextMessage m1 = (TextMessage) store.get(seq1);
+        assertEquals(123, m1.getTime());
+        assertEquals("abc \u00E4\u00F6\u00FC \uD83D\uDE00", m1.text);
+        assertTrue(m1.action);
+        assertEquals(uuid, m1.id);
+
+        TextMessage m2 = (TextMessage) store.get(seq2);
+        assertNull(m2.text);
+        assertFalse(m2.action);
+        assertEquals("not-a-uuid", m2.id);
+
+        TextMessage m3 = (TextMessage) store.get(seq3);
+        assertEquals("", m3.text);
+        assertNull(m3.id);
+
+        assertSame(ban, store.get(seq4));
+        assertEquals(126, store.getTime(seq4));
+
+        // Replace
+        BanMessage ban2 = ban.addModLogInfo("mod", "reason", null);
+        assertTrue(store.set(seq4, ban2));
+        assertSame(ban2, store.get(seq4));
+
+        assertNull(store.get(seq4 + 1));
+        assertEquals(-1, store.getTime(seq4 + 1));
+    }
+
+    @Test
+    public void testEviction() {
+        // 16KB: 12KB text, 91 entries
+        UserMessageStore store = new UserMessageStore(16*1024);
+        long first = store.add(new TextMessage(0, "first", false, null, null));
+        for (int i = 1; i < 1000; i++) {
+            long seq = store.add(new TextMessage(i, "message "+i, false, null, null));
+            assertEquals("message "+i, ((TextMessage) store.get(seq)).text);
+        }
+        assertNull(store.get(first));
+        assertTrue(store.size() > 0);
+        assertTrue(store.size() <= 91);
+        assertTrue(store.getAllocatedBytes() <= 16*1024);
+
+        // Text wraps around
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            b.append((char) ('a' + i % 26));
+        }
+        for (int i = 0; i < 200; i++) {
+            String text = b.toString()+i;
+            long seq = store.add(new TextMessage(i, text, false, null, null));
+            assertEquals(text, ((TextMessage) store.get(seq)).text);
+            assertEquals(text, ((TextMessage) store.get(seq)).text);
+        }
+        // Too long for the text store, still works
+        String longText = b.toString()+b+b+b+b+b+b+b+b+b+b+b;
+        long seq = store.add(new TextMessage(1, longText, false, null, null));
+        assertEquals(longText, ((TextMessage) store.get(seq)).text);
+    }
+
+    @Test
+    public void testLines() {
+        UserMessageStore store = new UserMessageStore(16*1024);
+        UserMessageStore.Lines lines = new UserMessageStore.Lines(store, 3);
+        assertTrue(lines.isEmpty());
+        lines.add(new TextMessage(1, "a", false, null, null));
+        lines.add(new TextMessage(2, "b", false, null, null));
+        assertEquals(2, lines.size());
+        lines.add(new TextMessage(3, "c", false, null, null));
+        lines.add(new TextMessage(4, "d", false, null, null));
+        assertEquals(3, lines.size());
+        assertEquals(2, lines.getTime(0));
+        assertEquals(4, lines.getTime(2));
+        List<Message> all = lines.getAll();
+        assertEquals("b", ((TextMessage) all.get(0)).text);
+        assertEquals("d", ((TextMessage) all.get(2)).text);
+
+        // Messages of other users push these out of the store
+        for (int i = 0; i < 200; i++) {
+            store.add(new TextMessage(i, "other", false, null, null));
+        }
+        assertEquals(0, lines.size());
+        assertTrue(lines.getAll().isEmpty());
+    }
+
+}
@@ -0,0 +1,94 @@
+
+package chatty.gui.emoji;
+
+import chatty.util.api.Emoticon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class EmojiTrieTest {
+
+    private static Emoticon e(String code) {
+        return new Emoticon.Builder(Emoticon.Type.EMOJI, code).build();
+    }
+
+    private static List<String> find(EmojiTrie trie, String text) {
+        List<String> result = new ArrayList<>();
+        trie.find(text, (emoji, start, end, textStyle) -> {
+            result.add(start+"-"+end+(textStyle ? "t" : "")+":"+emoji.code);
+            return true;
+        });
+        return result;
+    }
+
+    @Test
+    public void testFind() {
+        String man = "👨";
+        String woman = "👩";
+        String girl = "👧";
+        String family = man+EmojiUtil.ZWJ+woman+EmojiUtil.ZWJ+girl;
+        String heart = "❤";
+        EmojiTrie trie = EmojiTrie.build(Arrays.asList(e(man), e(woman), e(girl), e(family), e(heart)));
+        assertEquals(5, trie.size());
+
+        assertEquals(Arrays.asList(), find(trie, ""));
+        assertEquals(Arrays.asList(), find(trie, "abc"));
+        assertEquals(Arrays.asList("0-2:"+man), find(trie, man));
+        assertEquals(Arrays.asList("2-4:"+man), find(trie, "a "+man));
+
+        // Longest match for ZWJ sequence
+        assertEquals(Arrays.asList("0-8:"+family), find(trie, family));
+        assertEquals(Arrays.asList("0-2:"+man, "3-5:"+woman), find(trie, man+EmojiUtil.ZWJ+woman));
+        assertEquals(Arrays.asList("1-9:"+family, "9-11:"+man), find(trie, " "+family+man));
+
+        // Variation selectors
+        assertEquals(Arrays.asList("0-2:"+heart), find(trie, heart+"️ "));
+        assertEquals(Arrays.asList("0-2t:"+heart), find(trie, heart+"︎"));
+        assertEquals(Arrays.asList("0-1:"+heart, "1-2:"+heart), find(trie, heart+heart));
+    }
+
+    @Test
+    public void testFallbackShorter() {
+        String man = "👨";
+        String woman = "👩";
+        String family = man+EmojiUtil.ZWJ+woman;
+        EmojiTrie trie = EmojiTrie.build(Arrays.asList(e(man), e(woman), e(family)));
+
+        // Reject the longer match, so the shorter ones should be used
+        List<String> result = new ArrayList<>();
+        trie.find(family, (emoji, start, end, textStyle) -> {
+            if (emoji.code.equals(family)) {
+                return false;
+            }
+            result.add(start+"-"+end+":"+emoji.code);
+            return true;
+        });
+        assertEquals(Arrays.asList("0-2:"+man, "3-5:"+woman), result);
+    }
+
+    /**
+     * Each Emoji in the actual sets should be found as a whole.
+     */
+    @Test
+    public void testAllEmoji() {
+        for (EmojiUtil.EmojiSet set : EmojiUtil.EmojiSet.values()) {
+            Set<Emoticon> emotes = EmojiUtil.makeEmoticons(set.id);
+            EmojiTrie trie = EmojiTrie.build(emotes);
+            assertEquals(emotes.size(), trie.size());
+            for (Emoticon emoji : emotes) {
+                String text = "abc "+emoji.code+" abc";
+                assertEquals("Failed to find "+emoji.stringId,
+                        Arrays.asList("4-"+(4+emoji.code.length())+":"+emoji.code),
+                        find(trie, text));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class BigramSignatureTest {
+
+    private static final String[] WORDS = {
+        "Kappa", "PogChamp", "LUL", "this", "is", "a", "message", "that's",
+        "longer", "gg", "wp", "\u00E4\u00F6\u00FC", "\uD83D\uDE00", "night",
+        "nacht", "aaaaaaaa", "!", "?"
+    };
+
+    private static List<String> createStrings(int num, long seed) {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<>();
+        result.add("");
+        result.add("a");
+        result.add("aa");
+        result.add("aaaa");
+        result.add("ab");
+        for (int i = 0; i < num; i++) {
+            StringBuilder b = new StringBuilder();
+            int words = random.nextInt(40);
+            for (int w = 0; w < words; w++) {
+                b.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            result.add(b.toString());
+            // Similar variation of the previous one
+            if (b.length() > 2) {
+                b.setCharAt(random.nextInt(b.length()), 'x');
+                b.append(WORDS[random.nextInt(WORDS.length)]);
+                result.add(b.toString());
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameAsStringUtil() {
+        List<String> strings = createStrings(150, 1);
+        List<BigramSignature> signatures = new ArrayList<>();
+        for (String s : strings) {
+            signatures.add(BigramSignature.of(s));
+        }
+        for (int i = 0; i < strings.size(); i++) {
+            for (int j = 0; j < strings.size(); j++) {
+                String a = strings.get(i);
+                String b = strings.get(j);
+                BigramSignature sigA = signatures.get(i);
+                BigramSignature sigB = signatures.get(j);
+                assertEquals(a+"/"+b, StringUtil.getSimilarity(a, b), sigA.getSimilarity(sigB, 1), 0);
+                assertEquals(a+"/"+b, StringUtil.getSimilarity2(a, b), sigA.getSimilarity(sigB, 2), 0);
+                for (float min : new float[]{0, 0.2f, 0.5f, 0.8f, 1}) {
+                    assertEquals(a+"/"+b+"/"+min, StringUtil.checkSimilarity(a, b, min, 1), sigA.checkSimilarity(sigB, min, 1), 0);
+                    assertEquals(a+"/"+b+"/"+min, StringUtil.checkSimilarity(a, b, min, 2), sigA.checkSimilarity(sigB, min, 2), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIntCounter() {
+        BigramSignature.IntCounter counter = new BigramSignature.IntCounter(4);
+        counter.increment(5);
+        counter.increment(-5);
+        counter.increment(5);
+        counter.increment(0);
+        assertEquals(3, counter.size());
+        assertEquals(2, counter.get(5));
+        assertEquals(1, counter.get(-5));
+        assertEquals(1, counter.get(0));
+        assertEquals(0, counter.get(6));
+        assertEquals(3, counter.getKeys().length);
+    }
+
+    @Test
+    public void testCache() {
+        BigramSignature.Cache cache = new BigramSignature.Cache(2, new char[]{'!'});
+        BigramSignature sig = cache.get("a b!c");
+        assertEquals("abc", sig.getText());
+        assertSame(sig, cache.get("a b!c"));
+        cache.get("b");
+        cache.get("c");
+        assertEquals(2, cache.size());
+        assertNotSame(sig, cache.get("a b!c"));
+    }
+
+}
@@ -5,6 +5,7 @@ import static chatty.util.CachedBulkManager.*;
 import chatty.util.CachedBulkManager.Requester;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -618,6 +619,53 @@ public class CacheBulkManagerTest {
         return new MyResultListener(data);
     }
     
+    @Test
+    public void testBatches() {
+        List<Set<String>> requested = new ArrayList<>();
+        CachedBulkManager<String, String> m = new CachedBulkManager<>((manager, asap, normal, backlog) -> {
+            requested.add(manager.makeAndSetRequested(asap, normal, backlog, 2));
+        }, DAEMON);
+        m.query(null, NONE, "a", "b", "c", "d", "e");
+        m.doRequests();
+        // Without endpoint one batch per run
+        assertEquals(1, requested.size());
+        
+        m.setBatchSize("test/batches", 2);
+        m.doRequests();
+        assertEquals(3, requested.size());
+        assertEquals(2, requested.get(1).size());
+        assertEquals(1, requested.get(2).size());
+        m.doRequests();
+        assertEquals(3, requested.size());
+        
+        // First batch was counted under the default name
+        assertTrue(BulkRequestScheduler.get().getStats().contains("test/batches: 2 requests, 3 keys (fill 75%), 1 requests saved"));
+    }
+    
+    @Test
+    public void testNotFoundTime() {
+        List<Set<String>> requested = new ArrayList<>();
+        CachedBulkManager<String, String> m = new CachedBulkManager<>((manager, asap, normal, backlog) -> {
+            requested.add(manager.makeAndSetRequested(asap, normal, backlog, 10));
+        }, DAEMON);
+        m.setNotFoundTime(1000, TimeUnit.MILLISECONDS);
+        m.setCurrentTimestamp(0);
+        m.setNotFound("a");
+        MyResultListener listener = makeListener(new String[][][]{
+            {
+                {"a", null}
+            }
+        });
+        m.query(listener, NONE, "a");
+        listener.calledCount(1);
+        
+        // Expired, so requested again
+        m.setCurrentTimestamp(1000);
+        m.query(null, NONE, "a");
+        m.doRequests();
+        assertEquals(1, requested.size());
+    }
+    
     private static class MyRequester implements Requester<String, String> {
 
         private final String[][][] data;
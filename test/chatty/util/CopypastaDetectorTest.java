@@ -0,0 +1,83 @@
+
+package chatty.util;
+
+import chatty.util.CopypastaDetector.Cluster;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class CopypastaDetectorTest {
+
+    private static final String PASTA = "I'm not saying this stream is bad, but the chat has more content than the actual game being played right now";
+
+    @Test
+    public void testDetect() {
+        CopypastaDetector d = new CopypastaDetector(30*1000, 10, 3);
+        assertNull(d.add("#test", "a", PASTA, 0));
+        // Same user doesn't count twice
+        assertNull(d.add("#test", "a", PASTA, 1));
+        assertNull(d.add("#test", "b", PASTA.toUpperCase(), 2));
+        Cluster c = d.add("#test", "c", PASTA.replace(" ", "  ")+"!", 3);
+        assertNotNull(c);
+        assertEquals(3, c.count);
+        Cluster c2 = d.add("#test", "d", PASTA.replace("bad", "BAD"), 4);
+        assertEquals(4, c2.count);
+        assertEquals(c.id, c2.id);
+
+        // Different channel
+        assertNull(d.add("#test2", "d", PASTA, 5));
+
+        // Unrelated message
+        assertNull(d.add("#test", "e", "Does anyone know what game this is? Looks pretty fun to watch", 6));
+        assertNull(d.add("#test", "f", "Does anyone know what game this is? Looks pretty fun to watch", 7));
+
+        // Too short
+        assertNull(d.add("#test", "e", "LUL", 6));
+        assertNull(d.add("#test", "f", "LUL", 7));
+        assertNull(d.add("#test", "g", "LUL", 8));
+    }
+
+    @Test
+    public void testExpire() {
+        CopypastaDetector d = new CopypastaDetector(1000, 10, 2);
+        assertNull(d.add("#test", "a", PASTA, 0));
+        Cluster c = d.add("#test", "b", PASTA, 500);
+        assertEquals(2, c.count);
+        // Still in time window of the previous one
+        assertEquals(3, d.add("#test", "c", PASTA, 1200).count);
+        // All expired, so a new cluster is started
+        assertNull(d.add("#test", "d", PASTA, 5000));
+        Cluster c2 = d.add("#test", "e", PASTA, 5001);
+        assertEquals(2, c2.count);
+        assertNotEquals(c.id, c2.id);
+    }
+
+    @Test
+    public void testManyMessages() {
+        CopypastaDetector d = new CopypastaDetector(60*1000, 10, 2);
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder b = new StringBuilder();
+            for (int c = 0; c < 40; c++) {
+                b.append((char) ('a' + random.nextInt(26)));
+            }
+            assertNull(d.add("#test", "user"+i, b.toString(), i));
+        }
+        assertNull(d.add("#test", "a", PASTA, 10000));
+        assertEquals(2, d.add("#test", "b", PASTA, 10001).count);
+    }
+
+    @Test
+    public void testSimHash() {
+        long a = CopypastaDetector.simHash(PASTA.toLowerCase());
+        long b = CopypastaDetector.simHash((PASTA+"!").toLowerCase());
+        long c = CopypastaDetector.simHash("something completely different, with other words in it");
+        assertTrue(Long.bitCount(a ^ b) <= CopypastaDetector.MAX_DISTANCE);
+        assertTrue(Long.bitCount(a ^ c) > CopypastaDetector.MAX_DISTANCE);
+    }
+
+}
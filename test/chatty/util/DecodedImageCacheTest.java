@@ -0,0 +1,89 @@
+
+package chatty.util;
+
+import chatty.util.ImageCache.ImageResult;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import javax.swing.ImageIcon;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class DecodedImageCacheTest {
+
+    private static ImageResult createResult(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFF00FF00);
+        return new ImageResult(new ImageIcon(image), new Dimension(width, height), false);
+    }
+
+    @Test
+    public void testGetPut() {
+        DecodedImageCache cache = new DecodedImageCache(1024*1024);
+        assertNull(cache.get("a", 0));
+
+        ImageResult result = createResult(10, 20);
+        cache.put("a", result);
+        assertEquals(1, cache.size());
+        assertEquals(10*20*4, cache.getBytes());
+
+        ImageResult fromCache = cache.get("a", 0);
+        assertNotNull(fromCache);
+        assertEquals(10, fromCache.icon.getIconWidth());
+        assertEquals(20, fromCache.icon.getIconHeight());
+        assertEquals(new Dimension(10, 20), fromCache.actualBaseSize);
+        assertTrue(fromCache.isValidImage());
+
+        // Each hit should have it's own instances
+        assertNotSame(result.icon, fromCache.icon);
+        assertNotSame(result.icon.getImage(), fromCache.icon.getImage());
+        assertNotSame(fromCache.icon.getImage(), cache.get("a", 0).icon.getImage());
+
+        // Replace
+        cache.put("a", createResult(5, 5));
+        assertEquals(1, cache.size());
+        assertEquals(5*5*4, cache.getBytes());
+
+        cache.clear();
+        assertNull(cache.get("a", 0));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testEviction() {
+        // 4 images of 10x10 (400 bytes) fit
+        DecodedImageCache cache = new DecodedImageCache(1600);
+        cache.put("a", createResult(10, 10));
+        cache.put("b", createResult(10, 10));
+        cache.put("c", createResult(10, 10));
+        cache.put("d", createResult(10, 10));
+        assertEquals(4, cache.size());
+
+        // Access "a" so "b" is least recently used
+        assertNotNull(cache.get("a", 0));
+        cache.put("e", createResult(10, 10));
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("b", 0));
+        assertNotNull(cache.get("a", 0));
+        assertNotNull(cache.get("c", 0));
+        assertNotNull(cache.get("e", 0));
+
+        // Too large compared to the budget
+        cache.put("f", createResult(20, 20));
+        assertNull(cache.get("f", 0));
+    }
+
+    @Test
+    public void testNotCached() {
+        DecodedImageCache cache = new DecodedImageCache(1024*1024);
+        cache.put("a", null);
+        ImageResult gif = new ImageResult(new ImageIcon(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)), new Dimension(10, 10), true);
+        cache.put("b", gif);
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,64 @@
+
+package chatty.util;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class ImageDownloaderTest {
+
+    @Test
+    public void testDownload() throws Exception {
+        Path dir = Files.createTempDirectory("chattytest");
+        Path source = dir.resolve("source");
+        Files.write(source, "abc".getBytes(StandardCharsets.UTF_8));
+        Path target = dir.resolve("imgcache-test__123");
+
+        ImageDownloader.Result result = ImageDownloader.get().download(source.toUri().toURL(), target).join();
+        assertEquals(ImageDownloader.Result.DOWNLOADED, result);
+        assertEquals("abc", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+
+        // Replaced, no temp files left
+        Files.write(source, "abcd".getBytes(StandardCharsets.UTF_8));
+        result = ImageDownloader.get().download(source.toUri().toURL(), target).join();
+        assertEquals(ImageDownloader.Result.DOWNLOADED, result);
+        assertEquals("abcd", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertEquals(2, dir.toFile().list().length);
+
+        // Missing source
+        result = ImageDownloader.get().download(dir.resolve("missing").toUri().toURL(), dir.resolve("imgcache-test__456")).join();
+        assertEquals(ImageDownloader.Result.FAILED, result);
+        assertEquals(2, dir.toFile().list().length);
+
+        MiscUtil.deleteInDir(dir.toFile(), "", false);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testValidators() throws Exception {
+        Path file = Files.createTempFile("chattytest", ".meta");
+        new ImageDownloader.Validators("\"etag\"", "Wed, 21 Oct 2015 07:28:00 GMT").write(file);
+        ImageDownloader.Validators read = ImageDownloader.Validators.read(file);
+        assertEquals("\"etag\"", read.etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", read.lastModified);
+
+        new ImageDownloader.Validators(null, "Wed, 21 Oct 2015 07:28:00 GMT").write(file);
+        read = ImageDownloader.Validators.read(file);
+        assertNull(read.etag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", read.lastModified);
+
+        // No validators removes the file
+        new ImageDownloader.Validators(null, null).write(file);
+        assertFalse(Files.exists(file));
+        read = ImageDownloader.Validators.read(file);
+        assertNull(read.etag);
+        assertNull(read.lastModified);
+    }
+
+}
@@ -0,0 +1,95 @@
+package chatty.util;
+
+import chatty.util.ImageLoader.Priority;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class ImageLoaderTest {
+
+    @Test
+    public void testHostLimit() throws InterruptedException {
+        ImageLoader loader = new ImageLoader(2, 1);
+        List<String> order = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch releaseOther = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        loader.submit("https://a.example/1", Priority.VISIBLE, () -> {
+            started.countDown();
+            release.await();
+            return add(order, "a1");
+        }, r -> done.countDown());
+        // Occupy the other thread until everything is queued
+        loader.submit("https://c.example/1", Priority.VISIBLE, () -> {
+            started.countDown();
+            releaseOther.await();
+            return "c1";
+        }, r -> done.countDown());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Host "a" is at the limit, so the others go first
+        loader.submit("https://a.example/2", Priority.VISIBLE, () -> add(order, "a2"), r -> done.countDown());
+        loader.submit("https://b.example/1", Priority.PREFETCH, () -> add(order, "b1"), r -> done.countDown());
+        ImageLoader.Task<String> local = loader.submit(null, Priority.PREFETCH, () -> add(order, "local"), r -> done.countDown());
+        local.setPriority(Priority.DIALOG);
+        ImageLoader.Task<String> cancelled = loader.submit("https://b.example/2", Priority.PREFETCH, () -> add(order, "b2"), r -> fail());
+        assertTrue(cancelled.cancel());
+        assertEquals(3, loader.getQueueSize());
+
+        releaseOther.countDown();
+        waitFor(() -> order.size() == 2);
+        assertEquals("[local, b1]", order.toString());
+        assertEquals(1, loader.getQueueSize());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("[local, b1, a1, a2]", order.toString());
+        assertEquals(0, loader.getQueueSize());
+    }
+
+    @Test
+    public void testError() throws InterruptedException {
+        ImageLoader loader = new ImageLoader(1, 1);
+        List<String> results = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        loader.submit("https://a.example/1", Priority.VISIBLE, () -> {
+            throw new OutOfMemoryError("test");
+        }, r -> {
+            results.add(String.valueOf(r));
+            done.countDown();
+        });
+        loader.submit("https://a.example/2", Priority.VISIBLE, () -> "ok", r -> {
+            results.add(r);
+            done.countDown();
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("[null, ok]", results.toString());
+    }
+
+    private static String add(List<String> order, String value) {
+        synchronized (order) {
+            order.add(value);
+        }
+        return value;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() - start > 10000) {
+                fail("Timeout");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+}
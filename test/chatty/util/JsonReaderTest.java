@@ -0,0 +1,206 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class JsonReaderTest {
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    @Test
+    public void testValues() throws IOException {
+        JsonReader r = reader(" {\"a\": \"text\", \"b\" :123, \"c\":-1.5e2,\"d\":true,\"e\":false,\"f\":null,\"g\":[1, \"2\"], \"h\":{}, \"i\":[]} ");
+        r.beginObject();
+        assertEquals("a", r.nextName());
+        assertEquals(JsonReader.Token.STRING, r.peek());
+        assertEquals("text", r.nextString());
+        assertEquals("b", r.nextName());
+        assertEquals(JsonReader.Token.NUMBER, r.peek());
+        assertEquals(123, r.nextInt());
+        assertEquals("c", r.nextName());
+        assertEquals(-150.0, r.nextDouble(), 0);
+        assertEquals("d", r.nextName());
+        assertTrue(r.nextBoolean());
+        assertEquals("e", r.nextName());
+        assertFalse(r.nextBoolean());
+        assertEquals("f", r.nextName());
+        assertNull(r.nextStringOrNull());
+        assertEquals("g", r.nextName());
+        r.beginArray();
+        assertEquals("1", r.nextString());
+        assertEquals(2, r.nextLong());
+        assertFalse(r.hasNext());
+        r.endArray();
+        assertEquals("h", r.nextName());
+        r.beginObject();
+        assertFalse(r.hasNext());
+        r.endObject();
+        assertEquals("i", r.nextName());
+        r.beginArray();
+        r.endArray();
+        assertFalse(r.hasNext());
+        r.endObject();
+        assertEquals(JsonReader.Token.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        JsonReader r = reader("[\"a\\\"b\\\\c\\/d\\n\\t\\u00E4\\uD83D\\uDE00\", \"\"]");
+        r.beginArray();
+        assertEquals("a\"b\\c/d\n\t\u00E4\uD83D\uDE00", r.nextString());
+        assertEquals("", r.nextString());
+        r.endArray();
+
+        // Longer than the buffer
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            b.append(i % 10);
+        }
+        r = reader("[\""+b+"\\n"+b+"\"]");
+        r.beginArray();
+        assertEquals(b+"\n"+b, r.nextString());
+        r.endArray();
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        JsonReader r = reader("{\"skip\":{\"a\":[1,{\"b\":\"}\"}],\"c\":null},\"skipName\":[[]],\"keep\":\"value\"}");
+        r.beginObject();
+        assertEquals("skip", r.nextName());
+        r.skipValue();
+        r.skipValue();
+        assertEquals("keep", r.nextName());
+        assertEquals("value", r.nextString());
+        r.endObject();
+    }
+
+    @Test
+    public void testSkipToDepth() throws IOException {
+        JsonReader r = reader("[{\"a\":null,\"b\":{\"c\":[1]},\"d\":2},{\"a\":3}]");
+        r.beginArray();
+        int depth = r.getDepth();
+        assertEquals(1, depth);
+        r.beginObject();
+        assertEquals("a", r.nextName());
+        try {
+            r.nextInt();
+            fail();
+        }
+        catch (IOException ex) {
+            // Expected, value isn't consumed
+        }
+        r.skipToDepth(depth);
+        assertEquals(depth, r.getDepth());
+        r.beginObject();
+        assertEquals("a", r.nextName());
+        assertEquals(3, r.nextInt());
+        r.endObject();
+        r.endArray();
+        assertEquals(0, r.getDepth());
+
+        r = reader("[{\"a\":[1,2");
+        r.beginArray();
+        r.beginObject();
+        try {
+            r.skipToDepth(1);
+            fail();
+        }
+        catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        testError("{\"a\" 1}");
+        testError("{\"a\":1,}x");
+        testError("[1 2]");
+        testError("[tru]");
+        testError("[\"unterminated");
+        testError("{\"a\":1} x");
+        testError("[\"\\x\"]");
+    }
+
+    private static void testError(String json) {
+        try {
+            JsonReader r = reader(json);
+            r.skipValue();
+            r.peek();
+            fail("No error for: "+json);
+        }
+        catch (IOException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Reading all values should result in the same as json-simple.
+     */
+    @Test
+    public void testCompare() throws Exception {
+        String json = "{\"data\":[{\"id\":\"1\",\"name\":\"abc\",\"count\":5,\"tags\":[\"x\",\"y\"],\"ok\":true},"
+                + "{\"id\":\"2\",\"name\":\"d\\u00E9f\",\"count\":-3,\"tags\":[],\"ok\":false}],\"pagination\":{}}";
+        JSONObject root = (JSONObject) new JSONParser().parse(json);
+        List<String> expected = new ArrayList<>();
+        for (Object o : (JSONArray) root.get("data")) {
+            JSONObject item = (JSONObject) o;
+            expected.add(item.get("id")+"/"+item.get("name")+"/"+item.get("count")+"/"+item.get("tags")+"/"+item.get("ok"));
+        }
+
+        List<String> actual = new ArrayList<>();
+        JsonReader r = reader(json);
+        r.beginObject();
+        while (r.hasNext()) {
+            if (r.nextName().equals("data")) {
+                r.beginArray();
+                while (r.hasNext()) {
+                    String id = null, name = null, tags = null;
+                    long count = 0;
+                    boolean ok = false;
+                    r.beginObject();
+                    while (r.hasNext()) {
+                        switch (r.nextName()) {
+                            case "id": id = r.nextString(); break;
+                            case "name": name = r.nextString(); break;
+                            case "count": count = r.nextLong(); break;
+                            case "ok": ok = r.nextBoolean(); break;
+                            case "tags":
+                                List<String> t = new ArrayList<>();
+                                r.beginArray();
+                                while (r.hasNext()) {
+                                    t.add("\""+r.nextString()+"\"");
+                                }
+                                r.endArray();
+                                tags = "["+String.join(",", t)+"]";
+                                break;
+                            default: r.skipValue();
+                        }
+                    }
+                    r.endObject();
+                    actual.add(id+"/"+name+"/"+count+"/"+tags+"/"+ok);
+                }
+                r.endArray();
+            }
+            else {
+                r.skipValue();
+            }
+        }
+        r.endObject();
+        assertEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,183 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class KeyValueStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long FUTURE = System.currentTimeMillis() + 60*60*1000;
+
+    @Test
+    public void testStore() throws IOException {
+        Path file = folder.newFolder().toPath().resolve("store");
+        KeyValueStore store = new KeyValueStore(file);
+        store.put("a", "value a", 1, FUTURE);
+        store.put("b", "value b \u00E4", 2, FUTURE);
+        store.put("a", "value a2", 3, FUTURE);
+        store.put("c", "expired", 4, 0);
+        store.put("d", "removed", 5, FUTURE);
+        store.remove("d");
+        assertEquals("value a2", store.get("a").value);
+        assertEquals(3, store.get("a").timestamp);
+        assertNull(store.get("c"));
+        assertNull(store.get("d"));
+        store.close();
+
+        // Reload
+        store = new KeyValueStore(file);
+        assertEquals("value a2", store.get("a").value);
+        assertEquals("value b \u00E4", store.get("b").value);
+        assertNull(store.get("c"));
+        assertNull(store.get("d"));
+        assertEquals(2, store.size());
+
+        // Compact
+        long sizeBefore = Files.size(file);
+        store.compact();
+        assertTrue(Files.size(file) < sizeBefore);
+        assertEquals("value a2", store.get("a").value);
+        assertEquals("value b \u00E4", store.get("b").value);
+        store.put("e", "after compact", 6, FUTURE);
+        store.close();
+
+        store = new KeyValueStore(file);
+        assertEquals(3, store.size());
+        assertEquals("after compact", store.get("e").value);
+        store.close();
+    }
+
+    @Test
+    public void testPartialRecord() throws IOException {
+        Path file = folder.newFolder().toPath().resolve("store");
+        KeyValueStore store = new KeyValueStore(file);
+        store.put("a", "value a", 1, FUTURE);
+        store.put("b", "value b", 2, FUTURE);
+        store.close();
+
+        // Cut off last record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        store = new KeyValueStore(file);
+        assertEquals("value a", store.get("a").value);
+        assertNull(store.get("b"));
+        store.put("c", "value c", 3, FUTURE);
+        store.close();
+
+        // Corrupt data in last record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), channel.size() - 1);
+        }
+        store = new KeyValueStore(file);
+        assertEquals("value a", store.get("a").value);
+        assertNull(store.get("c"));
+        store.close();
+    }
+
+    @Test
+    public void testCachedBulkManager() throws IOException {
+        Path file = folder.newFolder().toPath().resolve("store");
+        CachedBulkManager.Codec<String, String> codec = new CachedBulkManager.Codec<String, String>() {
+
+            @Override
+            public String encodeKey(String key) {
+                return "test:"+key;
+            }
+
+            @Override
+            public String encodeItem(String item) {
+                return item;
+            }
+
+            @Override
+            public String decodeItem(String key, String data) {
+                return data;
+            }
+        };
+        CachedBulkManager<String, String> m = new CachedBulkManager<>((manager, asap, normal, backlog) -> {
+            fail("Shouldn't request");
+        }, CachedBulkManager.NONE);
+        KeyValueStore store = new KeyValueStore(file);
+        m.setPersistence(store, codec, 1, TimeUnit.HOURS);
+        m.setResult("a", "result a");
+        store.close();
+
+        // New instance, as after a restart
+        m = new CachedBulkManager<>((manager, asap, normal, backlog) -> {
+            fail("Shouldn't request");
+        }, CachedBulkManager.NONE);
+        store = new KeyValueStore(file);
+        m.setPersistence(store, codec, 1, TimeUnit.HOURS);
+        // Loaded in the background
+        store.waitForBackground();
+        assertEquals("result a", m.get("a"));
+        assertNull(m.get("b"));
+        m.removeCachedValue("a");
+        assertNull(m.get("a"));
+        store.close();
+        assertNull(new KeyValueStore(file).get("test:a"));
+    }
+
+    @Test
+    public void testAsync() throws IOException {
+        Path file = folder.newFolder().toPath().resolve("store");
+        Path temp = file.resolveSibling("store.tmp");
+        // Left over from an interrupted compaction
+        Files.write(temp, new byte[]{1, 2, 3});
+        KeyValueStore store = new KeyValueStore(file);
+        assertNull(store.getIfLoaded("a"));
+        store.loadAsync();
+        store.putAsync("a", "value a", 1, FUTURE);
+        store.waitForBackground();
+        assertFalse(Files.exists(temp));
+        assertEquals("value a", store.getIfLoaded("a").value);
+
+        // Not returned anymore, even before the remove is performed
+        store.removeAsync("a");
+        assertNull(store.getIfLoaded("a"));
+        store.close();
+        assertNull(new KeyValueStore(file).get("a"));
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        Path file = folder.newFolder().toPath().resolve("store");
+        KeyValueStore store = new KeyValueStore(file);
+        for (int i = 0; i < 100; i++) {
+            store.put("key", "value"+i, i, FUTURE);
+        }
+        store.put("other", "other value", 0, FUTURE);
+        long size = Files.size(file);
+        store.compact();
+        assertTrue(Files.size(file) < size);
+        assertFalse(Files.exists(file.resolveSibling("store.tmp")));
+        assertEquals("value99", store.get("key").value);
+        assertEquals("other value", store.get("other").value);
+
+        // Reopened after closing
+        store.close();
+        store.put("key", "new value", 0, FUTURE);
+        store.compact();
+        assertFalse(Files.exists(file.resolveSibling("store.tmp")));
+        store.close();
+        assertEquals("new value", new KeyValueStore(file).get("key").value);
+    }
+
+}
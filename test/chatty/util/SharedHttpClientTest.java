@@ -0,0 +1,128 @@
+
+package chatty.util;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class SharedHttpClientTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String base;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(data)) {
+                out.write("line1\nline2\n".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, data.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                data.writeTo(out);
+            }
+        });
+        server.createContext("/image", exchange -> {
+            if ("abc".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] data = "image".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", "abc");
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:"+server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testUrlRequest() {
+        UrlRequest.LinesResult result = new UrlRequest(base+"/gzip").syncLines();
+        assertEquals(200, result.getResponseCode());
+        assertEquals("[line1, line2]", result.getResult().toString());
+
+        UrlRequest.FullResult notFound = new UrlRequest(base+"/missing").sync();
+        assertEquals(404, notFound.getResponseCode());
+        assertNull(notFound.getResult());
+        assertNotNull(notFound.getError());
+
+        assertTrue(SharedHttpClient.getStats().contains("127.0.0.1: "));
+    }
+
+    @Test
+    public void testAsyncCallbacks() throws InterruptedException {
+        // Blocked callbacks shouldn't use up the threads for requests
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 20; i++) {
+            new UrlRequest(base+"/gzip").asyncLines((result, responseCode) -> {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    // Just end
+                }
+            });
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        new UrlRequest(base+"/gzip").asyncLines((result, responseCode) -> {
+            if (responseCode == 200) {
+                done.countDown();
+            }
+        });
+        try {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testImage() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        Path target = dir.resolve("imgcache-test__123");
+        URL url = new URL(base+"/image");
+        assertEquals(ImageDownloader.Result.DOWNLOADED, ImageDownloader.get().download(url, target).join());
+        assertEquals("image", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+        assertEquals(ImageDownloader.Result.NOT_MODIFIED, ImageDownloader.get().download(url, target).join());
+
+        // Existing file couldn't be read, so download it again
+        Files.write(target, "corrupt".getBytes(StandardCharsets.UTF_8));
+        assertEquals(ImageDownloader.Result.DOWNLOADED, ImageDownloader.get().download(url, target, false).join());
+        assertEquals("image", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+    }
+
+}
@@ -1,8 +1,10 @@
 
 package chatty.util.api;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.junit.Assert;
 import org.junit.Test;
@@ -48,4 +50,57 @@ public class EmoticonsTest {
         Assert.assertEquals(Emoticons.parseEmotesets(input), resultSet);
     }
     
+    @Test
+    public void testLiteralCode() {
+        Assert.assertEquals("Kappa", new Emoticon.Builder(Emoticon.Type.TWITCH, "Kappa").build().getLiteralCode());
+        Assert.assertEquals("D:", new Emoticon.Builder(Emoticon.Type.BTTV, "D:").build().getLiteralCode());
+        Assert.assertEquals("(ditto)", new Emoticon.Builder(Emoticon.Type.BTTV, "(ditto)").setLiteral(true).build().getLiteralCode());
+        Assert.assertNull(new Emoticon.Builder(Emoticon.Type.TWITCH, ":)").build().getLiteralCode());
+        Assert.assertNull(new Emoticon.Builder(Emoticon.Type.TWITCH, "Kappa").setRegex("Kap+a").build().getLiteralCode());
+        Assert.assertNull(new Emoticon.Builder(Emoticon.Type.TWITCH, "Kap+a").build().getLiteralCode());
+        Assert.assertNull(new Emoticon.Builder(Emoticon.Type.EMOJI, "abcd").build().getLiteralCode());
+    }
+    
+    @Test
+    public void testChannelEmotes() {
+        Emoticons emoticons = new Emoticons();
+        Emoticon kappa = new Emoticon.Builder(Emoticon.Type.TWITCH, "Kappa").build();
+        Emoticon smile = new Emoticon.Builder(Emoticon.Type.TWITCH, ":)").setRegex("\\:-?\\)").build();
+        Emoticon channelEmote = new Emoticon.Builder(Emoticon.Type.FFZ, "Abc").addStreamRestriction("abc").build();
+        Emoticon otherEmote = new Emoticon.Builder(Emoticon.Type.BTTV, "D:").build();
+        emoticons.addEmoticons(new HashSet<>(Arrays.asList(kappa, smile, channelEmote, otherEmote)));
+        
+        ChannelEmotes abc = emoticons.getChannelEmotes("abc");
+        Assert.assertSame(abc, emoticons.getChannelEmotes("abc"));
+        Assert.assertEquals(2, abc.globalTwitch.size());
+        Assert.assertEquals(1, abc.channel.size());
+        Assert.assertEquals(1, abc.otherGlobal.size());
+        Assert.assertTrue(emoticons.getChannelEmotes("other").channel.isEmpty());
+        Assert.assertTrue(emoticons.getChannelEmotes(null).channel.isEmpty());
+        
+        Assert.assertEquals(Arrays.asList("0-5:Kappa", "16-21:Kappa", "6-8::)"),
+                find(abc.globalTwitch, "Kappa :) aKappa Kappa :-)a"));
+        Assert.assertEquals(Arrays.asList("0-3:Abc", "4-7:Abc"),
+                find(abc.channel, "Abc\tAbc Abcd"));
+        
+        // Ignoring emote should create new snapshot without the emote
+        emoticons.setIgnoredEmotes(Arrays.asList("Abc"));
+        ChannelEmotes abc2 = emoticons.getChannelEmotes("abc");
+        Assert.assertNotEquals(abc.version, abc2.version);
+        Assert.assertTrue(abc2.channel.isEmpty());
+        Assert.assertEquals(1, abc.channel.size());
+        
+        emoticons.setIgnoredEmotes(Arrays.asList("Abc for:d"));
+        Assert.assertEquals(1, emoticons.getChannelEmotes("abc").channel.size());
+    }
+    
+    private static List<String> find(ChannelEmotes.Index index, String text) {
+        List<String> result = new ArrayList<>();
+        index.find(text, (emote, start, end) -> {
+            result.add(start+"-"+end+":"+emote.code);
+        });
+        result.sort(null);
+        return result;
+    }
+    
 }
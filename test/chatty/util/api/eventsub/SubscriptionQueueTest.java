@@ -0,0 +1,139 @@
+
+package chatty.util.api.eventsub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class SubscriptionQueueTest {
+
+    private long time;
+    private final List<String> sent = new ArrayList<>();
+    private final Map<String, IntConsumer> pending = new HashMap<>();
+
+    private SubscriptionQueue.Operation op(String name) {
+        return done -> {
+            sent.add(name);
+            pending.put(name, done);
+        };
+    }
+
+    private void finish(String name, int responseCode) {
+        pending.remove(name).accept(responseCode);
+    }
+
+    @Test
+    public void testOrder() {
+        SubscriptionQueue queue = new SubscriptionQueue(r -> {}, () -> time);
+        for (int i = 0; i < 7; i++) {
+            queue.create(new TestTopic("c"+i, i == 0 ? 1 : 0), op("c"+i));
+        }
+        queue.delete(new TestTopic("d", 0), op("d"));
+        assertEquals(8, queue.size());
+        queue.dispatch();
+        // Delete first, then creates with lower cost, limited in flight
+        assertEquals("[d, c1, c2, c3, c4]", sent.toString());
+        queue.dispatch();
+        assertEquals(5, sent.size());
+
+        // Cancel one that hasn't been sent yet
+        assertTrue(queue.cancelCreate(new TestTopic("c5", 0)));
+        assertFalse(queue.cancelCreate(new TestTopic("c1", 0)));
+
+        finish("d", 204);
+        finish("c1", 202);
+        queue.dispatch();
+        assertEquals("[d, c1, c2, c3, c4, c6, c0]", sent.toString());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testPause() {
+        SubscriptionQueue queue = new SubscriptionQueue(r -> {}, () -> time);
+        for (int i = 0; i < 7; i++) {
+            queue.create(new TestTopic("c"+i, 0), op("c"+i));
+        }
+        queue.dispatch();
+        finish("c0", 429);
+        queue.dispatch();
+        assertEquals(5, sent.size());
+
+        // Deletes aren't paused
+        queue.delete(new TestTopic("d", 0), op("d"));
+        queue.dispatch();
+        assertEquals("d", sent.get(5));
+
+        time += 5000;
+        queue.dispatch();
+        assertEquals(6, sent.size());
+        finish("c1", 202);
+        queue.dispatch();
+        assertEquals("c5", sent.get(6));
+
+        // Pause increases, reset by success
+        finish("c2", 429);
+        finish("c3", 429);
+        time += 5000;
+        queue.dispatch();
+        assertEquals(7, sent.size());
+        time += 5000;
+        queue.dispatch();
+        assertEquals("c6", sent.get(7));
+        assertTrue(queue.getStats().contains("3 paused"));
+    }
+
+    private static class TestTopic extends Topic {
+
+        private final String name;
+        private final int expectedCost;
+
+        TestTopic(String name, int expectedCost) {
+            this.name = name;
+            this.expectedCost = expectedCost;
+        }
+
+        @Override
+        public Topic copy() {
+            return new TestTopic(name, expectedCost);
+        }
+
+        @Override
+        public String make(String sessionId) {
+            return name;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void request() {
+        }
+
+        @Override
+        public int getExpectedCost() {
+            return expectedCost;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TestTopic && ((TestTopic) obj).name.equals(name);
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+
+package chatty.util.api.queue;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void testUnknown() {
+        RateLimiter limiter = new RateLimiter(60);
+        assertEquals(0, limiter.getDelay(false, 0));
+        limiter.sent(0);
+        assertEquals(0, limiter.getDelay(false, 0));
+        assertEquals(-1, limiter.getTokens(0));
+        // Missing header doesn't change anything
+        limiter.update(-1, -1, -1, 0, 0);
+        assertEquals(0, limiter.getDelay(false, 0));
+    }
+
+    @Test
+    public void testReserve() {
+        RateLimiter limiter = new RateLimiter(60);
+        limiter.update(800, 61, -1, 0, 0);
+        // Urgent can always be sent while tokens are left
+        assertEquals(0, limiter.getDelay(true, 0));
+        // Spread out, at refill rate (800 per minute)
+        assertEquals(0, limiter.getDelay(false, 0));
+        limiter.sent(0);
+        assertEquals(60, limiter.getTokens(0));
+        // Reserve reached, wait for one token to be refilled
+        assertEquals(75, limiter.getDelay(false, 0));
+        assertEquals(0, limiter.getDelay(true, 0));
+        assertEquals(0, limiter.getDelay(false, 75));
+
+        // Nothing left
+        limiter.update(800, 0, -1, 0, 100);
+        assertEquals(75, limiter.getDelay(true, 100));
+        assertEquals(61*75, limiter.getDelay(false, 100));
+    }
+
+    @Test
+    public void testSpread() {
+        RateLimiter limiter = new RateLimiter(60);
+        limiter.update(800, 800, -1, 0, 0);
+        // Burst while bucket is more than half full
+        for (int i = 0; i < 400; i++) {
+            assertEquals(0, limiter.getDelay(false, 0));
+            limiter.sent(0);
+        }
+        assertEquals(400, limiter.getTokens(0));
+        limiter.sent(0);
+        // Then spread out
+        assertEquals(75, limiter.getDelay(false, 0));
+        assertEquals(0, limiter.getDelay(true, 0));
+        assertEquals(0, limiter.getDelay(false, 75));
+    }
+
+    @Test
+    public void testUpdate() {
+        RateLimiter limiter = new RateLimiter(60);
+        // Other requests in flight already used tokens
+        limiter.update(800, 100, -1, 10, 0);
+        assertEquals(90, limiter.getTokens(0));
+        // Refill
+        assertEquals(98, limiter.getTokens(600));
+        // Limit can't be exceeded
+        assertEquals(800, limiter.getTokens(1000*1000));
+
+        // Reset time
+        limiter.update(800, 0, 5000, 0, 0);
+        assertEquals(75, limiter.getDelay(true, 0));
+        assertEquals(61*75, limiter.getDelay(false, 0));
+        limiter.update(800, 0, 3000, 0, 0);
+        assertEquals(3000, limiter.getDelay(false, 0));
+        assertEquals(800, limiter.getTokens(3000));
+        assertEquals(0, limiter.getDelay(false, 3000));
+    }
+
+}
@@ -0,0 +1,90 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.chatlog.LogSearch.Query;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class LogCompressorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompress() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        LogManager log = new LogManager(dir, "never", false, false, true);
+        log.start();
+        for (int i = 0; i < 2000; i++) {
+            log.writeLine("#test", "<user"+(i % 10)+"> message \u00E4 "+i, "user"+(i % 10));
+        }
+        log.close();
+
+        Path file = dir.resolve("#test.log");
+        LogSearch search = new LogSearch(dir);
+        List<String> before = search(search, new Query("#test", "user3", -1, -1, null, 1000));
+        List<String> beforeText = search(search, new Query("#test", null, 0, -1, "1999", 1000));
+        byte[] content = Files.readAllBytes(file);
+
+        Path compressed = LogCompressor.compress(file, 1000);
+        assertFalse(Files.exists(file));
+        assertEquals(dir.resolve("#test.log.gz"), compressed);
+
+        // Can be decompressed as a whole by regular gzip
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            assertArrayEquals(content, out.toByteArray());
+        }
+
+        // Searching uses the same index
+        assertEquals(200, before.size());
+        assertEquals(before, search(search, new Query("#test", "user3", -1, -1, null, 1000)));
+        assertEquals(Arrays.asList("<user9> message \u00E4 1999"), beforeText);
+        assertEquals(beforeText, search(search, new Query("#test", null, 0, -1, "1999", 1000)));
+
+        // Without block table
+        Files.delete(LogIndex.getBlocksFile(file));
+        assertEquals(before, search(search, new Query("#test", "user3", -1, -1, null, 1000)));
+    }
+
+    @Test
+    public void testOldFiles() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        Files.createFile(dir.resolve("2024-01-01_#test.log"));
+        Files.createFile(dir.resolve("2024-01-02_#test.log"));
+        Files.createFile(dir.resolve("2024-01-01_#test.log.gz"));
+        Files.createFile(dir.resolve("#test.log"));
+        assertEquals(Arrays.asList(dir.resolve("2024-01-01_#test.log")),
+                LogCompressor.getOldFiles(dir, false, "2024-01-02_"));
+    }
+
+    private static List<String> search(LogSearch search, Query query) {
+        List<String> results = new ArrayList<>();
+        search.search(query, result -> {
+            results.add(result.line);
+            return true;
+        });
+        return results;
+    }
+
+}
@@ -0,0 +1,66 @@
+package chatty.util.chatlog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class LogManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBurst() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LogManager log = new LogManager(dir, "never", false, false);
+        log.start();
+        // Fits into the queue even if the writer doesn't get to run
+        int count = LogManager.QUEUE_CAPACITY / 2;
+        for (int i = 0; i < count; i++) {
+            log.writeLine("#test", "line "+i);
+            if (i % 1000 == 0) {
+                log.writeLine("#test2", "other "+i);
+            }
+        }
+        log.close();
+        assertEquals(0, log.getDroppedCount());
+
+        List<String> lines = Files.readAllLines(dir.resolve("#test.log"), StandardCharsets.UTF_8);
+        // Lines for opening and closing the file
+        assertEquals(count + 3, lines.size());
+        assertTrue(lines.get(0).startsWith("# Log started"));
+        for (int i = 0; i < count; i++) {
+            assertEquals("line "+i, lines.get(i + 1));
+        }
+        assertEquals("-", lines.get(lines.size() - 1));
+        assertEquals(count / 1000 + 3, Files.readAllLines(dir.resolve("#test2.log"), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testQueueFull() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LogManager log = new LogManager(dir, "never", false, false);
+        // Writer not started yet, so nothing is taken from the queue
+        for (int i = 0; i < LogManager.QUEUE_CAPACITY + 10; i++) {
+            log.writeLine("#test", "line "+i);
+        }
+        assertEquals(10, log.getDroppedCount());
+        log.start();
+        log.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("#test.log"), StandardCharsets.UTF_8);
+        assertEquals(LogManager.QUEUE_CAPACITY + 3, lines.size());
+        assertEquals("line "+(LogManager.QUEUE_CAPACITY - 1), lines.get(lines.size() - 3));
+    }
+
+}
@@ -0,0 +1,137 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.chatlog.LogSearch.Query;
+import chatty.util.chatlog.LogSearch.Result;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class LogSearchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSearch() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        LogManager log = new LogManager(dir, "never", false, false, true);
+        log.start();
+        log.writeLine("#test", "<abc> first", "abc");
+        log.writeLine("#test", "<Def> second \u00E4\u00F6\u00FC", "Def");
+        log.writeLine("#test", "some info");
+        log.writeLine("#test", "<abc> third", "abc");
+        log.writeLine("#other", "<abc> other channel", "abc");
+        log.close();
+
+        assertTrue(Files.exists(LogIndex.getIndexDir(dir.resolve("#test.log"))));
+        LogSearch search = new LogSearch(dir);
+
+        // User index
+        List<Result> results = search(search, new Query("#test", "ABC", -1, -1, null, 100));
+        assertEquals(Arrays.asList("<abc> first", "<abc> third"), lines(results));
+        assertTrue(results.get(0).time > 0);
+
+        // Line after non-ASCII characters
+        results = search(search, new Query("#test", "def", -1, -1, null, 100));
+        assertEquals(Arrays.asList("<Def> second \u00E4\u00F6\u00FC"), lines(results));
+
+        // All channels and text
+        results = search(search, new Query(null, "abc", -1, -1, "Channel", 100));
+        assertEquals(Arrays.asList("<abc> other channel"), lines(results));
+
+        // Time range
+        long now = System.currentTimeMillis();
+        results = search(search, new Query("#test", null, now - 60*1000, now + 60*1000, null, 100));
+        // Includes the lines for opening and closing the file
+        assertEquals(7, results.size());
+        assertEquals(Arrays.asList("<abc> first", "<Def> second \u00E4\u00F6\u00FC", "some info", "<abc> third"), lines(results).subList(1, 5));
+        assertTrue(search(search, new Query("#test", null, now + 60*1000, -1, null, 100)).isEmpty());
+        assertTrue(search(search, new Query("#test", null, -1, now - 60*1000, null, 100)).isEmpty());
+
+        // Max results
+        assertEquals(1, search(search, new Query("#test", "abc", -1, -1, null, 1)).size());
+    }
+
+    @Test
+    public void testLargeFile() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        LogManager log = new LogManager(dir, "never", false, false, true);
+        log.start();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Lines cross the boundaries of the read buffer
+            String user = i % 3 == 0 ? "abc" : "xabc";
+            String line = "<"+user+"> message "+i+" "+new String(new char[i % 97]).replace('\0', '.');
+            log.writeLine("#test", line, user);
+            if (user.equals("abc")) {
+                expected.add(line);
+            }
+        }
+        log.close();
+        Path file = dir.resolve("#test.log");
+        assertTrue(Files.size(file) > 128*1024);
+        LogSearch search = new LogSearch(dir);
+
+        List<Result> results = search(search, new Query("#test", "abc", -1, -1, null, 10000));
+        assertEquals(expected, lines(results));
+        assertEquals(1, search(search, new Query("#test", "xabc", -1, -1, "message 1999 ", 10000)).size());
+
+        // File not in use anymore
+        Files.delete(file);
+    }
+
+    @Test
+    public void testUnindexed() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        Files.write(dir.resolve("#test.log"), Arrays.asList("<abc> first", "<def> second", "<abc> third"), StandardCharsets.UTF_8);
+        LogSearch search = new LogSearch(dir);
+
+        List<Result> results = search(search, new Query("#test", "abc", -1, -1, null, 100));
+        assertEquals(Arrays.asList("<abc> first", "<abc> third"), lines(results));
+        assertEquals(-1, results.get(0).time);
+
+        // Not searched with time range
+        assertTrue(search(search, new Query("#test", "abc", 0, -1, null, 100)).isEmpty());
+    }
+
+    @Test
+    public void testGetChannel() {
+        assertEquals("#test", LogSearch.getChannel(Paths.get("#test.log")));
+        assertEquals("#test", LogSearch.getChannel(Paths.get("2024-01-01_#test.log")));
+        assertEquals("#test", LogSearch.getChannel(Paths.get("#test-1.log")));
+        assertEquals("#test_abc", LogSearch.getChannel(Paths.get("#test_abc.log")));
+        assertNull(LogSearch.getChannel(Paths.get("#test.log.time")));
+    }
+
+    private static List<Result> search(LogSearch search, Query query) {
+        List<Result> results = new ArrayList<>();
+        search.search(query, result -> {
+            results.add(result);
+            return true;
+        });
+        return results;
+    }
+
+    private static List<String> lines(List<Result> results) {
+        List<String> lines = new ArrayList<>();
+        for (Result result : results) {
+            lines.add(result.line);
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,64 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.chatlog.StructuredLog.Record;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class StructuredLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String RAW = "@badges=;color=#008000;display-name=Abc;emotes=25:0-4;id=1 :abc!abc@abc.tmi.twitch.tv PRIVMSG #test :Kappa \"quoted\" \\ \u00E4 \uD83D\uDE00";
+
+    @Test
+    public void testRecord() {
+        Record record = StructuredLog.parseRecord(StructuredLog.makeRecord(123, RAW));
+        assertEquals(123, record.time);
+        assertEquals(RAW, record.raw);
+        assertNull(StructuredLog.parseRecord("{\"t\":123}"));
+        assertNull(StructuredLog.parseRecord("invalid"));
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        LogManager log = new LogManager(dir, "never", false, false);
+        log.start();
+        log.writeLine("#test", "<abc> Kappa");
+        log.writeStructured("#test", StructuredLog.makeRecord(1, RAW));
+        log.writeStructured("#test", StructuredLog.makeRecord(2, "invalid \u00E4"));
+        log.writeLine(null, "info for all files");
+        log.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("#test.log"), StandardCharsets.UTF_8);
+        assertEquals("<abc> Kappa", lines.get(1));
+        assertEquals("info for all files", lines.get(2));
+
+        List<Record> records = new ArrayList<>();
+        StructuredLog.read(dir.resolve("#test" + StructuredLog.EXTENSION), record -> {
+            records.add(record);
+            return true;
+        });
+        assertEquals(2, records.size());
+        assertEquals(RAW, records.get(0).raw);
+        assertEquals(2, records.get(1).time);
+        // No additional lines
+        assertEquals(2, Files.readAllLines(dir.resolve("#test.jsonl"), StandardCharsets.UTF_8).size());
+    }
+
+}
@@ -0,0 +1,129 @@
+
+package chatty.util.gif;
+
+import chatty.gui.components.help.About;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class ListAnimatedImageFrameTest {
+
+    private static void testRoundtrip(BufferedImage image) throws Exception {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ListAnimatedImageFrame frame = new ListAnimatedImageFrame(image, 50);
+        int[] pixels = new int[width * height];
+        frame.getImage(pixels);
+        int[] expected = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < expected.length; i++) {
+            // Color doesn't matter for fully transparent pixels
+            if ((expected[i] & 0xff000000) == 0) {
+                assertEquals("Pixel "+i, 0, pixels[i] & 0xff000000);
+            }
+            else {
+                assertEquals("Pixel "+i, expected[i], pixels[i]);
+            }
+        }
+        assertEquals(50, frame.getDelay());
+        assertTrue(frame.getCompressedSize() <= ListAnimatedImageFrame.encodePng(image).length);
+
+        // Decoding with a reused (not empty) buffer
+        byte[] buffer = new byte[frame.getDecodeBufferSize()];
+        Arrays.fill(buffer, (byte) 0x55);
+        int[] pixels2 = new int[width * height];
+        frame.getImage(pixels2, buffer);
+        assertArrayEquals(pixels, pixels2);
+    }
+
+    @Test
+    public void testPalette() throws Exception {
+        // Mostly transparent with a few colors, run-length encoded
+        BufferedImage image = new BufferedImage(28, 28, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 5; x < 20; x++) {
+            image.setRGB(x, 10, 0xFFFF0000);
+            image.setRGB(x, 11, 0x8000FF00);
+        }
+        testRoundtrip(image);
+        ListAnimatedImageFrame frame = new ListAnimatedImageFrame(image, 50);
+        assertTrue(frame.getCompressedSize() < 28*28);
+        assertEquals(30, frame.getVisiblePixelCount());
+
+        // Noise with few colors, not run-length encoded
+        Random random = new Random(1);
+        int[] colors = new int[]{0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0x00000000};
+        for (int x = 0; x < 28; x++) {
+            for (int y = 0; y < 28; y++) {
+                image.setRGB(x, y, colors[random.nextInt(colors.length)]);
+            }
+        }
+        testRoundtrip(image);
+    }
+
+    @Test
+    public void testManyColors() throws Exception {
+        BufferedImage image = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < 40; x++) {
+            for (int y = 0; y < 40; y++) {
+                image.setRGB(x, y, 0xFF000000 | (x * 40 + y) * 100);
+            }
+        }
+        testRoundtrip(image);
+    }
+
+    /**
+     * Frames of an actual GIF, in original size and scaled up (with and
+     * without creating new colors), shouldn't use more memory than PNG.
+     */
+    @Test
+    public void testGif() throws Exception {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(
+                About.class.getResourceAsStream("viewerhistory_small.gif"))) {
+            reader.setInput(input);
+            int count = Math.min(reader.getNumImages(true), 5);
+            for (int i = 0; i < count; i++) {
+                BufferedImage raw = reader.read(i);
+                BufferedImage image = toArgb(raw, raw.getWidth(), raw.getHeight(), false);
+                testRoundtrip(image);
+                for (int size : new int[]{56, 112}) {
+                    testRoundtrip(toArgb(raw, size, size, false));
+                    testRoundtrip(toArgb(raw, size, size, true));
+                }
+            }
+        }
+        finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage toArgb(BufferedImage source, int width, int height, boolean smooth) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        if (smooth) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return result;
+    }
+
+    @Test
+    public void testEncodeRuns() {
+        assertArrayEquals(new byte[]{2, 1, 0, 2, 3, 3}, ListAnimatedImageFrame.encodeRuns(new byte[]{1, 1, 1, 2, 3, 3, 3, 3}));
+        byte[] longRun = new byte[600];
+        assertArrayEquals(new byte[]{(byte) 255, 0, (byte) 255, 0, 87, 0}, ListAnimatedImageFrame.encodeRuns(longRun));
+        assertNull(ListAnimatedImageFrame.encodeRuns(new byte[]{1, 2, 3, 4}));
+    }
+
+}
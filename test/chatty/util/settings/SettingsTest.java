@@ -0,0 +1,141 @@
+
+package chatty.util.settings;
+
+import chatty.util.settings.FileManager.SaveResult;
+import chatty.util.settings.FileManager.SaveResult.CancelReason;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class SettingsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHandles() {
+        Settings settings = new Settings(null, null);
+        settings.addBoolean("bool", false);
+        settings.addString("string", "abc");
+        settings.addLong("long", 5);
+
+        SettingHandle<Boolean> bool = settings.getBooleanHandle("bool");
+        SettingHandle<String> string = settings.getStringHandle("STRING");
+        SettingHandle<Long> number = settings.getLongHandle("long");
+        assertFalse(bool.get());
+        assertEquals("abc", string.get());
+        assertEquals(5L, (long) number.get());
+
+        List<String> changed = new ArrayList<>();
+        settings.addSettingChangeListener((setting, type, value) -> {
+            changed.add(setting+"="+value);
+        });
+        settings.setBoolean("bool", true);
+        settings.setString("string", "def");
+        settings.setLong("long", 10);
+        settings.setLong("long", 10);
+        assertTrue(bool.get());
+        assertEquals("def", string.get());
+        assertEquals(10L, (long) number.get());
+        assertEquals(10, settings.getInt("long"));
+        assertEquals("[bool=true, string=def, long=10]", changed.toString());
+
+        // Reset to default
+        settings.setString("string", null);
+        assertEquals("abc", string.get());
+    }
+
+    @Test(expected = SettingNotFoundException.class)
+    public void testHandleWrongType() {
+        Settings settings = new Settings(null, null);
+        settings.addLong("long", 5);
+        settings.getStringHandle("long");
+    }
+
+    @Test(expected = SettingNotFoundException.class)
+    public void testGetWrongType() {
+        Settings settings = new Settings(null, null);
+        settings.addLong("long", 5);
+        settings.getString("long");
+    }
+
+    @Test
+    public void testJsonWriter() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", "quote\" backslash\\ slash/ \n\t\u0001 \u007F \u2028 \u00E4 \uD83D\uDE00");
+        map.put("b", Arrays.asList(1L, 2.5, true, null, "x"));
+        map.put("c", new HashMap<>());
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("d", Double.NaN);
+        nested.put("e", Long.MIN_VALUE);
+        map.put("f", nested);
+        assertEquals(JSONValue.toJSONString(map), JsonWriter.toJson(map));
+    }
+
+    @Test
+    public void testSaveOnlyChanged() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        FileManager fileManager = new FileManager(dir, dir.resolve("backup"));
+        fileManager.add("main", "main.json", false, null);
+        fileManager.add("other", "other.json", false, null);
+        Settings settings = new Settings("main", fileManager);
+        settings.addFile("other");
+        settings.addString("string", "abc");
+        settings.addList("list", new ArrayList<>(), Setting.STRING);
+        settings.addMap("map", new HashMap<>(), Setting.LONG);
+        settings.setFile("map", "other");
+
+        List<SaveResult> result = settings.saveSettingsToJson(false);
+        assertTrue(result.get(0).written);
+        assertTrue(result.get(1).written);
+
+        // Nothing changed
+        result = settings.saveSettingsToJson(false);
+        assertEquals(CancelReason.KNOWN_CONTENT, result.get(0).cancelReason);
+        assertEquals(CancelReason.KNOWN_CONTENT, result.get(1).cancelReason);
+
+        // Only the file the changed setting is in is written
+        settings.mapPut("map", "key", 1L);
+        result = settings.saveSettingsToJson(false);
+        assertEquals(CancelReason.KNOWN_CONTENT, result.get(0).cancelReason);
+        assertTrue(result.get(1).written);
+
+        settings.listAdd("list", "a/b");
+        settings.setString("string", "def");
+        result = settings.saveSettingsToJson(false);
+        assertTrue(result.get(0).written);
+        assertEquals(CancelReason.KNOWN_CONTENT, result.get(1).cancelReason);
+
+        // Forced save writes anyway
+        result = settings.saveSettingsToJson(true);
+        assertTrue(result.get(0).written);
+        assertTrue(result.get(1).written);
+
+        // Load again
+        Settings loaded = new Settings("main", fileManager);
+        loaded.addFile("other");
+        loaded.addString("string", "abc");
+        loaded.addList("list", new ArrayList<>(), Setting.STRING);
+        loaded.addMap("map", new HashMap<>(), Setting.LONG);
+        loaded.setFile("map", "other");
+        assertTrue(loaded.loadSettingsFromJson());
+        assertEquals("def", loaded.getString("string"));
+        assertEquals(Arrays.asList("a/b"), loaded.getList("list"));
+        assertEquals(1L, loaded.mapGet("map", "key"));
+    }
+
+}
@@ -0,0 +1,101 @@
+
+package chatty.util.settings;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class SidecarStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStore() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        FileManager fileManager = new FileManager(dir, dir.resolve("backup"));
+        SidecarStore store = new SidecarStore("store", fileManager, 3, true);
+        assertFalse(store.isLoaded());
+        assertEquals(0, store.size());
+        assertTrue(store.isLoaded());
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("key", "value\n/");
+        store.add(map);
+        store.add("abc");
+        store.add(1L);
+        assertEquals(3, Files.readAllLines(dir.resolve("store")).size());
+
+        // Loaded lazily from file
+        SidecarStore loaded = new SidecarStore("store", new FileManager(dir, dir.resolve("backup")), 3, true);
+        assertFalse(loaded.isLoaded());
+        assertEquals(Arrays.asList(map, "abc", 1L), loaded.getAll());
+
+        // Oldest removed, file is rewritten eventually
+        store.add(2L);
+        store.add(3L);
+        assertEquals(Arrays.asList(1L, 2L, 3L), store.getAll());
+        assertEquals(5, Files.readAllLines(dir.resolve("store")).size());
+        store.add(4L);
+        assertEquals(3, Files.readAllLines(dir.resolve("store")).size());
+        loaded = new SidecarStore("store", new FileManager(dir, dir.resolve("backup")), 3, true);
+        assertEquals(Arrays.asList(2L, 3L, 4L), loaded.getAll());
+
+        // Partially written line is ignored
+        Files.write(dir.resolve("store"), "{\"abc".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        loaded = new SidecarStore("store", new FileManager(dir, dir.resolve("backup")), 3, true);
+        assertEquals(Arrays.asList(2L, 3L, 4L), loaded.getAll());
+
+        // Line appended after the partially written line isn't lost
+        loaded.add(5L);
+        loaded = new SidecarStore("store", new FileManager(dir, dir.resolve("backup")), 3, true);
+        assertEquals(Arrays.asList(3L, 4L, 5L), loaded.getAll());
+        loaded.add(6L);
+        loaded = new SidecarStore("store", new FileManager(dir, dir.resolve("backup")), 3, true);
+        assertEquals(Arrays.asList(4L, 5L, 6L), loaded.getAll());
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, Files.readAllLines(dir.resolve("store")).size());
+    }
+
+    @Test
+    public void testMigrate() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        FileManager fileManager = new FileManager(dir, dir.resolve("backup"));
+        SidecarStore store = new SidecarStore("store", fileManager, 0, false);
+        assertTrue(store.migrate(Arrays.asList("a", "b")));
+        assertEquals(Arrays.asList("a", "b"), store.getAll());
+
+        // File already exists, so old data is not used
+        SidecarStore store2 = new SidecarStore("store", new FileManager(dir, dir.resolve("backup")), 0, false);
+        assertTrue(store2.migrate(Arrays.asList("c")));
+        List<Object> items = store2.getAll();
+        assertEquals(Arrays.asList("a", "b"), items);
+    }
+
+    @Test
+    public void testMemoryOnly() {
+        SidecarStore store = new SidecarStore("store", null, 2, false);
+        store.add("a");
+        store.add("b");
+        store.add("c");
+        assertEquals(Arrays.asList("b", "c"), store.getAll());
+        assertFalse(store.migrate(Arrays.asList("d")));
+    }
+
+}
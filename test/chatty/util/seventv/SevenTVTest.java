@@ -0,0 +1,97 @@
+
+package chatty.util.seventv;
+
+import chatty.util.api.Emoticon;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class SevenTVTest {
+
+    @Test
+    public void testParseChannel() throws Exception {
+        Set<Emoticon> emotes;
+        try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("SevenTV_channel"), StandardCharsets.UTF_8)) {
+            emotes = SevenTV.parseEmoteList(SevenTV.Type.CHANNEL, "testchannel", reader);
+        }
+        Map<String, Emoticon> byCode = new HashMap<>();
+        for (Emoticon emote : emotes) {
+            byCode.put(emote.code, emote);
+        }
+        assertEquals(2, byCode.size());
+
+        Emoticon emote = byCode.get("peepoHappy");
+        assertEquals("emote1", emote.stringId);
+        assertEquals(28, emote.getWidth());
+        assertEquals(28, emote.getHeight());
+        assertFalse(emote.isAnimated());
+        assertFalse(emote.isZeroWidth());
+        assertTrue(emote.getStreamRestrictions().contains("testchannel"));
+
+        // Url after files
+        emote = byCode.get("RainTime");
+        assertEquals(32, emote.getWidth());
+        assertTrue(emote.isAnimated());
+        assertTrue(emote.isZeroWidth());
+    }
+
+    @Test
+    public void testParseGlobal() throws Exception {
+        String json = "{\"id\":\"global\",\"emotes\":[{\"id\":\"a\",\"name\":\"Global\",\"data\":{\"host\":{\"url\":\"//cdn\",\"files\":[{\"name\":\"1x.webp\",\"width\":20,\"height\":10,\"format\":\"WEBP\"}]}}}]}";
+        Set<Emoticon> emotes = SevenTV.parseEmoteList(SevenTV.Type.GLOBAL, null, new StringReader(json));
+        assertEquals(1, emotes.size());
+        Emoticon emote = emotes.iterator().next();
+        assertEquals("Global", emote.code);
+        assertFalse(emote.hasStreamRestrictions());
+
+        // Errors result in empty list
+        assertTrue(SevenTV.parseEmoteList(SevenTV.Type.CHANNEL, "abc", new StringReader("{\"emote_set\":null}")).isEmpty());
+    }
+
+    @Test
+    public void testParseInvalid() throws Exception {
+        String emote = "{\"id\":\"%s\",\"name\":\"%s\",\"data\":{\"flags\":%s,\"host\":{\"url\":\"//cdn\",\"files\":[{\"name\":\"1x.webp\",\"width\":20,\"height\":10,\"format\":\"WEBP\"}]}}}";
+        String json = "{\"emotes\":["
+                + String.format(emote, "a", "Before", "0") + ","
+                + String.format(emote, "b", "Invalid", "null") + ","
+                + String.format(emote, "c", "After", "[1,{\"a\":2}]") + ","
+                + String.format(emote, "d", "Last", "256") + "]}";
+        Set<Emoticon> emotes = SevenTV.parseEmoteList(SevenTV.Type.GLOBAL, null, new StringReader(json));
+        Set<String> codes = new HashSet<>();
+        for (Emoticon e : emotes) {
+            codes.add(e.code);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("Before", "Last")), codes);
+
+        // Incomplete response is an error, not an empty or partial result
+        String[] incomplete = new String[]{
+            "{\"emotes\":[",
+            json.substring(0, json.length() - 2),
+            json.substring(0, json.indexOf("Invalid") + 30),
+            ""
+        };
+        for (String input : incomplete) {
+            try {
+                SevenTV.parseEmoteList(SevenTV.Type.GLOBAL, null, new StringReader(input));
+                fail("No exception for: "+input);
+            }
+            catch (IOException ex) {
+                // Expected
+            }
+        }
+    }
+
+}